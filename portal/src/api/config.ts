@@ -2,10 +2,13 @@
 export const API_BASE_URL = import.meta.env.VITE_API_BASE_URL || 'http://localhost:8080';
 
 // 通用请求配置
-export const defaultHeaders = {
+export const defaultHeaders: Record<string, string> = {
   'Accept': 'application/json',
 };
 
+// 读己之写：写请求的响应带 X-Primary-Until，之后的请求原样带回，换了后端节点也从主库读取
+const STICKY_HEADER = 'X-Primary-Until';
+
 // 通用错误处理
 export class ApiError extends Error {
   constructor(
@@ -20,6 +23,11 @@ export class ApiError extends Error {
 
 // 通用响应处理
 export async function handleResponse<T>(response: Response): Promise<T> {
+  const primaryUntil = response.headers.get(STICKY_HEADER);
+  if (primaryUntil) {
+    defaultHeaders[STICKY_HEADER] = primaryUntil;
+  }
+
   if (!response.ok) {
     let errorMessage = `HTTP Error: ${response.status}`;
     let errorData: any = {};
@@ -0,0 +1,26 @@
+#!/usr/bin/env bash
+# Builds the fast-start launch mode:
+#   1. Spring AOT processing (mvn -Pfast-start)
+#   2. the executable jar extracted into a CDS-friendly layout (target/fast-start/)
+#   3. an AppCDS archive (app.jsa) written by a training run that refreshes the context and exits
+# Environment the training run needs: the same as a normal start (OPENAI_API_KEY, DB_PASSWORD, AWS_* ...);
+# no request is served and the database is not queried.
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+./mvnw -B -q -Pfast-start -DskipTests package
+
+JAR=$(ls target/food-log-app-*.jar | grep -v original | head -n 1)
+OUT=target/fast-start
+rm -rf "$OUT"
+java -Djarmode=tools -jar "$JAR" extract --destination "$OUT"
+APP_JAR="$OUT/$(basename "$JAR")"
+
+java -XX:ArchiveClassesAtExit="$OUT/app.jsa" \
+     -Dspring.aot.enabled=true \
+     -Dspring.context.exit=onRefresh \
+     -Dspring.profiles.active=fast-start \
+     -jar "$APP_JAR"
+
+echo "Start with:"
+echo "  java -XX:SharedArchiveFile=$OUT/app.jsa -Dspring.aot.enabled=true -Dspring.profiles.active=fast-start -jar $APP_JAR"
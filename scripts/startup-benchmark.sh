@@ -0,0 +1,37 @@
+#!/usr/bin/env bash
+# Time to first request (launch -> first 200 from /actuator/health) for the default and the fast-start mode.
+# Usage: scripts/startup-benchmark.sh [runs]   (run scripts/build-fast-start.sh first)
+# Appends one line per start to target/startup-benchmark.csv: mode,run,wall_ms,app_reported_ms
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+RUNS=${1:-5}
+PORT=${PORT:-8080}
+OUT=target/fast-start
+APP_JAR=$(ls "$OUT"/food-log-app-*.jar | head -n 1)
+CSV=target/startup-benchmark.csv
+[ -f "$CSV" ] || echo "mode,run,wall_ms,app_reported_ms" > "$CSV"
+
+measure() {
+  local mode=$1 run=$2; shift 2
+  local log=target/startup-$mode-$run.log
+  local start=$(date +%s%3N)
+  "$@" --server.port="$PORT" > "$log" 2>&1 &
+  local pid=$!
+  until curl -sf "http://localhost:$PORT/actuator/health" > /dev/null; do
+    if ! kill -0 "$pid" 2> /dev/null; then echo "$mode run $run failed, see $log" >&2; return 1; fi
+    sleep 0.05
+  done
+  local wall=$(( $(date +%s%3N) - start ))
+  kill "$pid"; wait "$pid" 2> /dev/null || true
+  # FirstRequestTimer: JVM start -> first completed request, as seen by the application
+  local reported=$(grep -o 'Time to first request: [0-9]*' "$log" | grep -o '[0-9]*$' || echo "")
+  echo "$mode,$run,$wall,$reported" >> "$CSV"
+  echo "$mode run $run: ${wall} ms (app: ${reported} ms)"
+}
+
+for run in $(seq 1 "$RUNS"); do
+  measure default "$run" java -jar "$APP_JAR"
+  measure fast-start "$run" java -XX:SharedArchiveFile="$OUT/app.jsa" -Dspring.aot.enabled=true \
+      -Dspring.profiles.active=fast-start -jar "$APP_JAR"
+done
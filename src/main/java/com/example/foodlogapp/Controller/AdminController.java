@@ -0,0 +1,82 @@
+package com.example.foodlogapp.Controller;
+
+import com.example.foodlogapp.dto.ReaperReport;
+import com.example.foodlogapp.dto.ReanalysisProgress;
+import com.example.foodlogapp.dto.StorageSpoolStatus;
+import com.example.foodlogapp.entity.ReanalysisRun;
+import com.example.foodlogapp.job.StorageReaper;
+import com.example.foodlogapp.service.ReanalysisService;
+import com.example.foodlogapp.utils.LocalImageSpool;
+import com.example.foodlogapp.utils.S3CircuitBreaker;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.util.List;
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    private final ReanalysisService reanalysisService;
+    private final StorageReaper storageReaper;
+    private final S3CircuitBreaker s3CircuitBreaker;
+    private final LocalImageSpool localImageSpool;
+
+    // Start re-analysing all existing logs (or those of one user); picked up by a ReanalysisRunner within seconds
+    @PostMapping("/reanalysis")
+    public ResponseEntity<ReanalysisProgress> startReanalysis(@RequestParam(value = "userId", required = false) Integer userId,
+                                                              @RequestParam(value = "parallelism", required = false) Integer parallelism,
+                                                              @RequestParam(value = "ratePerSecond", required = false) Double ratePerSecond,
+                                                              @RequestParam(value = "batchSize", required = false) Integer batchSize) {
+        ReanalysisRun run = reanalysisService.start(userId, parallelism, ratePerSecond, batchSize);
+        return ResponseEntity.created(URI.create("/admin/reanalysis/" + run.getId())).body(ReanalysisProgress.from(run));
+    }
+
+    // Recent runs, newest first
+    @GetMapping("/reanalysis")
+    public ResponseEntity<List<ReanalysisProgress>> listReanalysis(@RequestParam(value = "limit", defaultValue = "20") int limit) {
+        List<ReanalysisProgress> runs = reanalysisService.findRecent(Math.max(1, Math.min(limit, 100))).stream()
+                .map(ReanalysisProgress::from)
+                .toList();
+        return ResponseEntity.ok(runs);
+    }
+
+    // Progress and throughput of one run
+    @GetMapping("/reanalysis/{id}")
+    public ResponseEntity<ReanalysisProgress> getReanalysis(@PathVariable Long id) {
+        ReanalysisRun run = reanalysisService.findById(id);
+        if (run == null) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok(ReanalysisProgress.from(run));
+    }
+
+    // Stop a run; the page in progress finishes, its checkpoint is not written
+    @PostMapping("/reanalysis/{id}/cancel")
+    public ResponseEntity<ReanalysisProgress> cancelReanalysis(@PathVariable Long id) {
+        ReanalysisRun run = reanalysisService.findById(id);
+        if (run == null) return ResponseEntity.notFound().build();
+        if (!reanalysisService.cancel(id)) return ResponseEntity.status(409).body(ReanalysisProgress.from(run));
+        return ResponseEntity.ok(ReanalysisProgress.from(reanalysisService.findById(id)));
+    }
+
+    // Run the storage reaper now (dryRun defaults to true: report only); 409 while a pass is already running
+    @PostMapping("/storage-reaper/run")
+    public ResponseEntity<ReaperReport> runStorageReaper(@RequestParam(value = "dryRun", defaultValue = "true") boolean dryRun) {
+        ReaperReport report = storageReaper.run(dryRun);
+        if (report == null) return ResponseEntity.status(409).build();
+        return ResponseEntity.ok(report);
+    }
+
+    // S3 circuit breaker state and the images waiting on this node's local spool (uploaded while S3 was unavailable)
+    @GetMapping("/storage-spool")
+    public ResponseEntity<StorageSpoolStatus> getStorageSpool() {
+        StorageSpoolStatus status = new StorageSpoolStatus();
+        status.setS3Breaker(s3CircuitBreaker.getState().name());
+        status.setSpooledFiles(localImageSpool.getFiles());
+        status.setSpooledBytes(localImageSpool.getBytes());
+        status.setReplayLagSeconds(localImageSpool.getLagSeconds());
+        return ResponseEntity.ok(status);
+    }
+}
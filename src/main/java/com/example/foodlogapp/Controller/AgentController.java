@@ -1,12 +1,23 @@
 package com.example.foodlogapp.Controller;
 
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.example.foodlogapp.config.AnalysisProperties;
+import com.example.foodlogapp.config.InvalidParameterException;
+import com.example.foodlogapp.dto.AnalysisMode;
+import com.example.foodlogapp.entity.AnalysisJob;
 import com.example.foodlogapp.entity.FoodLog;
+import com.example.foodlogapp.service.AnalysisJobService;
+import com.example.foodlogapp.service.FoodAnalysisService;
 import com.example.foodlogapp.service.FoodLogService;
 import com.example.foodlogapp.service.FoodIngredientService;
+import com.example.foodlogapp.utils.LocalImageSpool;
+import com.example.foodlogapp.utils.S3CircuitBreaker;
 import com.example.foodlogapp.utils.S3Service;
+import com.example.foodlogapp.utils.UploadSpool;
+import com.example.foodlogapp.utils.UploadSpooler;
 import lombok.RequiredArgsConstructor;
-import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.core.io.Resource;
+import org.springframework.ai.content.Media;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -26,10 +37,8 @@ import com.example.foodlogapp.config.StorageProperties;
 @RequestMapping("/ai")
 public class AgentController {
 
-    // 注入的是配置了FoodTools的serviceChatClient
-    private final ChatClient serviceChatClient;
-
     // 1. 注入服务
+    private final FoodAnalysisService foodAnalysisService;
     private final FoodLogService foodLogService;
     private final FoodIngredientService foodIngredientService;
 
@@ -41,101 +50,243 @@ public class AgentController {
 
     private final S3Service s3Service;
 
+    // 上传图片的堆外缓存（全局预算 app.storage.spool-budget-bytes）
+    private final UploadSpooler uploadSpooler;
+
+    // S3 不可用时的本地暂存（image-dir/s3-spool）
+    private final LocalImageSpool localImageSpool;
+
+    private final AnalysisProperties analysisProperties;
+
+    // 持久化分析队列（app.ai.analysis.queue.enabled）
+    private final AnalysisJobService analysisJobService;
+
     /**
      * 接收食物图片，保存图片，创建日志条目，然后调用AI Agent进行分析和入库
      *
      * @param file     上传的图片文件
      * @param userId   进行操作的用户ID (为方便测试，设为可选，默认为1)
      * @param userNotes 用户可能附加的额外备注 (例如: "这是我的午餐")
-     * @return AI工具执行后的最终JSON响应 (例如: {"status": "SUCCESS", "count": 3})
+     * @param mode     分析模式 tools | structured (可选，默认取 app.ai.analysis.mode)
+     * @return AI工具执行后的最终JSON响应 (例如: {"status": "SUCCESS", "count": 3})；
+     *         启用队列时立即返回 202 {"status": "QUEUED", "logId": 12}，由各节点的 worker 异步分析
      */
     @PostMapping(value = "/agent/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = "application/json;charset=UTF-8")
     public ResponseEntity<String> analyzeFoodImage(
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "userId", defaultValue = "1") Integer userId,
-            @RequestParam(value = "notes", required = false) String userNotes
+            @RequestParam(value = "notes", required = false) String userNotes,
+            @RequestParam(value = "mode", required = false) String mode
     ) {
 
         if (file.isEmpty()) {
             return ResponseEntity.badRequest().body("{\"status\": \"FAILED\", \"message\": \"File is empty.\"}");
         }
 
-        try {
-            // 确保 user 存在，避免外键约束失败
-            ensureUserExists(userId);
+        AnalysisMode analysisMode = AnalysisMode.parse(mode, analysisProperties.getMode());
+        validateNotes(userNotes);
+
+        String contentType = file.getContentType();
+        if (contentType == null || contentType.isBlank()) {
+            contentType = "image/jpeg"; // fallback
+        }
 
-            // --- 步骤 1 & 2: 存储图片文件 ---
-            String imageUrl = s3Service.uploadFile(file);
+        // 图片只读取一次到堆外缓冲区：上传 S3、计算 SHA-256、编码给模型都从这份数据读取（预算用尽时返回 503）
+        try (UploadSpool spool = uploadSpooler.spool(file, contentType)) {
+            try {
+                // 确保 user 存在，避免外键约束失败
+                ensureUserExists(userId);
 
+                // --- 步骤 1 & 2: 存储图片文件 ---
+                String imageUrl;
+                try {
+                    imageUrl = s3Service.uploadFile(spool);
+                } catch (S3CircuitBreaker.S3UnavailableException e) {
+                    // S3 不可用（熔断或调用失败）：图片先落本地暂存目录，分析照常进行；SpoolReplayer 恢复后上传并更新 image_path
+                    imageUrl = localImageSpool.store(spool);
+                }
 
-            // --- 步骤 3: 创建FoodLog条目并获取logId ---
-            FoodLog newLog = new FoodLog();
-            newLog.setUserId(userId);
-            newLog.setImagePath(imageUrl);
-            newLog.setConfidence(0); // 初始信心度，或根据需要移除
 
-            // 使用 create() 方法创建记录；MyBatis 会把生成的ID回填到实体上
-            int rows = foodLogService.create(newLog);
-            if (rows <= 0) {
-                throw new RuntimeException("Failed to create food log entry in database.");
-            }
-            Integer logId = newLog.getId();
+                // --- 步骤 3: 创建FoodLog条目并获取logId ---
+                FoodLog newLog = new FoodLog();
+                newLog.setUserId(userId);
+                newLog.setImagePath(imageUrl);
+                newLog.setConfidence(0); // 初始信心度，或根据需要移除
+                newLog.setFromUpload(true); // 分析一直失败而为空时由孤儿清理任务回收
 
-            if (logId == null) {
-                throw new RuntimeException("Failed to obtain generated logId after insert.");
-            }
+                // 启用队列：日志与任务在同一事务中创建，只入队，分析由 AnalysisJobWorker 完成（节点宕机后租约过期会被其他节点重新领取）
+                if (analysisProperties.getQueue().isEnabled()) {
+                    analysisJobService.createAndEnqueue(newLog, contentType, userNotes, analysisMode);
+                    return ResponseEntity.accepted().body("{\"status\": \"QUEUED\", \"logId\": " + newLog.getId() + "}");
+                }
 
-            // --- 步骤 4: 准备并调用AI Agent ---
-            Resource imageResource = file.getResource();
-
-            // 构建一个精确的提示，强制AI使用我们提供的logId
-            String basePrompt = String.format(
-                    "Analyze the attached food image. Detect every single ingredient, its estimated calories (kcal), " +
-                            "and its estimated weight in grams. Use the 'logFoodIngredients' tool to save this data. " +
-                            "You MUST use the provided logId: %d." +
-                            "Then generate a confidence score (0-100) for your analysis using the tool.",
-                    logId
-            );
-            String finalPrompt = (userNotes != null && !userNotes.isBlank())
-                    ? basePrompt + " Additional user notes: " + userNotes
-                    : basePrompt;
-
-            String contentType = file.getContentType();
-            if (contentType == null || contentType.isBlank()) {
-                contentType = "image/jpeg"; // fallback
-            }
-            MimeType mime = MimeType.valueOf(contentType);
-
-            // --- 步骤 5: 执行调用（忽略自然语言内容，统一返回标准JSON） ---
-            String ignored = serviceChatClient.prompt()
-                    .user(u -> u
-                            .text(finalPrompt)       // 包含logId的文本指令
-                            .media(mime, imageResource)   // 图像
-                    )
-                    .call() // .call() 会触发AI思考 -> 调用工具 -> AI再思考 -> 返回最终结果
-                    .content(); // 获取AI的最终响应（在这里，它应该是工具的输出）
-
-            // 读取数据库的实际结果，构建稳定JSON返回
-            int count = foodIngredientService.findByLogId(logId).size();
-            Integer confidence = null;
-            FoodLog saved = foodLogService.findById(logId);
-            if (saved != null) {
-                confidence = saved.getConfidence();
+                // 使用 create() 方法创建记录；MyBatis 会把生成的ID回填到实体上
+                int rows = foodLogService.create(newLog);
+                if (rows <= 0) {
+                    throw new RuntimeException("Failed to create food log entry in database.");
+                }
+                Integer logId = newLog.getId();
+
+                if (logId == null) {
+                    throw new RuntimeException("Failed to obtain generated logId after insert.");
+                }
+
+                // --- 步骤 4 & 5: 调用AI Agent（带单次调用超时与可选的对冲请求，见 FoodAnalysisService） ---
+                // data URI 直接由堆外缓冲区编码，省去 byte[] 副本与 String.format 的再次拼接
+                Media image = Media.builder()
+                        .mimeType(MimeType.valueOf(contentType))
+                        .data(spool.toDataUri())
+                        .build();
+                return analyzeAndRespond(logId, image, userNotes, analysisMode);
+
+            } catch (Exception e) {
+                return analysisFailed(e);
             }
-            String resp = "{\"status\": \"SUCCESS\", \"logId\": " + logId + ", \"count\": " + count + (confidence != null ? ", \"confidence\": " + confidence : "") + "}";
-            return ResponseEntity.ok(resp);
+        }
+    }
 
+    /**
+     * 直传第一步：创建待分析的日志并返回预签名 PUT 地址，客户端把图片直接上传到 S3（图片字节不经过本服务）
+     *
+     * @param contentType 图片类型，上传时必须使用相同的 Content-Type 头
+     * @return {"logId": 12, "uploadUrl": "https://...", "method": "PUT", "contentType": "image/jpeg", "expiresAt": "..."}
+     */
+    @PostMapping(value = "/agent/upload-url", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<String> createUploadUrl(
+            @RequestParam(value = "userId", defaultValue = "1") Integer userId,
+            @RequestParam(value = "contentType", defaultValue = "image/jpeg") String contentType
+    ) {
+        if (!contentType.startsWith("image/")) {
+            return ResponseEntity.badRequest().body("{\"status\": \"FAILED\", \"message\": \"contentType must be an image type.\"}");
+        }
+        ensureUserExists(userId);
+        S3Service.PresignedUpload upload = s3Service.presignUpload(contentType, storageProperties.getPresignExpiry());
+
+        // 日志先以 image_path = 最终对象地址创建；客户端一直未上传时由孤儿清理任务回收
+        FoodLog newLog = new FoodLog();
+        newLog.setUserId(userId);
+        newLog.setImagePath(upload.fileUrl());
+        newLog.setConfidence(0);
+        newLog.setFromUpload(true);
+        if (foodLogService.create(newLog) <= 0 || newLog.getId() == null) {
+            throw new RuntimeException("Failed to create food log entry in database.");
+        }
+        String resp = "{\"logId\": " + newLog.getId() + ", \"uploadUrl\": \"" + upload.uploadUrl()
+                + "\", \"method\": \"PUT\", \"contentType\": \"" + contentType
+                + "\", \"expiresAt\": \"" + upload.expiresAt() + "\"}";
+        return ResponseEntity.ok(resp);
+    }
+
+    /**
+     * 直传第二步：图片 PUT 完成后调用，校验 S3 中的对象并开始分析。模型通过预签名 GET 地址自行读取图片。
+     * 响应与 /agent/upload 相同（启用队列时 202 QUEUED）
+     */
+    @PostMapping(value = "/agent/uploads/{logId}/complete", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<String> completeUpload(
+            @PathVariable Integer logId,
+            @RequestParam(value = "notes", required = false) String userNotes,
+            @RequestParam(value = "mode", required = false) String mode
+    ) {
+        AnalysisMode analysisMode = AnalysisMode.parse(mode, analysisProperties.getMode());
+        validateNotes(userNotes);
+        FoodLog foodLog = foodLogService.findById(logId);
+        if (foodLog == null) {
+            return ResponseEntity.notFound().build();
+        }
+        AnalysisJob existing = analysisJobService.findByLogId(logId);
+        if (existing != null) {
+            // 重复调用（客户端重试）：返回已有任务，不再重复入队
+            return alreadyQueued(existing);
+        }
+        if (foodLog.getIngredientCount() != null && foodLog.getIngredientCount() > 0) {
+            return ResponseEntity.status(409).body("{\"status\": \"FAILED\", \"message\": \"Log " + logId + " has already been analysed.\"}");
+        }
+        ObjectMetadata metadata = s3Service.findMetadata(foodLog.getImagePath());
+        if (metadata == null) {
+            return ResponseEntity.status(409).body("{\"status\": \"FAILED\", \"message\": \"Image has not been uploaded yet.\"}");
+        }
+        String contentType = metadata.getContentType();
+        if (contentType == null || !contentType.startsWith("image/")
+                || metadata.getContentLength() > storageProperties.getDirectUploadMaxBytes()) {
+            // 预签名 PUT 无法限制大小/类型：不合格的对象直接删除，日志保留，客户端可用原 uploadUrl 重新上传（未过期时）
+            s3Service.deleteFile(foodLog.getImagePath());
+            return ResponseEntity.badRequest().body("{\"status\": \"FAILED\", \"message\": \"Uploaded object must be an image of at most "
+                    + storageProperties.getDirectUploadMaxBytes() + " bytes.\"}");
+        }
+
+        try {
+            if (analysisProperties.getQueue().isEnabled()) {
+                try {
+                    analysisJobService.enqueue(logId, contentType, userNotes, analysisMode);
+                } catch (DuplicateKeyException e) {
+                    // 并发的另一次 complete 先插入了任务（uk_analysis_job_log）：返回那个任务
+                    AnalysisJob winner = analysisJobService.findByLogId(logId);
+                    return winner != null ? alreadyQueued(winner) : ResponseEntity.notFound().build();
+                }
+                return ResponseEntity.accepted().body("{\"status\": \"QUEUED\", \"logId\": " + logId + "}");
+            }
+            Media image = Media.builder()
+                    .mimeType(MimeType.valueOf(contentType))
+                    .data(s3Service.presignDownload(foodLog.getImagePath(), storageProperties.getPresignExpiry()))
+                    .build();
+            return analyzeAndRespond(logId, image, userNotes, analysisMode);
         } catch (Exception e) {
-            String errorMsg = "{\"status\": \"FAILED\", \"message\": \"An error occurred during AI analysis: " + e.getMessage() + "\"}";
-            System.err.println(errorMsg);
-            return ResponseEntity.internalServerError().body(errorMsg);
+            return analysisFailed(e);
+        }
+    }
+
+    /**
+     * 查询排队分析任务的状态（PENDING / RUNNING / DONE / FAILED）；完成后用 GET /logs/{logId} 读取结果
+     */
+    @GetMapping(value = "/agent/jobs/{logId}", produces = "application/json;charset=UTF-8")
+    public ResponseEntity<String> getJobStatus(@PathVariable Integer logId) {
+        AnalysisJob job = analysisJobService.findByLogId(logId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        String resp = "{\"logId\": " + logId + ", \"status\": \"" + job.getStatus() + "\", \"attempts\": " + job.getAttempts()
+                + (job.getLastError() != null && AnalysisJob.FAILED.equals(job.getStatus())
+                    ? ", \"message\": \"" + job.getLastError().replace("\\", "\\\\").replace("\"", "\\\"") + "\"" : "")
+                + "}";
+        return ResponseEntity.ok(resp);
+    }
+
+    private ResponseEntity<String> alreadyQueued(AnalysisJob job) {
+        return ResponseEntity.accepted().body("{\"status\": \"QUEUED\", \"logId\": " + job.getLogId()
+                + ", \"jobStatus\": \"" + job.getStatus() + "\"}");
+    }
+
+    private ResponseEntity<String> analyzeAndRespond(Integer logId, Media image, String userNotes, AnalysisMode analysisMode) {
+        foodAnalysisService.analyze(logId, image, userNotes, analysisMode);
+
+        // 读取数据库的实际结果，构建稳定JSON返回
+        int count = foodIngredientService.findByLogId(logId).size();
+        Integer confidence = null;
+        FoodLog saved = foodLogService.findById(logId);
+        if (saved != null) {
+            confidence = saved.getConfidence();
+        }
+        String resp = "{\"status\": \"SUCCESS\", \"logId\": " + logId + ", \"count\": " + count + (confidence != null ? ", \"confidence\": " + confidence : "") + "}";
+        return ResponseEntity.ok(resp);
+    }
+
+    private ResponseEntity<String> analysisFailed(Exception e) {
+        String errorMsg = "{\"status\": \"FAILED\", \"message\": \"An error occurred during AI analysis: " + e.getMessage() + "\"}";
+        System.err.println(errorMsg);
+        return ResponseEntity.internalServerError().body(errorMsg);
+    }
+
+    // 排队时备注写入 analysis_job.notes（VARCHAR(1000)）；两种模式统一校验，超长返回 400
+    private static void validateNotes(String userNotes) {
+        if (userNotes != null && userNotes.length() > AnalysisJob.MAX_NOTES_LENGTH) {
+            throw new InvalidParameterException("notes must be at most " + AnalysisJob.MAX_NOTES_LENGTH + " characters.");
         }
     }
 
     // 新增：开发/测试用，确保 user_id 存在；若不存在则插入一个占位用户
     private void ensureUserExists(Integer userId) {
         if (userId == null) {
-            throw new IllegalArgumentException("userId must not be null.");
+            throw new InvalidParameterException("userId must not be null.");
         }
         Integer cnt = jdbcTemplate.queryForObject("SELECT COUNT(1) FROM user WHERE id = ?", Integer.class, userId);
         if (cnt != null && cnt > 0) {
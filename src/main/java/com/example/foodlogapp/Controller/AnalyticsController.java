@@ -0,0 +1,51 @@
+package com.example.foodlogapp.Controller;
+
+import com.example.foodlogapp.dto.AnalyticsStoreStats;
+import com.example.foodlogapp.dto.DailyKcal;
+import com.example.foodlogapp.dto.IngredientTotal;
+import com.example.foodlogapp.dto.MealStats;
+import com.example.foodlogapp.service.AnalyticsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("/analytics")
+public class AnalyticsController {
+
+    private final AnalyticsService analyticsService;
+
+    // kcal per calendar day for the last `days` days (zero-filled, oldest first)
+    @GetMapping("/user/{userId}/kcal-per-day")
+    public ResponseEntity<List<DailyKcal>> kcalPerDay(@PathVariable Integer userId,
+                                                      @RequestParam(value = "days", defaultValue = "90") int days,
+                                                      @RequestParam(value = "tz", defaultValue = "UTC") String timeZone) {
+        return ResponseEntity.ok(analyticsService.kcalPerDay(userId, days, timeZone));
+    }
+
+    // Ingredients contributing the most kcal in the last `days` days
+    @GetMapping("/user/{userId}/top-ingredients")
+    public ResponseEntity<List<IngredientTotal>> topIngredients(@PathVariable Integer userId,
+                                                                @RequestParam(value = "limit", defaultValue = "10") int limit,
+                                                                @RequestParam(value = "days", defaultValue = "90") int days,
+                                                                @RequestParam(value = "tz", defaultValue = "UTC") String timeZone) {
+        return ResponseEntity.ok(analyticsService.topIngredientsByKcal(userId, limit, days, timeZone));
+    }
+
+    // Average kcal / weight per meal in the last `days` days
+    @GetMapping("/user/{userId}/meals")
+    public ResponseEntity<MealStats> meals(@PathVariable Integer userId,
+                                           @RequestParam(value = "days", defaultValue = "90") int days,
+                                           @RequestParam(value = "tz", defaultValue = "UTC") String timeZone) {
+        return ResponseEntity.ok(analyticsService.mealStats(userId, days, timeZone));
+    }
+
+    // Memory held by the analytics store (and by one user, if given)
+    @GetMapping("/stats")
+    public ResponseEntity<AnalyticsStoreStats> stats(@RequestParam(value = "userId", required = false) Integer userId) {
+        return ResponseEntity.ok(analyticsService.stats(userId));
+    }
+}
@@ -1,18 +1,49 @@
 package com.example.foodlogapp.Controller;
 
+import com.example.foodlogapp.config.InvalidParameterException;
+import com.example.foodlogapp.config.ReadRoutingContext;
 import com.example.foodlogapp.dto.FoodLogResponse;
+import com.example.foodlogapp.dto.ImportReport;
+import com.example.foodlogapp.dto.LogFields;
 import com.example.foodlogapp.entity.FoodIngredient;
 import com.example.foodlogapp.entity.FoodLog;
 import com.example.foodlogapp.service.FoodIngredientService;
 import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.service.LogImportService;
+import com.example.foodlogapp.utils.IngredientSearchStore;
+import com.example.foodlogapp.utils.LogChangeFeed;
+import com.example.foodlogapp.utils.LogExportWriter;
+import com.example.foodlogapp.utils.LogVersionTracker;
+import com.example.foodlogapp.utils.ResponseFormats;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import java.util.stream.Collectors;
 
+@Slf4j
 @RequiredArgsConstructor
 @RestController
 @RequestMapping("/logs")
@@ -20,30 +51,182 @@ public class LogController {
 
     private final FoodLogService foodLogService;
     private final FoodIngredientService foodIngredientService;
+    private final LogVersionTracker logVersionTracker;
+    private final LogImportService logImportService;
+    private final IngredientSearchStore ingredientSearchStore;
+    private final LogChangeFeed logChangeFeed;
 
-    // Get a single log by ID, including its ingredients (kcal, weight)
+    @Value("${app.export.timeout:30m}")
+    private Duration exportTimeout;
+
+    // Get a single log by ID, including its ingredients (kcal, weight).
+    // Strong ETag from the owner's version. The tag names the owner, so a matching If-None-Match returns 304 after
+    // one user_log_version lookup; moving or deleting the log bumps that owner's version. Only a 200 looks the
+    // owner up in food_log.
     @GetMapping("/{id}")
-    public ResponseEntity<FoodLogResponse> getById(@PathVariable Integer id) {
-        FoodLog log = foodLogService.findById(id);
-        if (log == null) return ResponseEntity.notFound().build();
-        List<FoodIngredient> ingredients = foodIngredientService.findByLogId(id);
-        return ResponseEntity.ok(FoodLogResponse.from(log, ingredients));
+    public ResponseEntity<FoodLogResponse> getById(@PathVariable Integer id, WebRequest request) {
+        String variant = "log:" + id + ":" + format(request);
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        Integer owner = logVersionTracker.userOf(ifNoneMatch);
+        if (owner != null) {
+            String etag = logVersionTracker.etag(logVersionTracker.stamp(owner), variant);
+            // checkNotModified decides once per request: only call it when it will match
+            if (ifNoneMatch.contains(etag) && request.checkNotModified(etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT).build();
+            }
+        }
+
+        String stamp = logVersionTracker.stampOfLog(id);
+        if (stamp == null) return ResponseEntity.notFound().build();
+        String etag = logVersionTracker.etag(stamp, variant);
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT).build();
+        }
+
+        FoodLogResponse body = readAt(stamp, () -> {
+            FoodLog log = foodLogService.findById(id);
+            return log != null ? FoodLogResponse.from(log, foodIngredientService.findByLogId(id)) : null;
+        });
+        if (body == null) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(body);
     }
 
-    // Get all logs for a user by path variable
+    // Get all logs for a user by path variable.
+    // view=summary|full (default full) or fields=id,imagePath,... select what is loaded and returned;
+    // user / ingredients are only queried when selected.
+    // Strong ETag from the user's version; a matching If-None-Match returns 304 without querying the logs.
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<FoodLogResponse>> getByUser(@PathVariable Integer userId) {
-        List<FoodLog> logs = foodLogService.findByUserId(userId);
-        List<FoodLogResponse> list = logs.stream()
-                .map(log -> FoodLogResponse.from(log, foodIngredientService.findByLogId(log.getId())))
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(list);
+    public ResponseEntity<List<FoodLogResponse>> getByUser(@PathVariable Integer userId,
+                                                           @RequestParam(value = "view", required = false) String view,
+                                                           @RequestParam(value = "fields", required = false) String fields,
+                                                           WebRequest request) {
+        LogFields selection = LogFields.parse(view, fields);
+        // read the version before the data: a concurrent write can only make the tag too old, never too new
+        String stamp = logVersionTracker.stamp(userId);
+        String etag = logVersionTracker.etag(stamp, "user:" + selection.names() + ":" + format(request));
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT).build();
+        }
+
+        boolean withIngredients = selection.includes(LogFields.INGREDIENTS);
+        List<FoodLogResponse> list = readAt(stamp, () -> foodLogService.findByUserId(userId, selection).stream()
+                .map(log -> FoodLogResponse.from(log,
+                        withIngredients ? foodIngredientService.findByLogId(log.getId()) : null,
+                        selection))
+                .collect(Collectors.toList()));
+        return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(list);
     }
 
     // Alternative: Get all logs for a user via query parameter
     @GetMapping(params = "userId")
-    public ResponseEntity<List<FoodLogResponse>> getByUserParam(@RequestParam Integer userId) {
-        return getByUser(userId);
+    public ResponseEntity<List<FoodLogResponse>> getByUserParam(@RequestParam Integer userId,
+                                                                @RequestParam(value = "view", required = false) String view,
+                                                                @RequestParam(value = "fields", required = false) String fields,
+                                                                WebRequest request) {
+        return getByUser(userId, view, fields, request);
+    }
+
+    // Server-sent events for changes to a user's logs (created, ingredients-added/-removed, updated, confidence-set,
+    // deleted), so clients refetch only when something changed instead of polling the list.
+    // A "resync" event means changes were dropped (slow client or reconnect): reload the list.
+    @GetMapping(value = "/user/{userId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> events(@PathVariable Integer userId,
+                                             @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        SseEmitter emitter = logChangeFeed.subscribe(userId, lastEventId != null);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "30").build();
+        }
+        // keep proxies (nginx) from buffering the stream
+        return ResponseEntity.ok().header("X-Accel-Buffering", "no").body(emitter);
+    }
+
+    // Search a user's logs by ingredient name: every word of q must prefix-match a word of one of the log's
+    // ingredients ("chick bre" finds "Chicken breast"), case and accents ignored. Newest first, with ingredients.
+    // Answered from the in-memory inverted index (IngredientSearchStore); only the matching logs are loaded.
+    @GetMapping("/user/{userId}/search")
+    public ResponseEntity<List<FoodLogResponse>> search(@PathVariable Integer userId,
+                                                        @RequestParam("q") String q,
+                                                        @RequestParam(value = "limit", defaultValue = "20") int limit,
+                                                        WebRequest request) {
+        if (limit < 1 || limit > 100) {
+            throw new InvalidParameterException("limit must be between 1 and 100");
+        }
+        String stamp = logVersionTracker.stamp(userId);
+        String etag = logVersionTracker.etag(stamp, "search:" + limit + ":" + q + ":" + format(request));
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT).build();
+        }
+
+        List<FoodLogResponse> list = readAt(stamp, () -> {
+            int[] ids = ingredientSearchStore.search(userId, q, limit);
+            // two IN queries for all hits instead of two lookups per hit
+            Map<Integer, FoodLog> logs = foodLogService.findByUserIdAndIds(userId, Arrays.stream(ids).boxed().toList())
+                    .stream().collect(Collectors.toMap(FoodLog::getId, log -> log));
+            Map<Integer, List<FoodIngredient>> ingredients = foodIngredientService.findByLogIds(logs.keySet());
+            List<FoodLogResponse> found = new ArrayList<>(logs.size());
+            for (int id : ids) {
+                FoodLog log = logs.get(id);
+                // deleted (or moved to another user) since the index last saw it
+                if (log == null) continue;
+                found.add(FoodLogResponse.from(log, ingredients.getOrDefault(id, List.of())));
+            }
+            return found;
+        });
+        return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(list);
+    }
+
+    // Export the complete history of a user (one row per log x ingredient) as CSV or NDJSON.
+    // Rows are streamed from a single joined query straight into the response, gzip-compressed
+    // when the client accepts it, so memory stays flat regardless of history size.
+    @GetMapping("/user/{userId}/export")
+    public ResponseEntity<StreamingResponseBody> export(@PathVariable Integer userId,
+                                                        @RequestParam(value = "format", required = false) String format,
+                                                        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                        WebRequest request) {
+        LogExportWriter.Format exportFormat = LogExportWriter.Format.parse(format);
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        // a long history takes longer than the default async timeout; only this endpoint gets app.export.timeout
+        AsyncWebRequest asyncRequest = WebAsyncUtils.getAsyncManager(request).getAsyncWebRequest();
+        if (asyncRequest != null) {
+            asyncRequest.setTimeout(exportTimeout.toMillis());
+        }
+
+        // the body runs on an async thread: carry over the read-your-writes routing decision of this request
+        boolean primaryForced = ReadRoutingContext.isPrimaryForced();
+        StreamingResponseBody body = out -> {
+            OutputStream target = gzip ? new GZIPOutputStream(out, 8192) : out;
+            long start = System.nanoTime();
+            ReadRoutingContext.forcePrimary(primaryForced);
+            try (LogExportWriter writer = new LogExportWriter(target, exportFormat)) {
+                foodLogService.exportByUserId(userId, writer);
+                log.info("Exported {} rows for user {} as {} in {} ms", writer.getRows(), userId,
+                        exportFormat.getExtension(), (System.nanoTime() - start) / 1_000_000);
+            } finally {
+                ReadRoutingContext.clear();
+            }
+        };
+
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"food-log-" + userId + "." + exportFormat.getExtension() + "\"")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) ok.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return ok.body(body);
+    }
+
+    // Bulk import of historical logs in the export layout (CSV or NDJSON, request body may be gzip-encoded).
+    // Parsed as a stream and inserted in chunked transactions; invalid rows are reported and skipped.
+    @PostMapping("/user/{userId}/import")
+    public ResponseEntity<ImportReport> importLogs(@PathVariable Integer userId,
+                                                   @RequestParam(value = "format", required = false) String format,
+                                                   @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+                                                   InputStream body) throws IOException {
+        LogExportWriter.Format importFormat = LogExportWriter.Format.parse(format);
+        InputStream in = contentEncoding != null && contentEncoding.toLowerCase().contains("gzip")
+                ? new GZIPInputStream(body, 8192)
+                : body;
+        return ResponseEntity.ok(logImportService.importLogs(userId, in, importFormat));
     }
 
     // Delete a log and its ingredients
@@ -62,4 +245,23 @@ public class LogController {
 
         return ResponseEntity.noContent().build();
     }
+
+    // Body for a tag stamped on the primary: from the replica once it has caught up with the stamp, otherwise from
+    // the primary, so a lagging replica never serves data older than the tag
+    private <T> T readAt(String stamp, Supplier<T> read) {
+        if (ReadRoutingContext.isPrimaryForced() || logVersionTracker.isVisible(stamp)) {
+            return read.get();
+        }
+        ReadRoutingContext.forcePrimary(true);
+        try {
+            return read.get();
+        } finally {
+            ReadRoutingContext.forcePrimary(false);
+        }
+    }
+
+    // JSON and CBOR bodies of the same version need different strong ETags
+    private static String format(WebRequest request) {
+        return ResponseFormats.of(request.getHeader(HttpHeaders.ACCEPT));
+    }
 }
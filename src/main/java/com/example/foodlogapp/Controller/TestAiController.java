@@ -1,7 +1,9 @@
 package com.example.foodlogapp.Controller;
 
+import com.example.foodlogapp.utils.ChatResponseCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -14,13 +16,31 @@ public class TestAiController {
 
     private final ChatClient chatClient;
 
+    // Bounded, evicting memory keyed by chatId (see BoundedChatMemory)
+    private final ChatMemory chatMemory;
+
+    // Exact-prompt answer cache for stateless requests (app.ai.chat.cache.enabled)
+    private final ChatResponseCache chatResponseCache;
+
     // Test url: http://localhost:8080/ai/chat?prompt=Who?%20are%20you&chatId=123
     @RequestMapping(value = "/chat", produces = "text/html;charset=UTF-8")
     public Flux<String> chat(String prompt, String chatId) {
 
-        // Construct the request model and send the request
-        return chatClient.prompt()
-                .user(prompt)
+        if (chatId != null && !chatId.isBlank()) {
+            // Only requests with a chatId get history; anonymous requests stay stateless
+            return chatClient.prompt().user(prompt)
+                    .advisors(a -> a
+                            .advisors(MessageChatMemoryAdvisor.builder(chatMemory).build())
+                            .param(ChatMemory.CONVERSATION_ID, chatId))
+                    .stream()
+                    .content();
+        }
+
+        // Stateless requests depend only on the prompt, so identical ones can be replayed
+        if (chatResponseCache.isEnabled()) {
+            return chatResponseCache.getOrStream(prompt, () -> chatClient.prompt().user(prompt).stream().content());
+        }
+        return chatClient.prompt().user(prompt)
                 .stream()
                 .content();
     }
@@ -4,6 +4,7 @@ import com.example.foodlogapp.entity.User;
 import com.example.foodlogapp.service.UserService;
 import com.example.foodlogapp.dto.AuthRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -22,7 +23,7 @@ public class UserController {
     public ResponseEntity<User> getById(@PathVariable Integer id) {
         User user = userService.findById(id);
         if (user == null) return ResponseEntity.notFound().build();
-        return ResponseEntity.ok(user);
+        return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).body(user);
     }
 
     // Get user by email or all users
@@ -31,10 +32,10 @@ public class UserController {
         if (email != null && !email.isBlank()) {
             User user = userService.findByEmail(email);
             if (user == null) return ResponseEntity.notFound().build();
-            return ResponseEntity.ok(user);
+            return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).body(user);
         }
         List<User> users = userService.findAll();
-        return ResponseEntity.ok(users);
+        return ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT).body(users);
     }
 
     // Create user
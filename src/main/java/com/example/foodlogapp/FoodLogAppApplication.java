@@ -3,10 +3,17 @@ package com.example.foodlogapp;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import com.example.foodlogapp.config.AnalysisProperties;
+import com.example.foodlogapp.config.ChatProperties;
+import com.example.foodlogapp.config.ReaperProperties;
+import com.example.foodlogapp.config.DataSourceRoutingProperties;
 import com.example.foodlogapp.config.StorageProperties;
 
 @SpringBootApplication
-@EnableConfigurationProperties(StorageProperties.class)
+@EnableConfigurationProperties({StorageProperties.class, AnalysisProperties.class, ChatProperties.class,
+        DataSourceRoutingProperties.class, ReaperProperties.class})
+@EnableScheduling
 public class FoodLogAppApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,335 @@
+package com.example.foodlogapp.config;
+
+import com.example.foodlogapp.dto.AnalysisMode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "app.ai.analysis")
+public class AnalysisProperties {
+
+    /**
+     * Default analysis mode when the request does not choose one: tools (agent + FoodTools) or structured (single shot).
+     */
+    private AnalysisMode mode = AnalysisMode.TOOLS;
+
+    /**
+     * Deadline for a single model attempt (prompt + tool calls). The attempt is abandoned after this.
+     */
+    private Duration attemptTimeout = Duration.ofSeconds(60);
+
+    /**
+     * Threads available for model attempts (primary + hedged).
+     */
+    private int executorThreads = 16;
+
+    private Hedge hedge = new Hedge();
+
+    private Routing routing = new Routing();
+
+    private Queue queue = new Queue();
+
+    public AnalysisMode getMode() {
+        return mode;
+    }
+
+    public void setMode(AnalysisMode mode) {
+        this.mode = mode;
+    }
+
+    public Duration getAttemptTimeout() {
+        return attemptTimeout;
+    }
+
+    public void setAttemptTimeout(Duration attemptTimeout) {
+        this.attemptTimeout = attemptTimeout;
+    }
+
+    public int getExecutorThreads() {
+        return executorThreads;
+    }
+
+    public void setExecutorThreads(int executorThreads) {
+        this.executorThreads = executorThreads;
+    }
+
+    public Hedge getHedge() {
+        return hedge;
+    }
+
+    public void setHedge(Hedge hedge) {
+        this.hedge = hedge;
+    }
+
+    public Routing getRouting() {
+        return routing;
+    }
+
+    public void setRouting(Routing routing) {
+        this.routing = routing;
+    }
+
+    public Queue getQueue() {
+        return queue;
+    }
+
+    public void setQueue(Queue queue) {
+        this.queue = queue;
+    }
+
+    public static class Hedge {
+
+        /**
+         * Fire a second attempt when the first one is slower than the observed percentile.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Latency percentile of recent successful attempts after which the hedge fires (e.g. 0.95).
+         */
+        private double percentile = 0.95;
+
+        /**
+         * Hedge delay used until enough samples are collected.
+         */
+        private Duration initialDelay = Duration.ofSeconds(15);
+
+        /**
+         * Lower bound for the hedge delay, so a burst of fast responses cannot make every call hedge.
+         */
+        private Duration minDelay = Duration.ofSeconds(2);
+
+        /**
+         * Successful attempts required before the percentile is trusted.
+         */
+        private int minSamples = 20;
+
+        /**
+         * Number of recent latencies kept for the percentile.
+         */
+        private int window = 200;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getPercentile() {
+            return percentile;
+        }
+
+        public void setPercentile(double percentile) {
+            this.percentile = percentile;
+        }
+
+        public Duration getInitialDelay() {
+            return initialDelay;
+        }
+
+        public void setInitialDelay(Duration initialDelay) {
+            this.initialDelay = initialDelay;
+        }
+
+        public Duration getMinDelay() {
+            return minDelay;
+        }
+
+        public void setMinDelay(Duration minDelay) {
+            this.minDelay = minDelay;
+        }
+
+        public int getMinSamples() {
+            return minSamples;
+        }
+
+        public void setMinSamples(int minSamples) {
+            this.minSamples = minSamples;
+        }
+
+        public int getWindow() {
+            return window;
+        }
+
+        public void setWindow(int window) {
+            this.window = window;
+        }
+    }
+
+    public static class Routing {
+
+        /**
+         * Route through the configured tiers instead of the single spring.ai.openai model.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Tiers in escalation order; the first one serves every request, later ones only escalations.
+         */
+        private List<Tier> tiers = new ArrayList<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<Tier> getTiers() {
+            return tiers;
+        }
+
+        public void setTiers(List<Tier> tiers) {
+            this.tiers = tiers;
+        }
+    }
+
+    public static class Tier {
+
+        /**
+         * Name used in logs and metric tags.
+         */
+        private String name;
+
+        /**
+         * OpenAI model for this tier, e.g. gpt-4o-mini.
+         */
+        private String model;
+
+        private Double temperature;
+
+        /**
+         * Escalate to the next tier when the reported confidence is below this value (ignored for the last tier).
+         */
+        private int minConfidence = 60;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getModel() {
+            return model;
+        }
+
+        public void setModel(String model) {
+            this.model = model;
+        }
+
+        public Double getTemperature() {
+            return temperature;
+        }
+
+        public void setTemperature(Double temperature) {
+            this.temperature = temperature;
+        }
+
+        public int getMinConfidence() {
+            return minConfidence;
+        }
+
+        public void setMinConfidence(int minConfidence) {
+            this.minConfidence = minConfidence;
+        }
+    }
+
+    public static class Queue {
+
+        /**
+         * Upload enqueues an analysis_job and returns 202 instead of analysing inside the request.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Worker threads on this node claiming jobs (0 = this node only enqueues).
+         */
+        private int workers = 4;
+
+        /**
+         * How long an idle worker waits before polling the queue again.
+         */
+        private Duration pollInterval = Duration.ofSeconds(2);
+
+        /**
+         * A claimed job belongs to its node for this long; running jobs renew it, jobs of dead nodes are reclaimed.
+         */
+        private Duration lease = Duration.ofMinutes(5);
+
+        private int maxAttempts = 3;
+
+        /**
+         * Delay before a failed attempt is retried, multiplied by the attempt number.
+         */
+        private Duration retryDelay = Duration.ofSeconds(30);
+
+        /**
+         * A job whose image is still spooled on another node (uploaded while S3 was down) is put back after
+         * retry-delay without using an attempt, for at most this long after it was enqueued.
+         */
+        private Duration spoolWait = Duration.ofHours(1);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public void setWorkers(int workers) {
+            this.workers = workers;
+        }
+
+        public Duration getPollInterval() {
+            return pollInterval;
+        }
+
+        public void setPollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+        }
+
+        public Duration getLease() {
+            return lease;
+        }
+
+        public void setLease(Duration lease) {
+            this.lease = lease;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public Duration getRetryDelay() {
+            return retryDelay;
+        }
+
+        public void setRetryDelay(Duration retryDelay) {
+            this.retryDelay = retryDelay;
+        }
+
+        public Duration getSpoolWait() {
+            return spoolWait;
+        }
+
+        public void setSpoolWait(Duration spoolWait) {
+            this.spoolWait = spoolWait;
+        }
+    }
+}
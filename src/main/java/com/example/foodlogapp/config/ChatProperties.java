@@ -0,0 +1,120 @@
+package com.example.foodlogapp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "app.ai.chat")
+public class ChatProperties {
+
+    private Memory memory = new Memory();
+
+    private Cache cache = new Cache();
+
+    public Memory getMemory() {
+        return memory;
+    }
+
+    public void setMemory(Memory memory) {
+        this.memory = memory;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public void setCache(Cache cache) {
+        this.cache = cache;
+    }
+
+    public static class Memory {
+
+        /**
+         * Approximate token window kept per conversation; older messages are trimmed first.
+         */
+        private int maxTokensPerConversation = 2000;
+
+        /**
+         * Global budget for all conversations (approximate bytes); least recently used conversations are evicted.
+         */
+        private long maxTotalBytes = 16 * 1024 * 1024;
+
+        /**
+         * Conversations not touched for this long are dropped.
+         */
+        private Duration idleTtl = Duration.ofMinutes(30);
+
+        public int getMaxTokensPerConversation() {
+            return maxTokensPerConversation;
+        }
+
+        public void setMaxTokensPerConversation(int maxTokensPerConversation) {
+            this.maxTokensPerConversation = maxTokensPerConversation;
+        }
+
+        public long getMaxTotalBytes() {
+            return maxTotalBytes;
+        }
+
+        public void setMaxTotalBytes(long maxTotalBytes) {
+            this.maxTotalBytes = maxTotalBytes;
+        }
+
+        public Duration getIdleTtl() {
+            return idleTtl;
+        }
+
+        public void setIdleTtl(Duration idleTtl) {
+            this.idleTtl = idleTtl;
+        }
+    }
+
+    public static class Cache {
+
+        /**
+         * Replay identical stateless prompts (no chatId) from memory instead of calling the model.
+         */
+        private boolean enabled = false;
+
+        private int maxEntries = 1000;
+
+        /**
+         * Upper bound for cached answer text (approximate bytes).
+         */
+        private long maxBytes = 8 * 1024 * 1024;
+
+        private Duration ttl = Duration.ofHours(1);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+    }
+}
@@ -2,12 +2,17 @@ package com.example.foodlogapp.config;
 
 import com.example.foodlogapp.tools.FoodTools;
 import com.example.foodlogapp.constants.SystemConstants;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
 import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 public class CommonConfiguration {
 
@@ -16,7 +21,7 @@ public class CommonConfiguration {
     public ChatClient chatClient(OpenAiChatModel model) {
         return ChatClient
                 .builder(model) // Create ChatClient factory instance
-                .defaultSystem("你是一个食物营养日志小助手，致力于帮助用户解答各种问题。")
+                .defaultSystem(SystemConstants.CHAT_SYSTEM_PROMPT)
                 //.defaultSystem(SystemConstants.CUSTOMER_SERVICE_PROMPT)
                 .defaultAdvisors(
                         new SimpleLoggerAdvisor()
@@ -27,13 +32,57 @@ public class CommonConfiguration {
     // 2. Agent + Function Calling
     @Bean
     public ChatClient serviceChatClient(OpenAiChatModel model, FoodTools foodTools) {
-        return ChatClient
+        return agentClient(model, foodTools, null);
+    }
+
+    // 3. Tiered routing for the image analysis: fast first tier, escalation only on low confidence / tool failure.
+    //    With routing disabled there is a single tier backed by serviceChatClient.
+    @Bean
+    public ModelRouter modelRouter(OpenAiChatModel model, FoodTools foodTools, ChatClient serviceChatClient,
+                                   AnalysisProperties properties, MeterRegistry meterRegistry) {
+        AnalysisProperties.Routing routing = properties.getRouting();
+        List<ModelTier> tiers = new ArrayList<>();
+        if (routing.isEnabled()) {
+            for (AnalysisProperties.Tier tier : routing.getTiers()) {
+                OpenAiChatOptions options = OpenAiChatOptions.builder()
+                        .model(tier.getModel())
+                        .temperature(tier.getTemperature())
+                        .build();
+                tiers.add(new ModelTier(tier.getName(), agentClient(model, foodTools, options),
+                        structuredClient(model, options), tier.getMinConfidence()));
+            }
+        }
+        if (tiers.isEmpty()) {
+            tiers.add(new ModelTier("default", serviceChatClient, structuredClient(model, null), 0));
+        }
+        return new ModelRouter(tiers, meterRegistry);
+    }
+
+    private ChatClient agentClient(OpenAiChatModel model, FoodTools foodTools, OpenAiChatOptions options) {
+        ChatClient.Builder builder = ChatClient
                 .builder(model) // Create ChatClient factory instance
                 .defaultSystem(SystemConstants.CUSTOMER_SERVICE_PROMPT) // Set system prompt
                 .defaultAdvisors(
                         new SimpleLoggerAdvisor()
                 ) // Configure log Advisor
-                .defaultTools(foodTools) // Register tool class
-                .build(); // Build ChatClient instance
+                .defaultTools(foodTools); // Register tool class
+        if (options != null) {
+            builder.defaultOptions(options); // Per-tier model / temperature
+        }
+        return builder.build(); // Build ChatClient instance
+    }
+
+    // Single-shot structured analysis: no tools, the model answers with the FoodAnalysisResult JSON
+    private ChatClient structuredClient(OpenAiChatModel model, OpenAiChatOptions options) {
+        ChatClient.Builder builder = ChatClient
+                .builder(model)
+                .defaultSystem(SystemConstants.STRUCTURED_ANALYSIS_PROMPT)
+                .defaultAdvisors(
+                        new SimpleLoggerAdvisor()
+                );
+        if (options != null) {
+            builder.defaultOptions(options);
+        }
+        return builder.build();
     }
 }
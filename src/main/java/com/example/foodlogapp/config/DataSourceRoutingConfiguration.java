@@ -0,0 +1,76 @@
+package com.example.foodlogapp.config;
+
+import com.example.foodlogapp.utils.RecentWriteTracker;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+
+/**
+ * Read/write split, enabled by setting app.datasource.replica.url (see application-replica.yml).
+ * spring.datasource stays the primary; @Transactional(readOnly = true) service reads go to the replica
+ * unless the request is a write or touches a user / log written within app.datasource.sticky-window.
+ * Without the property Spring Boot's single auto-configured datasource is used unchanged.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.datasource.replica", name = "url")
+public class DataSourceRoutingConfiguration implements WebMvcConfigurer {
+
+    private final DataSourceRoutingProperties routingProperties;
+
+    public DataSourceRoutingConfiguration(DataSourceRoutingProperties routingProperties) {
+        this.routingProperties = routingProperties;
+    }
+
+    @Bean(autowireCandidate = false)
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean(autowireCandidate = false)
+    public HikariDataSource replicaDataSource(DataSourceProperties properties) {
+        DataSourceRoutingProperties.Replica replica = routingProperties.getReplica();
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("replica");
+        dataSource.setJdbcUrl(replica.getUrl());
+        dataSource.setUsername(replica.getUsername() != null ? replica.getUsername() : properties.determineUsername());
+        dataSource.setPassword(replica.getPassword() != null ? replica.getPassword() : properties.determinePassword());
+        dataSource.setDriverClassName(properties.determineDriverClassName());
+        dataSource.setMaximumPoolSize(replica.getMaximumPoolSize());
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    // Lazy proxy: the physical connection (and so the routing decision) is only taken at the first statement,
+    // after the transaction manager has published the read-only flag
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties, MeterRegistry meterRegistry) {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(
+                primaryDataSource(properties), replicaDataSource(properties), meterRegistry);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Bean
+    public RecentWriteTracker recentWriteTracker() {
+        return new RecentWriteTracker(routingProperties.getStickyWindow());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ReadRoutingInterceptor(recentWriteTracker(), routingProperties.getStickyWindow()));
+    }
+}
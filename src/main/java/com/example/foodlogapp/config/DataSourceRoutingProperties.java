@@ -0,0 +1,85 @@
+package com.example.foodlogapp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "app.datasource")
+public class DataSourceRoutingProperties {
+
+    /**
+     * Read replica; routing is only enabled when replica.url is set.
+     */
+    private Replica replica = new Replica();
+
+    /**
+     * After a user's own write, that user's reads stay on the primary for this long (covers replica lag).
+     * Also the lifetime of the X-Primary-Until header that carries this to the other nodes.
+     */
+    private Duration stickyWindow = Duration.ofSeconds(5);
+
+    public Replica getReplica() {
+        return replica;
+    }
+
+    public void setReplica(Replica replica) {
+        this.replica = replica;
+    }
+
+    public Duration getStickyWindow() {
+        return stickyWindow;
+    }
+
+    public void setStickyWindow(Duration stickyWindow) {
+        this.stickyWindow = stickyWindow;
+    }
+
+    public static class Replica {
+
+        /**
+         * JDBC url of the replica. Example: jdbc:mysql://localhost:3310/food_log_app
+         */
+        private String url;
+
+        /**
+         * Defaults to spring.datasource.username / password when empty.
+         */
+        private String username;
+
+        private String password;
+
+        private int maximumPoolSize = 10;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public int getMaximumPoolSize() {
+            return maximumPoolSize;
+        }
+
+        public void setMaximumPoolSize(int maximumPoolSize) {
+            this.maximumPoolSize = maximumPoolSize;
+        }
+    }
+}
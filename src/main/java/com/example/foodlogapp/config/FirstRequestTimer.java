@@ -0,0 +1,46 @@
+package com.example.foodlogapp.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the time from JVM start to the first completed request, the number that matters when the autoscaler
+ * adds an instance (lazy beans are created by that first request). Logged once and exported as
+ * app.startup.first.request (ms); scripts/startup-benchmark.sh compares it across launch modes.
+ */
+@Slf4j
+@Component
+public class FirstRequestTimer extends OncePerRequestFilter {
+
+    private final AtomicBoolean recorded = new AtomicBoolean();
+    private final AtomicLong firstRequestMillis = new AtomicLong(-1);
+
+    public FirstRequestTimer(MeterRegistry meterRegistry) {
+        meterRegistry.gauge("app.startup.first.request", firstRequestMillis);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (!recorded.get() && recorded.compareAndSet(false, true)) {
+                long millis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+                firstRequestMillis.set(millis);
+                log.info("Time to first request: {} ms ({} {})", millis, request.getMethod(), request.getRequestURI());
+            }
+        }
+    }
+}
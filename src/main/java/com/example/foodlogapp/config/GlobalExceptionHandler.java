@@ -1,5 +1,8 @@
 package com.example.foodlogapp.config;
 
+import com.example.foodlogapp.utils.S3CircuitBreaker;
+import com.example.foodlogapp.utils.UploadSpooler;
+import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -8,8 +11,11 @@ import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartException;
 
 @RestControllerAdvice
+@RequiredArgsConstructor
 public class GlobalExceptionHandler {
 
+    private final StorageProperties storageProperties;
+
     @ExceptionHandler(MaxUploadSizeExceededException.class)
     public ResponseEntity<String> handleMaxUploadSize(MaxUploadSizeExceededException ex) {
         String body = "{\"status\":\"FAILED\",\"message\":\"File too large: " + safe(ex.getMessage()) + "\"}";
@@ -22,6 +28,26 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
     }
 
+    @ExceptionHandler(UploadSpooler.BudgetExceededException.class)
+    public ResponseEntity<String> handleSpoolBudget(UploadSpooler.BudgetExceededException ex) {
+        String body = "{\"status\":\"FAILED\",\"message\":\"" + safe(ex.getMessage()) + "\"}";
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").body(body);
+    }
+
+    @ExceptionHandler(S3CircuitBreaker.S3UnavailableException.class)
+    public ResponseEntity<String> handleS3Unavailable(S3CircuitBreaker.S3UnavailableException ex) {
+        String body = "{\"status\":\"FAILED\",\"message\":\"" + safe(ex.getMessage()) + "\"}";
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", Long.toString(storageProperties.getS3OpenDuration().toSeconds()))
+                .body(body);
+    }
+
+    @ExceptionHandler(InvalidParameterException.class)
+    public ResponseEntity<String> handleInvalidParameter(InvalidParameterException ex) {
+        String body = "{\"status\":\"FAILED\",\"message\":\"" + safe(ex.getMessage()) + "\"}";
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<String> handleGeneric(Exception ex) {
         String body = "{\"status\":\"FAILED\",\"message\":\"" + safe(ex.getMessage()) + "\"}";
@@ -0,0 +1,12 @@
+package com.example.foodlogapp.config;
+
+/**
+ * A request parameter or request body the client has to fix; GlobalExceptionHandler answers it with 400.
+ * Other IllegalArgumentExceptions are programming errors and stay 500.
+ */
+public class InvalidParameterException extends IllegalArgumentException {
+
+    public InvalidParameterException(String message) {
+        super(message);
+    }
+}
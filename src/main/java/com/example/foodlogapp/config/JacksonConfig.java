@@ -2,9 +2,11 @@ package com.example.foodlogapp.config;
 
 import com.fasterxml.jackson.core.StreamReadConstraints;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 
 @Configuration
@@ -39,4 +41,16 @@ public class JacksonConfig {
     public ObjectMapper objectMapper(Jackson2ObjectMapperBuilder builder) {
         return builder.build();
     }
+
+    // application/cbor for clients that ask for it (Accept): same modules, features and limits as the JSON mapper
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(ObjectMapper objectMapper) {
+        return new MappingJackson2CborHttpMessageConverter(cborMapper(objectMapper));
+    }
+
+    public static ObjectMapper cborMapper(ObjectMapper jsonMapper) {
+        CBORFactory factory = new CBORFactory();
+        factory.setStreamReadConstraints(jsonMapper.getFactory().streamReadConstraints());
+        return jsonMapper.copyWith(factory);
+    }
 }
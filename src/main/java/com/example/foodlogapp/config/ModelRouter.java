@@ -0,0 +1,49 @@
+package com.example.foodlogapp.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.List;
+
+/**
+ * Ordered analysis tiers: every request starts on the first (fast, cheap) tier and only moves on
+ * when the result is not good enough (see FoodAnalysisServiceImpl).
+ *
+ * Metrics: food.analysis.tier.finished{tier}, food.analysis.escalations{from}.
+ */
+public class ModelRouter {
+
+    private final List<ModelTier> tiers;
+    private final MeterRegistry meterRegistry;
+
+    public ModelRouter(List<ModelTier> tiers, MeterRegistry meterRegistry) {
+        if (tiers.isEmpty()) {
+            throw new IllegalArgumentException("At least one model tier is required");
+        }
+        this.tiers = List.copyOf(tiers);
+        this.meterRegistry = meterRegistry;
+    }
+
+    public List<ModelTier> getTiers() {
+        return tiers;
+    }
+
+    public boolean isLast(int index) {
+        return index == tiers.size() - 1;
+    }
+
+    /**
+     * Whether the result of the given tier is accepted (last tier always is).
+     */
+    public boolean accepts(int index, boolean toolFailed, Integer confidence) {
+        if (isLast(index)) return true;
+        return !toolFailed && confidence != null && confidence >= tiers.get(index).getMinConfidence();
+    }
+
+    public void recordFinished(ModelTier tier) {
+        meterRegistry.counter("food.analysis.tier.finished", "tier", tier.getName()).increment();
+    }
+
+    public void recordEscalation(ModelTier from) {
+        meterRegistry.counter("food.analysis.escalations", "from", from.getName()).increment();
+    }
+}
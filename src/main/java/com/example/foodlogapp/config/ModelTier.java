@@ -0,0 +1,18 @@
+package com.example.foodlogapp.config;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.ai.chat.client.ChatClient;
+
+/**
+ * One step of the analysis model routing: the same model as an agent with FoodTools (tools mode) and as a
+ * plain client for single-shot structured output, plus the confidence it has to reach for its result to be accepted.
+ */
+@Getter
+@RequiredArgsConstructor
+public class ModelTier {
+    private final String name;
+    private final ChatClient chatClient;
+    private final ChatClient structuredChatClient;
+    private final int minConfidence;
+}
@@ -13,6 +13,7 @@ public class MvcConfiguration implements WebMvcConfigurer {
                 .allowedOrigins("*") // Allow all origins 允许任意来源（所有域名）的请求。
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                 .allowedHeaders("*") // Allow all headers
-                .exposedHeaders("Content-Disposition"); // 允许前端访问响应中的 Content-Disposition 头
+                // 允许前端访问响应中的 Content-Disposition / ETag / X-Primary-Until 头
+                .exposedHeaders("Content-Disposition", "ETag", ReadRoutingInterceptor.STICKY_HEADER);
     }
 }
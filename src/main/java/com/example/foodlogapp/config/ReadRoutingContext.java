@@ -0,0 +1,29 @@
+package com.example.foodlogapp.config;
+
+/**
+ * Per-thread override for datasource routing: while set, read-only transactions also go to the primary.
+ * Set by the routing interceptor for writes and for users inside their read-your-writes window.
+ */
+public final class ReadRoutingContext {
+
+    private static final ThreadLocal<Boolean> PRIMARY_FORCED = new ThreadLocal<>();
+
+    private ReadRoutingContext() {
+    }
+
+    public static boolean isPrimaryForced() {
+        return Boolean.TRUE.equals(PRIMARY_FORCED.get());
+    }
+
+    public static void forcePrimary(boolean forced) {
+        if (forced) {
+            PRIMARY_FORCED.set(Boolean.TRUE);
+        } else {
+            PRIMARY_FORCED.remove();
+        }
+    }
+
+    public static void clear() {
+        PRIMARY_FORCED.remove();
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.foodlogapp.config;
+
+import com.example.foodlogapp.utils.RecentWriteTracker;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Decides per request whether read-only transactions may use the replica. Writes (anything but GET/HEAD)
+ * always stay on the primary, including the reads they do after their own inserts. A GET that names a user
+ * or log written within the sticky window ({userId}, ?userId= or {id}) is also kept on the primary.
+ *
+ * RecentWriteTracker only knows the writes of this node. Behind a load balancer the next read may land on
+ * another node, so a write also answers with the {@value #STICKY_HEADER} header (end of the window as epoch
+ * millis) and a GET that sends an unexpired one back reads from the primary on any node. A header rather than a
+ * cookie: the portal calls the API cross-origin without credentials, so a cookie would never come back (the
+ * header is exposed through CORS, see MvcConfiguration).
+ */
+public class ReadRoutingInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String STICKY_HEADER = "X-Primary-Until";
+
+    private final RecentWriteTracker recentWriteTracker;
+    private final Duration stickyWindow;
+
+    public ReadRoutingInterceptor(RecentWriteTracker recentWriteTracker, Duration stickyWindow) {
+        this.recentWriteTracker = recentWriteTracker;
+        this.stickyWindow = stickyWindow;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String method = request.getMethod();
+        boolean read = "GET".equals(method) || "HEAD".equals(method);
+        if (!read) {
+            stickToPrimary(response);
+        }
+        ReadRoutingContext.forcePrimary(!read || hasStickyHeader(request) || touchesRecentWrite(request));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ReadRoutingContext.clear();
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // async handling continues on another thread; this servlet thread goes back to the pool
+        ReadRoutingContext.clear();
+    }
+
+    // Set before the handler runs: the response may already be committed afterwards (streaming, SSE)
+    private void stickToPrimary(HttpServletResponse response) {
+        response.setHeader(STICKY_HEADER, Long.toString(System.currentTimeMillis() + stickyWindow.toMillis()));
+    }
+
+    private static boolean hasStickyHeader(HttpServletRequest request) {
+        String until = request.getHeader(STICKY_HEADER);
+        if (until == null) return false;
+        try {
+            return Long.parseLong(until.trim()) >= System.currentTimeMillis();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean touchesRecentWrite(HttpServletRequest request) {
+        Map<String, String> vars = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (vars != null) {
+            if (recentWriteTracker.recentlyWroteUser(parse(vars.get("userId")))) return true;
+            // {id} is a log id on /logs and a user id on /users: check both, a false positive only costs a primary read
+            Integer id = parse(vars.get("id"));
+            if (recentWriteTracker.recentlyWroteLog(id) || recentWriteTracker.recentlyWroteUser(id)) return true;
+        }
+        return recentWriteTracker.recentlyWroteUser(parse(request.getParameter("userId")));
+    }
+
+    private static Integer parse(String value) {
+        if (value == null) return null;
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.foodlogapp.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Sends connections of {@code @Transactional(readOnly = true)} transactions to the replica, everything else
+ * (writes, non-transactional statements, forced threads) to the primary. Must sit behind a
+ * LazyConnectionDataSourceProxy: the read-only flag is only known once the transaction has begun.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+    static final String REPLICA = "replica";
+
+    private final Counter primaryRoutes;
+    private final Counter replicaRoutes;
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, MeterRegistry meterRegistry) {
+        setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        this.primaryRoutes = meterRegistry.counter("datasource.route", "target", PRIMARY);
+        this.replicaRoutes = meterRegistry.counter("datasource.route", "target", REPLICA);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !ReadRoutingContext.isPrimaryForced()) {
+            replicaRoutes.increment();
+            return REPLICA;
+        }
+        primaryRoutes.increment();
+        return PRIMARY;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.foodlogapp.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "app.reaper")
+public class ReaperProperties {
+
+    /**
+     * Run the storage reaper on schedule (POST /admin/storage-reaper/run works either way).
+     */
+    private boolean enabled = false;
+
+    /**
+     * Only report what would be deleted.
+     */
+    private boolean dryRun = true;
+
+    /**
+     * Key prefix of the upload objects in the bucket.
+     */
+    private String prefix = "uploads/";
+
+    /**
+     * Objects younger than this are never deleted: their food_log row may not be committed yet.
+     */
+    private Duration objectGrace = Duration.ofHours(6);
+
+    /**
+     * Logs created by an image upload that still have no ingredients and confidence 0 after this long are
+     * treated as abandoned (failed analysis, direct upload never completed) unless an analysis job is pending.
+     */
+    private Duration emptyLogGrace = Duration.ofDays(2);
+
+    /**
+     * Upper bound on S3 objects plus food_log rows deleted per second.
+     */
+    private int maxDeletesPerSecond = 100;
+
+    /**
+     * Upper bound on deletions per run; the rest is picked up by the next run.
+     */
+    private int maxDeletesPerRun = 10000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public Duration getObjectGrace() {
+        return objectGrace;
+    }
+
+    public void setObjectGrace(Duration objectGrace) {
+        this.objectGrace = objectGrace;
+    }
+
+    public Duration getEmptyLogGrace() {
+        return emptyLogGrace;
+    }
+
+    public void setEmptyLogGrace(Duration emptyLogGrace) {
+        this.emptyLogGrace = emptyLogGrace;
+    }
+
+    public int getMaxDeletesPerSecond() {
+        return maxDeletesPerSecond;
+    }
+
+    public void setMaxDeletesPerSecond(int maxDeletesPerSecond) {
+        this.maxDeletesPerSecond = maxDeletesPerSecond;
+    }
+
+    public int getMaxDeletesPerRun() {
+        return maxDeletesPerRun;
+    }
+
+    public void setMaxDeletesPerRun(int maxDeletesPerRun) {
+        this.maxDeletesPerRun = maxDeletesPerRun;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.foodlogapp.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ReflectionUtils;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps lazy initialization (fast-start profile) from disabling background jobs: @Scheduled methods are only
+ * registered for beans that exist, so beans declaring them are always created at startup.
+ */
+@Configuration
+public class StartupConfiguration {
+
+    @Bean
+    static LazyInitializationExcludeFilter scheduledBeansExcludeFilter() {
+        return (beanName, beanDefinition, beanType) -> hasScheduledMethods(beanType);
+    }
+
+    private static boolean hasScheduledMethods(Class<?> type) {
+        AtomicBoolean found = new AtomicBoolean();
+        ReflectionUtils.doWithMethods(type,
+                method -> found.set(true),
+                method -> !found.get() && AnnotationUtils.findAnnotation(method, Scheduled.class) != null);
+        return found.get();
+    }
+}
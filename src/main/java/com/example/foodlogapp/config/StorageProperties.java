@@ -2,6 +2,8 @@ package com.example.foodlogapp.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.time.Duration;
+
 @ConfigurationProperties(prefix = "app.storage")
 public class StorageProperties {
 
@@ -10,6 +12,52 @@ public class StorageProperties {
      */
     private String imageDir = "images"; // default fallback
 
+    /**
+     * Lifetime of presigned upload (PUT) and model download (GET) URLs.
+     */
+    private Duration presignExpiry = Duration.ofMinutes(15);
+
+    /**
+     * Largest image accepted from a direct (presigned) upload. S3 cannot enforce a size on a presigned PUT,
+     * so the object is checked and deleted on completion if it is larger.
+     */
+    private long directUploadMaxBytes = 20L * 1024 * 1024;
+
+    /**
+     * Off-heap memory all uploads being processed at once may hold (each upload is spooled once at its full size).
+     */
+    private long spoolBudgetBytes = 256L * 1024 * 1024;
+
+    /**
+     * How long an upload waits for spool budget before it is rejected with 503.
+     */
+    private Duration spoolWait = Duration.ofSeconds(5);
+
+    /**
+     * Consecutive failed (5xx, network error, timeout) or slow S3 calls that open the circuit breaker.
+     */
+    private int s3FailureThreshold = 5;
+
+    /**
+     * An S3 call that succeeds but takes longer than this counts as a failure for the breaker.
+     */
+    private Duration s3SlowCallThreshold = Duration.ofSeconds(5);
+
+    /**
+     * How long the breaker stays open before a single probe call is let through.
+     */
+    private Duration s3OpenDuration = Duration.ofSeconds(30);
+
+    /**
+     * Disk space uploads may take in the local spool (image-dir/s3-spool) while S3 is unavailable.
+     */
+    private long localSpoolMaxBytes = 2L * 1024 * 1024 * 1024;
+
+    /**
+     * A spooled image no log refers to is discarded after this long (the upload failed before creating its log).
+     */
+    private Duration localSpoolOrphanGrace = Duration.ofHours(1);
+
     public String getImageDir() {
         return imageDir;
     }
@@ -17,5 +65,76 @@ public class StorageProperties {
     public void setImageDir(String imageDir) {
         this.imageDir = imageDir;
     }
-}
 
+    public Duration getPresignExpiry() {
+        return presignExpiry;
+    }
+
+    public void setPresignExpiry(Duration presignExpiry) {
+        this.presignExpiry = presignExpiry;
+    }
+
+    public long getDirectUploadMaxBytes() {
+        return directUploadMaxBytes;
+    }
+
+    public void setDirectUploadMaxBytes(long directUploadMaxBytes) {
+        this.directUploadMaxBytes = directUploadMaxBytes;
+    }
+
+    public long getSpoolBudgetBytes() {
+        return spoolBudgetBytes;
+    }
+
+    public void setSpoolBudgetBytes(long spoolBudgetBytes) {
+        this.spoolBudgetBytes = spoolBudgetBytes;
+    }
+
+    public Duration getSpoolWait() {
+        return spoolWait;
+    }
+
+    public void setSpoolWait(Duration spoolWait) {
+        this.spoolWait = spoolWait;
+    }
+
+    public int getS3FailureThreshold() {
+        return s3FailureThreshold;
+    }
+
+    public void setS3FailureThreshold(int s3FailureThreshold) {
+        this.s3FailureThreshold = s3FailureThreshold;
+    }
+
+    public Duration getS3SlowCallThreshold() {
+        return s3SlowCallThreshold;
+    }
+
+    public void setS3SlowCallThreshold(Duration s3SlowCallThreshold) {
+        this.s3SlowCallThreshold = s3SlowCallThreshold;
+    }
+
+    public Duration getS3OpenDuration() {
+        return s3OpenDuration;
+    }
+
+    public void setS3OpenDuration(Duration s3OpenDuration) {
+        this.s3OpenDuration = s3OpenDuration;
+    }
+
+    public long getLocalSpoolMaxBytes() {
+        return localSpoolMaxBytes;
+    }
+
+    public void setLocalSpoolMaxBytes(long localSpoolMaxBytes) {
+        this.localSpoolMaxBytes = localSpoolMaxBytes;
+    }
+
+    public Duration getLocalSpoolOrphanGrace() {
+        return localSpoolOrphanGrace;
+    }
+
+    public void setLocalSpoolOrphanGrace(Duration localSpoolOrphanGrace) {
+        this.localSpoolOrphanGrace = localSpoolOrphanGrace;
+    }
+}
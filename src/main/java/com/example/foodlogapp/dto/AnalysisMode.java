@@ -0,0 +1,21 @@
+package com.example.foodlogapp.dto;
+
+import com.example.foodlogapp.config.InvalidParameterException;
+
+/**
+ * How the image analysis talks to the model.
+ * TOOLS: the agent persists via FoodTools (logFoodIngredients, then setAnalysisConfidence) - at least three model turns.
+ * STRUCTURED: one model turn returning {@link FoodAnalysisResult}, persisted by the server in one transaction.
+ */
+public enum AnalysisMode {
+    TOOLS,
+    STRUCTURED;
+
+    public static AnalysisMode parse(String value, AnalysisMode fallback) {
+        if (value == null || value.isBlank()) return fallback;
+        for (AnalysisMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value.trim())) return mode;
+        }
+        throw new InvalidParameterException("Unknown analysis mode: " + value + " (expected tools or structured)");
+    }
+}
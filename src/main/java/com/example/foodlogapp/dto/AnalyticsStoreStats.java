@@ -0,0 +1,14 @@
+package com.example.foodlogapp.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AnalyticsStoreStats {
+    private int users;
+    private long bytes;
+    private long maxBytes;
+    // only when asked for a user: heap held for that user (0 = not loaded)
+    private Long userBytes;
+}
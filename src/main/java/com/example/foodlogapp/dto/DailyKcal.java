@@ -0,0 +1,15 @@
+package com.example.foodlogapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyKcal {
+    private LocalDate date;
+    private long kcal;
+}
@@ -0,0 +1,32 @@
+package com.example.foodlogapp.dto;
+
+import com.example.foodlogapp.entity.FoodIngredient;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Structured model output for the single-shot analysis mode (ChatClient ... entity(FoodAnalysisResult.class)).
+ */
+@Data
+public class FoodAnalysisResult {
+
+    // Every visually detected ingredient with estimated kcal and weight (grams)
+    private List<IngredientLogEntry> ingredients;
+
+    // Overall confidence of the analysis, 0-100
+    private Integer confidence;
+
+    public List<FoodIngredient> toEntities(Integer logId) {
+        return ingredients.stream()
+                .map(dto -> {
+                    FoodIngredient entity = new FoodIngredient();
+                    entity.setLogId(logId);
+                    entity.setIngredientName(dto.getIngredient());
+                    entity.setKcal(dto.getKcal());
+                    entity.setWeight(dto.getWeight());
+                    return entity;
+                })
+                .toList();
+    }
+}
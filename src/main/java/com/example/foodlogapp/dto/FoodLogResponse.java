@@ -3,8 +3,10 @@ package com.example.foodlogapp.dto;
 import com.example.foodlogapp.entity.FoodIngredient;
 import com.example.foodlogapp.entity.FoodLog;
 import com.example.foodlogapp.entity.User;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 
+import java.math.BigDecimal;
 import java.util.List;
 
 @Data
@@ -13,19 +15,36 @@ public class FoodLogResponse {
     private Integer userId;
     private String imagePath;
     private Integer confidence;
+    private Integer totalKcal;
+    private BigDecimal totalWeight;
+    private Integer ingredientCount;
     private User user;
     private List<FoodIngredient> ingredients;
 
     public static FoodLogResponse from(FoodLog log, List<FoodIngredient> ingredients) {
+        return from(log, ingredients, LogFields.FULL);
+    }
+
+    public static FoodLogResponse from(FoodLog log, List<FoodIngredient> ingredients, LogFields fields) {
         if (log == null) return null;
-        FoodLogResponse resp = new FoodLogResponse();
+        FoodLogResponse resp = fields.isFull() ? new FoodLogResponse() : new Selected();
         resp.setId(log.getId());
-        resp.setUserId(log.getUserId());
-        resp.setImagePath(log.getImagePath());
-        resp.setConfidence(log.getConfidence());
-        resp.setUser(log.getUser());
-        resp.setIngredients(ingredients);
+        if (fields.includes(LogFields.USER_ID)) resp.setUserId(log.getUserId());
+        if (fields.includes(LogFields.IMAGE_PATH)) resp.setImagePath(log.getImagePath());
+        if (fields.includes(LogFields.CONFIDENCE)) resp.setConfidence(log.getConfidence());
+        if (fields.includes(LogFields.TOTAL_KCAL)) resp.setTotalKcal(log.getTotalKcal());
+        if (fields.includes(LogFields.TOTAL_WEIGHT)) resp.setTotalWeight(log.getTotalWeight());
+        if (fields.includes(LogFields.INGREDIENT_COUNT)) resp.setIngredientCount(log.getIngredientCount());
+        if (fields.includes(LogFields.USER)) resp.setUser(log.getUser());
+        if (fields.includes(LogFields.INGREDIENTS)) resp.setIngredients(ingredients);
         return resp;
     }
-}
 
+    /**
+     * A view=summary / fields=... response: fields that were not selected are left out of the JSON instead of
+     * being written as null. The full view keeps the original shape, nulls included.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Selected extends FoodLogResponse {
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.foodlogapp.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of a bulk import. Rows that fail validation or insertion are listed in {@code errors}
+ * (up to the configured limit) and skipped; the rest of the file is still imported.
+ */
+@Data
+public class ImportReport {
+    private long rowsRead;
+    private long rowsFailed;
+    private long logsImported;
+    private long ingredientsImported;
+    private long elapsedMs;
+    private long rowsPerSecond;
+    private boolean errorsTruncated;
+    private List<ImportError> errors = new ArrayList<>();
+
+    public void addError(long line, String logId, String message, int maxReported) {
+        if (errors.size() < maxReported) {
+            errors.add(new ImportError(line, logId, message));
+        } else {
+            errorsTruncated = true;
+        }
+    }
+
+    public void finish(long elapsedNanos) {
+        this.elapsedMs = elapsedNanos / 1_000_000;
+        this.rowsPerSecond = elapsedNanos > 0 ? rowsRead * 1_000_000_000L / elapsedNanos : rowsRead;
+    }
+
+    @Data
+    public static class ImportError {
+        private final long line;
+        private final String logId;
+        private final String message;
+    }
+}
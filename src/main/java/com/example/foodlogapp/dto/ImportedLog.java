@@ -0,0 +1,21 @@
+package com.example.foodlogapp.dto;
+
+import com.example.foodlogapp.entity.FoodIngredient;
+import com.example.foodlogapp.entity.FoodLog;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One log read from an import file together with its ingredients (consecutive rows sharing a log_id).
+ */
+@Data
+public class ImportedLog {
+    // log_id as written in the file; only used to group rows and in error reports
+    private String sourceId;
+    // line of the first row of this log in the file
+    private long line;
+    private FoodLog log = new FoodLog();
+    private List<FoodIngredient> ingredients = new ArrayList<>();
+}
@@ -0,0 +1,19 @@
+package com.example.foodlogapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngredientTotal {
+    private String ingredient;
+    private long kcal;
+    // grams
+    private BigDecimal weight;
+    // number of times logged
+    private int count;
+}
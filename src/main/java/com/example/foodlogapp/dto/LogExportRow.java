@@ -0,0 +1,21 @@
+package com.example.foodlogapp.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * One row of the history export: a log joined with one of its ingredients.
+ * Logs without ingredients appear once with the ingredient columns null.
+ */
+@Data
+public class LogExportRow {
+    private Integer logId;
+    private Integer userId;
+    private String imagePath;
+    private Integer confidence;
+    private Integer ingredientId;
+    private String ingredientName;
+    private Integer kcal;
+    private BigDecimal weight;
+}
@@ -0,0 +1,109 @@
+package com.example.foodlogapp.dto;
+
+import com.example.foodlogapp.config.InvalidParameterException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Field selection for log responses, parsed from the {@code view=summary|full} / {@code fields=a,b,c} query parameters.
+ * The same selection drives which columns FoodLogMapper selects, whether the user / ingredients are loaded at all,
+ * and which properties end up in the JSON.
+ */
+public final class LogFields {
+
+    public static final String ID = "id";
+    public static final String USER_ID = "userId";
+    public static final String IMAGE_PATH = "imagePath";
+    public static final String CONFIDENCE = "confidence";
+    public static final String TOTAL_KCAL = "totalKcal";
+    public static final String TOTAL_WEIGHT = "totalWeight";
+    public static final String INGREDIENT_COUNT = "ingredientCount";
+    public static final String USER = "user";
+    public static final String INGREDIENTS = "ingredients";
+
+    // response field -> food_log column it needs (ingredients come from food_ingredient)
+    private static final Map<String, String> COLUMNS = new LinkedHashMap<>();
+
+    static {
+        COLUMNS.put(ID, "id");
+        COLUMNS.put(USER_ID, "user_id");
+        COLUMNS.put(IMAGE_PATH, "image_path");
+        COLUMNS.put(CONFIDENCE, "confidence");
+        COLUMNS.put(TOTAL_KCAL, "total_kcal");
+        COLUMNS.put(TOTAL_WEIGHT, "total_weight");
+        COLUMNS.put(INGREDIENT_COUNT, "ingredient_count");
+        COLUMNS.put(USER, "user_id");
+        COLUMNS.put(INGREDIENTS, null);
+    }
+
+    public static final LogFields FULL = new LogFields(COLUMNS.keySet());
+    public static final LogFields SUMMARY = new LogFields(
+            List.of(ID, IMAGE_PATH, CONFIDENCE, TOTAL_KCAL, TOTAL_WEIGHT, INGREDIENT_COUNT));
+
+    private final Set<String> names;
+
+    private LogFields(Iterable<String> names) {
+        Set<String> set = new LinkedHashSet<>();
+        set.add(ID); // id is always returned, ingredients are looked up by it
+        for (String name : names) {
+            set.add(name);
+        }
+        this.names = Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * @param view   "summary" or "full" (default full, keeps the old response shape)
+     * @param fields comma separated field names; takes precedence over view
+     */
+    public static LogFields parse(String view, String fields) {
+        if (fields != null && !fields.isBlank()) {
+            List<String> requested = new ArrayList<>();
+            for (String raw : fields.split(",")) {
+                String name = raw.trim();
+                if (name.isEmpty()) continue;
+                if (!COLUMNS.containsKey(name)) {
+                    throw new InvalidParameterException("Unknown field: " + name);
+                }
+                requested.add(name);
+            }
+            return new LogFields(requested);
+        }
+        if (view == null || view.isBlank() || "full".equalsIgnoreCase(view)) {
+            return FULL;
+        }
+        if ("summary".equalsIgnoreCase(view)) {
+            return SUMMARY;
+        }
+        throw new InvalidParameterException("Unknown view: " + view + " (expected summary or full)");
+    }
+
+    public boolean includes(String field) {
+        return names.contains(field);
+    }
+
+    public boolean isFull() {
+        return names.equals(FULL.names);
+    }
+
+    /**
+     * Distinct food_log columns needed to fill the selected fields.
+     */
+    public List<String> columns() {
+        Set<String> cols = new LinkedHashSet<>();
+        for (String name : names) {
+            String col = COLUMNS.get(name);
+            if (col != null) cols.add(col);
+        }
+        return List.copyOf(cols);
+    }
+
+    public Set<String> names() {
+        return names;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.foodlogapp.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Averages over the meals (logs with at least one ingredient) of the period.
+ */
+@Data
+public class MealStats {
+    private int days;
+    private int meals;
+    private BigDecimal averageKcal;
+    // grams
+    private BigDecimal averageWeight;
+}
@@ -0,0 +1,18 @@
+package com.example.foodlogapp.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * One food_ingredient row with its log's creation time, as loaded into the analytics store.
+ */
+@Data
+public class NutritionRow {
+    private Integer logId;
+    // epoch seconds
+    private Long createdAt;
+    private String ingredientName;
+    private Integer kcal;
+    private BigDecimal weight;
+}
@@ -0,0 +1,60 @@
+package com.example.foodlogapp.dto;
+
+import com.example.foodlogapp.entity.ReanalysisRun;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReanalysisProgress {
+    private Long id;
+    private String status;
+    private Integer userId;
+    private Integer total;
+    private Integer processed;
+    private Integer succeeded;
+    private Integer failed;
+    // processed / total, 0-100
+    private Double percent;
+    // checkpoint: logs up to this id are done
+    private Integer lastLogId;
+    // logs/s of the last finished page and averaged since the run was created
+    private Double lastBatchLogsPerSecond;
+    private Double averageLogsPerSecond;
+    private Integer parallelism;
+    private Double ratePerSecond;
+    private Integer batchSize;
+    private String lastError;
+    private LocalDateTime createdAt;
+    private LocalDateTime finishedAt;
+
+    public static ReanalysisProgress from(ReanalysisRun run) {
+        if (run == null) return null;
+        ReanalysisProgress p = new ReanalysisProgress();
+        p.setId(run.getId());
+        p.setStatus(run.getStatus());
+        p.setUserId(run.getUserId());
+        p.setTotal(run.getTotal());
+        p.setProcessed(run.getProcessed());
+        p.setSucceeded(run.getSucceeded());
+        p.setFailed(run.getFailed());
+        p.setPercent(run.getTotal() > 0 ? Math.min(100.0, Math.round(run.getProcessed() * 1000.0 / run.getTotal()) / 10.0) : 100.0);
+        p.setLastLogId(run.getLastLogId());
+        p.setLastBatchLogsPerSecond(run.getLastBatchRate());
+        LocalDateTime end = run.getFinishedAt() != null ? run.getFinishedAt() : LocalDateTime.now();
+        long millis = run.getCreatedAt() != null ? Duration.between(run.getCreatedAt(), end).toMillis() : 0;
+        if (millis > 0) {
+            p.setAverageLogsPerSecond(Math.round(run.getProcessed() * 100_000.0 / millis) / 100.0);
+        }
+        p.setParallelism(run.getParallelism());
+        p.setRatePerSecond(run.getRatePerSecond());
+        p.setBatchSize(run.getBatchSize());
+        p.setLastError(run.getLastError());
+        p.setCreatedAt(run.getCreatedAt());
+        p.setFinishedAt(run.getFinishedAt());
+        return p;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.foodlogapp.dto;
+
+import lombok.Data;
+
+@Data
+public class ReaperReport {
+    private boolean dryRun;
+    // abandoned logs deleted (or that would be, in a dry run)
+    private int emptyLogsDeleted;
+    private long objectsScanned;
+    private int orphansFound;
+    // orphans deleted (or that would be, in a dry run) and their size
+    private int objectsDeleted;
+    private long bytesReclaimed;
+    // max-deletes-per-run was reached; the next run continues
+    private boolean truncated;
+    private long elapsedMs;
+}
@@ -0,0 +1,14 @@
+package com.example.foodlogapp.dto;
+
+import lombok.Data;
+
+@Data
+public class StorageSpoolStatus {
+    // CLOSED, HALF_OPEN or OPEN
+    private String s3Breaker;
+    // images waiting on this node's local spool for S3
+    private long spooledFiles;
+    private long spooledBytes;
+    // seconds the oldest spooled image has waited
+    private long replayLagSeconds;
+}
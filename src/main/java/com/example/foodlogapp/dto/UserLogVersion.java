@@ -0,0 +1,12 @@
+package com.example.foodlogapp.dto;
+
+import lombok.Data;
+
+/**
+ * One row of user_log_version.
+ */
+@Data
+public class UserLogVersion {
+    private Integer userId;
+    private Long version;
+}
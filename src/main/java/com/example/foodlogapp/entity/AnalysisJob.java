@@ -0,0 +1,30 @@
+package com.example.foodlogapp.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class AnalysisJob {
+    public static final String PENDING = "PENDING";
+    public static final String RUNNING = "RUNNING";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+
+    // analysis_job.notes VARCHAR(1000)
+    public static final int MAX_NOTES_LENGTH = 1000;
+
+    private Long id;
+    private Integer logId;
+    private String contentType;
+    private String notes;
+    private String mode;
+    private String status;
+    private Integer attempts;
+    private String leaseOwner;
+    private LocalDateTime leaseUntil;
+    private String lastError;
+    private LocalDateTime availableAt;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -2,11 +2,21 @@ package com.example.foodlogapp.entity;
 
 import lombok.Data;
 
+import java.math.BigDecimal;
+
 @Data
 public class FoodLog {
     private Integer id;
     private Integer userId;
     private String imagePath;
     private Integer confidence;
+    // Denormalized from food_ingredient, maintained in the same transaction as ingredient writes
+    private Integer totalKcal;
+    private BigDecimal totalWeight;
+    private Integer ingredientCount;
+    // Tool-write fence of a running analysis (see AnalysisFence); null when none is running
+    private String analysisFence;
+    // Created by an image upload; only such logs are reaped when they stay empty
+    private Boolean fromUpload;
     private User user;
 }
@@ -0,0 +1,33 @@
+package com.example.foodlogapp.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class ReanalysisRun {
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String CANCELLED = "CANCELLED";
+
+    private Long id;
+    private String status;
+    private Integer userId;
+    // checkpoint: every log with id <= lastLogId has been processed
+    private Integer lastLogId;
+    private Integer untilLogId;
+    private Integer total;
+    private Integer processed;
+    private Integer succeeded;
+    private Integer failed;
+    private Integer parallelism;
+    private Double ratePerSecond;
+    private Integer batchSize;
+    private Double lastBatchRate;
+    private String lastError;
+    private String leaseOwner;
+    private LocalDateTime leaseUntil;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime finishedAt;
+}
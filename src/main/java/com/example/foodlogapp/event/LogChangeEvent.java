@@ -0,0 +1,32 @@
+package com.example.foodlogapp.event;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Published by the services on every write that changes what a user's log endpoints return.
+ * Listeners use @TransactionalEventListener so they only see committed changes.
+ */
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class LogChangeEvent {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        CONFIDENCE_SET,
+        INGREDIENTS_ADDED,
+        INGREDIENTS_REMOVED,
+        DELETED,
+        // the user record itself changed (embedded in the full log view); logId is null
+        USER_UPDATED,
+        // a bulk import chunk added many logs at once; logId is null, listeners reload the user as a whole
+        IMPORTED
+    }
+
+    private final Type type;
+    private final Integer userId;
+    private final Integer logId;
+}
@@ -0,0 +1,225 @@
+package com.example.foodlogapp.job;
+
+import com.example.foodlogapp.config.AnalysisProperties;
+import com.example.foodlogapp.config.ReadRoutingContext;
+import com.example.foodlogapp.config.StorageProperties;
+import com.example.foodlogapp.dto.AnalysisMode;
+import com.example.foodlogapp.entity.AnalysisJob;
+import com.example.foodlogapp.entity.FoodLog;
+import com.example.foodlogapp.service.AnalysisJobService;
+import com.example.foodlogapp.service.FoodAnalysisService;
+import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.utils.LocalImageSpool;
+import com.example.foodlogapp.utils.S3Service;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.content.Media;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs queued image analyses (analysis_job). Every node with app.ai.analysis.queue.enabled starts
+ * {@code workers} threads that claim one job at a time, so throughput grows with the number of nodes.
+ * While a job runs its lease is renewed; if the node dies the lease runs out and any node picks the job up again.
+ *
+ * Metrics: analysis.queue.depth (pending jobs), analysis.queue.running, analysis.queue.oldest.age (seconds the
+ * oldest pending job has waited), analysis.queue.completed, analysis.queue.failures, analysis.queue.postponed
+ * (image spooled on another node), analysis.queue.job.latency.
+ */
+@Slf4j
+@Component
+public class AnalysisJobWorker {
+
+    private final AnalysisJobService analysisJobService;
+    private final FoodLogService foodLogService;
+    private final FoodAnalysisService foodAnalysisService;
+    private final S3Service s3Service;
+    private final LocalImageSpool localImageSpool;
+    private final AnalysisProperties analysisProperties;
+    private final StorageProperties storageProperties;
+
+    // identifies this node's leases in analysis_job.lease_owner
+    private final String owner;
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile boolean running;
+    private ExecutorService workers;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong oldestPendingAge = new AtomicLong();
+    private final Counter completed;
+    private final Counter failures;
+    private final Counter postponed;
+    private final Timer jobLatency;
+
+    public AnalysisJobWorker(AnalysisJobService analysisJobService, FoodLogService foodLogService,
+                             FoodAnalysisService foodAnalysisService, S3Service s3Service, LocalImageSpool localImageSpool,
+                             AnalysisProperties analysisProperties, StorageProperties storageProperties,
+                             MeterRegistry meterRegistry) {
+        this.analysisJobService = analysisJobService;
+        this.foodLogService = foodLogService;
+        this.foodAnalysisService = foodAnalysisService;
+        this.s3Service = s3Service;
+        this.localImageSpool = localImageSpool;
+        this.analysisProperties = analysisProperties;
+        this.storageProperties = storageProperties;
+        this.owner = nodeName() + "/" + ManagementFactory.getRuntimeMXBean().getPid() + "/"
+                + UUID.randomUUID().toString().substring(0, 8);
+        meterRegistry.gauge("analysis.queue.depth", pending);
+        meterRegistry.gauge("analysis.queue.running", claimed);
+        meterRegistry.gauge("analysis.queue.oldest.age", oldestPendingAge);
+        this.completed = meterRegistry.counter("analysis.queue.completed");
+        this.failures = meterRegistry.counter("analysis.queue.failures");
+        this.postponed = meterRegistry.counter("analysis.queue.postponed");
+        this.jobLatency = meterRegistry.timer("analysis.queue.job.latency");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        AnalysisProperties.Queue queue = analysisProperties.getQueue();
+        if (!queue.isEnabled() || queue.getWorkers() <= 0) {
+            return;
+        }
+        running = true;
+        AtomicInteger threadIds = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(queue.getWorkers(), r -> {
+            Thread t = new Thread(r, "analysis-worker-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < queue.getWorkers(); i++) {
+            workers.execute(this::pollLoop);
+        }
+        log.info("Started {} analysis workers as {}", queue.getWorkers(), owner);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (workers != null) {
+            // interrupted jobs are marked failed and retried by whichever node claims them next
+            workers.shutdownNow();
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Renews the leases of jobs running here, reclaims jobs whose lease expired elsewhere and refreshes the gauges.
+     */
+    @Scheduled(initialDelayString = "${app.ai.analysis.queue.maintenance-interval-ms:30000}",
+            fixedDelayString = "${app.ai.analysis.queue.maintenance-interval-ms:30000}")
+    public void maintain() {
+        if (!analysisProperties.getQueue().isEnabled()) {
+            return;
+        }
+        analysisJobService.renewLeases(owner, List.copyOf(inFlight));
+        int released = analysisJobService.releaseExpiredLeases();
+        if (released > 0) {
+            log.warn("Released {} analysis jobs whose lease expired", released);
+        }
+        pending.set(analysisJobService.countByStatus(AnalysisJob.PENDING));
+        claimed.set(analysisJobService.countByStatus(AnalysisJob.RUNNING));
+        oldestPendingAge.set(analysisJobService.oldestPendingAgeSeconds());
+    }
+
+    private void pollLoop() {
+        // the analysis reads back what the tools just wrote: never from a lagging replica
+        ReadRoutingContext.forcePrimary(true);
+        long pollMs = analysisProperties.getQueue().getPollInterval().toMillis();
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                AnalysisJob job = analysisJobService.claim(owner);
+                if (job == null) {
+                    // jitter keeps idle workers of all nodes from polling in lockstep
+                    Thread.sleep(pollMs + ThreadLocalRandom.current().nextLong(pollMs / 2 + 1));
+                    continue;
+                }
+                process(job);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.error("Analysis worker poll failed", e);
+                try {
+                    Thread.sleep(pollMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void process(AnalysisJob job) {
+        inFlight.add(job.getId());
+        Timer.Sample sample = Timer.start();
+        try {
+            if (!run(job)) {
+                postponed.increment();
+                analysisJobService.postpone(job, owner, "image is still spooled on another node");
+            } else if (analysisJobService.complete(job, owner)) {
+                completed.increment();
+            } else {
+                log.warn("Lost the lease of analysis job {} (log {}) before completing it", job.getId(), job.getLogId());
+            }
+        } catch (Exception e) {
+            failures.increment();
+            log.warn("Analysis job {} (log {}) attempt {} failed: {}", job.getId(), job.getLogId(), job.getAttempts(), e.toString());
+            analysisJobService.fail(job, owner, e.toString());
+        } finally {
+            inFlight.remove(job.getId());
+            sample.stop(jobLatency);
+        }
+    }
+
+    // false when the image is spooled on another node and the job has to wait for it
+    private boolean run(AnalysisJob job) {
+        FoodLog foodLog = foodLogService.findById(job.getLogId());
+        if (foodLog == null) {
+            // log deleted while queued (the job row normally goes with it via ON DELETE CASCADE)
+            return true;
+        }
+        Media.Builder image = Media.builder().mimeType(MimeType.valueOf(job.getContentType()));
+        if (LocalImageSpool.isSpooled(foodLog.getImagePath())) {
+            // uploaded while S3 was unavailable: only the node holding the spooled file can analyse it before
+            // it is replayed; elsewhere the job is put back and a later claim finds the file or the S3 URL
+            S3Service.DownloadedFile file = localImageSpool.read(foodLog.getImagePath());
+            if (file == null) {
+                return false;
+            }
+            image.data(new ByteArrayResource(file.data()));
+        } else {
+            // the model fetches the image itself; the bytes never pass through this node
+            image.data(s3Service.presignDownload(foodLog.getImagePath(), storageProperties.getPresignExpiry()));
+        }
+        AnalysisMode mode = AnalysisMode.parse(job.getMode(), analysisProperties.getMode());
+        foodAnalysisService.analyze(foodLog.getId(), image.build(), job.getNotes(), mode);
+        return true;
+    }
+
+    private static String nodeName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.foodlogapp.job;
+
+import com.example.foodlogapp.entity.FoodIngredient;
+import com.example.foodlogapp.service.FoodIngredientService;
+import com.example.foodlogapp.utils.IngredientJournal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional write-behind for the logFoodIngredients tool (app.write-behind.enabled). The tool appends the
+ * ingredients to a local, group-committed journal (IngredientJournal) and answers as soon as they are fsynced;
+ * a single flusher thread drains the journal into MySQL, up to {@code batch-size} logs per transaction with
+ * multi-row INSERTs. Entries not yet flushed when the node stops are replayed from the journal on the next start.
+ *
+ * Flushing is idempotent per log (FoodIngredientService#createAllIfAbsent), so replaying an entry that reached
+ * MySQL just before a crash is harmless, and fenced like the synchronous write: an entry of an attempt that no
+ * longer holds its log is skipped. Readers that must see the tool's result (the analysis escalation check)
+ * call {@link #awaitFlushed(Integer)} first. The journal lives on this node's disk: a node that is replaced
+ * together with its disk loses what it had not flushed yet.
+ *
+ * Metrics: writebehind.appends, writebehind.append.latency (what the tool waits for), writebehind.journal.fsyncs
+ * and writebehind.journal.fsync (group commits; appends per fsync is the batching factor), writebehind.lag
+ * (entries not yet in MySQL), writebehind.lag.seconds (age of the oldest one), writebehind.flush.batch.size,
+ * writebehind.flush.latency, writebehind.flush.rows, writebehind.flush.failures, writebehind.flush.dropped.
+ */
+@Slf4j
+@Component
+public class IngredientWriteBehind {
+
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final FoodIngredientService foodIngredientService;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long maxLingerMs;
+    private final long awaitTimeoutMs;
+    private final IngredientJournal journal;
+
+    private final BlockingQueue<IngredientJournal.Entry> queue = new LinkedBlockingQueue<>();
+    // logs with a journaled entry that is not in MySQL yet -> its seq (-1 while the append is in progress)
+    private final Map<Integer, Long> pendingByLog = new ConcurrentHashMap<>();
+    private final Object flushed = new Object();
+    private volatile IngredientJournal.Entry flushing;
+    private volatile boolean running;
+    private Thread flusher;
+
+    private final Counter appends;
+    private final Timer appendLatency;
+    private final DistributionSummary batchSizes;
+    private final Timer flushLatency;
+    private final Counter flushedRows;
+    private final Counter flushFailures;
+    private final Counter dropped;
+
+    public IngredientWriteBehind(FoodIngredientService foodIngredientService, MeterRegistry meterRegistry,
+                                 @Value("${app.write-behind.enabled:false}") boolean enabled,
+                                 @Value("${app.write-behind.dir:ingredient-journal}") String dir,
+                                 @Value("${app.write-behind.batch-size:500}") int batchSize,
+                                 @Value("${app.write-behind.max-linger-ms:20}") long maxLingerMs,
+                                 @Value("${app.write-behind.segment-bytes:67108864}") long segmentBytes,
+                                 @Value("${app.write-behind.await-timeout-ms:10000}") long awaitTimeoutMs) throws IOException {
+        this.foodIngredientService = foodIngredientService;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxLingerMs = maxLingerMs;
+        this.awaitTimeoutMs = awaitTimeoutMs;
+        this.journal = enabled ? IngredientJournal.open(Path.of(dir), segmentBytes, this::enqueue, this::enqueue) : null;
+
+        this.appends = meterRegistry.counter("writebehind.appends");
+        this.appendLatency = meterRegistry.timer("writebehind.append.latency");
+        this.batchSizes = DistributionSummary.builder("writebehind.flush.batch.size").register(meterRegistry);
+        this.flushLatency = meterRegistry.timer("writebehind.flush.latency");
+        this.flushedRows = meterRegistry.counter("writebehind.flush.rows");
+        this.flushFailures = meterRegistry.counter("writebehind.flush.failures");
+        this.dropped = meterRegistry.counter("writebehind.flush.dropped");
+        if (journal != null) {
+            FunctionCounter.builder("writebehind.journal.fsyncs", journal, IngredientJournal::getFsyncs).register(meterRegistry);
+            FunctionTimer.builder("writebehind.journal.fsync", journal,
+                    IngredientJournal::getFsyncs, IngredientJournal::getFsyncNanos, TimeUnit.NANOSECONDS).register(meterRegistry);
+        }
+        meterRegistry.gauge("writebehind.lag", pendingByLog, Map::size);
+        meterRegistry.gauge("writebehind.lag.seconds", this, IngredientWriteBehind::lagSeconds);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Journals the ingredients of a log and returns once they are durable on local disk. The attempt token goes
+     * along, so the flush still rejects the entry if the attempt was fenced off meanwhile (see AnalysisFence).
+     *
+     * @return false when the log already has a journaled entry that is not flushed yet (nothing is written)
+     * @throws UncheckedIOException when the journal cannot be written; the caller should write synchronously
+     */
+    public boolean append(Integer logId, List<FoodIngredient> ingredients, String attemptToken) {
+        if (pendingByLog.putIfAbsent(logId, -1L) != null) {
+            return false;
+        }
+        Timer.Sample sample = Timer.start();
+        try {
+            journal.append(logId, ingredients, attemptToken);
+            appends.increment();
+            return true;
+        } catch (IOException e) {
+            pendingByLog.remove(logId, -1L);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            // nothing was journaled: the marker must not block the retry or awaitFlushed
+            pendingByLog.remove(logId, -1L);
+            throw e;
+        } finally {
+            sample.stop(appendLatency);
+        }
+    }
+
+    /**
+     * Waits until nothing journaled for the log is still on its way to MySQL.
+     *
+     * @return false if app.write-behind.await-timeout-ms passed first
+     */
+    public boolean awaitFlushed(Integer logId) {
+        if (!enabled || logId == null || !pendingByLog.containsKey(logId)) {
+            return true;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(awaitTimeoutMs);
+        synchronized (flushed) {
+            while (pendingByLog.containsKey(logId)) {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (left <= 0) {
+                    log.warn("Journaled ingredients of logId {} not flushed within {} ms", logId, awaitTimeoutMs);
+                    return false;
+                }
+                try {
+                    flushed.wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        running = true;
+        flusher = new Thread(this::run, "ingredient-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Ingredient write-behind started (batch-size {}, max-linger {} ms, {} entries to replay)",
+                batchSize, maxLingerMs, queue.size());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (!enabled) return;
+        running = false;
+        if (flusher != null) {
+            try {
+                // the flusher drains what is queued before it exits; anything left is replayed on the next start
+                flusher.join(awaitTimeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        journal.close();
+    }
+
+    // Called by the journal in seq order: for replayed entries on open, for new ones once they are durable
+    private void enqueue(IngredientJournal.Entry entry) {
+        pendingByLog.put(entry.logId(), entry.seq());
+        queue.add(entry);
+    }
+
+    private void run() {
+        List<IngredientJournal.Entry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                IngredientJournal.Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                flushing = first;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - batch.size());
+                // linger briefly for more entries, so a burst of tool calls becomes one transaction
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxLingerMs);
+                while (batch.size() < batchSize) {
+                    IngredientJournal.Entry next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+                flushing = null;
+            }
+        }
+    }
+
+    private void flush(List<IngredientJournal.Entry> batch) throws InterruptedException {
+        // the newest entry of a log wins: an older one was either flushed already or superseded (escalation)
+        Map<Integer, List<FoodIngredient>> byLog = new LinkedHashMap<>();
+        Map<Integer, String> tokens = new HashMap<>();
+        for (IngredientJournal.Entry entry : batch) {
+            byLog.put(entry.logId(), entry.ingredients());
+            tokens.put(entry.logId(), entry.attemptToken());
+        }
+        long backoff = 100;
+        boolean oneByOne = false;
+        while (true) {
+            try {
+                long start = System.nanoTime();
+                int rows = oneByOne ? flushOneByOne(byLog, tokens) : foodIngredientService.createAllIfAbsent(byLog, tokens);
+                flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                flushedRows.increment(rows);
+                break;
+            } catch (DataIntegrityViolationException e) {
+                // one bad entry (e.g. a name that does not fit the column) must not hold back the rest
+                flushFailures.increment();
+                log.warn("Write-behind batch of {} logs rejected, flushing one by one: {}", byLog.size(), e.getMessage());
+                oneByOne = true;
+            } catch (RuntimeException e) {
+                // database unavailable: keep the batch and retry; the journal still has it if the node stops
+                flushFailures.increment();
+                log.warn("Write-behind flush of {} logs failed, retrying in {} ms: {}", byLog.size(), backoff, e.toString());
+                if (!running) throw new InterruptedException("stopping with an unflushed batch");
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            }
+        }
+        batchSizes.record(batch.size());
+        markFlushed(batch);
+    }
+
+    // Other failures propagate and the whole pass is retried; logs written in an earlier pass are skipped then
+    private int flushOneByOne(Map<Integer, List<FoodIngredient>> byLog, Map<Integer, String> tokens) {
+        int rows = 0;
+        for (Map.Entry<Integer, List<FoodIngredient>> entry : byLog.entrySet()) {
+            try {
+                rows += foodIngredientService.createAllIfAbsent(Map.of(entry.getKey(), entry.getValue()), tokens);
+            } catch (DataIntegrityViolationException e) {
+                dropped.increment();
+                log.error("Dropping journaled ingredients of logId {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+        return rows;
+    }
+
+    private void markFlushed(List<IngredientJournal.Entry> batch) {
+        long last = batch.get(batch.size() - 1).seq();
+        synchronized (flushed) {
+            for (IngredientJournal.Entry entry : batch) {
+                pendingByLog.remove(entry.logId(), entry.seq());
+            }
+            flushed.notifyAll();
+        }
+        journal.release(last);
+    }
+
+    private double lagSeconds() {
+        IngredientJournal.Entry oldest = flushing != null ? flushing : queue.peek();
+        return oldest == null ? 0 : (System.currentTimeMillis() - oldest.appendedAt()) / 1000.0;
+    }
+}
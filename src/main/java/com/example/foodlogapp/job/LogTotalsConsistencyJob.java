@@ -0,0 +1,45 @@
+package com.example.foodlogapp.job;
+
+import com.example.foodlogapp.service.FoodLogService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Periodically compares food_log.total_kcal / total_weight / ingredient_count with the actual
+ * food_ingredient rows and recomputes the logs that drifted (e.g. after manual SQL edits).
+ * Walks food_log by id range so each check query stays small.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LogTotalsConsistencyJob {
+
+    private final FoodLogService foodLogService;
+
+    @Value("${app.log-totals.check-batch-size:1000}")
+    private int batchSize;
+
+    @Scheduled(initialDelayString = "${app.log-totals.check-initial-delay-ms:60000}",
+            fixedDelayString = "${app.log-totals.check-interval-ms:3600000}")
+    public void checkAndRepair() {
+        int maxId = foodLogService.findMaxId();
+        int repaired = 0;
+        for (int afterId = 0; afterId < maxId; afterId += batchSize) {
+            List<Integer> drifted = foodLogService.findTotalsDrift(afterId, afterId + batchSize);
+            for (Integer id : drifted) {
+                foodLogService.recomputeTotals(id);
+                repaired++;
+            }
+        }
+        if (repaired > 0) {
+            log.warn("Repaired denormalized totals of {} food logs", repaired);
+        } else {
+            log.debug("Food log totals consistent up to id {}", maxId);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.example.foodlogapp.job;
+
+import com.example.foodlogapp.config.ReadRoutingContext;
+import com.example.foodlogapp.dto.FoodAnalysisResult;
+import com.example.foodlogapp.entity.FoodLog;
+import com.example.foodlogapp.entity.ReanalysisRun;
+import com.example.foodlogapp.service.FoodAnalysisService;
+import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.service.ReanalysisService;
+import com.example.foodlogapp.utils.LocalImageSpool;
+import com.example.foodlogapp.utils.S3Service;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.content.Media;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Executes reanalysis_run rows: walks food_log by id (keyset pages of batch_size), re-downloads each image,
+ * runs the structured analysis and replaces the log's ingredients and confidence in one transaction.
+ *
+ * Up to {@code parallelism} analyses run at once and model calls are spaced to {@code rate_per_second}.
+ * After every page the checkpoint (last_log_id) is advanced, so a run interrupted by a restart or a dead
+ * node resumes after its last finished page once its lease expires; at most one page is analysed twice.
+ * Each node executes one run at a time.
+ *
+ * A log whose image is spooled on another node (uploaded while S3 was down) ends the page before it; the run
+ * waits for that image to be replayed to S3, for at most app.reanalysis.spool-wait in total. After that such
+ * logs are analysed like any other, which fails them.
+ *
+ * Metrics: reanalysis.logs{result=succeeded|failed}.
+ */
+@Slf4j
+@Component
+public class ReanalysisRunner {
+
+    private final ReanalysisService reanalysisService;
+    private final FoodLogService foodLogService;
+    private final FoodAnalysisService foodAnalysisService;
+    private final S3Service s3Service;
+    private final LocalImageSpool localImageSpool;
+
+    private final String owner;
+    private final ExecutorService runnerThread;
+    private final AtomicReference<ReanalysisRun> current = new AtomicReference<>();
+    private final Counter succeededLogs;
+    private final Counter failedLogs;
+
+    @Value("${app.reanalysis.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.reanalysis.spool-wait:10m}")
+    private Duration spoolWait;
+
+    // replayed images only show up after a SpoolReplayer pass
+    @Value("${app.storage.spool-replay-interval-ms:15000}")
+    private long spoolCheckMs;
+
+    public ReanalysisRunner(ReanalysisService reanalysisService, FoodLogService foodLogService,
+                            FoodAnalysisService foodAnalysisService, S3Service s3Service, LocalImageSpool localImageSpool,
+                            MeterRegistry meterRegistry) {
+        this.reanalysisService = reanalysisService;
+        this.foodLogService = foodLogService;
+        this.foodAnalysisService = foodAnalysisService;
+        this.s3Service = s3Service;
+        this.localImageSpool = localImageSpool;
+        this.owner = nodeName() + "/" + ManagementFactory.getRuntimeMXBean().getPid() + "/"
+                + UUID.randomUUID().toString().substring(0, 8);
+        this.runnerThread = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "reanalysis-runner");
+            t.setDaemon(true);
+            return t;
+        });
+        this.succeededLogs = meterRegistry.counter("reanalysis.logs", "result", "succeeded");
+        this.failedLogs = meterRegistry.counter("reanalysis.logs", "result", "failed");
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // the current page is lost, the run resumes from its checkpoint on the next node that claims it
+        runnerThread.shutdownNow();
+        runnerThread.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Renews the lease of the run executing here, or claims a new / abandoned one when idle.
+     */
+    @Scheduled(initialDelayString = "${app.reanalysis.poll-interval-ms:10000}",
+            fixedDelayString = "${app.reanalysis.poll-interval-ms:10000}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        ReanalysisRun running = current.get();
+        if (running != null) {
+            reanalysisService.renewLease(running, owner);
+            return;
+        }
+        ReanalysisRun run = reanalysisService.claim(owner);
+        if (run == null) {
+            return;
+        }
+        current.set(run);
+        log.info("Reanalysis run {} claimed by {}, resuming after log {}", run.getId(), owner, run.getLastLogId());
+        runnerThread.execute(() -> {
+            try {
+                execute(run);
+            } catch (RuntimeException e) {
+                log.error("Reanalysis run {} stopped; it resumes from its checkpoint once the lease expires", run.getId(), e);
+            } finally {
+                current.set(null);
+            }
+        });
+    }
+
+    private void execute(ReanalysisRun run) {
+        // replaceAnalysis reads back its own writes and the page query must see logs just created
+        ReadRoutingContext.forcePrimary(true);
+        RateLimiter rateLimiter = new RateLimiter(run.getRatePerSecond());
+        AtomicInteger threadIds = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(run.getParallelism(), r -> {
+            Thread t = new Thread(() -> {
+                ReadRoutingContext.forcePrimary(true);
+                r.run();
+            }, "reanalysis-" + run.getId() + "-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            Integer afterId = run.getLastLogId();
+            long spoolWaitLeftMs = spoolWait.toMillis();
+            while (!Thread.currentThread().isInterrupted()) {
+                List<FoodLog> page = foodLogService.findPage(afterId, run.getUntilLogId(), run.getUserId(), run.getBatchSize());
+                if (page.isEmpty()) {
+                    if (reanalysisService.complete(run, owner)) {
+                        log.info("Reanalysis run {} completed", run.getId());
+                    }
+                    return;
+                }
+                if (spoolWaitLeftMs > 0) {
+                    int ready = 0;
+                    while (ready < page.size() && !spooledElsewhere(page.get(ready))) {
+                        ready++;
+                    }
+                    if (ready == 0) {
+                        log.info("Reanalysis run {} waiting for the image of log {}, spooled on another node",
+                                run.getId(), page.get(0).getId());
+                        long sleepMs = Math.min(spoolCheckMs, spoolWaitLeftMs);
+                        TimeUnit.MILLISECONDS.sleep(sleepMs);
+                        spoolWaitLeftMs -= sleepMs;
+                        if (!reanalysisService.renewLease(run, owner)) {
+                            log.info("Reanalysis run {} was cancelled or taken over, stopping after log {}", run.getId(), afterId);
+                            return;
+                        }
+                        continue;
+                    }
+                    page = page.subList(0, ready);
+                }
+                long started = System.nanoTime();
+                List<Future<?>> futures = new ArrayList<>(page.size());
+                for (FoodLog foodLog : page) {
+                    futures.add(pool.submit(() -> {
+                        rateLimiter.acquire();
+                        reanalyze(foodLog);
+                        return null;
+                    }));
+                }
+                int succeeded = 0;
+                int failed = 0;
+                String lastError = null;
+                for (int i = 0; i < futures.size(); i++) {
+                    try {
+                        futures.get(i).get();
+                        succeeded++;
+                    } catch (ExecutionException e) {
+                        failed++;
+                        lastError = "log " + page.get(i).getId() + ": " + e.getCause();
+                        log.warn("Reanalysis of log {} failed: {}", page.get(i).getId(), e.getCause().toString());
+                    }
+                }
+                succeededLogs.increment(succeeded);
+                failedLogs.increment(failed);
+                afterId = page.get(page.size() - 1).getId();
+                double seconds = Math.max((System.nanoTime() - started) / 1e9, 1e-3);
+                if (!reanalysisService.checkpoint(run, owner, afterId, succeeded, failed, page.size() / seconds, lastError)) {
+                    log.info("Reanalysis run {} was cancelled or taken over, stopping after log {}", run.getId(), afterId);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+            ReadRoutingContext.clear();
+        }
+    }
+
+    private boolean spooledElsewhere(FoodLog foodLog) {
+        return LocalImageSpool.isSpooled(foodLog.getImagePath()) && !localImageSpool.holds(foodLog.getImagePath());
+    }
+
+    private void reanalyze(FoodLog foodLog) {
+        if (foodLog.getImagePath() == null) {
+            throw new IllegalStateException("log has no image");
+        }
+        S3Service.DownloadedFile file = LocalImageSpool.isSpooled(foodLog.getImagePath())
+                ? localImageSpool.read(foodLog.getImagePath())
+                : s3Service.downloadFile(foodLog.getImagePath());
+        if (file == null) {
+            throw new IllegalStateException("image is still spooled on another node");
+        }
+        Media image = Media.builder()
+                .mimeType(MimeType.valueOf(file.contentType() != null ? file.contentType() : "image/jpeg"))
+                .data(new ByteArrayResource(file.data()))
+                .build();
+        FoodAnalysisResult result = foodAnalysisService.infer(image, null);
+        if (result == null) {
+            throw new IllegalStateException("model returned no valid analysis");
+        }
+        foodLogService.replaceAnalysis(foodLog.getId(), result.toEntities(foodLog.getId()), result.getConfidence());
+    }
+
+    /**
+     * Spaces permits 1/rate apart across all worker threads of a run (no bursts: the model limits are per minute
+     * and a burst after a slow page would be followed by 429s).
+     */
+    private static final class RateLimiter {
+        private final long intervalNanos;
+        private long next = System.nanoTime();
+
+        RateLimiter(double perSecond) {
+            this.intervalNanos = (long) (1_000_000_000L / perSecond);
+        }
+
+        void acquire() throws InterruptedException {
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                long slot = Math.max(next, now);
+                next = slot + intervalNanos;
+                wait = slot - now;
+            }
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
+
+    private static String nodeName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.foodlogapp.job;
+
+import com.example.foodlogapp.config.ReadRoutingContext;
+import com.example.foodlogapp.config.StorageProperties;
+import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.utils.LocalImageSpool;
+import com.example.foodlogapp.utils.S3CircuitBreaker;
+import com.example.foodlogapp.utils.S3Service;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Moves images from the local spool (written while S3 was unavailable) to S3, oldest first: upload, repoint
+ * food_log.image_path from {@code spool:<id>} to the object URL, delete the local file. Skips the pass while the
+ * S3 circuit is open and stops at the first S3 failure, so an outage costs one probe per interval.
+ *
+ * A crash between upload and repoint uploads the image again on the next pass; the first object becomes an
+ * orphan that StorageReaper removes. Spooled images no log refers to (the upload failed after spooling) are
+ * discarded after app.storage.local-spool-orphan-grace.
+ *
+ * Metrics: storage.spool.replayed, storage.spool.discarded (plus the LocalImageSpool gauges).
+ */
+@Slf4j
+@Component
+public class SpoolReplayer {
+
+    private final LocalImageSpool localImageSpool;
+    private final S3Service s3Service;
+    private final S3CircuitBreaker circuitBreaker;
+    private final FoodLogService foodLogService;
+    private final StorageProperties storageProperties;
+    private final Counter replayed;
+    private final Counter discarded;
+
+    public SpoolReplayer(LocalImageSpool localImageSpool, S3Service s3Service, S3CircuitBreaker circuitBreaker,
+                         FoodLogService foodLogService, StorageProperties storageProperties, MeterRegistry meterRegistry) {
+        this.localImageSpool = localImageSpool;
+        this.s3Service = s3Service;
+        this.circuitBreaker = circuitBreaker;
+        this.foodLogService = foodLogService;
+        this.storageProperties = storageProperties;
+        this.replayed = meterRegistry.counter("storage.spool.replayed");
+        this.discarded = meterRegistry.counter("storage.spool.discarded");
+    }
+
+    @Scheduled(initialDelayString = "${app.storage.spool-replay-interval-ms:15000}",
+            fixedDelayString = "${app.storage.spool-replay-interval-ms:15000}")
+    public void replay() {
+        List<LocalImageSpool.SpooledImage> images = localImageSpool.list();
+        if (images.isEmpty() || !circuitBreaker.isCallPermitted()) {
+            return;
+        }
+        // must see the log created a moment ago with the spooled path
+        ReadRoutingContext.forcePrimary(true);
+        try {
+            for (LocalImageSpool.SpooledImage image : images) {
+                if (!circuitBreaker.isCallPermitted()) {
+                    return;
+                }
+                replay(image);
+            }
+        } catch (S3CircuitBreaker.S3UnavailableException e) {
+            log.info("S3 still unavailable, {} images remain spooled: {}", localImageSpool.getFiles(), e.getMessage());
+        } finally {
+            ReadRoutingContext.clear();
+            localImageSpool.list();
+        }
+    }
+
+    private void replay(LocalImageSpool.SpooledImage image) {
+        String spooledPath = image.imagePath();
+        if (foodLogService.findExistingImagePaths(List.of(spooledPath)).isEmpty()) {
+            if (image.createdAt().plus(storageProperties.getLocalSpoolOrphanGrace()).isBefore(Instant.now())) {
+                localImageSpool.delete(image);
+                discarded.increment();
+                log.info("Discarded spooled image {}: no log refers to it", image.id());
+            }
+            return;
+        }
+        String fileUrl = s3Service.uploadFile(image.file(), image.contentType(), image.sha256());
+        int logs = foodLogService.replaceImagePath(spooledPath, fileUrl);
+        localImageSpool.delete(image);
+        replayed.increment();
+        log.info("Replayed spooled image {} to {} ({} logs updated, waited {} s)", image.id(), fileUrl, logs,
+                Instant.now().getEpochSecond() - image.createdAt().getEpochSecond());
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.foodlogapp.job;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.example.foodlogapp.config.ReadRoutingContext;
+import com.example.foodlogapp.config.ReaperProperties;
+import com.example.foodlogapp.dto.ReaperReport;
+import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.utils.S3Service;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Removes what failed or abandoned uploads leave behind:
+ * <ol>
+ *     <li>food_log rows created by an image upload (from_upload) without ingredients and with confidence 0,
+ *     older than app.reaper.empty-log-grace and without a pending analysis job;</li>
+ *     <li>objects under app.reaper.prefix older than app.reaper.object-grace that no food_log.image_path references
+ *     (including the images of the logs removed in step 1, and /s3/upload(s) objects).</li>
+ * </ol>
+ * The bucket is listed page by page and every page (up to 1000 keys) is anti-joined against food_log with one
+ * IN query, so neither side is loaded whole. Deletions are paced to app.reaper.max-deletes-per-second and capped
+ * per run. Deletes are idempotent, so overlapping runs on several nodes are harmless.
+ *
+ * Metrics: storage.reaper.logs.deleted, storage.reaper.objects.deleted, storage.reaper.bytes.reclaimed
+ * (all tagged dry_run=true|false).
+ */
+@Slf4j
+@Component
+public class StorageReaper {
+
+    private static final int LOG_PAGE = 500;
+
+    private final FoodLogService foodLogService;
+    private final S3Service s3Service;
+    private final ReaperProperties reaperProperties;
+    private final MeterRegistry meterRegistry;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public StorageReaper(FoodLogService foodLogService, S3Service s3Service, ReaperProperties reaperProperties,
+                         MeterRegistry meterRegistry) {
+        this.foodLogService = foodLogService;
+        this.s3Service = s3Service;
+        this.reaperProperties = reaperProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Scheduled(initialDelayString = "${app.reaper.initial-delay-ms:600000}",
+            fixedDelayString = "${app.reaper.interval-ms:21600000}")
+    public void scheduledRun() {
+        if (reaperProperties.isEnabled()) {
+            run(reaperProperties.isDryRun());
+        }
+    }
+
+    /**
+     * One pass over logs and bucket; null when a pass is already running on this node.
+     */
+    public ReaperReport run(boolean dryRun) {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        // the anti-join must see logs committed a moment ago, not a lagging replica
+        ReadRoutingContext.forcePrimary(true);
+        long started = System.nanoTime();
+        ReaperReport report = new ReaperReport();
+        report.setDryRun(dryRun);
+        Pacer pacer = new Pacer(reaperProperties.getMaxDeletesPerSecond());
+        try {
+            int budget = reaperProperties.getMaxDeletesPerRun();
+            budget -= reapEmptyLogs(dryRun, budget, pacer, report);
+            reapOrphanObjects(dryRun, budget, pacer, report);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            ReadRoutingContext.clear();
+            running.set(false);
+        }
+        report.setElapsedMs((System.nanoTime() - started) / 1_000_000);
+        String tag = String.valueOf(dryRun);
+        meterRegistry.counter("storage.reaper.logs.deleted", "dry_run", tag).increment(report.getEmptyLogsDeleted());
+        meterRegistry.counter("storage.reaper.objects.deleted", "dry_run", tag).increment(report.getObjectsDeleted());
+        meterRegistry.counter("storage.reaper.bytes.reclaimed", "dry_run", tag).increment(report.getBytesReclaimed());
+        log.info("Storage reaper{}: {} empty logs, {} of {} scanned objects orphaned, {} deleted ({} bytes){} in {} ms",
+                dryRun ? " (dry run)" : "", report.getEmptyLogsDeleted(), report.getOrphansFound(),
+                report.getObjectsScanned(), report.getObjectsDeleted(), report.getBytesReclaimed(),
+                report.isTruncated() ? ", stopped at max-deletes-per-run" : "", report.getElapsedMs());
+        return report;
+    }
+
+    private int reapEmptyLogs(boolean dryRun, int budget, Pacer pacer, ReaperReport report) throws InterruptedException {
+        long graceSeconds = reaperProperties.getEmptyLogGrace().toSeconds();
+        int deleted = 0;
+        Integer afterId = 0;
+        while (true) {
+            List<Integer> ids = foodLogService.findStaleEmptyIds(graceSeconds, afterId, LOG_PAGE);
+            for (Integer id : ids) {
+                if (deleted >= budget) {
+                    report.setTruncated(true);
+                    report.setEmptyLogsDeleted(deleted);
+                    return deleted;
+                }
+                if (dryRun) {
+                    deleted++;
+                } else {
+                    pacer.acquire(1);
+                    deleted += foodLogService.deleteIfEmpty(id);
+                }
+            }
+            if (ids.size() < LOG_PAGE) {
+                break;
+            }
+            afterId = ids.get(ids.size() - 1);
+        }
+        report.setEmptyLogsDeleted(deleted);
+        return deleted;
+    }
+
+    private void reapOrphanObjects(boolean dryRun, int budget, Pacer pacer, ReaperReport report) throws InterruptedException {
+        Instant cutoff = Instant.now().minus(reaperProperties.getObjectGrace());
+        int[] remaining = {budget};
+        InterruptedException[] interrupted = {null};
+        s3Service.forEachObjectPage(reaperProperties.getPrefix(), page -> {
+            report.setObjectsScanned(report.getObjectsScanned() + page.size());
+            List<S3ObjectSummary> candidates = new ArrayList<>(page.size());
+            List<String> urls = new ArrayList<>(page.size());
+            for (S3ObjectSummary object : page) {
+                if (object.getLastModified() != null && object.getLastModified().toInstant().isBefore(cutoff)) {
+                    candidates.add(object);
+                    urls.add(s3Service.urlOf(object.getKey()));
+                }
+            }
+            if (candidates.isEmpty()) {
+                return true;
+            }
+            Set<String> referenced = new HashSet<>(foodLogService.findExistingImagePaths(urls));
+            Map<String, Long> orphans = new LinkedHashMap<>();
+            for (int i = 0; i < candidates.size(); i++) {
+                if (referenced.contains(urls.get(i))) continue;
+                if (orphans.size() >= remaining[0]) {
+                    report.setTruncated(true);
+                    break;
+                }
+                orphans.put(candidates.get(i).getKey(), candidates.get(i).getSize());
+            }
+            report.setOrphansFound(report.getOrphansFound() + orphans.size());
+            if (orphans.isEmpty()) {
+                return !report.isTruncated();
+            }
+            List<String> deleted;
+            if (dryRun) {
+                deleted = List.copyOf(orphans.keySet());
+            } else {
+                try {
+                    pacer.acquire(orphans.size());
+                } catch (InterruptedException e) {
+                    interrupted[0] = e;
+                    return false;
+                }
+                deleted = s3Service.deleteObjects(List.copyOf(orphans.keySet()));
+            }
+            remaining[0] -= orphans.size();
+            report.setObjectsDeleted(report.getObjectsDeleted() + deleted.size());
+            for (String key : deleted) {
+                report.setBytesReclaimed(report.getBytesReclaimed() + orphans.getOrDefault(key, 0L));
+            }
+            return !report.isTruncated() && remaining[0] > 0;
+        });
+        if (interrupted[0] != null) {
+            throw interrupted[0];
+        }
+    }
+
+    /**
+     * Spaces deletions to a steady rate: a batch of n waits until n / rate seconds after the previous one.
+     */
+    private static final class Pacer {
+        private final long nanosPerDelete;
+        private long next = System.nanoTime();
+
+        Pacer(int perSecond) {
+            this.nanosPerDelete = 1_000_000_000L / Math.max(1, perSecond);
+        }
+
+        void acquire(int deletes) throws InterruptedException {
+            long now = System.nanoTime();
+            long wait = next - now;
+            next = Math.max(next, now) + deletes * nanosPerDelete;
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
+}
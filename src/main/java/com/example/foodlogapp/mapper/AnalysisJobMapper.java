@@ -0,0 +1,72 @@
+package com.example.foodlogapp.mapper;
+
+import com.example.foodlogapp.entity.AnalysisJob;
+import org.apache.ibatis.annotations.*;
+
+import java.util.List;
+
+/**
+ * All lease times are computed with the database clock (NOW(3)), so clock skew between app nodes does not matter.
+ * Updates on a claimed job are fenced by lease_owner: a node whose lease expired cannot overwrite the new owner.
+ */
+@Mapper
+public interface AnalysisJobMapper {
+    @Insert("INSERT INTO analysis_job(log_id, content_type, notes, mode) VALUES(#{logId}, #{contentType}, #{notes}, #{mode})")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int insert(AnalysisJob job);
+
+    @Select("SELECT * FROM analysis_job WHERE id = #{id}")
+    AnalysisJob findById(@Param("id") Long id);
+
+    @Select("SELECT * FROM analysis_job WHERE log_id = #{logId}")
+    AnalysisJob findByLogId(@Param("logId") Integer logId);
+
+    // Rows locked by another node's claim are skipped instead of waited for
+    @Select("SELECT id FROM analysis_job WHERE status = 'PENDING' AND available_at <= NOW(3) " +
+            "ORDER BY available_at, id LIMIT #{limit} FOR UPDATE SKIP LOCKED")
+    List<Long> lockClaimable(@Param("limit") int limit);
+
+    @Update("UPDATE analysis_job SET status = 'RUNNING', lease_owner = #{owner}, attempts = attempts + 1, " +
+            "lease_until = DATE_ADD(NOW(3), INTERVAL #{leaseMs} * 1000 MICROSECOND) WHERE id = #{id}")
+    int markRunning(@Param("id") Long id, @Param("owner") String owner, @Param("leaseMs") long leaseMs);
+
+    @Update("<script>UPDATE analysis_job SET lease_until = DATE_ADD(NOW(3), INTERVAL #{leaseMs} * 1000 MICROSECOND) " +
+            "WHERE status = 'RUNNING' AND lease_owner = #{owner} AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int renewLeases(@Param("owner") String owner, @Param("ids") List<Long> ids, @Param("leaseMs") long leaseMs);
+
+    @Update("UPDATE analysis_job SET status = 'DONE', lease_owner = NULL, lease_until = NULL, last_error = NULL " +
+            "WHERE id = #{id} AND status = 'RUNNING' AND lease_owner = #{owner}")
+    int complete(@Param("id") Long id, @Param("owner") String owner);
+
+    // Failed attempt: back to PENDING after a delay, or FAILED once max attempts are used up
+    @Update("UPDATE analysis_job SET status = IF(attempts >= #{maxAttempts}, 'FAILED', 'PENDING'), " +
+            "available_at = DATE_ADD(NOW(3), INTERVAL #{delayMs} * 1000 MICROSECOND), " +
+            "lease_owner = NULL, lease_until = NULL, last_error = #{error} " +
+            "WHERE id = #{id} AND status = 'RUNNING' AND lease_owner = #{owner}")
+    int fail(@Param("id") Long id, @Param("owner") String owner, @Param("error") String error,
+             @Param("maxAttempts") int maxAttempts, @Param("delayMs") long delayMs);
+
+    // Attempt that could not start on this node: back to PENDING with the attempt given back, as long as the job
+    // is younger than maxWaitMs
+    @Update("UPDATE analysis_job SET status = 'PENDING', attempts = attempts - 1, " +
+            "available_at = DATE_ADD(NOW(3), INTERVAL #{delayMs} * 1000 MICROSECOND), " +
+            "lease_owner = NULL, lease_until = NULL, last_error = #{error} " +
+            "WHERE id = #{id} AND status = 'RUNNING' AND lease_owner = #{owner} " +
+            "AND created_at > DATE_SUB(NOW(3), INTERVAL #{maxWaitMs} * 1000 MICROSECOND)")
+    int postpone(@Param("id") Long id, @Param("owner") String owner, @Param("error") String error,
+                 @Param("delayMs") long delayMs, @Param("maxWaitMs") long maxWaitMs);
+
+    // Jobs of crashed / stalled nodes: their lease ran out without renewal
+    @Update("UPDATE analysis_job SET status = IF(attempts >= #{maxAttempts}, 'FAILED', 'PENDING'), " +
+            "available_at = NOW(3), lease_owner = NULL, lease_until = NULL, " +
+            "last_error = COALESCE(last_error, 'lease expired') " +
+            "WHERE status = 'RUNNING' AND lease_until < NOW(3)")
+    int releaseExpiredLeases(@Param("maxAttempts") int maxAttempts);
+
+    @Select("SELECT COUNT(*) FROM analysis_job WHERE status = #{status}")
+    long countByStatus(@Param("status") String status);
+
+    @Select("SELECT COALESCE(TIMESTAMPDIFF(SECOND, MIN(created_at), NOW(3)), 0) FROM analysis_job WHERE status = 'PENDING'")
+    long oldestPendingAgeSeconds();
+}
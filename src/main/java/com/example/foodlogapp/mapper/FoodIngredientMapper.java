@@ -1,8 +1,12 @@
 package com.example.foodlogapp.mapper;
 
+import com.example.foodlogapp.dto.NutritionRow;
 import com.example.foodlogapp.entity.FoodIngredient;
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
+import java.util.Collection;
 import java.util.List;
 
 @Mapper
@@ -27,10 +31,30 @@ public interface FoodIngredientMapper {
     })
     List<FoodIngredient> findByLogId(@Param("logId") Integer logId);
 
+    // Ingredients of several logs in one query, grouped by log
+    @Select("<script>SELECT id, log_id, ingredient_name, kcal, weight FROM food_ingredient WHERE log_id IN " +
+            "<foreach collection='logIds' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "ORDER BY log_id, id</script>")
+    @Results({
+        @Result(property = "id", column = "id"),
+        @Result(property = "logId", column = "log_id"),
+        @Result(property = "ingredientName", column = "ingredient_name"),
+        @Result(property = "kcal", column = "kcal"),
+        @Result(property = "weight", column = "weight")
+    })
+    List<FoodIngredient> findByLogIds(@Param("logIds") Collection<Integer> logIds);
+
     @Insert("INSERT INTO food_ingredient(log_id, ingredient_name, kcal, weight) VALUES(#{logId}, #{ingredientName}, #{kcal}, #{weight})")
     @Options(useGeneratedKeys = true, keyProperty = "id")
     int insert(FoodIngredient foodIngredient);
 
+    // Multi-row INSERT for bulk import
+    @Insert("<script>INSERT INTO food_ingredient(log_id, ingredient_name, kcal, weight) VALUES " +
+            "<foreach collection='ingredients' item='i' separator=','>" +
+            "(#{i.logId}, #{i.ingredientName}, #{i.kcal}, #{i.weight})" +
+            "</foreach></script>")
+    int insertAll(@Param("ingredients") List<FoodIngredient> ingredients);
+
     @Update("UPDATE food_ingredient SET log_id = #{logId}, ingredient_name = #{ingredientName}, kcal = #{kcal}, weight = #{weight} WHERE id = #{id}")
     int update(FoodIngredient foodIngredient);
 
@@ -39,4 +63,16 @@ public interface FoodIngredientMapper {
 
     @Delete("DELETE FROM food_ingredient WHERE log_id = #{logId}")
     int deleteByLogId(@Param("logId") Integer logId);
+
+    // --- Analytics store: rows of one log stay together (ordered by log) ---
+
+    @Select("SELECT f.id AS log_id, UNIX_TIMESTAMP(f.created_at) AS created_at, i.ingredient_name, i.kcal, i.weight " +
+            "FROM food_log f JOIN food_ingredient i ON i.log_id = f.id WHERE f.user_id = #{userId} ORDER BY f.id, i.id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(NutritionRow.class)
+    void streamNutritionByUserId(@Param("userId") Integer userId, ResultHandler<NutritionRow> handler);
+
+    @Select("SELECT f.id AS log_id, UNIX_TIMESTAMP(f.created_at) AS created_at, i.ingredient_name, i.kcal, i.weight " +
+            "FROM food_log f JOIN food_ingredient i ON i.log_id = f.id WHERE f.id = #{logId} AND f.user_id = #{userId} ORDER BY i.id")
+    List<NutritionRow> findNutritionByLogId(@Param("userId") Integer userId, @Param("logId") Integer logId);
 }
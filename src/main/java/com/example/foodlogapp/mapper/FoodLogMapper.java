@@ -1,8 +1,13 @@
 package com.example.foodlogapp.mapper;
 
+import com.example.foodlogapp.dto.LogExportRow;
 import com.example.foodlogapp.entity.FoodLog;
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 
 @Mapper
@@ -25,13 +30,140 @@ public interface FoodLogMapper {
     })
     List<FoodLog> findByUserId(Integer userId);
 
-    @Insert("INSERT INTO food_log(user_id, image_path, confidence) VALUES(#{userId}, #{imagePath}, #{confidence})")
+    // The given logs of the user, without the @One user load (search results: the caller sets the one user)
+    @Select("<script>SELECT * FROM food_log WHERE user_id = #{userId} AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    @Results({
+        @Result(property = "userId", column = "user_id"),
+        @Result(property = "imagePath", column = "image_path")
+    })
+    List<FoodLog> findByUserIdAndIds(@Param("userId") Integer userId, @Param("ids") Collection<Integer> ids);
+
+    // Sparse variant: only the given columns, no @One user load (columns come from LogFields)
+    @SelectProvider(type = FoodLogSqlProvider.class, method = "findColumnsByUserId")
+    List<FoodLog> findColumnsByUserId(@Param("userId") Integer userId, @Param("columns") List<String> columns);
+
+    // Whole history of a user as one joined, ordered result set. fetchSize=MIN_VALUE makes MySQL Connector/J
+    // stream rows instead of buffering the result, and the handler sees them one at a time.
+    @Select("SELECT f.id AS log_id, f.user_id, f.image_path, f.confidence, " +
+            "i.id AS ingredient_id, i.ingredient_name, i.kcal, i.weight " +
+            "FROM food_log f LEFT JOIN food_ingredient i ON i.log_id = f.id " +
+            "WHERE f.user_id = #{userId} ORDER BY f.id, i.id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(LogExportRow.class)
+    void exportByUserId(@Param("userId") Integer userId, ResultHandler<LogExportRow> handler);
+
+    @Insert("INSERT INTO food_log(user_id, image_path, confidence, from_upload) " +
+            "VALUES(#{userId}, #{imagePath}, #{confidence}, COALESCE(#{fromUpload}, 0))")
     @Options(useGeneratedKeys = true, keyProperty = "id")
     int insert(FoodLog foodLog);
 
+    // Multi-row INSERT for bulk import (one statement per chunk); generated ids are written back to each log
+    @Insert("<script>INSERT INTO food_log(user_id, image_path, confidence, total_kcal, total_weight, ingredient_count) VALUES " +
+            "<foreach collection='logs' item='l' separator=','>" +
+            "(#{l.userId}, #{l.imagePath}, #{l.confidence}, #{l.totalKcal}, #{l.totalWeight}, #{l.ingredientCount})" +
+            "</foreach></script>")
+    @Options(useGeneratedKeys = true, keyProperty = "logs.id")
+    int insertAll(@Param("logs") List<FoodLog> logs);
+
     @Update("UPDATE food_log SET user_id = #{userId}, image_path = #{imagePath}, confidence = #{confidence} WHERE id = #{id}")
     int update(FoodLog foodLog);
 
+    @Update("UPDATE food_log SET confidence = #{confidence} WHERE id = #{id}")
+    int updateConfidence(@Param("id") Integer id, @Param("confidence") Integer confidence);
+
     @Delete("DELETE FROM food_log WHERE id = #{id}")
     int delete(Integer id);
+
+    @Select("SELECT user_id FROM food_log WHERE id = #{id}")
+    Integer findUserIdById(@Param("id") Integer id);
+
+    // Row lock on the log; serializes concurrent ingredient writers for the same log (e.g. hedged attempts)
+    @Select("SELECT ingredient_count FROM food_log WHERE id = #{id} FOR UPDATE")
+    Integer lockIngredientCount(@Param("id") Integer id);
+
+    // Same for many logs at once (write-behind flush); locked in id order so concurrent writers cannot deadlock
+    @Select("<script>SELECT id, user_id, ingredient_count, analysis_fence FROM food_log WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "ORDER BY id FOR UPDATE</script>")
+    List<FoodLog> lockIngredientCounts(@Param("ids") Collection<Integer> ids);
+
+    // --- Analysis fence (tool writes of hedged / cancelled / escalated attempts, see AnalysisFence) ---
+
+    // Row lock for a fenced tool write; null when the log does not exist
+    @Select("SELECT id, user_id, ingredient_count, analysis_fence FROM food_log WHERE id = #{id} FOR UPDATE")
+    FoodLog lockForAnalysis(@Param("id") Integer id);
+
+    @Update("UPDATE food_log SET analysis_fence = #{fence} WHERE id = #{id}")
+    int updateAnalysisFence(@Param("id") Integer id, @Param("fence") String fence);
+
+    // Only closes the given generation: a newer analysis of the log keeps its fence
+    @Update("UPDATE food_log SET analysis_fence = NULL WHERE id = #{id} " +
+            "AND (analysis_fence = #{generation} OR analysis_fence LIKE CONCAT(#{generation}, ':%'))")
+    int closeAnalysisFence(@Param("id") Integer id, @Param("generation") String generation);
+
+    // --- Denormalized totals (total_kcal / total_weight / ingredient_count) ---
+
+    @Update("UPDATE food_log SET total_kcal = total_kcal + #{kcal}, total_weight = total_weight + #{weight}, " +
+            "ingredient_count = ingredient_count + #{count} WHERE id = #{id}")
+    int addTotals(@Param("id") Integer id, @Param("kcal") int kcal, @Param("weight") BigDecimal weight, @Param("count") int count);
+
+    @Update("UPDATE food_log SET total_kcal = 0, total_weight = 0, ingredient_count = 0 WHERE id = #{id}")
+    int resetTotals(@Param("id") Integer id);
+
+    @Update("UPDATE food_log f SET " +
+            "total_kcal = (SELECT COALESCE(SUM(kcal), 0) FROM food_ingredient WHERE log_id = f.id), " +
+            "total_weight = (SELECT COALESCE(SUM(weight), 0) FROM food_ingredient WHERE log_id = f.id), " +
+            "ingredient_count = (SELECT COUNT(*) FROM food_ingredient WHERE log_id = f.id) " +
+            "WHERE f.id = #{id}")
+    int recomputeTotals(@Param("id") Integer id);
+
+    // Logs in (afterId, untilId] whose stored totals no longer match their ingredients
+    @Select("SELECT f.id FROM food_log f " +
+            "LEFT JOIN (SELECT log_id, COUNT(*) AS cnt, COALESCE(SUM(kcal), 0) AS kcal, COALESCE(SUM(weight), 0) AS weight " +
+            "           FROM food_ingredient WHERE log_id > #{afterId} AND log_id <= #{untilId} GROUP BY log_id) s " +
+            "ON s.log_id = f.id " +
+            "WHERE f.id > #{afterId} AND f.id <= #{untilId} " +
+            "AND (f.ingredient_count <> COALESCE(s.cnt, 0) OR f.total_kcal <> COALESCE(s.kcal, 0) " +
+            "     OR f.total_weight <> COALESCE(s.weight, 0))")
+    List<Integer> findTotalsDrift(@Param("afterId") Integer afterId, @Param("untilId") Integer untilId);
+
+    // Keyset page for batch jobs: next logs after afterId, optionally of one user
+    @Select("<script>SELECT id, user_id, image_path FROM food_log WHERE id &gt; #{afterId} AND id &lt;= #{untilId} " +
+            "<if test='userId != null'>AND user_id = #{userId} </if>ORDER BY id LIMIT #{limit}</script>")
+    List<FoodLog> findPage(@Param("afterId") Integer afterId, @Param("untilId") Integer untilId,
+                           @Param("userId") Integer userId, @Param("limit") int limit);
+
+    @Select("<script>SELECT COUNT(*) FROM food_log WHERE id &lt;= #{untilId} " +
+            "<if test='userId != null'>AND user_id = #{userId}</if></script>")
+    int countUpTo(@Param("untilId") Integer untilId, @Param("userId") Integer userId);
+
+    // --- Storage reaper ---
+
+    // Abandoned uploads: created by an upload, no ingredients, confidence never set, older than the grace period,
+    // no analysis pending. Manually created or imported logs are user data even when empty.
+    @Select("SELECT f.id FROM food_log f WHERE f.from_upload = 1 AND f.ingredient_count = 0 AND f.confidence = 0 " +
+            "AND f.created_at < NOW() - INTERVAL #{graceSeconds} SECOND AND f.id > #{afterId} " +
+            "AND NOT EXISTS (SELECT 1 FROM analysis_job j WHERE j.log_id = f.id AND j.status IN ('PENDING', 'RUNNING')) " +
+            "ORDER BY f.id LIMIT #{limit}")
+    List<Integer> findStaleEmptyIds(@Param("graceSeconds") long graceSeconds, @Param("afterId") Integer afterId,
+                                    @Param("limit") int limit);
+
+    // Re-checks emptiness at delete time: an analysis may have written in the meantime
+    @Delete("DELETE FROM food_log WHERE id = #{id} AND from_upload = 1 AND ingredient_count = 0 AND confidence = 0")
+    int deleteIfEmpty(@Param("id") Integer id);
+
+    @Select("<script>SELECT DISTINCT image_path FROM food_log WHERE image_path IN " +
+            "<foreach collection='paths' item='p' open='(' separator=',' close=')'>#{p}</foreach></script>")
+    List<String> findExistingImagePaths(@Param("paths") List<String> paths);
+
+    // Local spool replay: logs still pointing at a spooled image, then repointed to the uploaded object
+    @Select("SELECT id, user_id FROM food_log WHERE image_path = #{imagePath}")
+    List<FoodLog> findOwnersByImagePath(@Param("imagePath") String imagePath);
+
+    @Update("UPDATE food_log SET image_path = #{newPath} WHERE image_path = #{oldPath}")
+    int replaceImagePath(@Param("oldPath") String oldPath, @Param("newPath") String newPath);
+
+    @Select("SELECT COALESCE(MAX(id), 0) FROM food_log")
+    Integer findMaxId();
 }
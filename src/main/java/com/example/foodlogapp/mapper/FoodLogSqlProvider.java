@@ -0,0 +1,22 @@
+package com.example.foodlogapp.mapper;
+
+import org.apache.ibatis.jdbc.SQL;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dynamic SQL for FoodLogMapper. Column names come from LogFields (a fixed whitelist), never from user input.
+ */
+public class FoodLogSqlProvider {
+
+    @SuppressWarnings("unchecked")
+    public static String findColumnsByUserId(Map<String, Object> params) {
+        List<String> columns = (List<String>) params.get("columns");
+        return new SQL()
+                .SELECT(String.join(", ", columns))
+                .FROM("food_log")
+                .WHERE("user_id = #{userId}")
+                .toString();
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.foodlogapp.mapper;
+
+import com.example.foodlogapp.dto.UserLogVersion;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface LogVersionMapper {
+
+    @Insert("INSERT INTO user_log_version (user_id, version) VALUES (#{userId}, 1) " +
+            "ON DUPLICATE KEY UPDATE version = version + 1")
+    int bump(Integer userId);
+
+    // 0 for users that were never written to
+    @Select("SELECT COALESCE((SELECT version FROM user_log_version WHERE user_id = #{userId}), 0)")
+    long findVersion(Integer userId);
+
+    // Versions of many users at once; users that were never written to have no row
+    @Select("<script>SELECT user_id, version FROM user_log_version WHERE user_id IN " +
+            "<foreach collection='userIds' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    List<UserLogVersion> findVersions(@Param("userIds") Collection<Integer> userIds);
+
+    // "userId:version"; users that were never written to are at version 0
+    @Select("SELECT CONCAT(#{userId}, ':', COALESCE((SELECT version FROM user_log_version WHERE user_id = #{userId}), 0))")
+    String findStamp(Integer userId);
+
+    // Stamp of the log's owner, null when the log does not exist; revalidation uses findStamp of the owner in the tag
+    @Select("SELECT CONCAT(l.user_id, ':', COALESCE(v.version, 0)) FROM food_log l " +
+            "LEFT JOIN user_log_version v ON v.user_id = l.user_id WHERE l.id = #{logId}")
+    String findStampByLogId(Integer logId);
+}
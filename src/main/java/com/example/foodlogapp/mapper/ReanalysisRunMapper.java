@@ -0,0 +1,53 @@
+package com.example.foodlogapp.mapper;
+
+import com.example.foodlogapp.entity.ReanalysisRun;
+import org.apache.ibatis.annotations.*;
+
+import java.util.List;
+
+/**
+ * Leases work like analysis_job: database clock, updates fenced by lease_owner.
+ */
+@Mapper
+public interface ReanalysisRunMapper {
+    @Insert("INSERT INTO reanalysis_run(user_id, until_log_id, total, parallelism, rate_per_second, batch_size) " +
+            "VALUES(#{userId}, #{untilLogId}, #{total}, #{parallelism}, #{ratePerSecond}, #{batchSize})")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int insert(ReanalysisRun run);
+
+    @Select("SELECT * FROM reanalysis_run WHERE id = #{id}")
+    ReanalysisRun findById(@Param("id") Long id);
+
+    @Select("SELECT * FROM reanalysis_run ORDER BY id DESC LIMIT #{limit}")
+    List<ReanalysisRun> findRecent(@Param("limit") int limit);
+
+    // A RUNNING run nobody holds (new, or its node died / restarted)
+    @Select("SELECT id FROM reanalysis_run WHERE status = 'RUNNING' AND (lease_until IS NULL OR lease_until < NOW(3)) " +
+            "ORDER BY id LIMIT 1 FOR UPDATE SKIP LOCKED")
+    Long lockUnowned();
+
+    @Update("UPDATE reanalysis_run SET lease_owner = #{owner}, " +
+            "lease_until = DATE_ADD(NOW(3), INTERVAL #{leaseMs} * 1000 MICROSECOND) WHERE id = #{id}")
+    int takeLease(@Param("id") Long id, @Param("owner") String owner, @Param("leaseMs") long leaseMs);
+
+    @Update("UPDATE reanalysis_run SET lease_until = DATE_ADD(NOW(3), INTERVAL #{leaseMs} * 1000 MICROSECOND) " +
+            "WHERE id = #{id} AND status = 'RUNNING' AND lease_owner = #{owner}")
+    int renewLease(@Param("id") Long id, @Param("owner") String owner, @Param("leaseMs") long leaseMs);
+
+    // Advances the checkpoint after a whole batch finished; 0 rows when cancelled or the lease was lost
+    @Update("UPDATE reanalysis_run SET last_log_id = #{lastLogId}, processed = processed + #{processed}, " +
+            "succeeded = succeeded + #{succeeded}, failed = failed + #{failed}, last_batch_rate = #{rate}, " +
+            "last_error = COALESCE(#{error}, last_error), " +
+            "lease_until = DATE_ADD(NOW(3), INTERVAL #{leaseMs} * 1000 MICROSECOND) " +
+            "WHERE id = #{id} AND status = 'RUNNING' AND lease_owner = #{owner}")
+    int checkpoint(@Param("id") Long id, @Param("owner") String owner, @Param("lastLogId") Integer lastLogId,
+                   @Param("processed") int processed, @Param("succeeded") int succeeded, @Param("failed") int failed,
+                   @Param("rate") double rate, @Param("error") String error, @Param("leaseMs") long leaseMs);
+
+    @Update("UPDATE reanalysis_run SET status = 'COMPLETED', finished_at = NOW(3), lease_owner = NULL, lease_until = NULL " +
+            "WHERE id = #{id} AND status = 'RUNNING' AND lease_owner = #{owner}")
+    int complete(@Param("id") Long id, @Param("owner") String owner);
+
+    @Update("UPDATE reanalysis_run SET status = 'CANCELLED', finished_at = NOW(3) WHERE id = #{id} AND status = 'RUNNING'")
+    int cancel(@Param("id") Long id);
+}
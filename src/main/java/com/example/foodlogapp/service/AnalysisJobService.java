@@ -0,0 +1,25 @@
+package com.example.foodlogapp.service;
+
+import com.example.foodlogapp.dto.AnalysisMode;
+import com.example.foodlogapp.entity.AnalysisJob;
+import com.example.foodlogapp.entity.FoodLog;
+
+import java.util.List;
+
+public interface AnalysisJobService {
+    AnalysisJob enqueue(Integer logId, String contentType, String notes, AnalysisMode mode);
+    // Creates the log and its job in one transaction: no log is left behind without a job (or the other way round)
+    AnalysisJob createAndEnqueue(FoodLog foodLog, String contentType, String notes, AnalysisMode mode);
+    AnalysisJob findByLogId(Integer logId);
+    // Claims the oldest available job for this node (lease = app.ai.analysis.queue.lease); null when the queue is empty
+    AnalysisJob claim(String owner);
+    boolean complete(AnalysisJob job, String owner);
+    boolean fail(AnalysisJob job, String owner, String error);
+    // The attempt could not start on this node (image spooled elsewhere): retried without using up an attempt
+    // until app.ai.analysis.queue.spool-wait after enqueueing, then failed like any attempt
+    boolean postpone(AnalysisJob job, String owner, String reason);
+    int renewLeases(String owner, List<Long> ids);
+    int releaseExpiredLeases();
+    long countByStatus(String status);
+    long oldestPendingAgeSeconds();
+}
@@ -0,0 +1,17 @@
+package com.example.foodlogapp.service;
+
+import com.example.foodlogapp.dto.AnalyticsStoreStats;
+import com.example.foodlogapp.dto.DailyKcal;
+import com.example.foodlogapp.dto.IngredientTotal;
+import com.example.foodlogapp.dto.MealStats;
+
+import java.util.List;
+
+public interface AnalyticsService {
+    // kcal of each of the last `days` days (today included) in the given time zone, oldest first, zero-filled
+    List<DailyKcal> kcalPerDay(Integer userId, int days, String timeZone);
+    // the period of the two below is the same `days` calendar days in the given time zone
+    List<IngredientTotal> topIngredientsByKcal(Integer userId, int limit, int days, String timeZone);
+    MealStats mealStats(Integer userId, int days, String timeZone);
+    AnalyticsStoreStats stats(Integer userId);
+}
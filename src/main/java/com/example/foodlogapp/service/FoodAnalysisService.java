@@ -0,0 +1,14 @@
+package com.example.foodlogapp.service;
+
+import com.example.foodlogapp.dto.AnalysisMode;
+import com.example.foodlogapp.dto.FoodAnalysisResult;
+import org.springframework.ai.content.Media;
+
+public interface FoodAnalysisService {
+    // Runs the analysis for an existing food_log row in the configured default mode
+    void analyze(Integer logId, Media image, String userNotes);
+    // TOOLS: ingredients/confidence are persisted by FoodTools; STRUCTURED: one model turn, persisted here
+    void analyze(Integer logId, Media image, String userNotes, AnalysisMode mode);
+    // Structured analysis through the model tiers without persisting anything; null when no tier gave a usable result
+    FoodAnalysisResult infer(Media image, String userNotes);
+}
@@ -1,13 +1,32 @@
 package com.example.foodlogapp.service;
 
+import com.example.foodlogapp.dto.NutritionRow;
 import com.example.foodlogapp.entity.FoodIngredient;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface FoodIngredientService {
     FoodIngredient findById(Integer id);
     List<FoodIngredient> findByLogId(Integer logId);
+    // Ingredients of the given logs in one query, by log id (logs without ingredients are absent)
+    Map<Integer, List<FoodIngredient>> findByLogIds(Collection<Integer> logIds);
     int create(FoodIngredient foodIngredient);
+    // Inserts all ingredients of one log and updates the log's totals in a single transaction
+    int createAll(Integer logId, List<FoodIngredient> ingredients);
+    // Same as createAll, but a no-op (returns 0) when the log already has ingredients; -1 if the log does not exist
+    int createAllIfAbsent(Integer logId, List<FoodIngredient> ingredients);
+    // Tool write of an analysis attempt (see AnalysisFence); AnalysisFence.REJECTED when the attempt was fenced off
+    int createAllIfAbsent(Integer logId, List<FoodIngredient> ingredients, String attemptToken);
+    // createAllIfAbsent for many logs in one transaction with multi-row INSERTs; logs whose fence rejects the
+    // attempt token are skipped. Returns the number of rows inserted
+    int createAllIfAbsent(Map<Integer, List<FoodIngredient>> ingredientsByLog, Map<Integer, String> attemptTokens);
     int update(FoodIngredient foodIngredient);
     int delete(Integer id);
     int deleteByLogId(Integer logId);
+    // Every ingredient row of the user with its log's creation time, streamed in log order
+    void streamNutritionByUserId(Integer userId, Consumer<NutritionRow> sink);
+    // Rows of one log of the user (read from the primary: called right after the log changed)
+    List<NutritionRow> findNutritionByLogId(Integer userId, Integer logId);
 }
@@ -1,12 +1,55 @@
 package com.example.foodlogapp.service;
 
+import com.example.foodlogapp.dto.ImportedLog;
+import com.example.foodlogapp.dto.LogExportRow;
+import com.example.foodlogapp.dto.LogFields;
+import com.example.foodlogapp.entity.FoodIngredient;
 import com.example.foodlogapp.entity.FoodLog;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface FoodLogService {
     FoodLog findById(Integer id);
     List<FoodLog> findByUserId(Integer userId);
+    List<FoodLog> findByUserId(Integer userId, LogFields fields);
+    // The user's logs among the given ids (in no particular order), with the user set
+    List<FoodLog> findByUserIdAndIds(Integer userId, Collection<Integer> ids);
+    // Streams every log x ingredient row of the user to the sink without materializing the history
+    void exportByUserId(Integer userId, Consumer<LogExportRow> sink);
     int create(FoodLog foodLog);
+    // Inserts a chunk of imported logs with their ingredients for the user in one transaction; returns ingredient count
+    int importLogs(Integer userId, List<ImportedLog> logs);
     int update(FoodLog foodLog);
+    int updateConfidence(Integer id, Integer confidence);
+    // Tool write of an analysis attempt (see AnalysisFence); AnalysisFence.REJECTED when the attempt was fenced off
+    int updateConfidence(Integer id, Integer confidence, String attemptToken);
+    // Opens a new analysis generation on the log (writes of earlier ones are rejected); null if the log does not exist
+    String openAnalysis(Integer id);
+    // openAnalysis plus clearing the previous pass's ingredients and confidence, in one transaction (escalation)
+    String reopenAnalysis(Integer id);
+    // Ends the generation: tool writes still in flight are rejected
+    void closeAnalysis(Integer id, String generation);
+    // Fence check and claim for a deferred tool write or a winning attempt: ingredient count, -1 if the log does not
+    // exist, or REJECTED
+    int claimAnalysis(Integer id, String attemptToken);
+    // Persists a complete analysis (ingredients + confidence) in one transaction; returns inserted ingredient count
+    int recordAnalysis(Integer id, List<FoodIngredient> ingredients, Integer confidence);
+    // Replaces all ingredients and the confidence of a log in one transaction; -1 if the log does not exist
+    int replaceAnalysis(Integer id, List<FoodIngredient> ingredients, Integer confidence);
     int delete(Integer id);
+
+    // Consistency check of the denormalized totals
+    Integer findMaxId();
+    List<Integer> findTotalsDrift(Integer afterId, Integer untilId);
+    List<FoodLog> findPage(Integer afterId, Integer untilId, Integer userId, int limit);
+    int countUpTo(Integer untilId, Integer userId);
+    List<Integer> findStaleEmptyIds(long graceSeconds, Integer afterId, int limit);
+    // Deletes the log only if it still has no ingredients and confidence 0
+    int deleteIfEmpty(Integer id);
+    // The subset of the given image paths that some log still references
+    List<String> findExistingImagePaths(List<String> paths);
+    // Points every log using oldPath at newPath (a spooled image after its upload); returns the logs updated
+    int replaceImagePath(String oldPath, String newPath);
+    int recomputeTotals(Integer id);
 }
@@ -0,0 +1,12 @@
+package com.example.foodlogapp.service;
+
+import com.example.foodlogapp.dto.ImportReport;
+import com.example.foodlogapp.utils.LogExportWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface LogImportService {
+    // Streams a CSV / NDJSON file (export layout) into the user's history; bad rows are reported, not fatal
+    ImportReport importLogs(Integer userId, InputStream in, LogExportWriter.Format format) throws IOException;
+}
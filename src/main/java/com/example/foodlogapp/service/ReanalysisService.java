@@ -0,0 +1,19 @@
+package com.example.foodlogapp.service;
+
+import com.example.foodlogapp.entity.ReanalysisRun;
+
+import java.util.List;
+
+public interface ReanalysisService {
+    // Starts a run over every log that exists now (optionally of one user); any node with a free runner picks it up
+    ReanalysisRun start(Integer userId, Integer parallelism, Double ratePerSecond, Integer batchSize);
+    ReanalysisRun findById(Long id);
+    List<ReanalysisRun> findRecent(int limit);
+    boolean cancel(Long id);
+    // Takes over a RUNNING run whose lease is free (new or abandoned by a dead node); null when there is none
+    ReanalysisRun claim(String owner);
+    boolean renewLease(ReanalysisRun run, String owner);
+    boolean checkpoint(ReanalysisRun run, String owner, Integer lastLogId, int succeeded, int failed,
+                       double logsPerSecond, String lastError);
+    boolean complete(ReanalysisRun run, String owner);
+}
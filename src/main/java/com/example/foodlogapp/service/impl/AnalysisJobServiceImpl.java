@@ -0,0 +1,118 @@
+package com.example.foodlogapp.service.impl;
+
+import com.example.foodlogapp.config.AnalysisProperties;
+import com.example.foodlogapp.config.InvalidParameterException;
+import com.example.foodlogapp.dto.AnalysisMode;
+import com.example.foodlogapp.entity.AnalysisJob;
+import com.example.foodlogapp.entity.FoodLog;
+import com.example.foodlogapp.mapper.AnalysisJobMapper;
+import com.example.foodlogapp.service.AnalysisJobService;
+import com.example.foodlogapp.service.FoodLogService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Service
+public class AnalysisJobServiceImpl implements AnalysisJobService {
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    @Autowired
+    private AnalysisJobMapper analysisJobMapper;
+    @Autowired
+    private AnalysisProperties analysisProperties;
+    @Autowired
+    private FoodLogService foodLogService;
+
+    @Override
+    public AnalysisJob enqueue(Integer logId, String contentType, String notes, AnalysisMode mode) {
+        if (notes != null && notes.length() > AnalysisJob.MAX_NOTES_LENGTH) {
+            throw new InvalidParameterException("notes must be at most " + AnalysisJob.MAX_NOTES_LENGTH + " characters");
+        }
+        AnalysisJob job = new AnalysisJob();
+        job.setLogId(logId);
+        job.setContentType(contentType);
+        job.setNotes(notes);
+        job.setMode(mode.name());
+        job.setStatus(AnalysisJob.PENDING);
+        job.setAttempts(0);
+        analysisJobMapper.insert(job);
+        return job;
+    }
+
+    @Override
+    @Transactional
+    public AnalysisJob createAndEnqueue(FoodLog foodLog, String contentType, String notes, AnalysisMode mode) {
+        if (foodLogService.create(foodLog) <= 0 || foodLog.getId() == null) {
+            throw new IllegalStateException("Failed to create food log entry in database.");
+        }
+        return enqueue(foodLog.getId(), contentType, notes, mode);
+    }
+
+    @Override
+    public AnalysisJob findByLogId(Integer logId) {
+        return analysisJobMapper.findByLogId(logId);
+    }
+
+    @Override
+    @Transactional
+    public AnalysisJob claim(String owner) {
+        // the row lock is held only for this short transaction; the lease protects the job afterwards
+        List<Long> ids = analysisJobMapper.lockClaimable(1);
+        if (ids.isEmpty()) {
+            return null;
+        }
+        Long id = ids.get(0);
+        analysisJobMapper.markRunning(id, owner, queue().getLease().toMillis());
+        return analysisJobMapper.findById(id);
+    }
+
+    @Override
+    public boolean complete(AnalysisJob job, String owner) {
+        return analysisJobMapper.complete(job.getId(), owner) > 0;
+    }
+
+    @Override
+    public boolean fail(AnalysisJob job, String owner, String error) {
+        String message = error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+        // linear backoff: retry-delay, 2 x retry-delay, ...
+        long delayMs = queue().getRetryDelay().toMillis() * Math.max(1, job.getAttempts());
+        return analysisJobMapper.fail(job.getId(), owner, message, queue().getMaxAttempts(), delayMs) > 0;
+    }
+
+    @Override
+    public boolean postpone(AnalysisJob job, String owner, String reason) {
+        if (analysisJobMapper.postpone(job.getId(), owner, reason, queue().getRetryDelay().toMillis(),
+                queue().getSpoolWait().toMillis()) > 0) {
+            return true;
+        }
+        // waited long enough (or the lease is gone, which fail() also notices)
+        return fail(job, owner, reason);
+    }
+
+    @Override
+    public int renewLeases(String owner, List<Long> ids) {
+        if (ids.isEmpty()) return 0;
+        return analysisJobMapper.renewLeases(owner, ids, queue().getLease().toMillis());
+    }
+
+    @Override
+    public int releaseExpiredLeases() {
+        return analysisJobMapper.releaseExpiredLeases(queue().getMaxAttempts());
+    }
+
+    @Override
+    public long countByStatus(String status) {
+        return analysisJobMapper.countByStatus(status);
+    }
+
+    @Override
+    public long oldestPendingAgeSeconds() {
+        return analysisJobMapper.oldestPendingAgeSeconds();
+    }
+
+    private AnalysisProperties.Queue queue() {
+        return analysisProperties.getQueue();
+    }
+}
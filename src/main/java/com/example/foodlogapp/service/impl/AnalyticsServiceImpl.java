@@ -0,0 +1,116 @@
+package com.example.foodlogapp.service.impl;
+
+import com.example.foodlogapp.config.InvalidParameterException;
+import com.example.foodlogapp.dto.AnalyticsStoreStats;
+import com.example.foodlogapp.dto.DailyKcal;
+import com.example.foodlogapp.dto.IngredientTotal;
+import com.example.foodlogapp.dto.MealStats;
+import com.example.foodlogapp.service.AnalyticsService;
+import com.example.foodlogapp.utils.NutritionAnalyticsStore;
+import com.example.foodlogapp.utils.UserNutritionColumns;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+@Service
+public class AnalyticsServiceImpl implements AnalyticsService {
+    private static final int MAX_DAYS = 3660;
+
+    @Autowired
+    private NutritionAnalyticsStore store;
+
+    @Override
+    public List<DailyKcal> kcalPerDay(Integer userId, int days, String timeZone) {
+        checkDays(days);
+        ZoneId zone = zone(timeZone);
+        LocalDate first = LocalDate.now(zone).minusDays(days - 1L);
+        long[] bucketStarts = dayStarts(first, days, zone);
+        long[] sums = store.query(userId, columns -> columns.sumKcalByBucket(bucketStarts));
+        List<DailyKcal> result = new ArrayList<>(days);
+        for (int i = 0; i < days; i++) {
+            result.add(new DailyKcal(first.plusDays(i), sums[i]));
+        }
+        return result;
+    }
+
+    @Override
+    public List<IngredientTotal> topIngredientsByKcal(Integer userId, int limit, int days, String timeZone) {
+        checkDays(days);
+        if (limit < 1 || limit > 100) {
+            throw new InvalidParameterException("limit must be between 1 and 100");
+        }
+        ZoneId zone = zone(timeZone);
+        long from = since(LocalDate.now(zone), days, zone);
+        List<UserNutritionColumns.IngredientSum> sums = store.query(userId, columns -> columns.topIngredientsByKcal(from, limit));
+        List<IngredientTotal> result = new ArrayList<>(sums.size());
+        for (UserNutritionColumns.IngredientSum sum : sums) {
+            result.add(new IngredientTotal(sum.name(), sum.kcal(), BigDecimal.valueOf(sum.weightCenti(), 2), sum.count()));
+        }
+        return result;
+    }
+
+    @Override
+    public MealStats mealStats(Integer userId, int days, String timeZone) {
+        checkDays(days);
+        ZoneId zone = zone(timeZone);
+        long from = since(LocalDate.now(zone), days, zone);
+        UserNutritionColumns.MealSums sums = store.query(userId, columns -> columns.mealSums(from));
+        MealStats stats = new MealStats();
+        stats.setDays(days);
+        stats.setMeals(sums.meals());
+        if (sums.meals() > 0) {
+            stats.setAverageKcal(BigDecimal.valueOf(sums.kcal()).divide(BigDecimal.valueOf(sums.meals()), 1, RoundingMode.HALF_UP));
+            stats.setAverageWeight(BigDecimal.valueOf(sums.weightCenti(), 2).divide(BigDecimal.valueOf(sums.meals()), 2, RoundingMode.HALF_UP));
+        }
+        return stats;
+    }
+
+    @Override
+    public AnalyticsStoreStats stats(Integer userId) {
+        AnalyticsStoreStats stats = new AnalyticsStoreStats();
+        stats.setUsers(store.getUserCount());
+        stats.setBytes(store.getTotalBytes());
+        stats.setMaxBytes(store.getMaxBytes());
+        if (userId != null) {
+            stats.setUserBytes(store.bytesOf(userId));
+        }
+        return stats;
+    }
+
+    // start of the period: local midnight `days - 1` days before today, i.e. `days` calendar days including today
+    static long since(LocalDate today, int days, ZoneId zone) {
+        return today.minusDays(days - 1L).atStartOfDay(zone).toEpochSecond();
+    }
+
+    // epoch second each of the `days` days starting at `first` begins at, plus the end of the last one; a day is
+    // 23 or 25 hours long across a DST change
+    static long[] dayStarts(LocalDate first, int days, ZoneId zone) {
+        long[] starts = new long[days + 1];
+        for (int i = 0; i <= days; i++) {
+            starts[i] = first.plusDays(i).atStartOfDay(zone).toEpochSecond();
+        }
+        return starts;
+    }
+
+    private static void checkDays(int days) {
+        if (days < 1 || days > MAX_DAYS) {
+            throw new InvalidParameterException("days must be between 1 and " + MAX_DAYS);
+        }
+    }
+
+    private static ZoneId zone(String timeZone) {
+        try {
+            return timeZone == null || timeZone.isBlank() ? ZoneOffset.UTC : ZoneId.of(timeZone);
+        } catch (DateTimeException e) {
+            throw new InvalidParameterException("Unknown time zone: " + timeZone);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.foodlogapp.service.impl;
+
+import com.example.foodlogapp.config.AnalysisProperties;
+import com.example.foodlogapp.config.ModelRouter;
+import com.example.foodlogapp.config.ModelTier;
+import com.example.foodlogapp.dto.AnalysisMode;
+import com.example.foodlogapp.dto.FoodAnalysisResult;
+import com.example.foodlogapp.entity.FoodLog;
+import com.example.foodlogapp.job.IngredientWriteBehind;
+import com.example.foodlogapp.service.FoodAnalysisService;
+import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.utils.AnalysisFence;
+import com.example.foodlogapp.utils.HedgedModelCaller;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ResponseEntity;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.content.Media;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Image analysis in two modes (see AnalysisMode). Both go through the model tiers and the hedged caller;
+ * latency and total tokens per analysis are recorded as food.analysis.latency{mode} and
+ * food.analysis.tokens{mode} so the two modes can be compared on real traffic.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FoodAnalysisServiceImpl implements FoodAnalysisService {
+
+    // 分级模型路由：先用快速模型，置信度不足或工具调用失败时才升级
+    private final ModelRouter modelRouter;
+
+    // per-attempt deadline + optional hedged second attempt
+    private final HedgedModelCaller hedgedModelCaller;
+
+    private final FoodLogService foodLogService;
+    // write-behind mode: the tool's ingredients may still be on their way to MySQL
+    private final IngredientWriteBehind ingredientWriteBehind;
+    private final AnalysisProperties analysisProperties;
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    public void analyze(Integer logId, Media image, String userNotes) {
+        analyze(logId, image, userNotes, analysisProperties.getMode());
+    }
+
+    @Override
+    public void analyze(Integer logId, Media image, String userNotes, AnalysisMode mode) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            if (mode == AnalysisMode.STRUCTURED) {
+                analyzeStructured(logId, image, userNotes);
+            } else {
+                analyzeWithTools(logId, image, userNotes);
+            }
+        } finally {
+            sample.stop(meterRegistry.timer("food.analysis.latency", "mode", mode.name().toLowerCase()));
+        }
+    }
+
+    private void analyzeWithTools(Integer logId, Media image, String userNotes) {
+        String prompt = buildToolsPrompt(logId, userNotes);
+        List<ModelTier> tiers = modelRouter.getTiers();
+        // tool writes are fenced per tier pass and per attempt: late writes of a cancelled / losing attempt
+        // or of the previous tier are rejected under the log's row lock (see AnalysisFence)
+        String generation = foodLogService.openAnalysis(logId);
+        if (generation == null) {
+            log.warn("Skipping analysis of logId {}: the log does not exist", logId);
+            return;
+        }
+        try {
+            for (int i = 0; i < tiers.size(); i++) {
+                ModelTier tier = tiers.get(i);
+                String tierGeneration = generation;
+                RuntimeException failure = null;
+                try {
+                    // 忽略自然语言内容；结果由工具写入数据库
+                    ToolsAttempt attempt = hedgedModelCaller.call(() -> {
+                        // every attempt (primary, hedge, retry) gets its own token
+                        String token = AnalysisFence.attemptToken(tierGeneration);
+                        return new ToolsAttempt(token, tier.getChatClient().prompt()
+                                .user(u -> u
+                                        .text(prompt)   // 包含logId的文本指令
+                                        .media(image)   // 图像
+                                )
+                                .toolContext(Map.of(AnalysisFence.TOOL_CONTEXT_KEY, token))
+                                .call() // .call() 会触发AI思考 -> 调用工具 -> AI再思考 -> 返回最终结果
+                                .chatResponse());
+                    // only the attempt holding the log may win: one whose tool writes were superseded would close
+                    // the pass on the holder's half-written result. Claiming also fences off the others
+                    }, done -> foodLogService.claimAnalysis(logId, done.token()) != AnalysisFence.REJECTED);
+                    recordTokens(AnalysisMode.TOOLS, attempt.response());
+                } catch (RuntimeException e) {
+                    if (modelRouter.isLast(i)) throw e;
+                    failure = e;
+                }
+
+                // 以数据库中工具写入的结果判断是否需要升级
+                if (!ingredientWriteBehind.awaitFlushed(logId)) {
+                    // judging now would see no ingredients and escalate; closing the pass (finally) fences the
+                    // late flush off, and the retry of this attempt starts over
+                    throw new IllegalStateException("Journaled ingredients of logId " + logId + " not flushed in time");
+                }
+                // nothing of this pass may change the result after it has been judged
+                foodLogService.closeAnalysis(logId, generation);
+                FoodLog result = foodLogService.findById(logId);
+                boolean toolFailed = failure != null || result == null
+                        || result.getIngredientCount() == null || result.getIngredientCount() == 0;
+                Integer confidence = result != null ? result.getConfidence() : null;
+                if (modelRouter.accepts(i, toolFailed, confidence)) {
+                    modelRouter.recordFinished(tier);
+                    return;
+                }
+
+                log.info("Escalating analysis of logId {} from tier '{}' (toolFailed={}, confidence={})",
+                        logId, tier.getName(), toolFailed, confidence);
+                modelRouter.recordEscalation(tier);
+                // 清掉上一级的结果（同一事务内开启新一轮隔离），否则下一级的 logFoodIngredients 会被当作重复写入而跳过
+                generation = foodLogService.reopenAnalysis(logId);
+                if (generation == null) {
+                    log.warn("LogId {} was deleted during its analysis", logId);
+                    return;
+                }
+            }
+        } finally {
+            if (generation != null) {
+                foodLogService.closeAnalysis(logId, generation);
+            }
+        }
+    }
+
+    private void analyzeStructured(Integer logId, Media image, String userNotes) {
+        FoodAnalysisResult result = infer(image, userNotes);
+        if (result == null) {
+            throw new IllegalStateException("Model returned no usable analysis for logId " + logId);
+        }
+        // 一次事务写入全部食材与置信度
+        foodLogService.recordAnalysis(logId, result.toEntities(logId), result.getConfidence());
+    }
+
+    @Override
+    public FoodAnalysisResult infer(Media image, String userNotes) {
+        String prompt = buildStructuredPrompt(userNotes);
+        List<ModelTier> tiers = modelRouter.getTiers();
+        for (int i = 0; i < tiers.size(); i++) {
+            ModelTier tier = tiers.get(i);
+            FoodAnalysisResult result = null;
+            try {
+                ResponseEntity<ChatResponse, FoodAnalysisResult> response = hedgedModelCaller.call(() ->
+                        tier.getStructuredChatClient().prompt()
+                                .user(u -> u.text(prompt).media(image))
+                                .call()
+                                .responseEntity(FoodAnalysisResult.class));
+                recordTokens(AnalysisMode.STRUCTURED, response.getResponse());
+                result = response.getEntity();
+            } catch (RuntimeException e) {
+                if (modelRouter.isLast(i)) throw e;
+                log.warn("Structured analysis failed on tier '{}': {}", tier.getName(), e.toString());
+            }
+
+            boolean invalid = result == null || result.getIngredients() == null || result.getIngredients().isEmpty()
+                    || result.getConfidence() == null || result.getConfidence() < 0 || result.getConfidence() > 100;
+            if (modelRouter.accepts(i, invalid, result != null ? result.getConfidence() : null)) {
+                if (invalid) return null;
+                modelRouter.recordFinished(tier);
+                return result;
+            }
+            log.info("Escalating structured analysis from tier '{}'", tier.getName());
+            modelRouter.recordEscalation(tier);
+        }
+        return null;
+    }
+
+    // a finished tool-mode attempt and the fence token its tool calls carried
+    private record ToolsAttempt(String token, ChatResponse response) {
+    }
+
+    private void recordTokens(AnalysisMode mode, ChatResponse response) {
+        if (response == null || response.getMetadata() == null || response.getMetadata().getUsage() == null) return;
+        Integer total = response.getMetadata().getUsage().getTotalTokens();
+        if (total != null) {
+            meterRegistry.summary("food.analysis.tokens", "mode", mode.name().toLowerCase()).record(total);
+        }
+    }
+
+    // 构建一个精确的提示，强制AI使用我们提供的logId
+    private String buildToolsPrompt(Integer logId, String userNotes) {
+        String basePrompt = String.format(
+                "Analyze the attached food image. Detect every single ingredient, its estimated calories (kcal), " +
+                        "and its estimated weight in grams. Use the 'logFoodIngredients' tool to save this data. " +
+                        "You MUST use the provided logId: %d." +
+                        "Then generate a confidence score (0-100) for your analysis using the tool.",
+                logId
+        );
+        return withNotes(basePrompt, userNotes);
+    }
+
+    private String buildStructuredPrompt(String userNotes) {
+        String basePrompt = "Analyze the attached food image. Detect every single ingredient, its estimated calories (kcal), " +
+                "and its estimated weight in grams, and give a confidence score (0-100) for your analysis.";
+        return withNotes(basePrompt, userNotes);
+    }
+
+    private static String withNotes(String basePrompt, String userNotes) {
+        return (userNotes != null && !userNotes.isBlank())
+                ? basePrompt + " Additional user notes: " + userNotes
+                : basePrompt;
+    }
+}
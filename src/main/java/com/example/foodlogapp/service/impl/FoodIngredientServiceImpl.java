@@ -1,51 +1,232 @@
 package com.example.foodlogapp.service.impl;
 
+import com.example.foodlogapp.dto.NutritionRow;
 import com.example.foodlogapp.entity.FoodIngredient;
+import com.example.foodlogapp.entity.FoodLog;
+import com.example.foodlogapp.event.LogChangeEvent;
 import com.example.foodlogapp.mapper.FoodIngredientMapper;
+import com.example.foodlogapp.mapper.FoodLogMapper;
 import com.example.foodlogapp.service.FoodIngredientService;
+import com.example.foodlogapp.utils.AnalysisFence;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
 
+/**
+ * Every write here also maintains food_log.total_kcal / total_weight / ingredient_count
+ * inside the same transaction, so list views can read totals from food_log alone.
+ */
 @Service
 @Transactional
 public class FoodIngredientServiceImpl implements FoodIngredientService {
+    // keeps single INSERT statements well below max_allowed_packet
+    private static final int INGREDIENT_ROWS_PER_STATEMENT = 1000;
+
     private final FoodIngredientMapper foodIngredientMapper;
+    private final FoodLogMapper foodLogMapper;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public FoodIngredientServiceImpl(FoodIngredientMapper foodIngredientMapper) {
+    public FoodIngredientServiceImpl(FoodIngredientMapper foodIngredientMapper, FoodLogMapper foodLogMapper,
+                                     ApplicationEventPublisher eventPublisher) {
         this.foodIngredientMapper = foodIngredientMapper;
+        this.foodLogMapper = foodLogMapper;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public FoodIngredient findById(Integer id) {
         return foodIngredientMapper.findById(id);
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<FoodIngredient> findByLogId(Integer logId) {
         return foodIngredientMapper.findByLogId(logId);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Integer, List<FoodIngredient>> findByLogIds(Collection<Integer> logIds) {
+        Map<Integer, List<FoodIngredient>> byLog = new HashMap<>();
+        if (logIds.isEmpty()) {
+            return byLog;
+        }
+        for (FoodIngredient ingredient : foodIngredientMapper.findByLogIds(logIds)) {
+            byLog.computeIfAbsent(ingredient.getLogId(), id -> new ArrayList<>()).add(ingredient);
+        }
+        return byLog;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamNutritionByUserId(Integer userId, Consumer<NutritionRow> sink) {
+        foodIngredientMapper.streamNutritionByUserId(userId, context -> sink.accept(context.getResultObject()));
+    }
+
+    @Override
+    public List<NutritionRow> findNutritionByLogId(Integer userId, Integer logId) {
+        return foodIngredientMapper.findNutritionByLogId(userId, logId);
+    }
+
     @Override
     public int create(FoodIngredient foodIngredient) {
-        return foodIngredientMapper.insert(foodIngredient);
+        int rows = foodIngredientMapper.insert(foodIngredient);
+        if (rows > 0) {
+            foodLogMapper.addTotals(foodIngredient.getLogId(), kcalOf(foodIngredient), weightOf(foodIngredient), 1);
+            publish(LogChangeEvent.Type.INGREDIENTS_ADDED, foodIngredient.getLogId());
+        }
+        return rows;
+    }
+
+    @Override
+    public int createAll(Integer logId, List<FoodIngredient> ingredients) {
+        int count = 0;
+        int kcal = 0;
+        BigDecimal weight = BigDecimal.ZERO;
+        for (FoodIngredient ingredient : ingredients) {
+            ingredient.setLogId(logId);
+            if (foodIngredientMapper.insert(ingredient) > 0) {
+                count++;
+                kcal += kcalOf(ingredient);
+                weight = weight.add(weightOf(ingredient));
+            }
+        }
+        if (count > 0) {
+            foodLogMapper.addTotals(logId, kcal, weight, count);
+            publish(LogChangeEvent.Type.INGREDIENTS_ADDED, logId);
+        }
+        return count;
+    }
+
+    @Override
+    public int createAllIfAbsent(Integer logId, List<FoodIngredient> ingredients) {
+        Integer existing = foodLogMapper.lockIngredientCount(logId);
+        if (existing == null) {
+            return -1;
+        }
+        if (existing > 0) {
+            return 0;
+        }
+        return createAll(logId, ingredients);
+    }
+
+    @Override
+    public int createAllIfAbsent(Integer logId, List<FoodIngredient> ingredients, String attemptToken) {
+        FoodLog log = foodLogMapper.lockForAnalysis(logId);
+        if (log == null) {
+            return -1;
+        }
+        if (!AnalysisFence.claim(foodLogMapper, log, attemptToken)) {
+            return AnalysisFence.REJECTED;
+        }
+        if (log.getIngredientCount() > 0) {
+            return 0;
+        }
+        return createAll(logId, ingredients);
+    }
+
+    @Override
+    public int createAllIfAbsent(Map<Integer, List<FoodIngredient>> ingredientsByLog, Map<Integer, String> attemptTokens) {
+        if (ingredientsByLog.isEmpty()) return 0;
+        List<FoodLog> logs = foodLogMapper.lockIngredientCounts(ingredientsByLog.keySet());
+        List<FoodLog> written = new ArrayList<>(logs.size());
+        List<FoodIngredient> rows = new ArrayList<>();
+        for (FoodLog log : logs) {
+            if (!AnalysisFence.claim(foodLogMapper, log, attemptTokens.get(log.getId()))) {
+                continue;
+            }
+            if (log.getIngredientCount() != null && log.getIngredientCount() > 0) {
+                continue;
+            }
+            List<FoodIngredient> ingredients = ingredientsByLog.get(log.getId());
+            if (ingredients == null || ingredients.isEmpty()) {
+                continue;
+            }
+            for (FoodIngredient ingredient : ingredients) {
+                ingredient.setLogId(log.getId());
+                rows.add(ingredient);
+            }
+            written.add(log);
+        }
+        int inserted = 0;
+        for (int from = 0; from < rows.size(); from += INGREDIENT_ROWS_PER_STATEMENT) {
+            int to = Math.min(from + INGREDIENT_ROWS_PER_STATEMENT, rows.size());
+            inserted += foodIngredientMapper.insertAll(rows.subList(from, to));
+        }
+        for (FoodLog log : written) {
+            int kcal = 0;
+            BigDecimal weight = BigDecimal.ZERO;
+            List<FoodIngredient> ingredients = ingredientsByLog.get(log.getId());
+            for (FoodIngredient ingredient : ingredients) {
+                kcal += kcalOf(ingredient);
+                weight = weight.add(weightOf(ingredient));
+            }
+            foodLogMapper.addTotals(log.getId(), kcal, weight, ingredients.size());
+            eventPublisher.publishEvent(new LogChangeEvent(LogChangeEvent.Type.INGREDIENTS_ADDED, log.getUserId(), log.getId()));
+        }
+        return inserted;
     }
 
     @Override
     public int update(FoodIngredient foodIngredient) {
-        return foodIngredientMapper.update(foodIngredient);
+        FoodIngredient existing = foodIngredientMapper.findById(foodIngredient.getId());
+        int rows = foodIngredientMapper.update(foodIngredient);
+        if (rows > 0) {
+            foodLogMapper.recomputeTotals(foodIngredient.getLogId());
+            publish(LogChangeEvent.Type.UPDATED, foodIngredient.getLogId());
+            if (existing != null && !Objects.equals(existing.getLogId(), foodIngredient.getLogId())) {
+                foodLogMapper.recomputeTotals(existing.getLogId());
+                publish(LogChangeEvent.Type.INGREDIENTS_REMOVED, existing.getLogId());
+            }
+        }
+        return rows;
     }
 
     @Override
     public int delete(Integer id) {
-        return foodIngredientMapper.delete(id);
+        FoodIngredient existing = foodIngredientMapper.findById(id);
+        int rows = foodIngredientMapper.delete(id);
+        if (rows > 0 && existing != null) {
+            foodLogMapper.addTotals(existing.getLogId(), -kcalOf(existing), weightOf(existing).negate(), -1);
+            publish(LogChangeEvent.Type.INGREDIENTS_REMOVED, existing.getLogId());
+        }
+        return rows;
     }
 
     @Override
     public int deleteByLogId(Integer logId) {
-        return foodIngredientMapper.deleteByLogId(logId);
+        int rows = foodIngredientMapper.deleteByLogId(logId);
+        foodLogMapper.resetTotals(logId);
+        if (rows > 0) {
+            publish(LogChangeEvent.Type.INGREDIENTS_REMOVED, logId);
+        }
+        return rows;
+    }
+
+    private void publish(LogChangeEvent.Type type, Integer logId) {
+        Integer userId = foodLogMapper.findUserIdById(logId);
+        if (userId != null) {
+            eventPublisher.publishEvent(new LogChangeEvent(type, userId, logId));
+        }
+    }
+
+    private static int kcalOf(FoodIngredient ingredient) {
+        return ingredient.getKcal() != null ? ingredient.getKcal() : 0;
+    }
+
+    private static BigDecimal weightOf(FoodIngredient ingredient) {
+        return ingredient.getWeight() != null ? ingredient.getWeight() : BigDecimal.ZERO;
     }
 }
@@ -1,40 +1,317 @@
 package com.example.foodlogapp.service.impl;
 
+import com.example.foodlogapp.dto.ImportedLog;
+import com.example.foodlogapp.dto.LogExportRow;
+import com.example.foodlogapp.dto.LogFields;
+import com.example.foodlogapp.entity.FoodIngredient;
 import com.example.foodlogapp.entity.FoodLog;
+import com.example.foodlogapp.entity.User;
+import com.example.foodlogapp.event.LogChangeEvent;
+import com.example.foodlogapp.mapper.FoodIngredientMapper;
 import com.example.foodlogapp.mapper.FoodLogMapper;
+import com.example.foodlogapp.mapper.UserMapper;
+import com.example.foodlogapp.service.FoodIngredientService;
 import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.utils.AnalysisFence;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Service
 public class FoodLogServiceImpl implements FoodLogService {
+    // keeps single INSERT statements well below max_allowed_packet
+    private static final int INGREDIENT_ROWS_PER_STATEMENT = 1000;
+
     @Autowired
     private FoodLogMapper foodLogMapper;
+    @Autowired
+    private FoodIngredientMapper foodIngredientMapper;
+    @Autowired
+    private UserMapper userMapper;
+    @Autowired
+    private FoodIngredientService foodIngredientService;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
     @Override
+    @Transactional(readOnly = true)
     public FoodLog findById(Integer id) {
         return foodLogMapper.findById(id);
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<FoodLog> findByUserId(Integer userId) {
         return foodLogMapper.findByUserId(userId);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<FoodLog> findByUserId(Integer userId, LogFields fields) {
+        if (fields.isFull()) {
+            return foodLogMapper.findByUserId(userId);
+        }
+        List<FoodLog> logs = foodLogMapper.findColumnsByUserId(userId, fields.columns());
+        if (fields.includes(LogFields.USER) && !logs.isEmpty()) {
+            // every log in the list belongs to the same user: one lookup instead of a nested select per row
+            User user = userMapper.findById(userId);
+            logs.forEach(log -> log.setUser(user));
+        }
+        return logs;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<FoodLog> findByUserIdAndIds(Integer userId, Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<FoodLog> logs = foodLogMapper.findByUserIdAndIds(userId, ids);
+        if (!logs.isEmpty()) {
+            User user = userMapper.findById(userId);
+            logs.forEach(log -> log.setUser(user));
+        }
+        return logs;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportByUserId(Integer userId, Consumer<LogExportRow> sink) {
+        foodLogMapper.exportByUserId(userId, context -> sink.accept(context.getResultObject()));
+    }
+
     @Override
     public int create(FoodLog foodLog) {
-        return foodLogMapper.insert(foodLog);
+        int rows = foodLogMapper.insert(foodLog);
+        if (rows > 0) {
+            publish(LogChangeEvent.Type.CREATED, foodLog.getUserId(), foodLog.getId());
+        }
+        return rows;
+    }
+
+    @Override
+    @Transactional
+    public int importLogs(Integer userId, List<ImportedLog> logs) {
+        List<FoodLog> rows = new ArrayList<>(logs.size());
+        for (ImportedLog imported : logs) {
+            FoodLog log = imported.getLog();
+            log.setId(null); // may be left over from a rolled back attempt
+            log.setUserId(userId);
+            int kcal = 0;
+            BigDecimal weight = BigDecimal.ZERO;
+            for (FoodIngredient ingredient : imported.getIngredients()) {
+                if (ingredient.getKcal() != null) kcal += ingredient.getKcal();
+                if (ingredient.getWeight() != null) weight = weight.add(ingredient.getWeight());
+            }
+            log.setTotalKcal(kcal);
+            log.setTotalWeight(weight);
+            log.setIngredientCount(imported.getIngredients().size());
+            rows.add(log);
+        }
+        if (rows.isEmpty()) return 0;
+        foodLogMapper.insertAll(rows);
+
+        List<FoodIngredient> ingredients = new ArrayList<>();
+        for (ImportedLog imported : logs) {
+            for (FoodIngredient ingredient : imported.getIngredients()) {
+                ingredient.setLogId(imported.getLog().getId());
+                ingredients.add(ingredient);
+            }
+        }
+        int inserted = 0;
+        for (int from = 0; from < ingredients.size(); from += INGREDIENT_ROWS_PER_STATEMENT) {
+            int to = Math.min(from + INGREDIENT_ROWS_PER_STATEMENT, ingredients.size());
+            inserted += foodIngredientMapper.insertAll(ingredients.subList(from, to));
+        }
+        // one event for the chunk instead of one per log: the caches reload the user once
+        publish(LogChangeEvent.Type.IMPORTED, userId, null);
+        return inserted;
     }
 
     @Override
     public int update(FoodLog foodLog) {
-        return foodLogMapper.update(foodLog);
+        Integer previousOwner = foodLogMapper.findUserIdById(foodLog.getId());
+        int rows = foodLogMapper.update(foodLog);
+        if (rows > 0) {
+            publish(LogChangeEvent.Type.UPDATED, foodLog.getUserId(), foodLog.getId());
+            if (previousOwner != null && !previousOwner.equals(foodLog.getUserId())) {
+                publish(LogChangeEvent.Type.DELETED, previousOwner, foodLog.getId());
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public int updateConfidence(Integer id, Integer confidence) {
+        int rows = foodLogMapper.updateConfidence(id, confidence);
+        if (rows > 0) {
+            publish(LogChangeEvent.Type.CONFIDENCE_SET, foodLogMapper.findUserIdById(id), id);
+        }
+        return rows;
+    }
+
+    @Override
+    @Transactional
+    public int updateConfidence(Integer id, Integer confidence, String attemptToken) {
+        FoodLog log = foodLogMapper.lockForAnalysis(id);
+        if (log == null) {
+            return 0;
+        }
+        if (!AnalysisFence.claim(foodLogMapper, log, attemptToken)) {
+            return AnalysisFence.REJECTED;
+        }
+        return updateConfidence(id, confidence);
+    }
+
+    @Override
+    @Transactional
+    public String openAnalysis(Integer id) {
+        if (foodLogMapper.lockForAnalysis(id) == null) {
+            return null;
+        }
+        String generation = AnalysisFence.newGeneration();
+        foodLogMapper.updateAnalysisFence(id, generation);
+        return generation;
+    }
+
+    @Override
+    @Transactional
+    public String reopenAnalysis(Integer id) {
+        // new generation first: from here on writes of the previous pass are rejected, so none can land after the delete
+        String generation = openAnalysis(id);
+        if (generation == null) {
+            return null;
+        }
+        foodIngredientService.deleteByLogId(id);
+        updateConfidence(id, 0);
+        return generation;
+    }
+
+    @Override
+    public void closeAnalysis(Integer id, String generation) {
+        foodLogMapper.closeAnalysisFence(id, generation);
+    }
+
+    @Override
+    @Transactional
+    public int claimAnalysis(Integer id, String attemptToken) {
+        FoodLog log = foodLogMapper.lockForAnalysis(id);
+        if (log == null) {
+            return -1;
+        }
+        if (!AnalysisFence.claim(foodLogMapper, log, attemptToken)) {
+            return AnalysisFence.REJECTED;
+        }
+        return log.getIngredientCount();
+    }
+
+    @Override
+    @Transactional
+    public int recordAnalysis(Integer id, List<FoodIngredient> ingredients, Integer confidence) {
+        int inserted = foodIngredientService.createAllIfAbsent(id, ingredients);
+        if (inserted < 0) {
+            throw new IllegalArgumentException("FoodLog not found for id: " + id);
+        }
+        updateConfidence(id, confidence);
+        return inserted;
+    }
+
+    @Override
+    @Transactional
+    public int replaceAnalysis(Integer id, List<FoodIngredient> ingredients, Integer confidence) {
+        // row lock first: concurrent writers of this log (tools, edits) wait until the replacement is complete
+        if (foodLogMapper.lockIngredientCount(id) == null) {
+            return -1;
+        }
+        foodIngredientService.deleteByLogId(id);
+        int inserted = foodIngredientService.createAll(id, ingredients);
+        updateConfidence(id, confidence);
+        return inserted;
     }
 
     @Override
     public int delete(Integer id) {
-        return foodLogMapper.delete(id);
+        Integer userId = foodLogMapper.findUserIdById(id);
+        int rows = foodLogMapper.delete(id);
+        if (rows > 0) {
+            publish(LogChangeEvent.Type.DELETED, userId, id);
+        }
+        return rows;
+    }
+
+    @Override
+    public Integer findMaxId() {
+        return foodLogMapper.findMaxId();
+    }
+
+    @Override
+    public List<Integer> findTotalsDrift(Integer afterId, Integer untilId) {
+        return foodLogMapper.findTotalsDrift(afterId, untilId);
+    }
+
+    @Override
+    public List<FoodLog> findPage(Integer afterId, Integer untilId, Integer userId, int limit) {
+        return foodLogMapper.findPage(afterId, untilId, userId, limit);
+    }
+
+    @Override
+    public int countUpTo(Integer untilId, Integer userId) {
+        return foodLogMapper.countUpTo(untilId, userId);
+    }
+
+    @Override
+    public List<Integer> findStaleEmptyIds(long graceSeconds, Integer afterId, int limit) {
+        return foodLogMapper.findStaleEmptyIds(graceSeconds, afterId, limit);
+    }
+
+    @Override
+    public int deleteIfEmpty(Integer id) {
+        Integer userId = foodLogMapper.findUserIdById(id);
+        int rows = foodLogMapper.deleteIfEmpty(id);
+        if (rows > 0) {
+            publish(LogChangeEvent.Type.DELETED, userId, id);
+        }
+        return rows;
+    }
+
+    @Override
+    public List<String> findExistingImagePaths(List<String> paths) {
+        if (paths.isEmpty()) return List.of();
+        return foodLogMapper.findExistingImagePaths(paths);
+    }
+
+    @Override
+    @Transactional
+    public int replaceImagePath(String oldPath, String newPath) {
+        List<FoodLog> owners = foodLogMapper.findOwnersByImagePath(oldPath);
+        int rows = foodLogMapper.replaceImagePath(oldPath, newPath);
+        if (rows > 0) {
+            for (FoodLog owner : owners) {
+                publish(LogChangeEvent.Type.UPDATED, owner.getUserId(), owner.getId());
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public int recomputeTotals(Integer id) {
+        int rows = foodLogMapper.recomputeTotals(id);
+        if (rows > 0) {
+            publish(LogChangeEvent.Type.UPDATED, foodLogMapper.findUserIdById(id), id);
+        }
+        return rows;
+    }
+
+    private void publish(LogChangeEvent.Type type, Integer userId, Integer logId) {
+        if (userId != null) {
+            eventPublisher.publishEvent(new LogChangeEvent(type, userId, logId));
+        }
     }
 }
@@ -0,0 +1,93 @@
+package com.example.foodlogapp.service.impl;
+
+import com.example.foodlogapp.config.InvalidParameterException;
+import com.example.foodlogapp.dto.ImportReport;
+import com.example.foodlogapp.dto.ImportedLog;
+import com.example.foodlogapp.mapper.UserMapper;
+import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.service.LogImportService;
+import com.example.foodlogapp.utils.LogExportWriter;
+import com.example.foodlogapp.utils.LogImportReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bulk import: the file is parsed as a stream and written in chunks of {@code app.import.chunk-size} logs,
+ * each chunk one transaction with multi-row INSERTs. If a chunk fails, its logs are retried one by one so
+ * a single bad log only costs itself; its rows are then reported as errors.
+ */
+@Slf4j
+@Service
+public class LogImportServiceImpl implements LogImportService {
+    @Autowired
+    private FoodLogService foodLogService;
+    @Autowired
+    private UserMapper userMapper;
+
+    @Value("${app.import.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${app.import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    @Override
+    public ImportReport importLogs(Integer userId, InputStream in, LogExportWriter.Format format) throws IOException {
+        if (userMapper.findById(userId) == null) {
+            throw new InvalidParameterException("User not found: " + userId);
+        }
+        ImportReport report = new ImportReport();
+        long start = System.nanoTime();
+        List<ImportedLog> chunk = new ArrayList<>(chunkSize);
+        new LogImportReader(in, format, report, maxReportedErrors).forEachLog(imported -> {
+            chunk.add(imported);
+            if (chunk.size() >= chunkSize) {
+                flush(userId, chunk, report);
+                chunk.clear();
+            }
+        });
+        flush(userId, chunk, report);
+        report.finish(System.nanoTime() - start);
+        log.info("Imported {} logs / {} ingredients for user {} ({} rows, {} failed, {} rows/s)",
+                report.getLogsImported(), report.getIngredientsImported(), userId,
+                report.getRowsRead(), report.getRowsFailed(), report.getRowsPerSecond());
+        return report;
+    }
+
+    private void flush(Integer userId, List<ImportedLog> chunk, ImportReport report) {
+        if (chunk.isEmpty()) return;
+        try {
+            int ingredients = foodLogService.importLogs(userId, chunk);
+            report.setLogsImported(report.getLogsImported() + chunk.size());
+            report.setIngredientsImported(report.getIngredientsImported() + ingredients);
+            return;
+        } catch (RuntimeException e) {
+            log.warn("Import chunk of {} logs for user {} failed, retrying one by one: {}", chunk.size(), userId, e.toString());
+        }
+        for (ImportedLog imported : chunk) {
+            try {
+                int ingredients = foodLogService.importLogs(userId, List.of(imported));
+                report.setLogsImported(report.getLogsImported() + 1);
+                report.setIngredientsImported(report.getIngredientsImported() + ingredients);
+            } catch (RuntimeException e) {
+                int rows = Math.max(1, imported.getIngredients().size());
+                report.setRowsFailed(report.getRowsFailed() + rows);
+                report.addError(imported.getLine(), imported.getSourceId(), "Insert failed: " + rootMessage(e), maxReportedErrors);
+            }
+        }
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getMessage() != null ? root.getMessage() : root.toString();
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.foodlogapp.service.impl;
+
+import com.example.foodlogapp.config.InvalidParameterException;
+import com.example.foodlogapp.entity.ReanalysisRun;
+import com.example.foodlogapp.mapper.ReanalysisRunMapper;
+import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.service.ReanalysisService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Service
+public class ReanalysisServiceImpl implements ReanalysisService {
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    @Autowired
+    private ReanalysisRunMapper reanalysisRunMapper;
+    @Autowired
+    private FoodLogService foodLogService;
+
+    @Value("${app.reanalysis.parallelism:4}")
+    private int defaultParallelism;
+    @Value("${app.reanalysis.max-parallelism:32}")
+    private int maxParallelism;
+    @Value("${app.reanalysis.rate-per-second:2}")
+    private double defaultRatePerSecond;
+    @Value("${app.reanalysis.batch-size:50}")
+    private int defaultBatchSize;
+    @Value("${app.reanalysis.lease-ms:120000}")
+    private long leaseMs;
+
+    @Override
+    public ReanalysisRun start(Integer userId, Integer parallelism, Double ratePerSecond, Integer batchSize) {
+        ReanalysisRun run = new ReanalysisRun();
+        run.setUserId(userId);
+        run.setParallelism(parallelism != null ? parallelism : defaultParallelism);
+        run.setRatePerSecond(ratePerSecond != null ? ratePerSecond : defaultRatePerSecond);
+        run.setBatchSize(batchSize != null ? batchSize : defaultBatchSize);
+        if (run.getParallelism() < 1 || run.getParallelism() > maxParallelism) {
+            throw new InvalidParameterException("parallelism must be between 1 and " + maxParallelism);
+        }
+        if (!(run.getRatePerSecond() > 0)) {
+            throw new InvalidParameterException("ratePerSecond must be positive");
+        }
+        if (run.getBatchSize() < 1 || run.getBatchSize() > 1000) {
+            throw new InvalidParameterException("batchSize must be between 1 and 1000");
+        }
+        // logs created after the start are analysed on upload anyway
+        Integer untilId = foodLogService.findMaxId();
+        run.setUntilLogId(untilId != null ? untilId : 0);
+        run.setTotal(foodLogService.countUpTo(run.getUntilLogId(), userId));
+        reanalysisRunMapper.insert(run);
+        return reanalysisRunMapper.findById(run.getId());
+    }
+
+    @Override
+    public ReanalysisRun findById(Long id) {
+        return reanalysisRunMapper.findById(id);
+    }
+
+    @Override
+    public List<ReanalysisRun> findRecent(int limit) {
+        return reanalysisRunMapper.findRecent(limit);
+    }
+
+    @Override
+    public boolean cancel(Long id) {
+        return reanalysisRunMapper.cancel(id) > 0;
+    }
+
+    @Override
+    @Transactional
+    public ReanalysisRun claim(String owner) {
+        Long id = reanalysisRunMapper.lockUnowned();
+        if (id == null) {
+            return null;
+        }
+        reanalysisRunMapper.takeLease(id, owner, leaseMs);
+        return reanalysisRunMapper.findById(id);
+    }
+
+    @Override
+    public boolean renewLease(ReanalysisRun run, String owner) {
+        return reanalysisRunMapper.renewLease(run.getId(), owner, leaseMs) > 0;
+    }
+
+    @Override
+    public boolean checkpoint(ReanalysisRun run, String owner, Integer lastLogId, int succeeded, int failed,
+                              double logsPerSecond, String lastError) {
+        String error = lastError != null && lastError.length() > MAX_ERROR_LENGTH
+                ? lastError.substring(0, MAX_ERROR_LENGTH) : lastError;
+        return reanalysisRunMapper.checkpoint(run.getId(), owner, lastLogId, succeeded + failed, succeeded, failed,
+                logsPerSecond, error, leaseMs) > 0;
+    }
+
+    @Override
+    public boolean complete(ReanalysisRun run, String owner) {
+        return reanalysisRunMapper.complete(run.getId(), owner) > 0;
+    }
+}
@@ -1,10 +1,13 @@
 package com.example.foodlogapp.service.impl;
 
 import com.example.foodlogapp.entity.User;
+import com.example.foodlogapp.event.LogChangeEvent;
 import com.example.foodlogapp.mapper.UserMapper;
 import com.example.foodlogapp.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -12,18 +15,23 @@ import java.util.List;
 public class UserServiceImpl implements UserService {
     @Autowired
     private UserMapper userMapper;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
     @Override
+    @Transactional(readOnly = true)
     public User findById(Integer id) {
         return userMapper.findById(id);
     }
 
     @Override
+    @Transactional(readOnly = true)
     public User findByEmail(String email) {
         return userMapper.findByEmail(email);
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<User> findAll() {
         return userMapper.findAll();
     }
@@ -35,11 +43,20 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public int update(User user) {
-        return userMapper.update(user);
+        int rows = userMapper.update(user);
+        if (rows > 0) {
+            // the user is embedded in the full log view
+            eventPublisher.publishEvent(new LogChangeEvent(LogChangeEvent.Type.USER_UPDATED, user.getId(), null));
+        }
+        return rows;
     }
 
     @Override
     public int delete(Integer id) {
-        return userMapper.delete(id);
+        int rows = userMapper.delete(id);
+        if (rows > 0) {
+            eventPublisher.publishEvent(new LogChangeEvent(LogChangeEvent.Type.USER_UPDATED, id, null));
+        }
+        return rows;
     }
 }
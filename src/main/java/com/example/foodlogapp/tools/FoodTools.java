@@ -2,14 +2,17 @@ package com.example.foodlogapp.tools;
 
 import com.example.foodlogapp.dto.IngredientLogEntry;
 import com.example.foodlogapp.entity.FoodIngredient;
-import com.example.foodlogapp.entity.FoodLog;
+import com.example.foodlogapp.job.IngredientWriteBehind;
+import com.example.foodlogapp.utils.AnalysisFence;
 import lombok.RequiredArgsConstructor;
+import org.springframework.ai.chat.model.ToolContext;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import com.example.foodlogapp.service.FoodIngredientService;
 import com.example.foodlogapp.service.FoodLogService;
 import org.springframework.stereotype.Component;
 
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @Component
@@ -18,6 +21,7 @@ public class FoodTools {
 
 private final FoodIngredientService foodIngredientService;
 private final FoodLogService foodLogService;
+private final IngredientWriteBehind ingredientWriteBehind;
 
     /**
      * AI Tool definition for logging ingredients.
@@ -30,8 +34,11 @@ private final FoodLogService foodLogService;
             Integer logId,
 
             @ToolParam(description = "A comprehensive list of all visually detected ingredients. Each ingredient must include its name, estimated calories (kcal), and estimated weight (e.g., in grams).")
-            List<IngredientLogEntry> ingredients
+            List<IngredientLogEntry> ingredients,
+
+            ToolContext toolContext
     ) {
+        String attemptToken = attemptToken(toolContext);
 
         if (logId == null) {
             System.err.println("AI attempted to log ingredients but provided a null logId.");
@@ -60,15 +67,49 @@ private final FoodLogService foodLogService;
                     })
                     .toList();
 
-            // 2. Perform inserts one-by-one using the existing service API
-            int successCount = 0;
-            for (FoodIngredient entity : entitiesToSave) {
-                int rows = foodIngredientService.create(entity);
-                if (rows > 0) {
-                    successCount++;
+            // 2a. Write-behind: acknowledge once the ingredients are in the local journal; the flusher
+            //     inserts them (and skips logs that no longer exist). Falls back to 2 if the journal fails.
+            if (ingredientWriteBehind.isEnabled()) {
+                // fence and existence check now, under the row lock; the flusher re-checks the token before
+                // inserting. Answers what the synchronous write would have answered
+                int existing = foodLogService.claimAnalysis(logId, attemptToken);
+                if (existing == AnalysisFence.REJECTED) {
+                    return superseded(logId);
+                }
+                if (existing < 0) {
+                    return "{\"status\": \"FAILED\", \"message\": \"FoodLog not found for id: " + logId + "\"}";
+                }
+                if (existing > 0) {
+                    System.out.println("Ingredients for logId " + logId + " were already logged, skipping.");
+                    return "{\"status\": \"SUCCESS\", \"count\": 0, \"logId\": " + logId + ", \"alreadyLogged\": true}";
+                }
+                try {
+                    if (!ingredientWriteBehind.append(logId, entitiesToSave, attemptToken)) {
+                        System.out.println("Ingredients for logId " + logId + " are already journaled, skipping.");
+                        return "{\"status\": \"SUCCESS\", \"count\": 0, \"logId\": " + logId + ", \"alreadyLogged\": true}";
+                    }
+                    System.out.println("Journaled " + entitiesToSave.size() + " ingredients for logId " + logId + ".");
+                    return "{\"status\": \"SUCCESS\", \"count\": " + entitiesToSave.size() + ", \"logId\": " + logId + "}";
+                } catch (UncheckedIOException e) {
+                    System.err.println("Ingredient journal unavailable, writing logId " + logId + " directly: " + e.getMessage());
                 }
             }
 
+            // 2. Insert all ingredients and update the log's totals in one transaction.
+            //    Idempotent per logId and fenced: only the attempt holding the log writes (see AnalysisFence).
+            int successCount = foodIngredientService.createAllIfAbsent(logId, entitiesToSave, attemptToken);
+            if (successCount == AnalysisFence.REJECTED) {
+                System.out.println("Ignoring ingredients of a superseded attempt for logId " + logId + ".");
+                return superseded(logId);
+            }
+            if (successCount < 0) {
+                return "{\"status\": \"FAILED\", \"message\": \"FoodLog not found for id: " + logId + "\"}";
+            }
+            if (successCount == 0) {
+                System.out.println("Ingredients for logId " + logId + " were already logged, skipping.");
+                return "{\"status\": \"SUCCESS\", \"count\": 0, \"logId\": " + logId + ", \"alreadyLogged\": true}";
+            }
+
             String successMessage = "Successfully logged " + successCount + " ingredients for logId " + logId + ".";
             System.out.println(successMessage);
 
@@ -90,7 +131,8 @@ private final FoodLogService foodLogService;
     @Tool(description = "Sets the analysis confidence score (0-100) for a specific food log entry. Always pass the exact logId provided by the user.")
     public String setAnalysisConfidence(
             @ToolParam(description = "The unique identifier (ID) of the food log entry to update.") Integer logId,
-            @ToolParam(description = "An integer confidence score from 0 to 100 representing how confident you are in your analysis.") Integer confidence
+            @ToolParam(description = "An integer confidence score from 0 to 100 representing how confident you are in your analysis.") Integer confidence,
+            ToolContext toolContext
     ) {
         if (logId == null) {
             return "{\"status\": \"FAILED\", \"message\": \"logId is required.\"}";
@@ -103,14 +145,12 @@ private final FoodLogService foodLogService;
         }
 
         try {
-            FoodLog log = foodLogService.findById(logId);
-            if (log == null) {
-                return "{\"status\": \"FAILED\", \"message\": \"FoodLog not found for id: " + logId + "\"}";
+            int rows = foodLogService.updateConfidence(logId, confidence, attemptToken(toolContext));
+            if (rows == AnalysisFence.REJECTED) {
+                return superseded(logId);
             }
-            log.setConfidence(confidence);
-            int rows = foodLogService.update(log);
             if (rows <= 0) {
-                return "{\"status\": \"FAILED\", \"message\": \"Update failed for logId: " + logId + "\"}";
+                return "{\"status\": \"FAILED\", \"message\": \"FoodLog not found for id: " + logId + "\"}";
             }
             return "{\"status\": \"SUCCESS\", \"logId\": " + logId + ", \"confidence\": " + confidence + "}";
         } catch (Exception e) {
@@ -120,4 +160,16 @@ private final FoodLogService foodLogService;
         }
     }
 
+    // Answer to an attempt that lost its log to another one (hedge winner, next tier) or was cancelled
+    private static String superseded(Integer logId) {
+        return "{\"status\": \"FAILED\", \"message\": \"This analysis attempt for logId " + logId
+                + " was superseded by another one. Do not retry; finish your answer.\"}";
+    }
+
+    // The analysis attempt the model call belongs to (see AnalysisFence); null outside an analysis
+    private static String attemptToken(ToolContext toolContext) {
+        if (toolContext == null || toolContext.getContext() == null) return null;
+        Object token = toolContext.getContext().get(AnalysisFence.TOOL_CONTEXT_KEY);
+        return token instanceof String ? (String) token : null;
+    }
 }
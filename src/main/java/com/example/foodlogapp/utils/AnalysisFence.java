@@ -0,0 +1,67 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.entity.FoodLog;
+import com.example.foodlogapp.mapper.FoodLogMapper;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Fencing for the tool writes of an analysis (food_log.analysis_fence). Cancelling a hedged or timed-out model
+ * attempt only interrupts its thread; the HTTP call may still return and run its tool calls afterwards.
+ *
+ * Every pass over a model tier opens a new generation on the log; every attempt of that pass (primary, hedge,
+ * retry) carries its own token {@code generation:attempt} in the tool context. Under the log's row lock the first
+ * attempt to write claims the log, so ingredients and confidence always come from the same attempt; writes of other
+ * attempts are rejected. Closing the generation when the pass ends (or opening the next one on escalation) rejects
+ * everything still in flight. Tool calls without a token are only accepted while no analysis is running.
+ */
+public final class AnalysisFence {
+
+    // key of the attempt token in the ChatClient tool context
+    public static final String TOOL_CONTEXT_KEY = "analysisAttempt";
+    // returned by the fenced writes instead of a row count when the attempt no longer holds the log
+    public static final int REJECTED = -2;
+
+    private AnalysisFence() {
+    }
+
+    public static String newGeneration() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    public static String attemptToken(String generation) {
+        return generation + ":" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * @param fence the log's analysis_fence: null, an open generation, or the token of the attempt holding it
+     * @param token the writing attempt's token, null for a write outside an analysis
+     */
+    public static boolean admits(String fence, String token) {
+        if (token == null) {
+            return fence == null;
+        }
+        if (fence == null) {
+            return false;
+        }
+        int separator = token.indexOf(':');
+        String generation = separator < 0 ? token : token.substring(0, separator);
+        return fence.equals(generation) || fence.equals(token);
+    }
+
+    /**
+     * Decides a tool write on a log locked with {@link FoodLogMapper#lockForAnalysis} and, when admitted,
+     * claims the log for the writing attempt.
+     */
+    public static boolean claim(FoodLogMapper foodLogMapper, FoodLog locked, String token) {
+        if (!admits(locked.getAnalysisFence(), token)) {
+            return false;
+        }
+        if (token != null && !token.equals(locked.getAnalysisFence())) {
+            foodLogMapper.updateAnalysisFence(locked.getId(), token);
+            locked.setAnalysisFence(token);
+        }
+        return true;
+    }
+}
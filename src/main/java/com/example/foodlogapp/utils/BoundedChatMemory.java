@@ -0,0 +1,203 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.config.ChatProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chat memory for /ai/chat keyed by chatId, bounded three ways:
+ * - per conversation: oldest messages are trimmed once the approximate token window is exceeded;
+ * - globally: when the byte budget is exceeded, least recently used conversations are evicted;
+ * - in time: conversations idle longer than the TTL are dropped.
+ *
+ * Messages are kept as one byte[] each (a type byte + UTF-8 text) instead of retained Message objects;
+ * Message instances are rebuilt on read. Only text is kept (media/tool metadata is not used by the chat client).
+ *
+ * Metrics: chat.memory.bytes, chat.memory.conversations, chat.memory.evictions{reason=budget|idle}.
+ */
+@Slf4j
+@Component
+public class BoundedChatMemory implements ChatMemory {
+
+    // rough per-entry JVM overhead (array header + deque slot), counted so the budget tracks real heap use
+    private static final int MESSAGE_OVERHEAD = 24;
+    private static final int CONVERSATION_OVERHEAD = 96;
+
+    private static final byte USER = 0;
+    private static final byte ASSISTANT = 1;
+    private static final byte SYSTEM = 2;
+
+    private final ChatProperties.Memory properties;
+    private final LinkedHashMap<String, Conversation> conversations = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+
+    private final Counter budgetEvictions;
+    private final Counter idleEvictions;
+
+    public BoundedChatMemory(ChatProperties chatProperties, MeterRegistry meterRegistry) {
+        this.properties = chatProperties.getMemory();
+        this.budgetEvictions = meterRegistry.counter("chat.memory.evictions", "reason", "budget");
+        this.idleEvictions = meterRegistry.counter("chat.memory.evictions", "reason", "idle");
+        meterRegistry.gauge("chat.memory.bytes", this, BoundedChatMemory::usedBytes);
+        meterRegistry.gauge("chat.memory.conversations", this, BoundedChatMemory::conversationCount);
+    }
+
+    @Override
+    public synchronized void add(String conversationId, List<Message> messages) {
+        Conversation conversation = conversations.computeIfAbsent(conversationId, id -> {
+            totalBytes += CONVERSATION_OVERHEAD + id.length() * 2L;
+            return new Conversation();
+        });
+        for (Message message : messages) {
+            byte[] encoded = encode(message);
+            if (encoded == null) continue;
+            conversation.messages.addLast(encoded);
+            conversation.tokens += estimateTokens(encoded);
+            totalBytes += encoded.length + MESSAGE_OVERHEAD;
+        }
+        // keep at least the newest message even if it alone exceeds the window
+        while (conversation.tokens > properties.getMaxTokensPerConversation() && conversation.messages.size() > 1) {
+            byte[] removed = conversation.messages.removeFirst();
+            conversation.tokens -= estimateTokens(removed);
+            totalBytes -= removed.length + MESSAGE_OVERHEAD;
+        }
+        conversation.lastAccess = System.currentTimeMillis();
+        evictOverBudget(conversationId);
+    }
+
+    @Override
+    public synchronized List<Message> get(String conversationId) {
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation == null) return List.of();
+        if (isIdle(conversation, System.currentTimeMillis())) {
+            remove(conversationId);
+            idleEvictions.increment();
+            return List.of();
+        }
+        conversation.lastAccess = System.currentTimeMillis();
+        List<Message> result = new ArrayList<>(conversation.messages.size());
+        for (byte[] encoded : conversation.messages) {
+            result.add(decode(encoded));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void clear(String conversationId) {
+        remove(conversationId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.ai.chat.memory.sweep-interval-ms:60000}")
+    public synchronized void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Conversation>> it = conversations.entrySet().iterator();
+        int evicted = 0;
+        while (it.hasNext()) {
+            Map.Entry<String, Conversation> entry = it.next();
+            if (isIdle(entry.getValue(), now)) {
+                totalBytes -= sizeOf(entry.getKey(), entry.getValue());
+                it.remove();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            idleEvictions.increment(evicted);
+            log.debug("Evicted {} idle chat conversations", evicted);
+        }
+    }
+
+    public synchronized long usedBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int conversationCount() {
+        return conversations.size();
+    }
+
+    private void evictOverBudget(String keep) {
+        Iterator<Map.Entry<String, Conversation>> it = conversations.entrySet().iterator();
+        // access order: eldest (least recently used) first
+        while (totalBytes > properties.getMaxTotalBytes() && it.hasNext()) {
+            Map.Entry<String, Conversation> entry = it.next();
+            if (entry.getKey().equals(keep)) continue;
+            totalBytes -= sizeOf(entry.getKey(), entry.getValue());
+            it.remove();
+            budgetEvictions.increment();
+        }
+    }
+
+    private void remove(String conversationId) {
+        Conversation removed = conversations.remove(conversationId);
+        if (removed != null) {
+            totalBytes -= sizeOf(conversationId, removed);
+        }
+    }
+
+    private boolean isIdle(Conversation conversation, long now) {
+        return now - conversation.lastAccess > properties.getIdleTtl().toMillis();
+    }
+
+    private static long sizeOf(String conversationId, Conversation conversation) {
+        long bytes = CONVERSATION_OVERHEAD + conversationId.length() * 2L;
+        for (byte[] encoded : conversation.messages) {
+            bytes += encoded.length + MESSAGE_OVERHEAD;
+        }
+        return bytes;
+    }
+
+    // ~4 bytes of UTF-8 per token is close enough for trimming purposes
+    private static int estimateTokens(byte[] encoded) {
+        return Math.max(1, (encoded.length - 1 + 3) / 4);
+    }
+
+    private static byte[] encode(Message message) {
+        byte type;
+        if (message.getMessageType() == MessageType.USER) {
+            type = USER;
+        } else if (message.getMessageType() == MessageType.ASSISTANT) {
+            type = ASSISTANT;
+        } else if (message.getMessageType() == MessageType.SYSTEM) {
+            type = SYSTEM;
+        } else {
+            return null; // tool messages are not kept
+        }
+        String text = message.getText() != null ? message.getText() : "";
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = new byte[utf8.length + 1];
+        encoded[0] = type;
+        System.arraycopy(utf8, 0, encoded, 1, utf8.length);
+        return encoded;
+    }
+
+    private static Message decode(byte[] encoded) {
+        String text = new String(encoded, 1, encoded.length - 1, StandardCharsets.UTF_8);
+        return switch (encoded[0]) {
+            case ASSISTANT -> new AssistantMessage(text);
+            case SYSTEM -> new SystemMessage(text);
+            default -> new UserMessage(text);
+        };
+    }
+
+    private static final class Conversation {
+        private final ArrayDeque<byte[]> messages = new ArrayDeque<>();
+        private int tokens;
+        private long lastAccess = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.config.ChatProperties;
+import com.example.foodlogapp.constants.SystemConstants;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Exact-prompt cache for the general chat. The key is a SHA-256 of the normalised prompt, the system prompt
+ * and the model options, so changing any of them never serves an old answer. Answers are stored as the
+ * streamed chunks and replayed as a Flux, so streaming clients see the same shape as a live response.
+ * Only complete streams are stored; errors and cancellations are not.
+ *
+ * Bounded by entry count, total bytes (LRU eviction) and TTL.
+ * Metrics: chat.cache.requests{result=hit|miss}, chat.cache.bytes, chat.cache.entries,
+ * chat.cache.latency.saved (original generation time of every answer served from the cache).
+ */
+@Component
+public class ChatResponseCache {
+
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final ChatProperties.Cache properties;
+    private final String optionsFingerprint;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer latencySaved;
+
+    public ChatResponseCache(ChatProperties chatProperties, OpenAiChatModel chatModel, MeterRegistry meterRegistry) {
+        this.properties = chatProperties.getCache();
+        ChatOptions options = chatModel.getDefaultOptions();
+        this.optionsFingerprint = options == null ? "" : options.getModel() + "|" + options.getTemperature();
+        this.hits = meterRegistry.counter("chat.cache.requests", "result", "hit");
+        this.misses = meterRegistry.counter("chat.cache.requests", "result", "miss");
+        this.latencySaved = meterRegistry.timer("chat.cache.latency.saved");
+        meterRegistry.gauge("chat.cache.bytes", this, ChatResponseCache::usedBytes);
+        meterRegistry.gauge("chat.cache.entries", this, ChatResponseCache::size);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Returns the cached answer for the prompt, or subscribes to {@code source} and caches its chunks on completion.
+     */
+    public Flux<String> getOrStream(String prompt, Supplier<Flux<String>> source) {
+        String key = key(prompt);
+        Entry hit = lookup(key);
+        if (hit != null) {
+            hits.increment();
+            latencySaved.record(hit.generationNanos, TimeUnit.NANOSECONDS);
+            return Flux.fromIterable(hit.chunks());
+        }
+        misses.increment();
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            List<String> chunks = new ArrayList<>();
+            return source.get()
+                    .doOnNext(chunks::add)
+                    .doOnComplete(() -> put(key, chunks, System.nanoTime() - start));
+        });
+    }
+
+    public synchronized long usedBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized Entry lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key);
+            totalBytes -= entry.bytes;
+            return null;
+        }
+        return entry;
+    }
+
+    private synchronized void put(String key, List<String> chunks, long generationNanos) {
+        Entry entry = Entry.of(chunks, generationNanos, System.currentTimeMillis() + properties.getTtl().toMillis());
+        if (entry.bytes > properties.getMaxBytes()) return;
+        Entry previous = entries.put(key, entry);
+        if (previous != null) totalBytes -= previous.bytes;
+        totalBytes += entry.bytes;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while ((totalBytes > properties.getMaxBytes() || entries.size() > properties.getMaxEntries()) && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getKey().equals(key)) continue;
+            totalBytes -= eldest.getValue().bytes;
+            it.remove();
+        }
+    }
+
+    String key(String prompt) {
+        return key(prompt, SystemConstants.CHAT_SYSTEM_PROMPT, optionsFingerprint);
+    }
+
+    static String key(String prompt, String systemPrompt, String optionsFingerprint) {
+        String material = normalise(prompt) + '\u0000' + systemPrompt + '\u0000' + optionsFingerprint;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(material.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // case, surrounding/repeated whitespace and trailing punctuation do not change the question
+    static String normalise(String prompt) {
+        if (prompt == null) return "";
+        String s = prompt.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return s.replaceAll("[\\s?!.。？！]+$", "");
+    }
+
+    /**
+     * Answer text stored once with chunk end offsets, so it can be replayed chunk by chunk.
+     */
+    private record Entry(String text, int[] ends, long generationNanos, long expiresAt, long bytes) {
+
+        static Entry of(List<String> chunks, long generationNanos, long expiresAt) {
+            StringBuilder sb = new StringBuilder();
+            int[] ends = new int[chunks.size()];
+            for (int i = 0; i < chunks.size(); i++) {
+                sb.append(chunks.get(i));
+                ends[i] = sb.length();
+            }
+            String text = sb.toString();
+            long bytes = ENTRY_OVERHEAD + text.length() * 2L + ends.length * 4L;
+            return new Entry(text, ends, generationNanos, expiresAt, bytes);
+        }
+
+        List<String> chunks() {
+            List<String> chunks = new ArrayList<>(ends.length);
+            int start = 0;
+            for (int end : ends) {
+                chunks.add(text.substring(start, end));
+                start = end;
+            }
+            return chunks;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.foodlogapp.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Fixed-size direct buffers shared by all uploads. Blocks are allocated on first use up to {@code maxBlocks}
+ * and then recycled, so direct memory grows to the high-water mark once instead of being allocated (and left
+ * to the GC to free) per upload. A request takes all its blocks at once or none, so two large uploads cannot
+ * each hold half of the pool and wait for each other.
+ */
+final class DirectBufferPool {
+
+    private final int blockSize;
+    private final int maxBlocks;
+    private final Deque<ByteBuffer> free = new ArrayDeque<>();
+    private int allocated;
+
+    DirectBufferPool(int blockSize, int maxBlocks) {
+        this.blockSize = blockSize;
+        this.maxBlocks = maxBlocks;
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    int getMaxBlocks() {
+        return maxBlocks;
+    }
+
+    // blocks needed for the given number of bytes (at least one)
+    int blocksFor(long bytes) {
+        return (int) Math.max(1, (bytes + blockSize - 1) / blockSize);
+    }
+
+    /**
+     * Takes {@code count} cleared blocks, waiting up to {@code waitMs} for other uploads to return theirs.
+     *
+     * @return the blocks, or null when they did not become available in time
+     */
+    synchronized List<ByteBuffer> acquire(int count, long waitMs) throws InterruptedException {
+        if (count > maxBlocks) {
+            return null;
+        }
+        long deadline = System.currentTimeMillis() + waitMs;
+        while (free.size() + (maxBlocks - allocated) < count) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return null;
+            }
+            wait(remaining);
+        }
+        List<ByteBuffer> blocks = new ArrayList<>(count);
+        while (blocks.size() < count && !free.isEmpty()) {
+            blocks.add(free.pop());
+        }
+        while (blocks.size() < count) {
+            blocks.add(ByteBuffer.allocateDirect(blockSize));
+            allocated++;
+        }
+        return blocks;
+    }
+
+    synchronized void release(List<ByteBuffer> blocks) {
+        for (ByteBuffer block : blocks) {
+            free.push(block.clear());
+        }
+        notifyAll();
+    }
+
+    // direct memory held by the pool, in use or free
+    synchronized long allocatedBytes() {
+        return (long) allocated * blockSize;
+    }
+}
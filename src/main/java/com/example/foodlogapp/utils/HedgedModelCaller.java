@@ -0,0 +1,259 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.config.AnalysisProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking model calls with a per-attempt deadline and optional hedging: if the first attempt is
+ * still running after the recent p95 latency, a second identical attempt is fired and whichever succeeds
+ * first wins (the other is cancelled). An attempt that fails before the hedge delay triggers the second
+ * attempt immediately.
+ *
+ * Cancelling an attempt only interrupts its thread: a blocked HTTP call can still return and run its tool calls
+ * after another attempt has won or the deadline has passed. Callers fence such side effects per attempt (the
+ * supplier runs once per attempt, see AnalysisFence) instead of relying on the cancellation. A successful attempt
+ * only wins if the caller's {@code canWin} check admits it; an attempt it rejects was superseded by another one,
+ * so the call waits for the others and launches no further attempts.
+ *
+ * Metrics: food.analysis.calls, food.analysis.hedges, food.analysis.retries,
+ * food.analysis.wins{attempt=primary|hedge}, food.analysis.superseded, food.analysis.timeouts,
+ * food.analysis.attempt.latency.
+ */
+@Slf4j
+@Component
+public class HedgedModelCaller {
+
+    private final AnalysisProperties properties;
+    private final ExecutorService executor;
+    private final LatencyWindow latencies;
+
+    private final Counter calls;
+    private final Counter hedges;
+    private final Counter retries;
+    private final Counter primaryWins;
+    private final Counter hedgeWins;
+    private final Counter superseded;
+    private final Counter timeouts;
+    private final Timer attemptLatency;
+
+    public HedgedModelCaller(AnalysisProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        AtomicInteger threadIds = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(properties.getExecutorThreads(), r -> {
+            Thread t = new Thread(r, "model-call-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.latencies = new LatencyWindow(properties.getHedge().getWindow());
+        this.calls = meterRegistry.counter("food.analysis.calls");
+        this.hedges = meterRegistry.counter("food.analysis.hedges");
+        this.retries = meterRegistry.counter("food.analysis.retries");
+        this.primaryWins = meterRegistry.counter("food.analysis.wins", "attempt", "primary");
+        this.hedgeWins = meterRegistry.counter("food.analysis.wins", "attempt", "hedge");
+        this.superseded = meterRegistry.counter("food.analysis.superseded");
+        this.timeouts = meterRegistry.counter("food.analysis.timeouts");
+        this.attemptLatency = meterRegistry.timer("food.analysis.attempt.latency");
+    }
+
+    /**
+     * Executes the call (possibly twice) and returns the first successful result.
+     *
+     * @throws RuntimeException with the last attempt's failure when every attempt failed or timed out
+     */
+    public <T> T call(Supplier<T> call) {
+        return call(call, result -> true);
+    }
+
+    /**
+     * Like {@link #call(Supplier)}, but a successful attempt only wins if {@code canWin} accepts its result.
+     * The check runs on the attempt's thread, at most once per attempt, before any other attempt is cancelled.
+     *
+     * @throws RuntimeException with the last attempt's failure when no attempt could win
+     */
+    public <T> T call(Supplier<T> call, Predicate<T> canWin) {
+        calls.increment();
+        AnalysisProperties.Hedge hedge = properties.getHedge();
+        Execution<T> execution = new Execution<>(call, canWin, hedge.isEnabled() ? 2 : 1);
+        execution.launch(false);
+        if (hedge.isEnabled()) {
+            long delayMs = hedgeDelayMillis();
+            CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS, executor)
+                    .execute(() -> execution.launch(true));
+        }
+        try {
+            return execution.winner.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            execution.cancelAll();
+            throw new RuntimeException("Interrupted while waiting for the model", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw new RuntimeException("Model call timed out after " + properties.getAttemptTimeout(), cause);
+            }
+            if (cause instanceof RuntimeException re) throw re;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Current hedge delay: the configured percentile of recent successful attempts, or the initial delay
+     * while there are too few samples.
+     */
+    public long hedgeDelayMillis() {
+        AnalysisProperties.Hedge hedge = properties.getHedge();
+        long delay = latencies.size() >= hedge.getMinSamples()
+                ? latencies.percentile(hedge.getPercentile())
+                : hedge.getInitialDelay().toMillis();
+        return Math.max(delay, hedge.getMinDelay().toMillis());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private final class Execution<T> {
+        private final Supplier<T> call;
+        private final Predicate<T> canWin;
+        private final int maxAttempts;
+        private final CompletableFuture<T> winner = new CompletableFuture<>();
+        private final List<Future<?>> tasks = new ArrayList<>();
+        private int launched;
+        private int failed;
+        // another attempt holds the result: a new attempt could not win either
+        private boolean lost;
+
+        private Execution(Supplier<T> call, Predicate<T> canWin, int maxAttempts) {
+            this.call = call;
+            this.canWin = canWin;
+            this.maxAttempts = maxAttempts;
+        }
+
+        synchronized void launch(boolean hedge) {
+            if (winner.isDone() || lost || launched >= maxAttempts) return;
+            int attempt = ++launched;
+            if (attempt > 1) {
+                (hedge ? hedges : retries).increment();
+            }
+            long start = System.nanoTime();
+            CompletableFuture<T> result = new CompletableFuture<>();
+            Future<?> task = executor.submit(() -> {
+                try {
+                    result.complete(call.get());
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+            tasks.add(task);
+            result.orTimeout(properties.getAttemptTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                    .whenComplete((value, error) -> onAttemptDone(attempt, start, value, error, task));
+        }
+
+        void onAttemptDone(int attempt, long start, T value, Throwable error, Future<?> task) {
+            long nanos = System.nanoTime() - start;
+            boolean rejected = false;
+            if (error == null) {
+                attemptLatency.record(nanos, TimeUnit.NANOSECONDS);
+                latencies.add(TimeUnit.NANOSECONDS.toMillis(nanos));
+                // outside the lock: the check may query the database
+                try {
+                    rejected = !winner.isDone() && !canWin.test(value);
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+            }
+            boolean launchNow = false;
+            synchronized (this) {
+                if (error == null && !rejected) {
+                    if (winner.complete(value)) {
+                        (attempt == 1 ? primaryWins : hedgeWins).increment();
+                        cancelAllExcept(task);
+                    }
+                    return;
+                }
+                if (rejected) {
+                    superseded.increment();
+                    lost = true;
+                    error = new IllegalStateException("Model attempt " + attempt + " was superseded by another one");
+                } else if (error instanceof TimeoutException) {
+                    // deadline passed while the call is still blocked: free the worker
+                    task.cancel(true);
+                    timeouts.increment();
+                }
+                log.warn("Model attempt {} failed after {} ms: {}", attempt,
+                        TimeUnit.NANOSECONDS.toMillis(nanos), error.toString());
+                failed++;
+                if (failed == launched) {
+                    if (lost || launched >= maxAttempts) {
+                        winner.completeExceptionally(error);
+                    } else {
+                        // nothing left running: do not wait for the hedge delay
+                        launchNow = true;
+                    }
+                }
+            }
+            if (launchNow) launch(false);
+        }
+
+        synchronized void cancelAll() {
+            cancelAllExcept(null);
+        }
+
+        // the winner completes from its own worker thread, so it must not interrupt itself
+        synchronized void cancelAllExcept(Future<?> keep) {
+            tasks.forEach(t -> {
+                if (t != keep) t.cancel(true);
+            });
+        }
+    }
+
+    /**
+     * Ring buffer of recent successful attempt latencies (ms).
+     */
+    private static final class LatencyWindow {
+        private final long[] samples;
+        private int next;
+        private int size;
+
+        LatencyWindow(int capacity) {
+            this.samples = new long[Math.max(1, capacity)];
+        }
+
+        synchronized void add(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long percentile(double p) {
+            long[] copy = Arrays.copyOf(samples, size);
+            Arrays.sort(copy);
+            int index = (int) Math.ceil(p * size) - 1;
+            return copy[Math.max(0, Math.min(size - 1, index))];
+        }
+    }
+}
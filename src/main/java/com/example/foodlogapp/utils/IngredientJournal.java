@@ -0,0 +1,389 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.entity.FoodIngredient;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of ingredient writes with group commit: every append is durable (fsynced) before it
+ * returns, but appenders that arrive while an fsync is running are written and fsynced together by the next one,
+ * so N concurrent appends cost about two fsyncs instead of N.
+ *
+ * Records are {@code [length][crc32][payload]} in segment files named after their first sequence number. A torn
+ * record at the end of the last segment (crash mid-write) is cut off when the journal is opened.
+ * {@link #release(long)} records how far entries are persisted elsewhere (a checkpoint file, so they are not
+ * replayed again) and deletes the segments that hold nothing newer.
+ */
+@Slf4j
+public final class IngredientJournal implements Closeable {
+
+    private static final String SUFFIX = ".journal";
+    private static final int HEADER = 8;
+    private static final String CHECKPOINT = "released.seq";
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final Consumer<Entry> sink;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition durable = lock.newCondition();
+    // guarded by lock
+    private final List<Entry> pending = new ArrayList<>();
+    private final List<byte[]> pendingRecords = new ArrayList<>();
+    private long nextSeq;
+    private long durableSeq;
+    private boolean writing;
+    private IOException failure;
+    // start seq of every segment on disk, oldest first; the last one is being written
+    private final ArrayDeque<Long> segments = new ArrayDeque<>();
+    private FileChannel current;
+    private long currentSize;
+    private long fsyncs;
+    private long fsyncNanos;
+
+    /**
+     * Opens the journal, handing every entry already on disk to {@code replay} in sequence order. Afterwards every
+     * new entry goes to {@code sink} once it is durable, in sequence order and under the journal lock.
+     */
+    public static IngredientJournal open(Path dir, long segmentBytes, Consumer<Entry> replay, Consumer<Entry> sink)
+            throws IOException {
+        Files.createDirectories(dir);
+        IngredientJournal journal = new IngredientJournal(dir, segmentBytes, sink);
+        journal.recover(replay);
+        return journal;
+    }
+
+    private IngredientJournal(Path dir, long segmentBytes, Consumer<Entry> sink) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.sink = sink;
+    }
+
+    /**
+     * Appends the ingredients of one log and returns once they are on disk.
+     *
+     * @param attemptToken the analysis attempt that wrote them (AnalysisFence), may be null
+     * @throws IOException when this or an earlier group commit failed; the journal accepts nothing afterwards.
+     *                     Also when the entry cannot be encoded (a name longer than 64 KB), which only fails this
+     *                     append
+     */
+    public Entry append(int logId, List<FoodIngredient> ingredients, String attemptToken) throws IOException {
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw new IOException("Journal unavailable after an earlier write failure", failure);
+            }
+            Entry entry = new Entry(nextSeq, System.currentTimeMillis(), logId, List.copyOf(ingredients), attemptToken);
+            // encoded before anything changes: an entry that cannot be written must not take a seq or be queued
+            byte[] record = encode(entry);
+            nextSeq++;
+            pending.add(entry);
+            pendingRecords.add(record);
+            while (durableSeq < entry.seq()) {
+                if (failure != null) {
+                    throw new IOException("Journal write failed", failure);
+                }
+                if (writing) {
+                    durable.awaitUninterruptibly();
+                    continue;
+                }
+                // become the leader: write and fsync everything queued so far in one go
+                writing = true;
+                List<Entry> batch = new ArrayList<>(pending);
+                List<byte[]> records = new ArrayList<>(pendingRecords);
+                pending.clear();
+                pendingRecords.clear();
+                IOException error = null;
+                try {
+                    if (currentSize >= segmentBytes) {
+                        roll(batch.get(0).seq());
+                    }
+                } catch (IOException e) {
+                    error = e;
+                }
+                lock.unlock();
+                long started = System.nanoTime();
+                try {
+                    if (error == null) {
+                        write(records);
+                    }
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    lock.lock();
+                }
+                writing = false;
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableSeq = batch.get(batch.size() - 1).seq();
+                    fsyncs++;
+                    fsyncNanos += System.nanoTime() - started;
+                    batch.forEach(sink);
+                }
+                durable.signalAll();
+            }
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks every entry up to {@code persistedSeq} as persisted and deletes the segments holding only such entries.
+     * The checkpoint is not fsynced: losing it only means some entries are replayed once more.
+     */
+    public void release(long persistedSeq) {
+        lock.lock();
+        try {
+            Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+            Files.writeString(tmp, Long.toString(persistedSeq));
+            Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Iterator<Long> it = segments.iterator();
+            long start = it.next();
+            while (it.hasNext()) {
+                long nextStart = it.next();
+                if (nextStart - 1 > persistedSeq) {
+                    break;
+                }
+                Files.deleteIfExists(segment(start));
+                segments.removeFirst();
+                start = nextStart;
+            }
+        } catch (IOException e) {
+            log.warn("Could not release flushed journal entries: {}", e.toString());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getFsyncs() {
+        lock.lock();
+        try {
+            return fsyncs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getFsyncNanos() {
+        lock.lock();
+        try {
+            return fsyncNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getSegmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            while (writing) {
+                durable.awaitNanos(TimeUnit.SECONDS.toNanos(1));
+            }
+            if (current != null) {
+                current.close();
+            }
+            failure = new IOException("Journal closed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Only the leader calls this, outside the lock; no one else touches the channel meanwhile
+    private void write(List<byte[]> records) throws IOException {
+        int size = 0;
+        for (byte[] record : records) {
+            size += record.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (byte[] record : records) {
+            buffer.put(record);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            current.write(buffer);
+        }
+        current.force(false);
+        currentSize += size;
+    }
+
+    private void roll(long startSeq) throws IOException {
+        if (current != null) {
+            current.close();
+        }
+        current = FileChannel.open(segment(startSeq), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        currentSize = 0;
+        segments.addLast(startSeq);
+    }
+
+    private void recover(Consumer<Entry> replay) throws IOException {
+        List<Long> starts = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                starts.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+            }
+        }
+        starts.sort(null);
+        Path checkpoint = dir.resolve(CHECKPOINT);
+        long released = Files.exists(checkpoint) ? Long.parseLong(Files.readString(checkpoint).trim()) : -1;
+        long lastSeq = -1;
+        int replayed = 0;
+        for (long start : starts) {
+            Path file = segment(start);
+            byte[] data = Files.readAllBytes(file);
+            int valid = 0;
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.remaining() >= HEADER) {
+                int length = buffer.getInt();
+                int crc = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                CRC32 check = new CRC32();
+                check.update(data, buffer.position(), length);
+                if ((int) check.getValue() != crc) {
+                    break;
+                }
+                Entry entry = decode(data, buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                valid = buffer.position();
+                if (entry.seq() > lastSeq) {
+                    lastSeq = entry.seq();
+                    if (entry.seq() > released) {
+                        replay.accept(entry);
+                        replayed++;
+                    }
+                }
+            }
+            if (valid == 0) {
+                // nothing survived (e.g. created right before a crash); a new segment may need its name
+                Files.delete(file);
+                continue;
+            }
+            if (valid < data.length) {
+                log.warn("Truncating torn tail of journal segment {} at byte {} of {}", file.getFileName(), valid, data.length);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(valid);
+                    channel.force(true);
+                }
+            }
+            segments.addLast(start);
+        }
+        if (replayed > 0) {
+            log.info("Replaying {} journaled ingredient writes", replayed);
+        }
+        // the checkpoint can be ahead of the segments when they were all released and deleted
+        lastSeq = Math.max(lastSeq, released);
+        nextSeq = lastSeq + 1;
+        durableSeq = lastSeq;
+        // new entries always go to a fresh segment; the recovered ones are released once flushed
+        roll(nextSeq);
+    }
+
+    private Path segment(long startSeq) {
+        return dir.resolve(String.format("%020d%s", startSeq, SUFFIX));
+    }
+
+    // IOException only for strings writeUTF cannot hold (the stream is in memory)
+    private static byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 48 * entry.ingredients().size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // length and crc, filled in below
+        out.writeInt(0);
+        out.writeLong(entry.seq());
+        out.writeLong(entry.appendedAt());
+        out.writeInt(entry.logId());
+        out.writeInt(entry.ingredients().size());
+        for (FoodIngredient ingredient : entry.ingredients()) {
+            writeNullable(out, ingredient.getIngredientName());
+            out.writeBoolean(ingredient.getKcal() != null);
+            if (ingredient.getKcal() != null) out.writeInt(ingredient.getKcal());
+            writeNullable(out, ingredient.getWeight() != null ? ingredient.getWeight().toPlainString() : null);
+        }
+        // last, so records written before the token existed still decode (as null)
+        writeNullable(out, entry.attemptToken());
+        byte[] record = bytes.toByteArray();
+        int length = record.length - HEADER;
+        CRC32 crc = new CRC32();
+        crc.update(record, HEADER, length);
+        ByteBuffer.wrap(record).putInt(length).putInt((int) crc.getValue());
+        return record;
+    }
+
+    private static Entry decode(byte[] data, int offset, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, offset, length));
+        try {
+            long seq = in.readLong();
+            long appendedAt = in.readLong();
+            int logId = in.readInt();
+            int count = in.readInt();
+            List<FoodIngredient> ingredients = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                FoodIngredient ingredient = new FoodIngredient();
+                ingredient.setLogId(logId);
+                ingredient.setIngredientName(readNullable(in));
+                if (in.readBoolean()) ingredient.setKcal(in.readInt());
+                String weight = readNullable(in);
+                if (weight != null) ingredient.setWeight(new BigDecimal(weight));
+                ingredients.add(ingredient);
+            }
+            String attemptToken = in.available() > 0 ? readNullable(in) : null;
+            return new Entry(seq, appendedAt, logId, ingredients, attemptToken);
+        } catch (EOFException e) {
+            throw new IOException("Corrupt journal record", e);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * One journaled tool call: all ingredients of one log and the analysis attempt that logged them.
+     */
+    public record Entry(long seq, long appendedAt, int logId, List<FoodIngredient> ingredients, String attemptToken) {
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.foodlogapp.utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index of one user's ingredient names: normalised token -> posting list of the log ids whose
+ * ingredients contain it. Posting lists are sorted, delta-encoded varints in a byte[] (ids of one user are
+ * close together, so most deltas take one or two bytes); appending a newer log is O(1), anything else
+ * re-encodes that one list. Tokens are kept sorted, so a prefix is a contiguous range of the token map.
+ *
+ * A query matches a log when every query token is a prefix of some token of the log's ingredients.
+ * Not thread-safe; IngredientSearchStore synchronizes on the instance.
+ */
+public final class IngredientSearchIndex {
+
+    private static final int[] EMPTY = new int[0];
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+    // the tokens of every indexed log, to remove it without scanning all posting lists
+    private final Map<Integer, String[]> logTokens = new HashMap<>();
+    private long postingBytes;
+    private long tokenBytes;
+    private long logTokenRefs;
+
+    /**
+     * Indexes the log with exactly these ingredient names, replacing whatever was indexed for it before.
+     */
+    public void putLog(int logId, List<String> ingredientNames) {
+        removeLog(logId);
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String name : ingredientNames) {
+            tokens.addAll(tokenize(name));
+        }
+        if (tokens.isEmpty()) {
+            return;
+        }
+        String[] stored = new String[tokens.size()];
+        int i = 0;
+        for (String token : tokens) {
+            Postings list = postings.get(token);
+            if (list == null) {
+                list = new Postings();
+                postings.put(token, list);
+                tokenBytes += token.length() * 2L;
+            } else {
+                token = postings.ceilingKey(token); // share the key instance
+            }
+            postingBytes -= list.length;
+            list.add(logId);
+            postingBytes += list.length;
+            stored[i++] = token;
+        }
+        logTokens.put(logId, stored);
+        logTokenRefs += stored.length;
+    }
+
+    public void removeLog(int logId) {
+        String[] tokens = logTokens.remove(logId);
+        if (tokens == null) {
+            return;
+        }
+        logTokenRefs -= tokens.length;
+        for (String token : tokens) {
+            Postings list = postings.get(token);
+            postingBytes -= list.length;
+            list.remove(logId);
+            postingBytes += list.length;
+            if (list.size == 0) {
+                postings.remove(token);
+                tokenBytes -= token.length() * 2L;
+            }
+        }
+    }
+
+    public int logCount() {
+        return logTokens.size();
+    }
+
+    public int tokenCount() {
+        return postings.size();
+    }
+
+    /**
+     * Approximate heap: posting bytes, token strings, tree/hash map nodes and the per-log token arrays.
+     */
+    public long estimatedBytes() {
+        return postingBytes + tokenBytes + postings.size() * (40L + 24 + 32) + logTokens.size() * (48L + 16)
+                + logTokenRefs * 4;
+    }
+
+    /**
+     * Log ids matching the query, newest (highest id) first, at most {@code limit}.
+     */
+    public int[] search(String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return EMPTY;
+        }
+        int[] result = null;
+        for (String term : terms) {
+            int[] matches = prefixUnion(term);
+            result = result == null ? matches : intersect(result, matches);
+            if (result.length == 0) {
+                return EMPTY;
+            }
+        }
+        int n = Math.min(limit, result.length);
+        int[] newestFirst = new int[n];
+        for (int i = 0; i < n; i++) {
+            newestFirst[i] = result[result.length - 1 - i];
+        }
+        return newestFirst;
+    }
+
+    /**
+     * Lower case, compatibility-normalised, diacritics removed, split on anything that is not a letter or digit.
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        // most names are plain ASCII: skip the normaliser for them, it dominates indexing time otherwise
+        String normalised = text;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                normalised = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFKD)).replaceAll("");
+                break;
+            }
+        }
+        normalised = normalised.toLowerCase(Locale.ROOT);
+        List<String> tokens = new ArrayList<>(4);
+        int start = -1;
+        for (int i = 0; i <= normalised.length(); i++) {
+            boolean wordChar = i < normalised.length() && Character.isLetterOrDigit(normalised.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(normalised.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // sorted, distinct ids of all tokens starting with the prefix
+    private int[] prefixUnion(String prefix) {
+        NavigableMap<String, Postings> range = postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        if (range.isEmpty()) {
+            return EMPTY;
+        }
+        if (range.size() == 1) {
+            return range.firstEntry().getValue().decode();
+        }
+        // a short prefix can cover most of the history: mark ids in a bitmap instead of sorting the concatenation
+        BitSet ids = new BitSet();
+        for (Postings list : range.values()) {
+            list.decodeInto(ids);
+        }
+        return ids.stream().toArray();
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Sorted distinct ids as varint deltas.
+     */
+    static final class Postings {
+        private byte[] data = new byte[4];
+        private int length;
+        private int size;
+        private int last;
+
+        void add(int id) {
+            if (size == 0 || id > last) {
+                append(size == 0 ? id : id - last);
+                last = id;
+                size++;
+                return;
+            }
+            int[] ids = decode();
+            int at = Arrays.binarySearch(ids, id);
+            if (at >= 0) {
+                return;
+            }
+            int insert = -at - 1;
+            int[] merged = new int[ids.length + 1];
+            System.arraycopy(ids, 0, merged, 0, insert);
+            merged[insert] = id;
+            System.arraycopy(ids, insert, merged, insert + 1, ids.length - insert);
+            encode(merged, merged.length);
+        }
+
+        void remove(int id) {
+            int[] ids = decode();
+            int at = Arrays.binarySearch(ids, id);
+            if (at < 0) {
+                return;
+            }
+            System.arraycopy(ids, at + 1, ids, at, ids.length - at - 1);
+            encode(ids, ids.length - 1);
+        }
+
+        int[] decode() {
+            int[] ids = new int[size];
+            decodeInto(ids, 0);
+            return ids;
+        }
+
+        void decodeInto(BitSet target) {
+            int pos = 0;
+            int value = 0;
+            for (int i = 0; i < size; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    delta |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                value += delta;
+                target.set(value);
+            }
+        }
+
+        int decodeInto(int[] target, int offset) {
+            int pos = 0;
+            int value = 0;
+            for (int i = 0; i < size; i++) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    delta |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                value += delta;
+                target[offset++] = value;
+            }
+            return offset;
+        }
+
+        private void encode(int[] ids, int count) {
+            data = new byte[Math.max(4, count * 2)];
+            length = 0;
+            size = 0;
+            last = 0;
+            for (int i = 0; i < count; i++) {
+                append(i == 0 ? ids[i] : ids[i] - last);
+                last = ids[i];
+                size++;
+            }
+            if (data.length > length + 16) {
+                data = Arrays.copyOf(data, length);
+            }
+        }
+
+        private void append(int delta) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+            }
+            while ((delta & ~0x7f) != 0) {
+                data[length++] = (byte) ((delta & 0x7f) | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+        }
+    }
+}
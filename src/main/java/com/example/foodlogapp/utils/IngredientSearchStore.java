@@ -0,0 +1,98 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.dto.NutritionRow;
+import com.example.foodlogapp.service.FoodIngredientService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-user {@link IngredientSearchIndex} behind GET /logs/user/{userId}/search, kept like the analytics columns
+ * (see {@link UserDataCache}): a user is indexed on first search (one streaming join), afterwards every committed
+ * write to one of their logs (tool calls, edits, re-analysis, deletes) re-indexes just that log, and writes made
+ * on other nodes are noticed through user_log_version.
+ *
+ * Memory is bounded by app.search.max-bytes (least recently searched user evicted first); a user whose index
+ * alone exceeds app.search.max-bytes-per-user is searched from a fresh load without being kept.
+ *
+ * Metrics: search.index.bytes, search.index.users, search.index.loads, search.index.evictions, search.index.stale,
+ * search.query.latency.
+ */
+@Component
+public class IngredientSearchStore extends UserDataCache<IngredientSearchIndex, List<String>> {
+
+    private final FoodIngredientService foodIngredientService;
+    private final Timer queryLatency;
+
+    public IngredientSearchStore(FoodIngredientService foodIngredientService, LogVersionTracker logVersionTracker,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.search.max-bytes:67108864}") long maxBytes,
+                                 @Value("${app.search.max-bytes-per-user:16777216}") long maxBytesPerUser,
+                                 @Value("${app.search.max-age:10m}") Duration maxAge) {
+        super("search.index", logVersionTracker, meterRegistry, maxBytes, maxBytesPerUser, maxAge);
+        this.foodIngredientService = foodIngredientService;
+        this.queryLatency = meterRegistry.timer("search.query.latency");
+    }
+
+    /**
+     * Ids of the user's logs whose ingredients match every word of the query (as word prefixes), newest first.
+     */
+    public int[] search(Integer userId, String query, int limit) {
+        return query(userId, index -> {
+            long start = System.nanoTime();
+            int[] ids = index.search(query, limit);
+            queryLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return ids;
+        });
+    }
+
+    @Override
+    protected IngredientSearchIndex load(Integer userId) {
+        IngredientSearchIndex index = new IngredientSearchIndex();
+        // rows of one log arrive together (ordered by log)
+        List<String> names = new ArrayList<>();
+        int[] currentLog = {0};
+        foodIngredientService.streamNutritionByUserId(userId, row -> {
+            if (row.getLogId() != currentLog[0] && !names.isEmpty()) {
+                index.putLog(currentLog[0], names);
+                names.clear();
+            }
+            currentLog[0] = row.getLogId();
+            names.add(row.getIngredientName());
+        });
+        if (!names.isEmpty()) {
+            index.putLog(currentLog[0], names);
+        }
+        return index;
+    }
+
+    @Override
+    protected List<String> fetchLog(Integer userId, Integer logId) {
+        List<String> names = new ArrayList<>();
+        for (NutritionRow row : foodIngredientService.findNutritionByLogId(userId, logId)) {
+            names.add(row.getIngredientName());
+        }
+        return names;
+    }
+
+    // A log without ingredients (or deleted) is simply not indexed
+    @Override
+    protected void applyLog(IngredientSearchIndex index, Integer logId, List<String> names) {
+        if (names == null) {
+            index.removeLog(logId);
+        } else {
+            index.putLog(logId, names);
+        }
+    }
+
+    @Override
+    protected long estimatedBytes(IngredientSearchIndex index) {
+        return index.estimatedBytes();
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.config.StorageProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable local holding area (image-dir/s3-spool) for uploaded images while S3 is unavailable. The log is
+ * created with image_path {@code spool:<id>}; SpoolReplayer uploads the file once S3 recovers and patches
+ * image_path to the object URL. The directory is local to this node, so only this node can read or replay it.
+ *
+ * Each image is {@code <id>.img} plus {@code <id>.meta} (content type and SHA-256). Both are fsynced before the
+ * image is renamed into place, so a file that is listed survives a crash complete.
+ *
+ * Metrics: storage.spool.files, storage.spool.bytes, storage.spool.lag (seconds the oldest image has waited).
+ */
+@Slf4j
+@Component
+public class LocalImageSpool {
+
+    public static final String PREFIX = "spool:";
+    private static final String IMAGE = ".img";
+    private static final String META = ".meta";
+    private static final String TMP = ".tmp";
+
+    private final StorageProperties storageProperties;
+    private final Path dir;
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    // bytes of images being written: counted against the limit before the write starts
+    private final AtomicLong reserved = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+
+    public LocalImageSpool(StorageProperties storageProperties, MeterRegistry meterRegistry) {
+        this.storageProperties = storageProperties;
+        this.dir = Paths.get(storageProperties.getImageDir(), "s3-spool");
+        meterRegistry.gauge("storage.spool.files", files);
+        meterRegistry.gauge("storage.spool.bytes", bytes);
+        meterRegistry.gauge("storage.spool.lag", lagSeconds);
+        try {
+            Files.createDirectories(dir);
+            // temp files of writes interrupted by a crash never became visible
+            try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(dir, "*" + TMP)) {
+                for (Path leftover : leftovers) {
+                    Files.deleteIfExists(leftover);
+                }
+            }
+            try (DirectoryStream<Path> metas = Files.newDirectoryStream(dir, "*" + META)) {
+                for (Path meta : metas) {
+                    String name = meta.getFileName().toString();
+                    if (!Files.exists(dir.resolve(name.substring(0, name.length() - META.length()) + IMAGE))) {
+                        Files.deleteIfExists(meta);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot prepare local image spool " + dir, e);
+        }
+        list();
+    }
+
+    public static boolean isSpooled(String imagePath) {
+        return imagePath != null && imagePath.startsWith(PREFIX);
+    }
+
+    /**
+     * Writes the image to disk and returns the image_path to store for it.
+     *
+     * @throws IllegalStateException when app.storage.local-spool-max-bytes would be exceeded
+     */
+    public String store(UploadSpool spool) {
+        long size = spool.size();
+        long current;
+        do {
+            current = reserved.get();
+            if (bytes.get() + current + size > storageProperties.getLocalSpoolMaxBytes()) {
+                throw new IllegalStateException("Local image spool is full (" + bytes.get() + " bytes, "
+                        + current + " being written)");
+            }
+        } while (!reserved.compareAndSet(current, current + size));
+        try {
+            return write(spool);
+        } finally {
+            reserved.addAndGet(-size);
+        }
+    }
+
+    private String write(UploadSpool spool) {
+        String id = UUID.randomUUID().toString();
+        Path tmp = dir.resolve(id + IMAGE + TMP);
+        try {
+            try (InputStream in = spool.newInputStream()) {
+                Files.copy(in, tmp);
+            }
+            fsync(tmp);
+            Path meta = dir.resolve(id + META);
+            Files.writeString(meta, spool.getContentType() + "\n" + spool.getSha256() + "\n", StandardCharsets.UTF_8);
+            fsync(meta);
+            Files.move(tmp, dir.resolve(id + IMAGE), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // removed on the next start
+            }
+            throw new UncheckedIOException("Cannot spool image locally", e);
+        }
+        files.incrementAndGet();
+        bytes.addAndGet(spool.size());
+        log.warn("S3 unavailable, image spooled locally as {} ({} bytes)", id, spool.size());
+        return PREFIX + id;
+    }
+
+    /**
+     * The spooled image behind an image_path, or null when it is not on this node (spooled elsewhere, or
+     * already replayed and the caller read a stale path).
+     */
+    public S3Service.DownloadedFile read(String imagePath) {
+        if (!isSpooled(imagePath)) {
+            return null;
+        }
+        String id = imagePath.substring(PREFIX.length());
+        if (!validId(id)) {
+            return null;
+        }
+        try {
+            byte[] data = Files.readAllBytes(dir.resolve(id + IMAGE));
+            return new S3Service.DownloadedFile(data, Files.readAllLines(dir.resolve(id + META)).get(0));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether the spooled image behind an image_path is on this node.
+     */
+    public boolean holds(String imagePath) {
+        if (!isSpooled(imagePath)) {
+            return false;
+        }
+        String id = imagePath.substring(PREFIX.length());
+        return validId(id) && Files.exists(dir.resolve(id + IMAGE));
+    }
+
+    /**
+     * Spooled images, oldest first; also refreshes the gauges.
+     */
+    public List<SpooledImage> list() {
+        List<SpooledImage> images = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + IMAGE)) {
+            for (Path image : stream) {
+                String name = image.getFileName().toString();
+                String id = name.substring(0, name.length() - IMAGE.length());
+                try {
+                    List<String> meta = Files.readAllLines(dir.resolve(id + META));
+                    images.add(new SpooledImage(id, image, Files.size(image), meta.get(0), meta.get(1),
+                            Files.getLastModifiedTime(image).toInstant()));
+                } catch (IOException | IndexOutOfBoundsException e) {
+                    log.warn("Skipping unreadable spooled image {}: {}", id, e.toString());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list local image spool " + dir, e);
+        }
+        images.sort(Comparator.comparing(SpooledImage::createdAt));
+        files.set(images.size());
+        bytes.set(images.stream().mapToLong(SpooledImage::size).sum());
+        lagSeconds.set(images.isEmpty() ? 0 : Instant.now().getEpochSecond() - images.get(0).createdAt().getEpochSecond());
+        return images;
+    }
+
+    public void delete(SpooledImage image) {
+        try {
+            Files.deleteIfExists(image.file());
+            Files.deleteIfExists(dir.resolve(image.id() + META));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete spooled image " + image.id(), e);
+        }
+        files.decrementAndGet();
+        bytes.addAndGet(-image.size());
+    }
+
+    public long getFiles() {
+        return files.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getLagSeconds() {
+        return lagSeconds.get();
+    }
+
+    private static boolean validId(String id) {
+        try {
+            return UUID.fromString(id).toString().equals(id);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void fsync(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    public record SpooledImage(String id, Path file, long size, String contentType, String sha256, Instant createdAt) {
+
+        public String imagePath() {
+            return PREFIX + id;
+        }
+    }
+}
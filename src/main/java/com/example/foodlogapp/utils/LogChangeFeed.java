@@ -0,0 +1,403 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.event.LogChangeEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes committed log changes (LogChangeEvent) to the SSE subscribers of GET /logs/user/{userId}/events,
+ * so open portal tabs no longer poll the log list.
+ *
+ * An idle subscriber is just an emitter plus an empty queue: no thread is parked per connection. A change is
+ * appended to the queue of each of the user's subscribers and a small shared pool writes queued events out,
+ * at most one task per subscriber at a time. A subscriber whose queue holds app.events.buffer-size unsent
+ * events is considered too slow: its backlog is dropped and replaced by a single "resync" event, after which
+ * the client reloads the list (with If-None-Match) instead of replaying every change.
+ *
+ * SseEmitter writes block while the client's TCP window is full. A subscriber whose write has not finished
+ * within app.events.send-timeout-ms is evicted (no further events, its connection is completed once the write
+ * returns, at the latest after the connector's write timeout), and the send pool gets a replacement thread for
+ * as long as the stalled one is stuck, so slow clients cannot take the pool away from everybody else.
+ *
+ * Writes made on other nodes produce no event here: every app.events.poll-ms the user_log_version of all users
+ * with subscribers on this node is read in one query, and a version beyond what the local events account for
+ * sends those subscribers a resync. Local events are counted before their transaction commits (the version is
+ * bumped in the same phase), so a poll never mistakes a local write for a remote one.
+ *
+ * Metrics: events.subscribers, events.sent, events.resyncs, events.stalled, events.remote-resyncs.
+ */
+@Slf4j
+@Component
+public class LogChangeFeed {
+
+    public static final String RESYNC = "resync";
+    // users per user_log_version query of the poll
+    private static final int POLL_BATCH = 1000;
+
+    private final LogVersionTracker logVersionTracker;
+    private final int bufferSize;
+    private final int maxPerUser;
+    private final int maxSubscribers;
+    private final long timeoutMs;
+    private final long sendTimeoutNanos;
+    private final int sendThreads;
+    private final int maxStalledThreads;
+
+    private final Map<Integer, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    // user_log_version the subscribers of each user have been told about; pollVersions() drops users without any
+    private final Map<Integer, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final AtomicLong subscriberCount = new AtomicLong();
+    // SSE event ids; only used to tell the client a reconnect happened (there is no replay)
+    private final AtomicLong eventIds = new AtomicLong();
+    private final ThreadPoolExecutor senders;
+    // send threads stuck in the write of an evicted subscriber, each replaced by an extra pool thread
+    private int stalledThreads;
+    private final Counter sent;
+    private final Counter resyncs;
+    private final Counter stalled;
+    private final Counter remoteResyncs;
+
+    public LogChangeFeed(LogVersionTracker logVersionTracker, MeterRegistry meterRegistry,
+                         @Value("${app.events.buffer-size:64}") int bufferSize,
+                         @Value("${app.events.max-per-user:10}") int maxPerUser,
+                         @Value("${app.events.max-subscribers:10000}") int maxSubscribers,
+                         @Value("${app.events.timeout-ms:1800000}") long timeoutMs,
+                         @Value("${app.events.send-threads:4}") int sendThreads,
+                         @Value("${app.events.send-timeout-ms:10000}") long sendTimeoutMs,
+                         @Value("${app.events.max-stalled-threads:64}") int maxStalledThreads) {
+        this.logVersionTracker = logVersionTracker;
+        this.bufferSize = bufferSize;
+        this.maxPerUser = maxPerUser;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMs = timeoutMs;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        this.sendThreads = sendThreads;
+        this.maxStalledThreads = maxStalledThreads;
+        AtomicInteger threadIds = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(sendThreads, sendThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "log-events-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        meterRegistry.gauge("events.subscribers", subscriberCount);
+        this.sent = meterRegistry.counter("events.sent");
+        this.resyncs = meterRegistry.counter("events.resyncs");
+        this.stalled = meterRegistry.counter("events.stalled");
+        this.remoteResyncs = meterRegistry.counter("events.remote-resyncs");
+    }
+
+    /**
+     * Opens a feed for the user, or returns null when the per-user or global subscriber limit is reached.
+     *
+     * @param reconnect the client sent Last-Event-ID: changes made while it was away are unknown, so it
+     *                  starts with a resync
+     */
+    public SseEmitter subscribe(Integer userId, boolean reconnect) {
+        if (!versions.containsKey(userId)) {
+            // before "ready": the client loads the list after it, so earlier writes are already in it
+            versions.putIfAbsent(userId, new AtomicLong(logVersionTracker.version(userId)));
+        }
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return null;
+        }
+        SseEmitter emitter = newEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(userId, emitter);
+        boolean[] added = {false};
+        subscribers.compute(userId, (id, list) -> {
+            if (list == null) list = new CopyOnWriteArrayList<>();
+            if (list.size() < maxPerUser) {
+                list.add(subscriber);
+                added[0] = true;
+            }
+            return list;
+        });
+        if (!added[0]) {
+            subscriberCount.decrementAndGet();
+            return null;
+        }
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+        String first = reconnect ? RESYNC : "ready";
+        subscriber.offer(first, payload(first, null));
+        return emitter;
+    }
+
+    public long getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    // Runs in the writing transaction, like the version bump itself (LogVersionTracker)
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void countLogChange(LogChangeEvent event) {
+        AtomicLong version = event.getUserId() != null ? versions.get(event.getUserId()) : null;
+        if (version != null) {
+            version.incrementAndGet();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLogChange(LogChangeEvent event) {
+        if (event.getLogId() == null && event.getType() != LogChangeEvent.Type.IMPORTED) {
+            return; // USER_UPDATED: nothing log-shaped to push
+        }
+        List<Subscriber> list = subscribers.get(event.getUserId());
+        if (list == null) {
+            return;
+        }
+        // an import chunk has no single log to point at: clients refetch the list
+        String type = event.getType() == LogChangeEvent.Type.IMPORTED
+                ? RESYNC : event.getType().name().toLowerCase().replace('_', '-');
+        String data = payload(type, event.getLogId());
+        for (Subscriber subscriber : list) {
+            subscriber.offer(type, data);
+        }
+    }
+
+    /**
+     * SSE comment on every open connection: keeps proxies from closing idle streams and detects dead clients.
+     */
+    @Scheduled(fixedDelayString = "${app.events.heartbeat-ms:20000}")
+    public void heartbeat() {
+        for (List<Subscriber> list : subscribers.values()) {
+            for (Subscriber subscriber : list) {
+                subscriber.offer(null, null);
+            }
+        }
+    }
+
+    /**
+     * Sends a resync to the subscribers of every user whose logs were written on another node since the last poll.
+     */
+    @Scheduled(fixedDelayString = "${app.events.poll-ms:2000}")
+    public void pollVersions() {
+        versions.keySet().removeIf(userId -> !subscribers.containsKey(userId));
+        List<Integer> userIds = new ArrayList<>(subscribers.keySet());
+        for (int from = 0; from < userIds.size(); from += POLL_BATCH) {
+            Map<Integer, Long> current = logVersionTracker.versions(userIds.subList(from, Math.min(from + POLL_BATCH, userIds.size())));
+            for (Map.Entry<Integer, Long> entry : current.entrySet()) {
+                AtomicLong seen = versions.get(entry.getKey());
+                if (seen == null) {
+                    // subscribed while the previous poll dropped the user: start from here
+                    versions.putIfAbsent(entry.getKey(), new AtomicLong(entry.getValue()));
+                    continue;
+                }
+                long known = seen.get();
+                // a replica that is behind only reads an older version; a concurrent local event makes the
+                // CAS fail and the next poll looks again
+                if (entry.getValue() > known && seen.compareAndSet(known, entry.getValue())) {
+                    List<Subscriber> list = subscribers.get(entry.getKey());
+                    if (list == null) {
+                        continue;
+                    }
+                    remoteResyncs.increment();
+                    for (Subscriber subscriber : list) {
+                        subscriber.offer(RESYNC, payload(RESYNC, null));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Evicts subscribers whose current write has been blocked longer than app.events.send-timeout-ms.
+     */
+    @Scheduled(fixedDelayString = "${app.events.stall-check-ms:1000}")
+    public void evictStalled() {
+        long now = System.nanoTime();
+        for (List<Subscriber> list : subscribers.values()) {
+            for (Subscriber subscriber : list) {
+                if (subscriber.markStalled(now)) {
+                    stalled.increment();
+                    log.info("Evicting log event subscriber of user {}: a write took longer than {} ms",
+                            subscriber.userId, TimeUnit.NANOSECONDS.toMillis(sendTimeoutNanos));
+                    unsubscribe(subscriber);
+                    replaceStalledThread(true);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        for (List<Subscriber> list : subscribers.values()) {
+            for (Subscriber subscriber : list) {
+                subscriber.emitter.complete();
+            }
+        }
+        senders.shutdown();
+        senders.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    // Emitter of a new subscription; tests substitute one that records or blocks its writes
+    SseEmitter newEmitter(long timeoutMs) {
+        return new SseEmitter(timeoutMs);
+    }
+
+    /**
+     * Grows the pool by one thread while a send thread is stuck in the write of an evicted subscriber, and
+     * shrinks it again once that write returns.
+     */
+    private void replaceStalledThread(boolean stuck) {
+        synchronized (senders) {
+            if (stuck) {
+                if (stalledThreads >= maxStalledThreads) {
+                    return;
+                }
+                stalledThreads++;
+                senders.setMaximumPoolSize(sendThreads + stalledThreads);
+                senders.setCorePoolSize(sendThreads + stalledThreads);
+            } else if (stalledThreads > 0) {
+                stalledThreads--;
+                senders.setCorePoolSize(sendThreads + stalledThreads);
+                senders.setMaximumPoolSize(sendThreads + stalledThreads);
+            }
+        }
+    }
+
+    private static String payload(String type, Integer logId) {
+        return "{\"type\":\"" + type + "\"" + (logId != null ? ",\"logId\":" + logId : "") + "}";
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (!subscriber.closed.compareAndSet(false, true)) {
+            return;
+        }
+        subscribers.computeIfPresent(subscriber.userId, (id, list) -> {
+            list.remove(subscriber);
+            return list.isEmpty() ? null : list;
+        });
+        subscriberCount.decrementAndGet();
+    }
+
+    private final class Subscriber {
+        final Integer userId;
+        final SseEmitter emitter;
+        final AtomicBoolean closed = new AtomicBoolean();
+        // guarded by this; entries are {name, data}, name null = heartbeat comment
+        private final ArrayDeque<String[]> queue = new ArrayDeque<>();
+        private boolean scheduled;
+        // guarded by this: System.nanoTime() the current write started, 0 when not writing
+        private long writeStarted;
+        // evicted by evictStalled() while writing; its thread has been replaced
+        private boolean stalled;
+
+        Subscriber(Integer userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        void offer(String name, String data) {
+            if (closed.get()) {
+                return;
+            }
+            synchronized (this) {
+                if (name == null && !queue.isEmpty()) {
+                    return; // about to write anyway
+                }
+                if (queue.size() >= bufferSize) {
+                    // too slow to keep up: whatever it missed, a reload covers it
+                    queue.clear();
+                    queue.add(new String[]{RESYNC, payload(RESYNC, null)});
+                    resyncs.increment();
+                    return;
+                }
+                if (!queue.isEmpty() && RESYNC.equals(queue.peekLast()[0])) {
+                    return; // the pending resync already covers this change
+                }
+                queue.add(new String[]{name, data});
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            senders.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                String[] next;
+                synchronized (this) {
+                    next = queue.poll();
+                    if (next == null || closed.get()) {
+                        queue.clear();
+                        scheduled = false;
+                        return;
+                    }
+                }
+                boolean failed = false;
+                boolean wasStalled;
+                synchronized (this) {
+                    writeStarted = System.nanoTime();
+                }
+                try {
+                    if (next[0] == null) {
+                        emitter.send(SseEmitter.event().comment("ping"));
+                    } else {
+                        emitter.send(SseEmitter.event()
+                                .id(Long.toString(eventIds.incrementAndGet()))
+                                .name(next[0])
+                                .data(next[1], MediaType.APPLICATION_JSON));
+                        sent.increment();
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // client went away; the container reports it through onError / onCompletion as well
+                    log.debug("Dropping log event subscriber of user {}: {}", userId, e.toString());
+                    failed = true;
+                    unsubscribe(this);
+                    emitter.completeWithError(e);
+                } finally {
+                    synchronized (this) {
+                        writeStarted = 0;
+                        wasStalled = stalled;
+                    }
+                }
+                if (wasStalled) {
+                    replaceStalledThread(false);
+                    if (!failed) {
+                        // evicted, but the write went through in the end: close so the client reconnects
+                        emitter.complete();
+                    }
+                    synchronized (this) {
+                        queue.clear();
+                        scheduled = false;
+                    }
+                    return;
+                }
+            }
+        }
+
+        // Evicts the subscriber when its current write started more than the send timeout before `now`
+        synchronized boolean markStalled(long now) {
+            if (stalled || writeStarted == 0 || now - writeStarted <= sendTimeoutNanos) {
+                return false;
+            }
+            stalled = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.config.InvalidParameterException;
+import com.example.foodlogapp.dto.LogExportRow;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Writes export rows to a stream as CSV (with a header line) or NDJSON (one JSON object per line).
+ * Rows are written as they arrive through a fixed-size buffer, so memory does not depend on the number of rows.
+ */
+public class LogExportWriter implements Consumer<LogExportRow>, Closeable {
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format parse(String value) {
+            if (value == null || value.isBlank()) return CSV;
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(value.trim())) return format;
+            }
+            throw new InvalidParameterException("Unknown export format: " + value + " (expected csv or ndjson)");
+        }
+    }
+
+    static final String CSV_HEADER = "log_id,user_id,image_path,confidence,ingredient_id,ingredient_name,kcal,weight";
+
+    private final Format format;
+    private final Writer writer;
+    private long rows;
+
+    public LogExportWriter(OutputStream out, Format format) {
+        this.format = format;
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+        if (format == Format.CSV) {
+            write(CSV_HEADER);
+            write("\n");
+        }
+    }
+
+    @Override
+    public void accept(LogExportRow row) {
+        if (format == Format.CSV) {
+            writeCsv(row);
+        } else {
+            writeJson(row);
+        }
+        rows++;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void writeCsv(LogExportRow row) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(row.getLogId()).append(',')
+                .append(row.getUserId()).append(',');
+        appendCsv(sb, row.getImagePath());
+        sb.append(',');
+        appendNullable(sb, row.getConfidence());
+        sb.append(',');
+        appendNullable(sb, row.getIngredientId());
+        sb.append(',');
+        appendCsv(sb, row.getIngredientName());
+        sb.append(',');
+        appendNullable(sb, row.getKcal());
+        sb.append(',');
+        appendNullable(sb, row.getWeight() != null ? row.getWeight().toPlainString() : null);
+        sb.append('\n');
+        write(sb);
+    }
+
+    private void writeJson(LogExportRow row) {
+        StringBuilder sb = new StringBuilder(160);
+        sb.append("{\"logId\":").append(row.getLogId())
+                .append(",\"userId\":").append(row.getUserId())
+                .append(",\"imagePath\":");
+        appendJson(sb, row.getImagePath());
+        sb.append(",\"confidence\":").append(row.getConfidence())
+                .append(",\"ingredientId\":").append(row.getIngredientId())
+                .append(",\"ingredientName\":");
+        appendJson(sb, row.getIngredientName());
+        sb.append(",\"kcal\":").append(row.getKcal())
+                .append(",\"weight\":").append(row.getWeight() != null ? row.getWeight().toPlainString() : null)
+                .append("}\n");
+        write(sb);
+    }
+
+    private static void appendNullable(StringBuilder sb, Object value) {
+        if (value != null) sb.append(value);
+    }
+
+    // RFC 4180: quote when the value contains a separator, quote or line break
+    private static void appendCsv(StringBuilder sb, String value) {
+        if (value == null) return;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            sb.append(value);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') sb.append('"');
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    private static void appendJson(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    private void write(CharSequence text) {
+        try {
+            writer.append(text);
+        } catch (IOException e) {
+            // usually the client went away; aborts the streaming query
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.config.InvalidParameterException;
+import com.example.foodlogapp.dto.ImportReport;
+import com.example.foodlogapp.dto.ImportedLog;
+import com.example.foodlogapp.entity.FoodIngredient;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Streaming parser for bulk imports. Accepts the same CSV / NDJSON layout that LogExportWriter produces:
+ * one row per log x ingredient, rows of the same log consecutive and sharing a log_id. user_id and
+ * ingredient_id in the file are ignored (the importing user owns the logs, ids are assigned on insert).
+ *
+ * Invalid rows are recorded in the report and skipped; only the current log is held in memory, plus the
+ * log_ids already seen. Rows of a log_id that reappears after other logs are rejected rather than imported
+ * as a second log.
+ */
+public class LogImportReader {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final BufferedReader reader;
+    private final LogExportWriter.Format format;
+    private final ImportReport report;
+    private final int maxReportedErrors;
+
+    private long lineNumber = 0;
+    private Map<String, Integer> csvColumns;
+    private ImportedLog current;
+    private final Set<String> seenLogIds = new HashSet<>();
+
+    public LogImportReader(InputStream in, LogExportWriter.Format format, ImportReport report, int maxReportedErrors) {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 16 * 1024);
+        this.format = format;
+        this.report = report;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    /**
+     * Reads the whole input and hands every complete log to the consumer in file order.
+     *
+     * @throws InvalidParameterException when the CSV header lacks a required column
+     */
+    public void forEachLog(Consumer<ImportedLog> consumer) throws IOException {
+        if (format == LogExportWriter.Format.CSV) {
+            readCsvHeader();
+        }
+        while (true) {
+            long line = lineNumber + 1;
+            Row row;
+            try {
+                row = format == LogExportWriter.Format.CSV ? nextCsvRow() : nextJsonRow();
+            } catch (JsonProcessingException e) {
+                fail(line, null, "Malformed JSON: " + e.getOriginalMessage());
+                continue;
+            } catch (IllegalArgumentException e) {
+                // unterminated quote: the rest of the file was swallowed by the field
+                fail(line, null, e.getMessage());
+                continue;
+            }
+            if (row == null) break;
+            if (row == Row.BLANK) continue;
+            report.setRowsRead(report.getRowsRead() + 1);
+            accept(line, row, consumer);
+        }
+        if (current != null) {
+            consumer.accept(current);
+            current = null;
+        }
+    }
+
+    private void accept(long line, Row row, Consumer<ImportedLog> consumer) {
+        String logId = trimToNull(row.logId);
+        if (logId == null) {
+            fail(line, null, "log_id is required");
+            return;
+        }
+        FoodIngredient ingredient;
+        try {
+            ingredient = parseIngredient(row);
+        } catch (IllegalArgumentException e) {
+            fail(line, logId, e.getMessage());
+            return;
+        }
+
+        if (current == null || !current.getSourceId().equals(logId)) {
+            if (seenLogIds.contains(logId)) {
+                fail(line, logId, "Rows of log_id " + logId + " are not consecutive");
+                return;
+            }
+            ImportedLog next = new ImportedLog();
+            next.setSourceId(logId);
+            next.setLine(line);
+            try {
+                next.getLog().setImagePath(parseImagePath(row.imagePath));
+                next.getLog().setConfidence(parseConfidence(row.confidence));
+            } catch (IllegalArgumentException e) {
+                fail(line, logId, e.getMessage());
+                return;
+            }
+            if (current != null) {
+                consumer.accept(current);
+            }
+            seenLogIds.add(logId);
+            current = next;
+        }
+        if (ingredient != null) {
+            current.getIngredients().add(ingredient);
+        }
+    }
+
+    private void fail(long line, String logId, String message) {
+        report.setRowsFailed(report.getRowsFailed() + 1);
+        report.addError(line, logId, message, maxReportedErrors);
+    }
+
+    // --- validation (limits follow schema.sql) ---
+
+    private static String parseImagePath(String value) {
+        String path = trimToNull(value);
+        if (path == null) throw new IllegalArgumentException("image_path is required");
+        if (path.length() > 255) throw new IllegalArgumentException("image_path longer than 255 characters");
+        return path;
+    }
+
+    private static Integer parseConfidence(String value) {
+        Integer confidence = parseInt("confidence", value);
+        if (confidence == null) throw new IllegalArgumentException("confidence is required");
+        if (confidence < 0 || confidence > 100) throw new IllegalArgumentException("confidence must be between 0 and 100");
+        return confidence;
+    }
+
+    // null when the row is a log without ingredients
+    private static FoodIngredient parseIngredient(Row row) {
+        String name = trimToNull(row.ingredientName);
+        Integer kcal = parseInt("kcal", row.kcal);
+        BigDecimal weight = parseWeight(row.weight);
+        if (name == null) {
+            if (kcal != null || weight != null) throw new IllegalArgumentException("ingredient_name is required");
+            return null;
+        }
+        if (name.length() > 100) throw new IllegalArgumentException("ingredient_name longer than 100 characters");
+        if (kcal != null && kcal < 0) throw new IllegalArgumentException("kcal must not be negative");
+        FoodIngredient ingredient = new FoodIngredient();
+        ingredient.setIngredientName(name);
+        ingredient.setKcal(kcal);
+        ingredient.setWeight(weight);
+        return ingredient;
+    }
+
+    private static BigDecimal parseWeight(String value) {
+        String s = trimToNull(value);
+        if (s == null) return null;
+        BigDecimal weight;
+        try {
+            weight = new BigDecimal(s).setScale(2, RoundingMode.HALF_UP);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("weight is not a number: " + s);
+        }
+        // DECIMAL(6,2)
+        if (weight.signum() < 0 || weight.compareTo(new BigDecimal("9999.99")) > 0) {
+            throw new IllegalArgumentException("weight must be between 0 and 9999.99");
+        }
+        return weight;
+    }
+
+    private static Integer parseInt(String column, String value) {
+        String s = trimToNull(value);
+        if (s == null) return null;
+        try {
+            return Integer.valueOf(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(column + " is not an integer: " + s);
+        }
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) return null;
+        String s = value.trim();
+        return s.isEmpty() ? null : s;
+    }
+
+    // --- NDJSON ---
+
+    private Row nextJsonRow() throws IOException {
+        String line = reader.readLine();
+        if (line == null) return null;
+        lineNumber++;
+        if (line.isBlank()) return Row.BLANK;
+        JsonNode node = MAPPER.readTree(line);
+        Row row = new Row();
+        row.logId = text(node, "logId");
+        row.imagePath = text(node, "imagePath");
+        row.confidence = text(node, "confidence");
+        row.ingredientName = text(node, "ingredientName");
+        row.kcal = text(node, "kcal");
+        row.weight = text(node, "weight");
+        return row;
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    // --- CSV (RFC 4180: quoted fields may contain separators, quotes and line breaks) ---
+
+    private void readCsvHeader() throws IOException {
+        List<String> header = nextCsvRecord();
+        if (header == null) {
+            csvColumns = Map.of();
+            return;
+        }
+        csvColumns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            String name = header.get(i) == null ? "" : header.get(i).trim().toLowerCase();
+            csvColumns.put(name.startsWith("\uFEFF") ? name.substring(1) : name, i);
+        }
+        for (String required : List.of("log_id", "image_path", "confidence")) {
+            if (!csvColumns.containsKey(required)) {
+                throw new InvalidParameterException("CSV header is missing column: " + required);
+            }
+        }
+    }
+
+    private Row nextCsvRow() throws IOException {
+        List<String> record = nextCsvRecord();
+        if (record == null) return null;
+        if (record.size() == 1 && record.get(0) == null) return Row.BLANK;
+        Row row = new Row();
+        row.logId = column(record, "log_id");
+        row.imagePath = column(record, "image_path");
+        row.confidence = column(record, "confidence");
+        row.ingredientName = column(record, "ingredient_name");
+        row.kcal = column(record, "kcal");
+        row.weight = column(record, "weight");
+        return row;
+    }
+
+    private String column(List<String> record, String name) {
+        Integer index = csvColumns.get(name);
+        return index != null && index < record.size() ? record.get(index) : null;
+    }
+
+    // One record, possibly spanning several physical lines; empty unquoted fields are null. Null at EOF.
+    private List<String> nextCsvRecord() throws IOException {
+        int c = reader.read();
+        if (c == -1) return null;
+        lineNumber++;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IllegalArgumentException("Unterminated quoted field starting before line " + lineNumber);
+                }
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        reader.reset();
+                    }
+                } else {
+                    if (c == '\n') lineNumber++;
+                    field.append((char) c);
+                }
+            } else if (c == -1 || c == '\n') {
+                fields.add(value(field, wasQuoted));
+                return fields;
+            } else if (c == '\r') {
+                // CRLF line ending: the \n follows
+            } else if (c == ',') {
+                fields.add(value(field, wasQuoted));
+                field.setLength(0);
+                wasQuoted = false;
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+                wasQuoted = true;
+            } else {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+    }
+
+    private static String value(StringBuilder field, boolean wasQuoted) {
+        return field.isEmpty() && !wasQuoted ? null : field.toString();
+    }
+
+    private static final class Row {
+        static final Row BLANK = new Row();
+
+        String logId;
+        String imagePath;
+        String confidence;
+        String ingredientName;
+        String kcal;
+        String weight;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.config.ReadRoutingContext;
+import com.example.foodlogapp.dto.UserLogVersion;
+import com.example.foodlogapp.event.LogChangeEvent;
+import com.example.foodlogapp.mapper.LogVersionMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Per-user, monotonically increasing version of everything the /logs endpoints return for that user, kept in
+ * user_log_version and bumped in the same transaction as every write (see LogChangeEvent). Strong ETags are built
+ * from it, so a matching If-None-Match is answered with 304 after one primary-key lookup instead of querying
+ * food_log / food_ingredient - correct no matter which node (request, analysis worker, re-analysis runner) wrote.
+ *
+ * Stamps are read from the primary: a replica that is behind would answer a client that has already seen newer
+ * data (its own write, or a read served by another node) with a stale 304. The body of a 200 may still come from
+ * the replica once it has caught up with the stamp ({@link #isVisible}), otherwise from the primary. Read the stamp
+ * before the data: a concurrent write can then only make the tag older than the body, never newer.
+ */
+@Component
+public class LogVersionTracker {
+
+    private final LogVersionMapper logVersionMapper;
+
+    public LogVersionTracker(LogVersionMapper logVersionMapper) {
+        this.logVersionMapper = logVersionMapper;
+    }
+
+    /**
+     * "userId:version" of the user's log data, read from the primary.
+     */
+    public String stamp(Integer userId) {
+        return onPrimary(() -> logVersionMapper.findStamp(userId));
+    }
+
+    /**
+     * Current version of the user's log data; per-user caches compare it to detect writes made on other nodes.
+     */
+    @Transactional(readOnly = true)
+    public long version(Integer userId) {
+        return logVersionMapper.findVersion(userId);
+    }
+
+    /**
+     * Current versions of the given users (0 for users that were never written to).
+     */
+    @Transactional(readOnly = true)
+    public Map<Integer, Long> versions(Collection<Integer> userIds) {
+        Map<Integer, Long> versions = new HashMap<>();
+        for (Integer userId : userIds) {
+            versions.put(userId, 0L);
+        }
+        if (!userIds.isEmpty()) {
+            for (UserLogVersion row : logVersionMapper.findVersions(userIds)) {
+                versions.put(row.getUserId(), row.getVersion());
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Stamp of the log's owner, read from the primary; null when the log does not exist.
+     */
+    public String stampOfLog(Integer logId) {
+        return onPrimary(() -> logVersionMapper.findStampByLogId(logId));
+    }
+
+    /**
+     * Whether read-only transactions of this request (the replica, unless it is routed to the primary) already see
+     * the data of the given stamp.
+     */
+    @Transactional(readOnly = true)
+    public boolean isVisible(String stamp) {
+        int separator = stamp.indexOf(':');
+        Integer userId = Integer.valueOf(stamp.substring(0, separator));
+        return logVersionMapper.findVersion(userId) >= Long.parseLong(stamp.substring(separator + 1));
+    }
+
+    /**
+     * User whose stamp the first tag of an If-None-Match header was built from; null when there is no such tag.
+     * Lets a log be revalidated from user_log_version alone, without looking up its owner in food_log.
+     */
+    public Integer userOf(String ifNoneMatch) {
+        if (ifNoneMatch == null) return null;
+        String tag = ifNoneMatch.split(",")[0].trim();
+        if (tag.startsWith("W/")) tag = tag.substring(2);
+        int end = tag.indexOf('-');
+        if (!tag.startsWith("\"") || end < 2) return null;
+        try {
+            return Integer.valueOf(tag.substring(1, end));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Strong ETag for a representation of the user's data at the given stamp.
+     *
+     * @param variant distinguishes representations of the same version (resource + field selection)
+     */
+    public String etag(String stamp, String variant) {
+        return "\"" + stamp.replace(':', '-') + "-" + Integer.toHexString(variant.hashCode()) + "\"";
+    }
+
+    // Not in a read-only transaction, so the connection is taken from the primary even when the request may use
+    // the replica
+    private static <T> T onPrimary(Supplier<T> read) {
+        boolean forced = ReadRoutingContext.isPrimaryForced();
+        ReadRoutingContext.forcePrimary(true);
+        try {
+            return read.get();
+        } finally {
+            ReadRoutingContext.forcePrimary(forced);
+        }
+    }
+
+    // Runs inside the writing transaction; without one (fallback) right after the write, which only leaves
+    // a short window where the tag is older than the data.
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onLogChange(LogChangeEvent event) {
+        if (event.getUserId() != null) {
+            logVersionMapper.bump(event.getUserId());
+        }
+    }
+}
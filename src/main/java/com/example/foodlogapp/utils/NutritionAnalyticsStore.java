@@ -0,0 +1,79 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.dto.NutritionRow;
+import com.example.foodlogapp.service.FoodIngredientService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Keeps the ingredient history of recently queried users as {@link UserNutritionColumns} for the /analytics
+ * endpoints. A user is loaded on first query (one streaming join); afterwards every committed write to one of
+ * their logs reloads just that log's rows, and writes made on other nodes are noticed through user_log_version
+ * (see {@link UserDataCache}).
+ *
+ * Memory is bounded by app.analytics.max-bytes (least recently queried user evicted first); a user whose history
+ * alone exceeds app.analytics.max-bytes-per-user is answered from a fresh load without being kept.
+ *
+ * Metrics: analytics.store.bytes, analytics.store.users, analytics.store.loads, analytics.store.evictions,
+ * analytics.store.stale.
+ */
+@Component
+public class NutritionAnalyticsStore extends UserDataCache<UserNutritionColumns, List<NutritionRow>> {
+
+    private final FoodIngredientService foodIngredientService;
+
+    public NutritionAnalyticsStore(FoodIngredientService foodIngredientService, LogVersionTracker logVersionTracker,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${app.analytics.max-bytes:67108864}") long maxBytes,
+                                   @Value("${app.analytics.max-bytes-per-user:4194304}") long maxBytesPerUser,
+                                   @Value("${app.analytics.max-age:10m}") Duration maxAge) {
+        super("analytics.store", logVersionTracker, meterRegistry, maxBytes, maxBytesPerUser, maxAge);
+        this.foodIngredientService = foodIngredientService;
+    }
+
+    /**
+     * Runs the query against the user's columns, loading them first if needed.
+     */
+    @Override
+    public <T> T query(Integer userId, Function<UserNutritionColumns, T> query) {
+        return super.query(userId, query);
+    }
+
+    @Override
+    protected UserNutritionColumns load(Integer userId) {
+        UserNutritionColumns columns = new UserNutritionColumns();
+        foodIngredientService.streamNutritionByUserId(userId, row -> add(columns, row));
+        return columns;
+    }
+
+    @Override
+    protected List<NutritionRow> fetchLog(Integer userId, Integer logId) {
+        return foodIngredientService.findNutritionByLogId(userId, logId);
+    }
+
+    // A deleted log simply has no rows
+    @Override
+    protected void applyLog(UserNutritionColumns columns, Integer logId, List<NutritionRow> rows) {
+        columns.removeLog(logId);
+        if (rows != null) {
+            for (NutritionRow row : rows) {
+                add(columns, row);
+            }
+        }
+    }
+
+    @Override
+    protected long estimatedBytes(UserNutritionColumns columns) {
+        return columns.estimatedBytes();
+    }
+
+    private static void add(UserNutritionColumns columns, NutritionRow row) {
+        columns.add(row.getLogId(), row.getCreatedAt() != null ? row.getCreatedAt() : 0L,
+                row.getIngredientName(), row.getKcal(), row.getWeight());
+    }
+}
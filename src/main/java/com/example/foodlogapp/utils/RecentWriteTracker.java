@@ -0,0 +1,57 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.event.LogChangeEvent;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers which users / logs were written within the last sticky window, so reads that follow a write
+ * can be kept on the primary until the replica has caught up (read-your-writes).
+ */
+public class RecentWriteTracker {
+
+    private static final int PRUNE_EVERY = 1024;
+
+    private final long windowMillis;
+    private final Map<Integer, Long> users = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> logs = new ConcurrentHashMap<>();
+    private final AtomicInteger writes = new AtomicInteger();
+
+    public RecentWriteTracker(Duration window) {
+        this.windowMillis = window.toMillis();
+    }
+
+    public boolean recentlyWroteUser(Integer userId) {
+        return isRecent(users, userId);
+    }
+
+    public boolean recentlyWroteLog(Integer logId) {
+        return isRecent(logs, logId);
+    }
+
+    public void recordWrite(Integer userId, Integer logId) {
+        long until = System.currentTimeMillis() + windowMillis;
+        if (userId != null) users.put(userId, until);
+        if (logId != null) logs.put(logId, until);
+        if (writes.incrementAndGet() % PRUNE_EVERY == 0) {
+            long now = System.currentTimeMillis();
+            users.values().removeIf(t -> t < now);
+            logs.values().removeIf(t -> t < now);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLogChange(LogChangeEvent event) {
+        recordWrite(event.getUserId(), event.getLogId());
+    }
+
+    private static boolean isRecent(Map<Integer, Long> map, Integer id) {
+        if (id == null) return false;
+        Long until = map.get(id);
+        return until != null && until >= System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.foodlogapp.utils;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Which body encoding content negotiation picks for an Accept header (JSON unless CBOR is preferred), so
+ * conditional GETs can tag the two encodings of the same version differently. Mirrors the converter order:
+ * JSON comes first, so wildcards select JSON.
+ */
+public final class ResponseFormats {
+
+    public static final String JSON = "json";
+    public static final String CBOR = "cbor";
+
+    private ResponseFormats() {
+    }
+
+    public static String of(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return JSON;
+        }
+        List<MediaType> types;
+        try {
+            types = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return JSON; // rejected later by content negotiation anyway
+        }
+        types = types.stream()
+                .sorted(Comparator.comparingDouble(MediaType::getQualityValue).reversed())
+                .toList();
+        for (MediaType type : types) {
+            if (type.getQualityValue() <= 0) {
+                break;
+            }
+            if (MediaType.APPLICATION_CBOR.equalsTypeAndSubtype(type)) {
+                return CBOR;
+            }
+            if (type.includes(MediaType.APPLICATION_JSON)) {
+                return JSON;
+            }
+        }
+        return JSON;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.foodlogapp.utils;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.example.foodlogapp.config.StorageProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker for the calls S3Service makes to S3. After app.storage.s3-failure-threshold consecutive
+ * failures (5xx, throttling, network errors, timeouts, or calls slower than s3-slow-call-threshold) it opens:
+ * calls fail immediately with {@link S3UnavailableException} instead of each waiting for the SDK's timeouts and
+ * retries. After s3-open-duration one probe call is let through (half-open); its outcome closes or re-opens it.
+ * Client errors (404, 403, ...) prove S3 is reachable and count as successes.
+ *
+ * Metrics: s3.breaker.state (0 closed, 1 half-open, 2 open), s3.breaker.opened, s3.breaker.rejected.
+ */
+@Slf4j
+@Component
+public class S3CircuitBreaker {
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final StorageProperties storageProperties;
+    private final Counter opened;
+    private final Counter rejected;
+
+    // guarded by this
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntilNanos;
+    private boolean probeInFlight;
+
+    public S3CircuitBreaker(StorageProperties storageProperties, MeterRegistry meterRegistry) {
+        this.storageProperties = storageProperties;
+        Gauge.builder("s3.breaker.state", this, breaker -> breaker.getState().ordinal()).register(meterRegistry);
+        this.opened = meterRegistry.counter("s3.breaker.opened");
+        this.rejected = meterRegistry.counter("s3.breaker.rejected");
+    }
+
+    /**
+     * Runs the S3 call through the breaker.
+     *
+     * @throws S3UnavailableException when the breaker is open, or the call failed in a way that counts against S3
+     *                                (client errors are rethrown unchanged)
+     */
+    public <T> T call(Supplier<T> s3Call) {
+        if (!tryAcquire()) {
+            rejected.increment();
+            throw new S3UnavailableException("S3 is unavailable (circuit open)", null);
+        }
+        long start = System.nanoTime();
+        try {
+            T result = s3Call.get();
+            record(System.nanoTime() - start <= storageProperties.getS3SlowCallThreshold().toNanos());
+            return result;
+        } catch (AmazonServiceException e) {
+            if (e.getStatusCode() >= 500 || e.getStatusCode() == 429 || "SlowDown".equals(e.getErrorCode())) {
+                record(false);
+                throw new S3UnavailableException("S3 call failed: " + e.getErrorMessage(), e);
+            }
+            record(true);
+            throw e;
+        } catch (SdkClientException e) {
+            record(false);
+            throw new S3UnavailableException("S3 call failed: " + e.getMessage(), e);
+        } catch (RuntimeException | Error e) {
+            // not an S3 outcome (e.g. reading the upload failed): release a probe without judging S3
+            synchronized (this) {
+                probeInFlight = false;
+            }
+            throw e;
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openUntilNanos >= 0) {
+            return State.HALF_OPEN; // the next call is the probe
+        }
+        return state;
+    }
+
+    /**
+     * False while open, so background work (the spool replayer) can skip a pass without counting as rejected.
+     */
+    public boolean isCallPermitted() {
+        State current = getState();
+        synchronized (this) {
+            return current == State.CLOSED || current == State.HALF_OPEN && !probeInFlight;
+        }
+    }
+
+    private synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openUntilNanos < 0) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            default:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    private synchronized void record(boolean success) {
+        probeInFlight = false;
+        if (success) {
+            if (state != State.CLOSED) {
+                log.info("S3 circuit closed");
+            }
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            return;
+        }
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || state == State.CLOSED && consecutiveFailures >= storageProperties.getS3FailureThreshold()) {
+            if (state == State.CLOSED) {
+                log.warn("S3 circuit opened after {} consecutive failures", consecutiveFailures);
+            }
+            state = State.OPEN;
+            openUntilNanos = System.nanoTime() + storageProperties.getS3OpenDuration().toNanos();
+            opened.increment();
+        }
+    }
+
+    /**
+     * S3 cannot be used right now; callers with a fallback (the local spool) use it, others answer 503.
+     */
+    public static class S3UnavailableException extends RuntimeException {
+        public S3UnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
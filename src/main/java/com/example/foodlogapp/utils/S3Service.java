@@ -1,15 +1,36 @@
 package com.example.foodlogapp.utils;
 
+import com.amazonaws.HttpMethod;
+import com.amazonaws.SdkClientException;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.example.foodlogapp.config.AwsConfiguration;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Predicate;
 
 @Service
 @Slf4j
@@ -18,6 +39,8 @@ public class S3Service {
 
     private final AmazonS3 s3Client;
     private final AwsConfiguration awsConfiguration;
+    // every call that reaches S3 goes through the breaker; presigning is local and does not
+    private final S3CircuitBreaker circuitBreaker;
 
     /**
      * 上传单个文件到 S3 并返回文件访问 URL
@@ -30,12 +53,13 @@ public class S3Service {
             metadata.setContentLength(file.getSize());
             metadata.setContentType(file.getContentType());
 
-            s3Client.putObject(new PutObjectRequest(
+            InputStream in = file.getInputStream();
+            circuitBreaker.call(() -> s3Client.putObject(new PutObjectRequest(
                     awsConfiguration.getBucketName(),
                     fileKey,
-                    file.getInputStream(),
+                    in,
                     metadata
-            )); // <-- 移除 .withCannedAcl(...)
+            ))); // <-- 移除 .withCannedAcl(...)
 
             String fileUrl = awsConfiguration.getBaseUrl() + "/" + fileKey;
             log.info("File uploaded successfully: {}", fileUrl);
@@ -47,4 +71,172 @@ public class S3Service {
             throw new RuntimeException("Failed to upload file", e);
         }
     }
+
+    /**
+     * 上传已缓存的图片：直接从堆外缓冲区读取，并把 SHA-256 记录在对象元数据（x-amz-meta-sha256）中
+     */
+    public String uploadFile(UploadSpool spool) {
+        String fileKey = "uploads/" + UUID.randomUUID();
+
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(spool.size());
+        metadata.setContentType(spool.getContentType());
+        metadata.addUserMetadata("sha256", spool.getSha256());
+
+        circuitBreaker.call(() -> s3Client.putObject(new PutObjectRequest(
+                awsConfiguration.getBucketName(),
+                fileKey,
+                spool.newInputStream(),
+                metadata
+        )));
+
+        String fileUrl = awsConfiguration.getBaseUrl() + "/" + fileKey;
+        log.info("File uploaded successfully: {} ({} bytes, sha256 {})", fileUrl, spool.size(), spool.getSha256());
+        return fileUrl;
+    }
+
+    /**
+     * 上传本地暂存（S3 不可用期间）的图片文件，由 SpoolReplayer 调用
+     */
+    public String uploadFile(Path file, String contentType, String sha256) {
+        String fileKey = "uploads/" + UUID.randomUUID();
+
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        metadata.addUserMetadata("sha256", sha256);
+
+        circuitBreaker.call(() -> s3Client.putObject(new PutObjectRequest(
+                awsConfiguration.getBucketName(),
+                fileKey,
+                file.toFile()
+        ).withMetadata(metadata)));
+
+        String fileUrl = awsConfiguration.getBaseUrl() + "/" + fileKey;
+        log.info("Spooled file uploaded: {} -> {}", file.getFileName(), fileUrl);
+        return fileUrl;
+    }
+
+    /**
+     * 根据 uploadFile 返回的 URL 下载文件内容及上传时记录的 Content-Type（异步/重新分析需要重新读取图片）
+     */
+    public DownloadedFile downloadFile(String fileUrl) {
+        String fileKey = keyOf(fileUrl);
+        return circuitBreaker.call(() -> {
+            try (S3Object object = s3Client.getObject(awsConfiguration.getBucketName(), fileKey);
+                 InputStream in = object.getObjectContent()) {
+                return new DownloadedFile(in.readAllBytes(), object.getObjectMetadata().getContentType());
+            } catch (IOException e) {
+                // the connection broke mid-body: an S3 failure as far as the breaker is concerned
+                throw new SdkClientException("Failed to download file " + fileKey, e);
+            }
+        });
+    }
+
+    /**
+     * 预签名 PUT：客户端把图片直接上传到 S3，字节不经过应用服务器。上传时必须带同样的 Content-Type 头
+     */
+    public PresignedUpload presignUpload(String contentType, Duration expiry) {
+        String fileKey = "uploads/" + UUID.randomUUID();
+        Instant expiresAt = Instant.now().plus(expiry);
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(
+                awsConfiguration.getBucketName(), fileKey, HttpMethod.PUT)
+                .withExpiration(Date.from(expiresAt))
+                .withContentType(contentType);
+        String uploadUrl = s3Client.generatePresignedUrl(request).toString();
+        return new PresignedUpload(awsConfiguration.getBaseUrl() + "/" + fileKey, uploadUrl, expiresAt);
+    }
+
+    /**
+     * 预签名 GET：交给模型自行下载图片，代替由应用服务器转发字节
+     */
+    public URI presignDownload(String fileUrl, Duration expiry) {
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(
+                awsConfiguration.getBucketName(), keyOf(fileUrl), HttpMethod.GET)
+                .withExpiration(Date.from(Instant.now().plus(expiry)));
+        try {
+            return s3Client.generatePresignedUrl(request).toURI();
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Presigned URL is not a valid URI", e);
+        }
+    }
+
+    /**
+     * 读取对象元数据（大小、Content-Type）；对象不存在时返回 null
+     */
+    public ObjectMetadata findMetadata(String fileUrl) {
+        try {
+            return circuitBreaker.call(() -> s3Client.getObjectMetadata(awsConfiguration.getBucketName(), keyOf(fileUrl)));
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    public void deleteFile(String fileUrl) {
+        String fileKey = keyOf(fileUrl);
+        circuitBreaker.call(() -> {
+            s3Client.deleteObject(awsConfiguration.getBucketName(), fileKey);
+            return null;
+        });
+    }
+
+    /**
+     * 分页（每页最多 1000 个）遍历前缀下的对象，不在内存中保留整个列表；回调返回 false 时停止
+     */
+    public void forEachObjectPage(String prefix, Predicate<List<S3ObjectSummary>> page) {
+        ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(awsConfiguration.getBucketName())
+                .withPrefix(prefix)
+                .withMaxKeys(1000);
+        ListObjectsV2Result result;
+        do {
+            result = circuitBreaker.call(() -> s3Client.listObjectsV2(request));
+            if (!page.test(result.getObjectSummaries())) {
+                return;
+            }
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+    }
+
+    /**
+     * 批量删除（一次请求最多 1000 个 key），返回实际删除的 key；部分失败时只记录日志
+     */
+    public List<String> deleteObjects(List<String> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        DeleteObjectsRequest request = new DeleteObjectsRequest(awsConfiguration.getBucketName())
+                .withKeys(keys.toArray(new String[0]))
+                .withQuiet(false);
+        try {
+            DeleteObjectsResult result = circuitBreaker.call(() -> s3Client.deleteObjects(request));
+            return result.getDeletedObjects().stream().map(DeleteObjectsResult.DeletedObject::getKey).toList();
+        } catch (MultiObjectDeleteException e) {
+            log.warn("Failed to delete {} of {} objects, first error: {}", e.getErrors().size(), keys.size(),
+                    e.getErrors().get(0).getMessage());
+            return e.getDeletedObjects().stream().map(DeleteObjectsResult.DeletedObject::getKey).toList();
+        }
+    }
+
+    // food_log.image_path of the object with this key
+    public String urlOf(String fileKey) {
+        return awsConfiguration.getBaseUrl() + "/" + fileKey;
+    }
+
+    private String keyOf(String fileUrl) {
+        String prefix = awsConfiguration.getBaseUrl() + "/";
+        if (fileUrl == null || !fileUrl.startsWith(prefix)) {
+            throw new IllegalArgumentException("Not an object of this bucket: " + fileUrl);
+        }
+        return fileUrl.substring(prefix.length());
+    }
+
+    // fileUrl 为写入 food_log.image_path 的对象地址，uploadUrl 为带签名的临时上传地址
+    public record PresignedUpload(String fileUrl, String uploadUrl, Instant expiresAt) {
+    }
+
+    public record DownloadedFile(byte[] data, String contentType) {
+    }
 }
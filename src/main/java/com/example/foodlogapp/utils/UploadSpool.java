@@ -0,0 +1,203 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.config.InvalidParameterException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * An uploaded image read exactly once into pooled direct (off-heap) blocks, hashed on the way in.
+ * The storage upload ({@link #newInputStream()}) and the model payload ({@link #toDataUri()}) both read from
+ * those blocks, so the image bytes are never copied onto the heap; only the base64 data URI the model client
+ * requires is a heap object.
+ *
+ * Not thread-safe, and not usable after {@link #close()}: closing hands the blocks back for the next upload.
+ * Created by {@link UploadSpooler}, which bounds the total size of open spools.
+ */
+public final class UploadSpool implements Closeable {
+
+    // base64 encodes 3 input bytes to 4 chars; a multiple of 3 keeps chunks free of padding
+    private static final int ENCODE_CHUNK = 3 * 16 * 1024;
+
+    private final List<ByteBuffer> blocks;
+    private final int blockSize;
+    private final int size;
+    private final String contentType;
+    private final String sha256;
+    private final Runnable onClose;
+    private boolean closed;
+
+    private UploadSpool(List<ByteBuffer> blocks, int size, String contentType, String sha256, Runnable onClose) {
+        this.blocks = blocks;
+        this.blockSize = blocks.get(0).capacity();
+        this.size = size;
+        this.contentType = contentType;
+        this.sha256 = sha256;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Reads {@code size} bytes from the stream into the given empty blocks, which must all have the same
+     * capacity and together hold at least {@code size} bytes. {@code onClose} is expected to recycle them.
+     *
+     * @throws InvalidParameterException when the stream is shorter or longer than {@code size}
+     */
+    public static UploadSpool read(InputStream in, int size, String contentType, List<ByteBuffer> blocks,
+                                   Runnable onClose) throws IOException {
+        MessageDigest digest = sha256Digest();
+        ReadableByteChannel channel = Channels.newChannel(in);
+        int read = 0;
+        for (ByteBuffer block : blocks) {
+            block.clear().limit(Math.min(block.capacity(), size - read));
+            while (block.hasRemaining()) {
+                int start = block.position();
+                int n = channel.read(block);
+                if (n < 0) {
+                    throw new InvalidParameterException("Upload ended after " + (read + start) + " of " + size + " bytes");
+                }
+                digest.update(block.duplicate().position(start).limit(start + n));
+            }
+            read += block.position();
+            block.flip();
+        }
+        if (read < size) {
+            throw new IllegalStateException("Blocks hold " + read + " of " + size + " bytes");
+        }
+        if (in.read() != -1) {
+            throw new InvalidParameterException("Upload is longer than its declared size of " + size + " bytes");
+        }
+        return new UploadSpool(blocks, size, contentType, HexFormat.of().formatHex(digest.digest()), onClose);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    // hex SHA-256 of the content
+    public String getSha256() {
+        return sha256;
+    }
+
+    /**
+     * A fresh stream over the content. Supports mark/reset at any distance, so the S3 client can retry
+     * a request without buffering the body itself.
+     */
+    public InputStream newInputStream() {
+        return new BlockInputStream();
+    }
+
+    /**
+     * {@code data:<content type>;base64,<content>} encoded straight from the off-heap buffer: one byte[] of the
+     * encoded length plus the (Latin-1, one byte per char) String the model client sends.
+     */
+    public String toDataUri() {
+        byte[] prefix = ("data:" + contentType + ";base64,").getBytes(StandardCharsets.ISO_8859_1);
+        int encodedLength = 4 * ((size() + 2) / 3);
+        byte[] out = new byte[prefix.length + encodedLength];
+        System.arraycopy(prefix, 0, out, 0, prefix.length);
+        ByteBuffer target = ByteBuffer.wrap(out, prefix.length, encodedLength);
+        byte[] chunk = new byte[ENCODE_CHUNK];
+        byte[] encoded = new byte[ENCODE_CHUNK / 3 * 4];
+        Base64.Encoder encoder = Base64.getEncoder();
+        for (int position = 0; position < size; ) {
+            int n = copy(position, chunk, 0, Math.min(chunk.length, size - position));
+            position += n;
+            int written = n == chunk.length ? encoder.encode(chunk, encoded) : encoder.encode(Arrays.copyOf(chunk, n), encoded);
+            target.put(encoded, 0, written);
+        }
+        return new String(out, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            onClose.run();
+        }
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Copies up to len bytes starting at the given content offset, across block boundaries
+    private int copy(int position, byte[] b, int off, int len) {
+        int copied = 0;
+        while (copied < len && position < size) {
+            ByteBuffer block = blocks.get(position / blockSize);
+            int inBlock = position % blockSize;
+            int n = Math.min(len - copied, block.limit() - inBlock);
+            block.get(inBlock, b, off + copied, n);
+            copied += n;
+            position += n;
+        }
+        return copied;
+    }
+
+    private final class BlockInputStream extends InputStream {
+        private int position;
+        private int mark;
+
+        @Override
+        public int read() {
+            if (position >= size) return -1;
+            ByteBuffer block = blocks.get(position / blockSize);
+            return block.get(position++ % blockSize) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (position >= size) return -1;
+            int n = copy(position, b, off, len);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, size - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return size - position;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            mark = position;
+        }
+
+        @Override
+        public synchronized void reset() {
+            position = mark;
+        }
+    }
+}
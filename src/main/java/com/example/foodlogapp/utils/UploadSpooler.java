@@ -0,0 +1,90 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.config.InvalidParameterException;
+import com.example.foodlogapp.config.StorageProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates {@link UploadSpool}s within a global off-heap budget (app.storage.spool-budget-bytes): an upload waits
+ * up to app.storage.spool-wait for room and is otherwise rejected, so concurrent uploads cannot exhaust
+ * direct memory. The budget is a pool of {@value #BLOCK_SIZE}-byte direct blocks that are recycled between
+ * uploads rather than allocated per upload.
+ *
+ * Metrics: upload.spool.bytes (bytes held by open spools), upload.spool.pool.bytes (direct memory allocated by
+ * the pool so far), upload.spool.rejected.
+ */
+@Component
+public class UploadSpooler {
+
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private final StorageProperties storageProperties;
+    private final DirectBufferPool pool;
+    private final AtomicLong inUse = new AtomicLong();
+    private final Counter rejected;
+
+    public UploadSpooler(StorageProperties storageProperties, MeterRegistry meterRegistry) {
+        this.storageProperties = storageProperties;
+        this.pool = new DirectBufferPool(BLOCK_SIZE,
+                (int) Math.max(1, Math.min(Integer.MAX_VALUE, storageProperties.getSpoolBudgetBytes() / BLOCK_SIZE)));
+        meterRegistry.gauge("upload.spool.bytes", inUse);
+        meterRegistry.gauge("upload.spool.pool.bytes", pool, DirectBufferPool::allocatedBytes);
+        this.rejected = meterRegistry.counter("upload.spool.rejected");
+    }
+
+    /**
+     * Reads the part once into a new spool of the given content type; the caller must close it.
+     *
+     * @throws BudgetExceededException when the budget stays exhausted for app.storage.spool-wait
+     */
+    public UploadSpool spool(MultipartFile file, String contentType) {
+        long size = file.getSize();
+        if (size > Integer.MAX_VALUE || pool.blocksFor(size) > pool.getMaxBlocks()) {
+            throw new InvalidParameterException("Upload of " + size + " bytes exceeds the spool budget");
+        }
+        List<ByteBuffer> blocks;
+        try {
+            blocks = pool.acquire(pool.blocksFor(size), storageProperties.getSpoolWait().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BudgetExceededException();
+        }
+        if (blocks == null) {
+            rejected.increment();
+            throw new BudgetExceededException();
+        }
+        inUse.addAndGet(size);
+        Runnable release = () -> {
+            inUse.addAndGet(-size);
+            pool.release(blocks);
+        };
+        try (InputStream in = file.getInputStream()) {
+            return UploadSpool.read(in, (int) size, contentType, blocks, release);
+        } catch (IOException e) {
+            release.run();
+            throw new UncheckedIOException("Failed to read upload", e);
+        } catch (RuntimeException e) {
+            release.run();
+            throw e;
+        }
+    }
+
+    /**
+     * Too many uploads in flight right now; the client should retry (503).
+     */
+    public static class BudgetExceededException extends RuntimeException {
+        public BudgetExceededException() {
+            super("Too many uploads in progress, please retry shortly.");
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.event.LogChangeEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Per-user in-memory data derived from the user's ingredient history, shared by NutritionAnalyticsStore and
+ * IngredientSearchStore. A user is loaded on first query; afterwards every committed write to one of their logs
+ * (LogChangeEvent) re-fetches just that log. Writes that arrive while the user is still loading are replayed
+ * once the load finishes. Database reads never run under the entry lock, so queries of a user are not held up
+ * by a slow fetch; of two fetches of the same log only the later one is applied.
+ *
+ * Writes made on other nodes produce no event here. Every query therefore compares the user's
+ * user_log_version (one primary-key lookup, see LogVersionTracker) with the version the entry has seen - the
+ * version at load time plus one per local event, since every event bumps it exactly once - and reloads the user
+ * when it moved further. Local events are counted before their transaction commits, so a query can never see a
+ * local bump the entry has not counted yet. Entries are also reloaded once they are older than {@code maxAge},
+ * which bounds what the version check cannot see (a transaction that fails after its events were counted).
+ *
+ * Memory is bounded: users are evicted least recently queried first above {@code maxBytes}, and a user whose
+ * data alone exceeds {@code maxBytesPerUser} is answered from a fresh load without being kept.
+ *
+ * Metrics (under the given prefix): .bytes, .users, .loads, .evictions, .stale (reloads after a write elsewhere
+ * or after maxAge).
+ *
+ * @param <T> the per-user data, guarded by the entry lock
+ * @param <R> what is fetched for one log
+ */
+abstract class UserDataCache<T, R> {
+
+    private final LogVersionTracker logVersionTracker;
+    private final long maxBytes;
+    private final long maxBytesPerUser;
+    private final long maxAgeNanos;
+
+    // eldest = least recently queried (query() moves the user to the end; writes leave the order alone)
+    private final LinkedHashMap<Integer, Entry<T>> entries = new LinkedHashMap<>(256);
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong users = new AtomicLong();
+    private final Counter loads;
+    private final Counter evictions;
+    private final Counter stale;
+
+    protected UserDataCache(String metricPrefix, LogVersionTracker logVersionTracker, MeterRegistry meterRegistry,
+                            long maxBytes, long maxBytesPerUser, Duration maxAge) {
+        this.logVersionTracker = logVersionTracker;
+        this.maxBytes = maxBytes;
+        this.maxBytesPerUser = maxBytesPerUser;
+        this.maxAgeNanos = maxAge.toNanos();
+        meterRegistry.gauge(metricPrefix + ".bytes", totalBytes);
+        meterRegistry.gauge(metricPrefix + ".users", users);
+        this.loads = meterRegistry.counter(metricPrefix + ".loads");
+        this.evictions = meterRegistry.counter(metricPrefix + ".evictions");
+        this.stale = meterRegistry.counter(metricPrefix + ".stale");
+    }
+
+    /**
+     * Loads everything of the user. Runs without any lock held.
+     */
+    protected abstract T load(Integer userId);
+
+    /**
+     * Fetches the current state of one log. Runs without any lock held.
+     */
+    protected abstract R fetchLog(Integer userId, Integer logId);
+
+    /**
+     * Replaces the log in the data; {@code fetched} is null when the log was deleted. Runs under the entry lock.
+     */
+    protected abstract void applyLog(T data, Integer logId, R fetched);
+
+    protected abstract long estimatedBytes(T data);
+
+    /**
+     * Runs the query against the user's data (under the entry lock), loading it first if needed.
+     */
+    protected <V> V query(Integer userId, Function<T, V> query) {
+        // read before the data, like the ETag stamp: a concurrent write can only make it look older
+        long version = logVersionTracker.version(userId);
+        Entry<T> entry;
+        boolean loader = false;
+        synchronized (this) {
+            entry = entries.remove(userId);
+            if (entry != null && isStale(entry, version)) {
+                totalBytes.addAndGet(-entry.accountedBytes);
+                stale.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry<>(version);
+                loader = true;
+            }
+            entries.put(userId, entry);
+            users.set(entries.size());
+        }
+        if (loader) {
+            loadInto(userId, entry);
+        }
+        synchronized (entry) {
+            while (!entry.ready && !entry.failed) {
+                try {
+                    entry.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while loading data of user " + userId, e);
+                }
+            }
+            if (entry.failed) {
+                throw new IllegalStateException("Loading data of user " + userId + " failed");
+            }
+            return query.apply(entry.data);
+        }
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized int getUserCount() {
+        return entries.size();
+    }
+
+    // Heap held for the user, 0 when not loaded
+    public long bytesOf(Integer userId) {
+        Entry<T> entry;
+        synchronized (this) {
+            entry = entries.get(userId);
+        }
+        if (entry == null) return 0;
+        synchronized (entry) {
+            return entry.ready ? estimatedBytes(entry.data) : 0;
+        }
+    }
+
+    // Runs in the writing transaction, like the version bump itself (LogVersionTracker)
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void countLogChange(LogChangeEvent event) {
+        if (event.getUserId() == null) {
+            return;
+        }
+        Entry<T> entry;
+        synchronized (this) {
+            entry = entries.get(event.getUserId());
+        }
+        if (entry != null) {
+            entry.seenVersion.incrementAndGet();
+        }
+    }
+
+    /**
+     * Applies a committed write.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLogChange(LogChangeEvent event) {
+        Integer userId = event.getUserId();
+        if (userId == null) {
+            return;
+        }
+        Entry<T> entry;
+        synchronized (this) {
+            if (event.getType() == LogChangeEvent.Type.IMPORTED) {
+                // too many logs to patch in: drop the user, the next query loads them afresh
+                drop(userId);
+                return;
+            }
+            entry = entries.get(userId);
+        }
+        if (entry == null) {
+            return;
+        }
+        // neither changes ingredients
+        if (event.getType() == LogChangeEvent.Type.CONFIDENCE_SET || event.getType() == LogChangeEvent.Type.USER_UPDATED
+                || event.getLogId() == null) {
+            return;
+        }
+        Integer logId = event.getLogId();
+        long fetch;
+        synchronized (entry) {
+            if (!entry.ready) {
+                if (!entry.failed) {
+                    entry.pendingLogs.add(logId);
+                }
+                return;
+            }
+            fetch = ++entry.fetches;
+            entry.latestFetch.put(logId, fetch);
+        }
+        R fetched;
+        try {
+            fetched = event.getType() == LogChangeEvent.Type.DELETED ? null : fetchLog(userId, logId);
+        } catch (RuntimeException e) {
+            // the entry no longer matches the database
+            synchronized (this) {
+                if (entries.get(userId) == entry) {
+                    drop(userId);
+                }
+            }
+            throw e;
+        }
+        synchronized (entry) {
+            Long latest = entry.latestFetch.get(logId);
+            if (latest == null || latest != fetch) {
+                return; // a later fetch of the same log won (and may already be applied)
+            }
+            entry.latestFetch.remove(logId);
+            applyLog(entry.data, logId, fetched);
+        }
+        account(userId, entry);
+    }
+
+    private boolean isStale(Entry<T> entry, long version) {
+        if (!entry.ready) {
+            return false; // still loading, with the version read right before
+        }
+        return version > entry.seenVersion.get() || System.nanoTime() - entry.loadedAt > maxAgeNanos;
+    }
+
+    private void loadInto(Integer userId, Entry<T> entry) {
+        T data;
+        try {
+            data = load(userId);
+            // writes made during the load, fetched while the data is still private to this thread
+            while (true) {
+                List<Integer> pending;
+                synchronized (entry) {
+                    if (entry.pendingLogs.isEmpty()) {
+                        entry.data = data;
+                        entry.ready = true;
+                        entry.notifyAll();
+                        break;
+                    }
+                    pending = new ArrayList<>(entry.pendingLogs);
+                    entry.pendingLogs.clear();
+                }
+                for (Integer logId : pending) {
+                    applyLog(data, logId, fetchLog(userId, logId));
+                }
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                entries.remove(userId, entry);
+                users.set(entries.size());
+            }
+            synchronized (entry) {
+                entry.failed = true;
+                entry.notifyAll();
+            }
+            throw e;
+        }
+        loads.increment();
+        account(userId, entry);
+    }
+
+    // Updates the memory accounting of the entry and evicts users beyond the budgets
+    private void account(Integer userId, Entry<T> entry) {
+        long bytes;
+        synchronized (entry) {
+            bytes = entry.data != null ? estimatedBytes(entry.data) : 0;
+        }
+        synchronized (this) {
+            if (entries.get(userId) != entry) {
+                return; // evicted meanwhile
+            }
+            totalBytes.addAndGet(bytes - entry.accountedBytes);
+            entry.accountedBytes = bytes;
+            if (bytes > maxBytesPerUser) {
+                // too large to keep: this query is still answered from the loaded data
+                entries.remove(userId);
+                totalBytes.addAndGet(-bytes);
+                evictions.increment();
+            }
+            Iterator<Map.Entry<Integer, Entry<T>>> eldest = entries.entrySet().iterator();
+            while (totalBytes.get() > maxBytes && eldest.hasNext()) {
+                Map.Entry<Integer, Entry<T>> candidate = eldest.next();
+                if (candidate.getValue() == entry && entries.size() > 1) continue;
+                eldest.remove();
+                totalBytes.addAndGet(-candidate.getValue().accountedBytes);
+                evictions.increment();
+            }
+            users.set(entries.size());
+        }
+    }
+
+    // Caller holds the store lock. Not an eviction: a load still running for the entry is discarded by account().
+    private void drop(Integer userId) {
+        Entry<T> dropped = entries.remove(userId);
+        if (dropped != null) {
+            totalBytes.addAndGet(-dropped.accountedBytes);
+            users.set(entries.size());
+        }
+    }
+
+    private static final class Entry<T> {
+        final long loadedAt = System.nanoTime();
+        // user_log_version this entry reflects: the version read before the load plus every local event since
+        final AtomicLong seenVersion;
+        T data;
+        volatile boolean ready;
+        boolean failed;
+        long accountedBytes;
+        final Set<Integer> pendingLogs = new HashSet<>();
+        // log id -> number of its latest fetch still in flight
+        final Map<Integer, Long> latestFetch = new HashMap<>();
+        long fetches;
+
+        Entry(long version) {
+            this.seenVersion = new AtomicLong(version);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.foodlogapp.utils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One user's ingredient history as parallel primitive columns (one slot per food_ingredient row):
+ * log id, log creation time (epoch seconds), kcal, weight in hundredths of a gram (DECIMAL(6,2) scaled to int)
+ * and a dictionary-encoded ingredient name. The rows of one log are always contiguous, so per-meal aggregates
+ * need no grouping structure. The queries are single passes over the arrays without boxing.
+ *
+ * Not thread-safe; NutritionAnalyticsStore synchronizes on the instance.
+ */
+public final class UserNutritionColumns {
+
+    private static final int INITIAL_CAPACITY = 64;
+    // slot: int logId + long createdAt + int kcal + int weight + int nameId
+    private static final int BYTES_PER_SLOT = 4 + 8 + 4 + 4 + 4;
+    // rough per-name cost: String + byte[] header, HashMap node, ArrayList slot
+    private static final int BYTES_PER_NAME = 24 + 16 + 32 + 4;
+
+    private int size;
+    private int[] logIds = new int[INITIAL_CAPACITY];
+    private long[] createdAt = new long[INITIAL_CAPACITY];
+    private int[] kcal = new int[INITIAL_CAPACITY];
+    private int[] weightCenti = new int[INITIAL_CAPACITY];
+    private int[] nameIds = new int[INITIAL_CAPACITY];
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIndex = new HashMap<>();
+    private long nameBytes;
+
+    /**
+     * Appends one ingredient row. All rows of a log must be added together (after {@link #removeLog}).
+     */
+    public void add(int logId, long createdAtEpochSecond, String name, Integer kcal, BigDecimal weight) {
+        if (size == logIds.length) {
+            grow();
+        }
+        logIds[size] = logId;
+        createdAt[size] = createdAtEpochSecond;
+        this.kcal[size] = kcal != null ? kcal : 0;
+        weightCenti[size] = weight != null ? weight.movePointRight(2).intValue() : 0;
+        nameIds[size] = nameId(name);
+        size++;
+    }
+
+    /**
+     * Removes every row of the log, keeping the order of the others.
+     *
+     * @return rows removed
+     */
+    public int removeLog(int logId) {
+        int write = 0;
+        for (int read = 0; read < size; read++) {
+            if (logIds[read] != logId) {
+                if (write != read) {
+                    logIds[write] = logIds[read];
+                    createdAt[write] = createdAt[read];
+                    kcal[write] = kcal[read];
+                    weightCenti[write] = weightCenti[read];
+                    nameIds[write] = nameIds[read];
+                }
+                write++;
+            }
+        }
+        int removed = size - write;
+        size = write;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Approximate heap held by the columns and the name dictionary.
+     */
+    public long estimatedBytes() {
+        return (long) logIds.length * BYTES_PER_SLOT + nameBytes + (long) names.size() * BYTES_PER_NAME;
+    }
+
+    /**
+     * Sums kcal into buckets [bucketStarts[i], bucketStarts[i + 1]) of epoch seconds; rows outside are ignored.
+     * Equal-width buckets (no DST change in range) are indexed arithmetically, otherwise by binary search.
+     */
+    public long[] sumKcalByBucket(long[] bucketStarts) {
+        int buckets = bucketStarts.length - 1;
+        long[] sums = new long[buckets];
+        long from = bucketStarts[0];
+        long to = bucketStarts[buckets];
+        long width = bucketStarts[1] - from;
+        boolean uniform = width * buckets == to - from;
+        for (int i = 0; i < size; i++) {
+            long t = createdAt[i];
+            if (t < from || t >= to) continue;
+            int bucket;
+            if (uniform) {
+                bucket = (int) ((t - from) / width);
+            } else {
+                int found = Arrays.binarySearch(bucketStarts, t);
+                bucket = found >= 0 ? found : -found - 2;
+            }
+            sums[bucket] += kcal[i];
+        }
+        return sums;
+    }
+
+    /**
+     * Ingredients with the most kcal among rows created at or after {@code from} (epoch seconds), descending.
+     */
+    public List<IngredientSum> topIngredientsByKcal(long from, int limit) {
+        int dictionary = names.size();
+        long[] kcalSums = new long[dictionary];
+        long[] weightSums = new long[dictionary];
+        int[] counts = new int[dictionary];
+        for (int i = 0; i < size; i++) {
+            if (createdAt[i] < from) continue;
+            int name = nameIds[i];
+            kcalSums[name] += kcal[i];
+            weightSums[name] += weightCenti[i];
+            counts[name]++;
+        }
+        List<IngredientSum> result = new ArrayList<>();
+        for (int name = 0; name < dictionary; name++) {
+            if (counts[name] > 0) {
+                result.add(new IngredientSum(names.get(name), kcalSums[name], weightSums[name], counts[name]));
+            }
+        }
+        result.sort((a, b) -> Long.compare(b.kcal(), a.kcal()));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Meals (logs with at least one ingredient) created at or after {@code from}, with their summed kcal and weight.
+     */
+    public MealSums mealSums(long from) {
+        int meals = 0;
+        long kcalSum = 0;
+        long weightSum = 0;
+        int previousLog = 0;
+        boolean first = true;
+        for (int i = 0; i < size; i++) {
+            if (createdAt[i] < from) continue;
+            if (first || logIds[i] != previousLog) {
+                meals++;
+                previousLog = logIds[i];
+                first = false;
+            }
+            kcalSum += kcal[i];
+            weightSum += weightCenti[i];
+        }
+        return new MealSums(meals, kcalSum, weightSum);
+    }
+
+    private int nameId(String name) {
+        String key = name != null ? name : "";
+        Integer id = nameIndex.get(key);
+        if (id == null) {
+            id = names.size();
+            names.add(key);
+            nameIndex.put(key, id);
+            nameBytes += key.length() * 2L;
+        }
+        return id;
+    }
+
+    private void grow() {
+        int capacity = logIds.length * 2;
+        logIds = Arrays.copyOf(logIds, capacity);
+        createdAt = Arrays.copyOf(createdAt, capacity);
+        kcal = Arrays.copyOf(kcal, capacity);
+        weightCenti = Arrays.copyOf(weightCenti, capacity);
+        nameIds = Arrays.copyOf(nameIds, capacity);
+    }
+
+    // weight in hundredths of a gram
+    public record IngredientSum(String name, long kcal, long weightCenti, int count) {
+    }
+
+    // weight in hundredths of a gram
+    public record MealSums(int meals, long kcal, long weightCenti) {
+    }
+}
@@ -0,0 +1,12 @@
+ALTER TABLE food_log
+    ADD COLUMN total_kcal INT NOT NULL DEFAULT 0,
+    ADD COLUMN total_weight DECIMAL(10,2) NOT NULL DEFAULT 0,
+    ADD COLUMN ingredient_count INT NOT NULL DEFAULT 0;
+
+-- 回填已有日志的汇总值
+UPDATE food_log f
+    LEFT JOIN (SELECT log_id, COUNT(*) AS cnt, COALESCE(SUM(kcal), 0) AS kcal, COALESCE(SUM(weight), 0) AS weight
+               FROM food_ingredient GROUP BY log_id) s ON s.log_id = f.id
+SET f.total_kcal = COALESCE(s.kcal, 0),
+    f.total_weight = COALESCE(s.weight, 0),
+    f.ingredient_count = COALESCE(s.cnt, 0);
@@ -0,0 +1,20 @@
+-- 持久化的图片分析任务队列：各节点的 worker 用 FOR UPDATE SKIP LOCKED 领取，租约过期的任务会被重新领取
+CREATE TABLE analysis_job (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    log_id INT NOT NULL,
+    content_type VARCHAR(100) NOT NULL,
+    notes VARCHAR(1000),
+    mode VARCHAR(20) NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'PENDING', -- PENDING / RUNNING / DONE / FAILED
+    attempts INT NOT NULL DEFAULT 0,
+    lease_owner VARCHAR(100),
+    lease_until DATETIME(3),
+    last_error VARCHAR(1000),
+    available_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    created_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    updated_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+    UNIQUE KEY uk_analysis_job_log (log_id),
+    KEY idx_analysis_job_claim (status, available_at),
+    KEY idx_analysis_job_lease (status, lease_until),
+    FOREIGN KEY (log_id) REFERENCES food_log(id) ON DELETE CASCADE
+);
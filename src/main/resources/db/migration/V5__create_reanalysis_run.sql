@@ -0,0 +1,23 @@
+-- 历史日志重新分析的批任务：按 id 键集分页推进，last_log_id 为检查点（之前的日志均已处理），重启后从检查点继续
+CREATE TABLE reanalysis_run (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    status VARCHAR(20) NOT NULL DEFAULT 'RUNNING', -- RUNNING / COMPLETED / CANCELLED
+    user_id INT,                                   -- 只重新分析该用户的日志；NULL 表示全部
+    last_log_id INT NOT NULL DEFAULT 0,
+    until_log_id INT NOT NULL,                     -- 启动时的最大日志 id，之后新增的日志不处理
+    total INT NOT NULL DEFAULT 0,
+    processed INT NOT NULL DEFAULT 0,
+    succeeded INT NOT NULL DEFAULT 0,
+    failed INT NOT NULL DEFAULT 0,
+    parallelism INT NOT NULL,
+    rate_per_second DOUBLE NOT NULL,
+    batch_size INT NOT NULL,
+    last_batch_rate DOUBLE,                        -- 最近一个批次的吞吐（日志/秒）
+    last_error VARCHAR(1000),
+    lease_owner VARCHAR(100),
+    lease_until DATETIME(3),
+    created_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+    updated_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+    finished_at DATETIME(3),
+    KEY idx_reanalysis_run_status (status, lease_until)
+);
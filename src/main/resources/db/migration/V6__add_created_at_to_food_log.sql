@@ -0,0 +1,5 @@
+-- 孤儿清理需要日志的创建时间（宽限期）；已有日志以迁移时间为准
+ALTER TABLE food_log
+    ADD COLUMN created_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    ADD KEY idx_food_log_empty (ingredient_count, confidence, created_at),
+    ADD KEY idx_food_log_image_path (image_path);
@@ -0,0 +1,6 @@
+-- 每个用户日志数据的版本号，与写操作同事务递增；/logs 的 ETag 由它生成，多节点共享
+-- 单独建表（不加到 user 上）：写日志时对 user 行的外键共享锁不会与版本号的更新锁互相升级死锁
+CREATE TABLE user_log_version (
+    user_id INT PRIMARY KEY,
+    version BIGINT NOT NULL DEFAULT 0
+);
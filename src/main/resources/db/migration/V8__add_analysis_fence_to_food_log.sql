@@ -0,0 +1,4 @@
+-- 工具写入的隔离令牌：每轮分析开启一个新的 generation，第一个写入的尝试占用该日志（generation:attempt），
+-- 其他尝试（对冲的落败者、超时/取消的尝试、上一级模型）的写入一律忽略；分析结束后置 NULL
+ALTER TABLE food_log
+    ADD COLUMN analysis_fence VARCHAR(64) NULL;
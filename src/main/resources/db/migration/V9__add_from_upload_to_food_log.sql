@@ -0,0 +1,6 @@
+-- 孤儿清理只回收图片上传接口创建的空日志；手动创建、批量导入的日志没有食材也是用户数据，不能删除
+-- 已有日志无法可靠区分来源，一律视为非上传（不会被清理）
+ALTER TABLE food_log
+    ADD COLUMN from_upload TINYINT(1) NOT NULL DEFAULT 0,
+    DROP KEY idx_food_log_empty,
+    ADD KEY idx_food_log_empty (from_upload, ingredient_count, confidence, created_at);
@@ -17,7 +17,19 @@ CREATE TABLE food_log (
                           user_id INT NOT NULL,
                           image_path VARCHAR(255) NOT NULL,
                           confidence INT NOT NULL,
-                          FOREIGN KEY (user_id) REFERENCES user(id)
+                          -- 冗余汇总（与 food_ingredient 同事务维护），列表/卡片无需再查食材
+                          total_kcal INT NOT NULL DEFAULT 0,
+                          total_weight DECIMAL(10,2) NOT NULL DEFAULT 0,
+                          ingredient_count INT NOT NULL DEFAULT 0,
+                          created_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                          -- 分析进行中时工具写入的隔离令牌（generation 或 generation:attempt），见 AnalysisFence
+                          analysis_fence VARCHAR(64) NULL,
+                          -- 由图片上传接口创建（孤儿清理只回收这类空日志）
+                          from_upload TINYINT(1) NOT NULL DEFAULT 0,
+                          FOREIGN KEY (user_id) REFERENCES user(id),
+                          -- 孤儿清理：查找过期的空日志、按 image_path 反查 S3 对象
+                          KEY idx_food_log_empty (from_upload, ingredient_count, confidence, created_at),
+                          KEY idx_food_log_image_path (image_path)
 );
 
 -- 3️⃣ 食材识别结果表：每种食材一条记录
@@ -28,4 +40,55 @@ CREATE TABLE food_ingredient (
                                  kcal INT,
                                  weight DECIMAL(6,2),
                                  FOREIGN KEY (log_id) REFERENCES food_log(id)
-);
\ No newline at end of file
+);
+
+-- 4️⃣ 图片分析任务队列：上传后入队，各节点 worker 以 FOR UPDATE SKIP LOCKED + 租约领取执行
+CREATE TABLE analysis_job (
+                              id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                              log_id INT NOT NULL,
+                              content_type VARCHAR(100) NOT NULL,
+                              notes VARCHAR(1000),
+                              mode VARCHAR(20) NOT NULL,
+                              status VARCHAR(20) NOT NULL DEFAULT 'PENDING', -- PENDING / RUNNING / DONE / FAILED
+                              attempts INT NOT NULL DEFAULT 0,
+                              lease_owner VARCHAR(100),
+                              lease_until DATETIME(3),
+                              last_error VARCHAR(1000),
+                              available_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+                              created_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+                              updated_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+                              UNIQUE KEY uk_analysis_job_log (log_id),
+                              KEY idx_analysis_job_claim (status, available_at),
+                              KEY idx_analysis_job_lease (status, lease_until),
+                              FOREIGN KEY (log_id) REFERENCES food_log(id) ON DELETE CASCADE
+);
+
+-- 5️⃣ 历史日志重新分析批任务（检查点 last_log_id，重启后继续）
+CREATE TABLE reanalysis_run (
+                                id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                                status VARCHAR(20) NOT NULL DEFAULT 'RUNNING', -- RUNNING / COMPLETED / CANCELLED
+                                user_id INT,
+                                last_log_id INT NOT NULL DEFAULT 0,
+                                until_log_id INT NOT NULL,
+                                total INT NOT NULL DEFAULT 0,
+                                processed INT NOT NULL DEFAULT 0,
+                                succeeded INT NOT NULL DEFAULT 0,
+                                failed INT NOT NULL DEFAULT 0,
+                                parallelism INT NOT NULL,
+                                rate_per_second DOUBLE NOT NULL,
+                                batch_size INT NOT NULL,
+                                last_batch_rate DOUBLE,
+                                last_error VARCHAR(1000),
+                                lease_owner VARCHAR(100),
+                                lease_until DATETIME(3),
+                                created_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+                                updated_at DATETIME(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+                                finished_at DATETIME(3),
+                                KEY idx_reanalysis_run_status (status, lease_until)
+);
+
+-- 6️⃣ 用户日志数据版本号：与写操作同事务递增，/logs 的 ETag 由它生成（多节点共享）
+CREATE TABLE user_log_version (
+                                  user_id INT PRIMARY KEY,
+                                  version BIGINT NOT NULL DEFAULT 0
+);
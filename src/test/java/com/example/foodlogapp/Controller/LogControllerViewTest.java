@@ -0,0 +1,229 @@
+package com.example.foodlogapp.Controller;
+
+import com.example.foodlogapp.config.InvalidParameterException;
+import com.example.foodlogapp.config.JacksonConfig;
+import com.example.foodlogapp.dto.FoodLogResponse;
+import com.example.foodlogapp.dto.LogFields;
+import com.example.foodlogapp.entity.FoodIngredient;
+import com.example.foodlogapp.entity.FoodLog;
+import com.example.foodlogapp.entity.User;
+import com.example.foodlogapp.event.LogChangeEvent;
+import com.example.foodlogapp.mapper.LogVersionMapper;
+import com.example.foodlogapp.mapper.FoodLogSqlProvider;
+import com.example.foodlogapp.service.FoodIngredientService;
+import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.utils.LogVersionTracker;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * GET /logs/user/{userId} with view=full / view=summary / fields=...: what is queried and what the JSON looks like,
+ * and what a conditional GET of a list or of a single log queries.
+ */
+class LogControllerViewTest {
+
+    private static final int LOGS = 3;
+    private static final int INGREDIENTS_PER_LOG = 2;
+
+    private final JacksonConfig config = new JacksonConfig();
+    private final ObjectMapper json = config.objectMapper(config.jackson2ObjectMapperBuilder());
+
+    private final List<String> calls = new ArrayList<>();
+    private final AtomicLong version = new AtomicLong();
+    private LogFields requested;
+
+    @Test
+    void fullViewKeepsTheOriginalShapeIncludingNulls() throws Exception {
+        JsonNode body = json.valueToTree(controller().getByUser(1, null, null, request(null)).getBody());
+
+        assertEquals(LogFields.FULL, requested);
+        assertEquals(3 + LOGS, calls.size(), "version on the primary and the replica, list and one ingredient query per log");
+        assertEquals(List.of("id", "userId", "imagePath", "confidence", "totalKcal", "totalWeight", "ingredientCount",
+                "user", "ingredients"), names(body.get(0)));
+        // log 3 has no user loaded: full view still writes the property
+        assertTrue(body.get(2).has("user"));
+        assertTrue(body.get(2).get("user").isNull());
+        assertEquals(INGREDIENTS_PER_LOG, body.get(0).get("ingredients").size());
+    }
+
+    @Test
+    void summaryViewSelectsOnlyItsColumnsAndSkipsIngredients() throws Exception {
+        JsonNode body = json.valueToTree(controller().getByUser(1, "summary", null, request(null)).getBody());
+
+        assertEquals(LogFields.SUMMARY, requested);
+        assertEquals(List.of("findStamp", "findVersion", "findByUserId"), calls);
+        assertEquals(List.of("id", "imagePath", "confidence", "totalKcal", "totalWeight", "ingredientCount"),
+                names(body.get(0)));
+        assertEquals("SELECT id, image_path, confidence, total_kcal, total_weight, ingredient_count FROM food_log "
+                + "WHERE (user_id = #{userId})", sql(requested));
+    }
+
+    @Test
+    void fieldsSelectExactlyTheNamedProperties() throws Exception {
+        JsonNode body = json.valueToTree(controller().getByUser(1, null, "confidence, ingredients", request(null)).getBody());
+
+        assertEquals(List.of("id", "confidence"), requested.columns());
+        assertEquals(3 + LOGS, calls.size());
+        assertEquals(List.of("id", "confidence", "ingredients"), names(body.get(0)));
+        assertFalse(body.get(0).has("user"));
+    }
+
+    @Test
+    void unknownViewOrFieldIsAParameterError() {
+        assertThrows(InvalidParameterException.class, () -> LogFields.parse("compact", null));
+        assertThrows(InvalidParameterException.class, () -> LogFields.parse(null, "id,password"));
+    }
+
+    @Test
+    void matchingIfNoneMatchIsAnsweredWithoutQueries() {
+        LogController controller = controller();
+        String etag = controller.getByUser(1, "summary", null, request(null)).getHeaders().getETag();
+        calls.clear();
+
+        ResponseEntity<List<FoodLogResponse>> notModified = controller.getByUser(1, "summary", null, request(etag));
+        assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatusCode());
+        assertEquals(List.of("findStamp"), calls);
+    }
+
+    @Test
+    void aWriteOnAnyNodeChangesTheTag() {
+        LogController controller = controller();
+        String etag = controller.getByUser(1, "summary", null, request(null)).getHeaders().getETag();
+
+        // what the BEFORE_COMMIT listener of the writing node does to user_log_version
+        new LogVersionTracker(versions()).onLogChange(new LogChangeEvent(LogChangeEvent.Type.CREATED, 1, 4));
+
+        ResponseEntity<List<FoodLogResponse>> fresh = controller.getByUser(1, "summary", null, request(etag));
+        assertEquals(HttpStatus.OK, fresh.getStatusCode());
+        assertFalse(etag.equals(fresh.getHeaders().getETag()));
+    }
+
+    @Test
+    void aLogIsRevalidatedFromTheVersionTableAlone() {
+        LogController controller = controller();
+        ResponseEntity<FoodLogResponse> ok = controller.getById(2, request(null));
+        assertEquals(List.of("findStampByLogId", "findVersion", "findById", "findByLogId"), calls);
+        String etag = ok.getHeaders().getETag();
+        calls.clear();
+
+        assertEquals(HttpStatus.NOT_MODIFIED, controller.getById(2, request(etag)).getStatusCode());
+        assertEquals(List.of("findStamp"), calls, "no lookup of the owner in food_log");
+
+        new LogVersionTracker(versions()).onLogChange(new LogChangeEvent(LogChangeEvent.Type.DELETED, 1, 2));
+        calls.clear();
+        ResponseEntity<FoodLogResponse> changed = controller.getById(2, request(etag));
+        assertEquals(HttpStatus.OK, changed.getStatusCode());
+        assertEquals("findStampByLogId", calls.get(1), "a stale tag falls back to the owner of the log");
+        assertFalse(etag.equals(changed.getHeaders().getETag()));
+    }
+
+    private LogController controller() {
+        FoodLogService logs = fake(FoodLogService.class, Map.of("findByUserId", args -> {
+            requested = (LogFields) args[1];
+            return logs(requested);
+        }, "findById", args -> logs(LogFields.FULL).get((Integer) args[0] - 1)));
+        FoodIngredientService ingredients = fake(FoodIngredientService.class,
+                Map.of("findByLogId", args -> ingredients((Integer) args[0])));
+        return new LogController(logs, ingredients, new LogVersionTracker(versions()), null, null, null);
+    }
+
+    // user_log_version of one user, shared by every tracker like the table is shared by every node
+    private LogVersionMapper versions() {
+        return fake(LogVersionMapper.class, Map.of(
+                "findStamp", args -> args[0] + ":" + version.get(),
+                "findVersion", args -> version.get(),
+                "findStampByLogId", args -> "1:" + version.get(),
+                "bump", args -> {
+                    version.incrementAndGet();
+                    return 1;
+                }));
+    }
+
+    // Interface fake that records the called method names and answers from the given handlers
+    @SuppressWarnings("unchecked")
+    private <T> T fake(Class<T> type, Map<String, Function<Object[], Object>> handlers) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) return method.invoke(this, args);
+            calls.add(method.getName());
+            Function<Object[], Object> handler = handlers.get(method.getName());
+            if (handler == null) throw new UnsupportedOperationException(method.getName());
+            return handler.apply(args);
+        });
+    }
+
+    private static String sql(LogFields fields) {
+        return FoodLogSqlProvider.findColumnsByUserId(Map.of("userId", 1, "columns", fields.columns()))
+                .replaceAll("\\s+", " ");
+    }
+
+    private static List<String> names(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        for (Iterator<String> it = node.fieldNames(); it.hasNext(); ) {
+            names.add(it.next());
+        }
+        return names;
+    }
+
+    private static ServletWebRequest request(String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/logs/user/1");
+        if (ifNoneMatch != null) {
+            request.addHeader("If-None-Match", ifNoneMatch);
+        }
+        return new ServletWebRequest(request, new MockHttpServletResponse());
+    }
+
+    // What the mapper would return: only the selected columns are populated
+    private static List<FoodLog> logs(LogFields fields) {
+        User user = new User();
+        user.setId(1);
+        user.setName("View User");
+        List<FoodLog> logs = new ArrayList<>();
+        for (int i = 1; i <= LOGS; i++) {
+            FoodLog log = new FoodLog();
+            log.setId(i);
+            if (fields.includes(LogFields.USER_ID)) log.setUserId(1);
+            if (fields.includes(LogFields.IMAGE_PATH)) log.setImagePath("https://bucket.s3.amazonaws.com/uploads/" + i);
+            if (fields.includes(LogFields.CONFIDENCE)) log.setConfidence(80);
+            if (fields.includes(LogFields.TOTAL_KCAL)) log.setTotalKcal(615);
+            if (fields.includes(LogFields.TOTAL_WEIGHT)) log.setTotalWeight(new BigDecimal("513.00"));
+            if (fields.includes(LogFields.INGREDIENT_COUNT)) log.setIngredientCount(INGREDIENTS_PER_LOG);
+            if (fields.includes(LogFields.USER) && i < LOGS) log.setUser(user);
+            logs.add(log);
+        }
+        return logs;
+    }
+
+    private static List<FoodIngredient> ingredients(int logId) {
+        List<FoodIngredient> list = new ArrayList<>();
+        for (int i = 0; i < INGREDIENTS_PER_LOG; i++) {
+            FoodIngredient ingredient = new FoodIngredient();
+            ingredient.setId(logId * 10 + i);
+            ingredient.setLogId(logId);
+            ingredient.setIngredientName("ingredient-" + i);
+            ingredient.setKcal(100 + i);
+            ingredient.setWeight(new BigDecimal("85.50"));
+            list.add(ingredient);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.foodlogapp.Controller;
+
+import com.example.foodlogapp.config.JacksonConfig;
+import com.example.foodlogapp.dto.FoodLogResponse;
+import com.example.foodlogapp.entity.FoodIngredient;
+import com.example.foodlogapp.entity.FoodLog;
+import com.example.foodlogapp.entity.User;
+import com.example.foodlogapp.utils.ResponseFormats;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bytes on the wire (plain and gzip) and serialisation time of a GET /logs/user/{userId} body (view=full) encoded
+ * as JSON and as CBOR, both produced by the mappers JacksonConfig registers. The timing test is tagged
+ * "benchmark" and only runs with -Pbenchmark.
+ */
+class LogResponseEncodingBenchmarkTest {
+
+    private static final int LOGS = 200;
+    private static final int INGREDIENTS_PER_LOG = 6;
+    private static final int ROUNDS = 200;
+
+    private final JacksonConfig config = new JacksonConfig();
+    private final ObjectMapper json = config.objectMapper(config.jackson2ObjectMapperBuilder());
+    private final ObjectMapper cbor = JacksonConfig.cborMapper(json);
+
+    @Test
+    void cborIsSmallerAndDecodesToTheSameValues() throws Exception {
+        List<FoodLogResponse> body = body();
+
+        // typed comparison: CBOR keeps BigDecimal as an exact decimal where a JSON tree would hold a double
+        List<FoodLogResponse> fromJson = List.of(json.readValue(json.writeValueAsBytes(body), FoodLogResponse[].class));
+        List<FoodLogResponse> fromCbor = List.of(cbor.readValue(cbor.writeValueAsBytes(body), FoodLogResponse[].class));
+        assertEquals(body, fromJson);
+        assertEquals(body, fromCbor);
+        assertTrue(cbor.writeValueAsBytes(body).length < json.writeValueAsBytes(body).length,
+                "CBOR body should be smaller than JSON");
+    }
+
+    @Test
+    @Tag("benchmark")
+    void serialisationTimeAndCompressedSize() throws Exception {
+        List<FoodLogResponse> body = body();
+        Result jsonResult = measure(json, body);
+        Result cborResult = measure(cbor, body);
+
+        assertTrue(cborResult.bytes < jsonResult.bytes, "CBOR body should be smaller than JSON");
+        assertTrue(jsonResult.gzipBytes < jsonResult.bytes && cborResult.gzipBytes < cborResult.bytes,
+                "repetitive bodies should compress");
+        // generous bound: one body of 200 logs
+        assertTrue(jsonResult.millis < 100 && cborResult.millis < 100,
+                "serialising took " + jsonResult.millis + " / " + cborResult.millis + " ms");
+    }
+
+    @Test
+    void acceptHeaderSelectsTheEncoding() {
+        assertEquals(ResponseFormats.JSON, ResponseFormats.of(null));
+        assertEquals(ResponseFormats.JSON, ResponseFormats.of("*/*"));
+        assertEquals(ResponseFormats.JSON, ResponseFormats.of("application/json, application/cbor"));
+        assertEquals(ResponseFormats.CBOR, ResponseFormats.of("application/cbor"));
+        assertEquals(ResponseFormats.CBOR, ResponseFormats.of("application/json;q=0.5, application/cbor"));
+        assertEquals(ResponseFormats.JSON, ResponseFormats.of("application/cbor;q=0.1, */*;q=0.8"));
+    }
+
+    private static Result measure(ObjectMapper mapper, List<FoodLogResponse> body) throws IOException {
+        // warm up serializers and JIT
+        for (int i = 0; i < ROUNDS; i++) {
+            mapper.writeValueAsBytes(body);
+        }
+        long start = System.nanoTime();
+        byte[] bytes = null;
+        for (int i = 0; i < ROUNDS; i++) {
+            bytes = mapper.writeValueAsBytes(body);
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / ROUNDS;
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(bytes);
+        }
+        return new Result(bytes.length, gzipped.size(), millis);
+    }
+
+    private static List<FoodLogResponse> body() {
+        User user = new User();
+        user.setId(1);
+        user.setName("Bench User");
+        user.setEmail("bench@example.com");
+        List<FoodLogResponse> body = new ArrayList<>();
+        for (int i = 1; i <= LOGS; i++) {
+            FoodLog log = new FoodLog();
+            log.setId(i);
+            log.setUserId(1);
+            log.setImagePath("https://bucket.s3.us-east-2.amazonaws.com/uploads/" + i);
+            log.setConfidence(80);
+            log.setTotalKcal(615);
+            log.setTotalWeight(new BigDecimal("513.00"));
+            log.setIngredientCount(INGREDIENTS_PER_LOG);
+            log.setUser(user);
+            List<FoodIngredient> ingredients = new ArrayList<>();
+            for (int j = 0; j < INGREDIENTS_PER_LOG; j++) {
+                FoodIngredient ingredient = new FoodIngredient();
+                ingredient.setId(i * 10 + j);
+                ingredient.setLogId(i);
+                ingredient.setIngredientName("ingredient-" + j);
+                ingredient.setKcal(100 + j);
+                ingredient.setWeight(new BigDecimal("85.50"));
+                ingredients.add(ingredient);
+            }
+            body.add(FoodLogResponse.from(log, ingredients));
+        }
+        return body;
+    }
+
+    private record Result(int bytes, int gzipBytes, double millis) {
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.foodlogapp.Controller;
+
+import com.example.foodlogapp.config.ChatProperties;
+import com.example.foodlogapp.utils.ChatResponseCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.openai.OpenAiChatModel;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * /ai/chat with the answer cache enabled: stateless prompts are replayed, requests with a chatId always reach the
+ * model because their answer depends on the conversation.
+ */
+class TestAiControllerTest {
+
+    private final ChatClient chatClient = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+    private final AtomicInteger statelessCalls = new AtomicInteger();
+    private final AtomicInteger conversationCalls = new AtomicInteger();
+    private final ChatResponseCache cache;
+    private final TestAiController controller;
+
+    @SuppressWarnings("unchecked")
+    TestAiControllerTest() {
+        when(chatClient.prompt().user(anyString()).stream().content()).thenAnswer(call -> {
+            statelessCalls.incrementAndGet();
+            return Flux.just("I am ", "the assistant");
+        });
+        when(chatClient.prompt().user(anyString()).advisors(any(Consumer.class)).stream().content()).thenAnswer(call -> {
+            conversationCalls.incrementAndGet();
+            return Flux.just("As I said before");
+        });
+        ChatProperties chatProperties = new ChatProperties();
+        chatProperties.getCache().setEnabled(true);
+        OpenAiChatModel chatModel = mock(OpenAiChatModel.class);
+        when(chatModel.getDefaultOptions()).thenReturn(ChatOptions.builder().model("gpt-4o-mini").build());
+        cache = new ChatResponseCache(chatProperties, chatModel, new SimpleMeterRegistry());
+        controller = new TestAiController(chatClient, mock(ChatMemory.class), cache);
+    }
+
+    @Test
+    void statelessPromptsAreServedFromTheCache() {
+        assertEquals(List.of("I am ", "the assistant"), controller.chat("Who are you?", null).collectList().block());
+        assertEquals(List.of("I am ", "the assistant"), controller.chat("who are you", "").collectList().block());
+
+        assertEquals(1, statelessCalls.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void requestsWithAChatIdSkipTheCache() {
+        controller.chat("Who are you?", "123").collectList().block();
+        controller.chat("Who are you?", "123").collectList().block();
+
+        assertEquals(2, conversationCalls.get());
+        assertEquals(0, statelessCalls.get());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.foodlogapp.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * When a tier's result is accepted: a tool failure, a missing confidence or one below the tier's threshold move
+ * the analysis on, except on the last tier.
+ */
+class ModelRouterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ModelRouter router = new ModelRouter(List.of(
+            new ModelTier("fast", null, null, 70),
+            new ModelTier("strong", null, null, 50),
+            new ModelTier("best", null, null, 90)), meterRegistry);
+
+    @Test
+    void aTierAcceptsAResultAtItsOwnThreshold() {
+        assertTrue(router.accepts(0, false, 70));
+        assertFalse(router.accepts(0, false, 69));
+        assertTrue(router.accepts(1, false, 50), "each tier has its own threshold");
+        assertFalse(router.accepts(0, false, null), "no confidence set");
+    }
+
+    @Test
+    void aToolFailureIsNeverAcceptedBeforeTheLastTier() {
+        assertFalse(router.accepts(0, true, 100));
+        assertFalse(router.accepts(1, true, 100));
+    }
+
+    @Test
+    void theLastTierAcceptsAnything() {
+        assertTrue(router.isLast(2));
+        assertTrue(router.accepts(2, false, 10));
+        assertTrue(router.accepts(2, true, null));
+    }
+
+    @Test
+    void finishesAndEscalationsAreCountedPerTier() {
+        router.recordEscalation(router.getTiers().get(0));
+        router.recordFinished(router.getTiers().get(1));
+
+        assertEquals(1.0, meterRegistry.counter("food.analysis.escalations", "from", "fast").count());
+        assertEquals(1.0, meterRegistry.counter("food.analysis.tier.finished", "tier", "strong").count());
+    }
+
+    @Test
+    void atLeastOneTierIsRequired() {
+        assertThrows(IllegalArgumentException.class, () -> new ModelRouter(List.of(), meterRegistry));
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.foodlogapp.config;
+
+import com.example.foodlogapp.Controller.LogController;
+import com.example.foodlogapp.dto.FoodLogResponse;
+import com.example.foodlogapp.mapper.LogVersionMapper;
+import com.example.foodlogapp.service.FoodIngredientService;
+import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.utils.LogVersionTracker;
+import com.example.foodlogapp.utils.RecentWriteTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.CorsRegistry;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Routing of reads and writes between a primary and a replica datasource, across two application nodes that
+ * share both databases but each have their own RecentWriteTracker. For the conditional GETs the mapper answers
+ * from the primary or a lagging replica, depending on the routing of the calling thread.
+ */
+class ReadWriteRoutingTest {
+
+    private static final Duration WINDOW = Duration.ofSeconds(5);
+
+    // names of the datasources connections were taken from, in order
+    private final List<String> connections = new ArrayList<>();
+    private final ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(
+            dataSource(ReadWriteRoutingDataSource.PRIMARY), dataSource(ReadWriteRoutingDataSource.REPLICA),
+            new SimpleMeterRegistry());
+
+    private final RecentWriteTracker trackerA = new RecentWriteTracker(WINDOW);
+    private final ReadRoutingInterceptor nodeA = new ReadRoutingInterceptor(trackerA, WINDOW);
+    private final ReadRoutingInterceptor nodeB = new ReadRoutingInterceptor(new RecentWriteTracker(WINDOW), WINDOW);
+
+    // user_log_version of user 9 on each database, and whether each log query ran on the primary
+    private final AtomicLong primaryVersion = new AtomicLong(4);
+    private final AtomicLong replicaVersion = new AtomicLong(4);
+    private final List<Boolean> readsOnPrimary = new ArrayList<>();
+    private final LogVersionMapper versions = mock(LogVersionMapper.class);
+    private final FoodLogService logService = mock(FoodLogService.class);
+
+    ReadWriteRoutingTest() {
+        routing.afterPropertiesSet();
+        // a mapper call answers from the database the routing would pick
+        when(versions.findStamp(9)).thenAnswer(call -> "9:" + visibleVersion());
+        when(versions.findVersion(9)).thenAnswer(call -> visibleVersion());
+        when(logService.findByUserId(eq(9), any())).thenAnswer(call -> {
+            readsOnPrimary.add(ReadRoutingContext.isPrimaryForced());
+            return List.of();
+        });
+    }
+
+    private long visibleVersion() {
+        return (ReadRoutingContext.isPrimaryForced() ? primaryVersion : replicaVersion).get();
+    }
+
+    @Test
+    void readOnlyTransactionsUseTheReplicaAndEverythingElseThePrimary() throws SQLException {
+        assertEquals(ReadWriteRoutingDataSource.REPLICA, connect(true));
+        assertEquals(ReadWriteRoutingDataSource.PRIMARY, connect(false));
+    }
+
+    @Test
+    void readsInsideAWriteRequestStayOnThePrimary() throws SQLException {
+        assertEquals(ReadWriteRoutingDataSource.PRIMARY, handle(nodeA, request("POST", 9), true));
+    }
+
+    @Test
+    void aRecentWriteKeepsTheUsersReadsOnThePrimaryOfTheWritingNode() throws SQLException {
+        trackerA.recordWrite(9, 100);
+
+        assertEquals(ReadWriteRoutingDataSource.PRIMARY, handle(nodeA, request("GET", 9), true));
+        assertEquals(ReadWriteRoutingDataSource.REPLICA, handle(nodeA, request("GET", 10), true),
+                "other users still read from the replica");
+        assertEquals(ReadWriteRoutingDataSource.REPLICA, handle(nodeB, request("GET", 9), true),
+                "the tracker only knows writes of its own node");
+    }
+
+    @Test
+    void theStickyHeaderOfAWriteKeepsReadsOnThePrimaryOnAnyNode() throws SQLException {
+        MockHttpServletResponse writeResponse = new MockHttpServletResponse();
+        long before = System.currentTimeMillis();
+        nodeA.preHandle(request("POST", 9), writeResponse, null);
+        nodeA.afterCompletion(request("POST", 9), writeResponse, null, null);
+        String until = writeResponse.getHeader(ReadRoutingInterceptor.STICKY_HEADER);
+        assertNotNull(until);
+        assertTrue(Long.parseLong(until) >= before + WINDOW.toMillis());
+
+        // what the portal sends back on its next request
+        MockHttpServletRequest read = request("GET", 9);
+        read.addHeader(ReadRoutingInterceptor.STICKY_HEADER, until);
+        assertEquals(ReadWriteRoutingDataSource.PRIMARY, handle(nodeB, read, true));
+    }
+
+    @Test
+    void theStickyHeaderIsExposedToCrossOriginClients() {
+        Map<String, CorsConfiguration> cors = new CorsRegistry() {
+            {
+                new MvcConfiguration().addCorsMappings(this);
+            }
+
+            Map<String, CorsConfiguration> configurations() {
+                return getCorsConfigurations();
+            }
+        }.configurations();
+
+        assertTrue(cors.get("/**").getExposedHeaders().contains(ReadRoutingInterceptor.STICKY_HEADER));
+    }
+
+    @Test
+    void anExpiredOrMalformedStickyHeaderIsIgnored() throws SQLException {
+        MockHttpServletRequest expired = request("GET", 9);
+        expired.addHeader(ReadRoutingInterceptor.STICKY_HEADER, Long.toString(System.currentTimeMillis() - 1));
+        assertEquals(ReadWriteRoutingDataSource.REPLICA, handle(nodeB, expired, true));
+
+        MockHttpServletRequest malformed = request("GET", 9);
+        malformed.addHeader(ReadRoutingInterceptor.STICKY_HEADER, "soon");
+        assertEquals(ReadWriteRoutingDataSource.REPLICA, handle(nodeB, malformed, true));
+    }
+
+    @Test
+    void aLaggingReplicaNeitherAnswersAStale304NorServesAnOlderBody() {
+        LogController controller = new LogController(logService, mock(FoodIngredientService.class),
+                new LogVersionTracker(versions), null, null, null);
+        String seen = get(controller, null).getHeaders().getETag();
+        assertFalse(readsOnPrimary.get(0));
+
+        // user 9 writes through node A; the next read lands on node B without the sticky header
+        primaryVersion.incrementAndGet();
+        ResponseEntity<List<FoodLogResponse>> afterWrite = get(controller, seen);
+        assertEquals(HttpStatus.OK, afterWrite.getStatusCode(), "not a 304 for the data before the write");
+        assertNotEquals(seen, afterWrite.getHeaders().getETag());
+        assertTrue(readsOnPrimary.get(1), "the replica has not caught up: the body comes from the primary");
+
+        assertEquals(HttpStatus.NOT_MODIFIED, get(controller, afterWrite.getHeaders().getETag()).getStatusCode());
+        replicaVersion.incrementAndGet();
+        assertEquals(afterWrite.getHeaders().getETag(), get(controller, null).getHeaders().getETag());
+        assertFalse(readsOnPrimary.get(2), "caught up: back on the replica");
+    }
+
+    // GET /logs/user/9 on node B
+    private ResponseEntity<List<FoodLogResponse>> get(LogController controller, String ifNoneMatch) {
+        MockHttpServletRequest request = request("GET", 9);
+        if (ifNoneMatch != null) request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        nodeB.preHandle(request, response, null);
+        try {
+            return controller.getByUser(9, "summary", null, new ServletWebRequest(request, response));
+        } finally {
+            nodeB.afterCompletion(request, response, null, null);
+        }
+    }
+
+    // Runs one request through the interceptor and takes a connection in the middle, like a service call
+    private String handle(ReadRoutingInterceptor node, MockHttpServletRequest request, boolean readOnly) throws SQLException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        node.preHandle(request, response, null);
+        try {
+            return connect(readOnly);
+        } finally {
+            node.afterCompletion(request, response, null, null);
+        }
+    }
+
+    private String connect(boolean readOnly) throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(readOnly);
+        try (Connection ignored = routing.getConnection()) {
+            return connections.get(connections.size() - 1);
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+    }
+
+    // /logs/user/{userId}
+    private static MockHttpServletRequest request(String method, int userId) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, "/logs/user/" + userId);
+        request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Map.of("userId", Integer.toString(userId)));
+        return request;
+    }
+
+    private DataSource dataSource(String name) {
+        Connection connection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> null);
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("getConnection")) throw new UnsupportedOperationException(method.getName());
+                    connections.add(name);
+                    return connection;
+                });
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.foodlogapp.job;
+
+import com.example.foodlogapp.entity.FoodIngredient;
+import com.example.foodlogapp.service.FoodIngredientService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Journal-then-flush of the write-behind against a mocked FoodIngredientService whose batch insert
+ * (createAllIfAbsent(Map, Map)) records what reached "MySQL" and can fail, reject a log or block.
+ */
+class IngredientWriteBehindTest {
+
+    private static final int BATCH_SIZE = 3;
+
+    private final Path dir = Files.createTempDirectory("write-behind");
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // log ids of every batch insert call, in order
+    private final List<Set<Integer>> calls = new CopyOnWriteArrayList<>();
+    private final Map<Integer, List<FoodIngredient>> written = new ConcurrentHashMap<>();
+    private final AtomicInteger outages = new AtomicInteger();
+    private volatile Integer rejectedLog;
+    private volatile CountDownLatch gate;
+
+    private final FoodIngredientService foodIngredientService = mock(FoodIngredientService.class);
+
+    IngredientWriteBehindTest() throws IOException {
+        when(foodIngredientService.createAllIfAbsent(anyMap(), any())).thenAnswer(call -> {
+            Map<Integer, List<FoodIngredient>> byLog = call.getArgument(0);
+            calls.add(new TreeSet<>(byLog.keySet()));
+            CountDownLatch waitFor = gate;
+            if (waitFor != null) {
+                waitFor.await(10, TimeUnit.SECONDS);
+            }
+            if (outages.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                throw new TransientDataAccessResourceException("connection refused");
+            }
+            if (rejectedLog != null && byLog.containsKey(rejectedLog)) {
+                throw new DataIntegrityViolationException("Data too long for column 'ingredient_name'");
+            }
+            int rows = 0;
+            for (Map.Entry<Integer, List<FoodIngredient>> entry : byLog.entrySet()) {
+                if (written.putIfAbsent(entry.getKey(), entry.getValue()) == null) {
+                    rows += entry.getValue().size();
+                }
+            }
+            return rows;
+        });
+    }
+
+    @Test
+    void appendsAreFlushedInBatches() throws IOException {
+        IngredientWriteBehind writeBehind = writeBehind(200);
+        try {
+            writeBehind.start();
+            for (int log = 1; log <= 7; log++) {
+                assertTrue(writeBehind.append(log, ingredients("rice " + log), "token-" + log));
+            }
+            for (int log = 1; log <= 7; log++) {
+                assertTrue(writeBehind.awaitFlushed(log));
+            }
+
+            assertEquals(Set.of(1, 2, 3, 4, 5, 6, 7), written.keySet());
+            assertEquals("rice 4", written.get(4).get(0).getIngredientName());
+            assertTrue(calls.size() < 7, "batched: " + calls);
+            calls.forEach(call -> assertTrue(call.size() <= BATCH_SIZE, "batch-size exceeded: " + call));
+            assertEquals(14.0, meterRegistry.counter("writebehind.flush.rows").count());
+            assertEquals(0.0, meterRegistry.get("writebehind.lag").gauge().value());
+        } finally {
+            writeBehind.stop();
+        }
+    }
+
+    @Test
+    void aRejectedBatchIsSplitAndOnlyTheBadLogDropped() throws IOException {
+        rejectedLog = 2;
+        IngredientWriteBehind writeBehind = writeBehind(200);
+        try {
+            writeBehind.start();
+            for (int log = 1; log <= 3; log++) {
+                writeBehind.append(log, ingredients("egg"), null);
+            }
+            for (int log = 1; log <= 3; log++) {
+                assertTrue(writeBehind.awaitFlushed(log), "a dropped log is no longer pending");
+            }
+
+            assertEquals(Set.of(1, 3), written.keySet());
+            assertEquals(List.of(Set.of(1, 2, 3), Set.of(1), Set.of(2), Set.of(3)), calls);
+            assertEquals(1.0, meterRegistry.counter("writebehind.flush.dropped").count());
+            assertEquals(1.0, meterRegistry.counter("writebehind.flush.failures").count());
+        } finally {
+            writeBehind.stop();
+        }
+    }
+
+    @Test
+    void aFlushThatFailsIsRetried() throws IOException {
+        outages.set(2);
+        IngredientWriteBehind writeBehind = writeBehind(0);
+        try {
+            writeBehind.start();
+            writeBehind.append(1, ingredients("tea"), null);
+
+            assertTrue(writeBehind.awaitFlushed(1));
+            assertEquals(Set.of(1), written.keySet());
+            assertEquals(3, calls.size());
+            assertEquals(2.0, meterRegistry.counter("writebehind.flush.failures").count());
+        } finally {
+            writeBehind.stop();
+        }
+    }
+
+    @Test
+    void aLogWithAnUnflushedEntryIsNotJournaledAgain() throws IOException {
+        gate = new CountDownLatch(1);
+        IngredientWriteBehind writeBehind = writeBehind(0, 200);
+        try {
+            writeBehind.start();
+            assertTrue(writeBehind.append(1, ingredients("tofu"), null));
+            assertFalse(writeBehind.append(1, ingredients("tofu"), null));
+            assertFalse(writeBehind.awaitFlushed(1), "await-timeout-ms passed");
+
+            gate.countDown();
+            assertTrue(writeBehind.awaitFlushed(1));
+            assertEquals(List.of(Set.of(1)), calls, "written once");
+        } finally {
+            writeBehind.stop();
+        }
+    }
+
+    @Test
+    void aFailedAppendLeavesNothingPending() throws IOException {
+        IngredientWriteBehind writeBehind = writeBehind(0);
+        try {
+            writeBehind.start();
+            List<FoodIngredient> withNull = new ArrayList<>(ingredients("rice"));
+            withNull.add(null);
+            assertThrows(NullPointerException.class, () -> writeBehind.append(1, withNull, null));
+            assertThrows(UncheckedIOException.class, () -> writeBehind.append(1, ingredients("x".repeat(70_000)), null));
+            assertTrue(writeBehind.awaitFlushed(1));
+
+            assertTrue(writeBehind.append(1, ingredients("rice"), null));
+            assertTrue(writeBehind.awaitFlushed(1));
+            assertEquals(Set.of(1), written.keySet());
+        } finally {
+            writeBehind.stop();
+        }
+    }
+
+    @Test
+    void unflushedEntriesAreReplayedOnTheNextStart() throws IOException {
+        IngredientWriteBehind stopped = writeBehind(0);
+        // never started: nothing reaches MySQL before the node goes away
+        stopped.append(1, ingredients("rice"), "token-1");
+        stopped.append(2, ingredients("egg"), "token-2");
+        stopped.stop();
+        assertTrue(calls.isEmpty());
+
+        IngredientWriteBehind restarted = writeBehind(0);
+        try {
+            restarted.start();
+            assertTrue(restarted.awaitFlushed(1));
+            assertTrue(restarted.awaitFlushed(2));
+            assertEquals(Set.of(1, 2), written.keySet());
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    private IngredientWriteBehind writeBehind(long maxLingerMs) throws IOException {
+        return writeBehind(maxLingerMs, 5000);
+    }
+
+    private IngredientWriteBehind writeBehind(long maxLingerMs, long awaitTimeoutMs) throws IOException {
+        return new IngredientWriteBehind(foodIngredientService, meterRegistry, true, dir.toString(), BATCH_SIZE,
+                maxLingerMs, 64 << 20, awaitTimeoutMs);
+    }
+
+    private static List<FoodIngredient> ingredients(String name) {
+        FoodIngredient main = new FoodIngredient();
+        main.setIngredientName(name);
+        main.setKcal(100);
+        FoodIngredient side = new FoodIngredient();
+        side.setIngredientName("sauce");
+        return List.of(main, side);
+    }
+}
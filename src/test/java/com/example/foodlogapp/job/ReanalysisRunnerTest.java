@@ -0,0 +1,165 @@
+package com.example.foodlogapp.job;
+
+import com.example.foodlogapp.dto.FoodAnalysisResult;
+import com.example.foodlogapp.dto.IngredientLogEntry;
+import com.example.foodlogapp.entity.FoodLog;
+import com.example.foodlogapp.entity.ReanalysisRun;
+import com.example.foodlogapp.service.FoodAnalysisService;
+import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.service.ReanalysisService;
+import com.example.foodlogapp.utils.LocalImageSpool;
+import com.example.foodlogapp.utils.S3Service;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * One run executed by the runner against mocked services: it starts after the run's checkpoint, advances it
+ * after every page, runs up to {@code parallelism} analyses at once and records a failed log without stopping.
+ */
+class ReanalysisRunnerTest {
+
+    private final ReanalysisService reanalysisService = mock(ReanalysisService.class);
+    private final FoodLogService foodLogService = mock(FoodLogService.class);
+    private final FoodAnalysisService foodAnalysisService = mock(FoodAnalysisService.class);
+    private final S3Service s3Service = mock(S3Service.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReanalysisRunner runner = new ReanalysisRunner(reanalysisService, foodLogService,
+            foodAnalysisService, s3Service, mock(LocalImageSpool.class), meterRegistry);
+    private final ReanalysisRun run = new ReanalysisRun();
+
+    ReanalysisRunnerTest() throws ReflectiveOperationException {
+        set("enabled", true);
+        set("spoolWait", Duration.ZERO);
+        run.setId(1L);
+        run.setParallelism(1);
+        run.setRatePerSecond(1000.0);
+        run.setBatchSize(3);
+        when(reanalysisService.claim(anyString())).thenReturn(run);
+        when(reanalysisService.checkpoint(eq(run), anyString(), any(), any(Integer.class), any(Integer.class),
+                anyDouble(), any())).thenReturn(true);
+        when(reanalysisService.renewLease(eq(run), anyString())).thenReturn(true);
+        when(s3Service.downloadFile(anyString())).thenReturn(new S3Service.DownloadedFile(new byte[]{1}, "image/jpeg"));
+        when(foodAnalysisService.infer(any(), any())).thenAnswer(call -> result());
+    }
+
+    @Test
+    void aRunResumesAfterItsCheckpoint() throws InterruptedException {
+        run.setLastLogId(10);
+        when(foodLogService.findPage(10, null, null, 3)).thenReturn(logs(11, 12, 13));
+        when(foodLogService.findPage(13, null, null, 3)).thenReturn(logs(14));
+        when(foodLogService.findPage(14, null, null, 3)).thenReturn(List.of());
+
+        execute();
+
+        verify(foodLogService, never()).findPage(isNull(), any(), any(), any(Integer.class));
+        verify(reanalysisService).checkpoint(eq(run), anyString(), eq(13), eq(3), eq(0), anyDouble(), isNull());
+        verify(reanalysisService).checkpoint(eq(run), anyString(), eq(14), eq(1), eq(0), anyDouble(), isNull());
+        verify(foodLogService, never()).replaceAnalysis(eq(10), any(), any());
+        verify(foodLogService).replaceAnalysis(eq(14), any(), eq(80));
+        assertEquals(4.0, meterRegistry.counter("reanalysis.logs", "result", "succeeded").count());
+    }
+
+    @Test
+    void aFailedLogIsRecordedAndTheRunGoesOn() throws InterruptedException {
+        List<FoodLog> page = logs(1, 2, 3);
+        page.get(1).setImagePath(null);
+        when(foodLogService.findPage(null, null, null, 3)).thenReturn(page);
+        when(foodLogService.findPage(3, null, null, 3)).thenReturn(logs(4));
+        when(foodLogService.findPage(4, null, null, 3)).thenReturn(List.of());
+
+        execute();
+
+        verify(reanalysisService).checkpoint(eq(run), anyString(), eq(3), eq(2), eq(1), anyDouble(), contains("log 2"));
+        verify(foodLogService, never()).replaceAnalysis(eq(2), any(), any());
+        verify(foodLogService).replaceAnalysis(eq(4), any(), any());
+        assertEquals(1.0, meterRegistry.counter("reanalysis.logs", "result", "failed").count());
+        assertEquals(3.0, meterRegistry.counter("reanalysis.logs", "result", "succeeded").count());
+    }
+
+    @Test
+    void upToParallelismAnalysesRunAtOnce() throws InterruptedException {
+        run.setParallelism(3);
+        run.setBatchSize(6);
+        when(foodLogService.findPage(null, null, null, 6)).thenReturn(logs(1, 2, 3, 4, 5, 6));
+        when(foodLogService.findPage(6, null, null, 6)).thenReturn(List.of());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostAtOnce = new AtomicInteger();
+        when(foodAnalysisService.infer(any(), any())).thenAnswer(call -> {
+            mostAtOnce.accumulateAndGet(running.incrementAndGet(), Math::max);
+            TimeUnit.MILLISECONDS.sleep(100);
+            running.decrementAndGet();
+            return result();
+        });
+
+        execute();
+
+        assertEquals(3, mostAtOnce.get());
+        verify(reanalysisService).checkpoint(eq(run), anyString(), eq(6), eq(6), eq(0), anyDouble(), isNull());
+    }
+
+    @Test
+    void aRunThatWasTakenOverStopsAtTheNextCheckpoint() throws InterruptedException {
+        when(foodLogService.findPage(null, null, null, 3)).thenReturn(logs(1, 2, 3));
+        when(reanalysisService.checkpoint(eq(run), anyString(), any(), any(Integer.class), any(Integer.class),
+                anyDouble(), any())).thenReturn(false);
+
+        runner.poll();
+        verify(reanalysisService, timeout(5000)).checkpoint(eq(run), anyString(), eq(3), eq(3), eq(0), anyDouble(), isNull());
+        runner.stop();
+
+        verify(foodLogService, never()).findPage(eq(3), any(), any(), any(Integer.class));
+        verify(reanalysisService, never()).complete(any(), anyString());
+    }
+
+    private void execute() throws InterruptedException {
+        runner.poll();
+        verify(reanalysisService, timeout(5000)).complete(eq(run), anyString());
+        runner.stop();
+    }
+
+    private static List<FoodLog> logs(int... ids) {
+        return IntStream.of(ids).mapToObj(id -> {
+            FoodLog foodLog = new FoodLog();
+            foodLog.setId(id);
+            foodLog.setImagePath("images/" + id + ".jpg");
+            return foodLog;
+        }).collect(Collectors.toList());
+    }
+
+    private static FoodAnalysisResult result() {
+        IngredientLogEntry rice = new IngredientLogEntry();
+        rice.setIngredient("rice");
+        rice.setKcal(200);
+        FoodAnalysisResult result = new FoodAnalysisResult();
+        result.setIngredients(List.of(rice));
+        result.setConfidence(80);
+        return result;
+    }
+
+    private void set(String name, Object value) throws ReflectiveOperationException {
+        Field field = ReanalysisRunner.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(runner, value);
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.foodlogapp.job;
+
+import com.amazonaws.SdkClientException;
+import com.example.foodlogapp.config.StorageProperties;
+import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.utils.LocalImageSpool;
+import com.example.foodlogapp.utils.S3CircuitBreaker;
+import com.example.foodlogapp.utils.S3Service;
+import com.example.foodlogapp.utils.UploadSpool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The local image spool (in a temp directory) and its replay to a fake S3 that is up or down, with the real
+ * circuit breaker in between. The mocked FoodLogService maps image paths to the logs using them.
+ */
+class SpoolReplayerTest {
+
+    private final StorageProperties properties = new StorageProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // image_path -> number of logs with it
+    private final Map<String, Integer> imagePaths = new ConcurrentHashMap<>();
+    private final List<String> uploaded = new ArrayList<>();
+    private volatile boolean s3Down;
+
+    private final S3CircuitBreaker circuitBreaker;
+    private final LocalImageSpool spool;
+    private final SpoolReplayer replayer;
+
+    SpoolReplayerTest() throws IOException {
+        properties.setImageDir(Files.createTempDirectory("spool-test").toString());
+        properties.setS3FailureThreshold(1);
+        properties.setS3OpenDuration(Duration.ofMinutes(1));
+        properties.setLocalSpoolMaxBytes(1000);
+        properties.setLocalSpoolOrphanGrace(Duration.ofHours(1));
+        circuitBreaker = new S3CircuitBreaker(properties, meterRegistry);
+        spool = new LocalImageSpool(properties, meterRegistry);
+        S3Service s3Service = new S3Service(null, null, circuitBreaker) {
+            @Override
+            public String uploadFile(Path file, String contentType, String sha256) {
+                return circuitBreaker.call(() -> {
+                    if (s3Down) {
+                        throw new SdkClientException("connect timed out");
+                    }
+                    uploaded.add(sha256);
+                    return "https://bucket/uploads/" + uploaded.size();
+                });
+            }
+        };
+        FoodLogService foodLogService = mock(FoodLogService.class);
+        when(foodLogService.findExistingImagePaths(anyList())).thenAnswer(call ->
+                call.<List<String>>getArgument(0).stream().filter(imagePaths::containsKey).toList());
+        when(foodLogService.replaceImagePath(anyString(), anyString())).thenAnswer(call -> {
+            Integer logs = imagePaths.remove(call.<String>getArgument(0));
+            if (logs == null) return 0;
+            imagePaths.put(call.getArgument(1), logs);
+            return logs;
+        });
+        replayer = new SpoolReplayer(spool, s3Service, circuitBreaker, foodLogService, properties, meterRegistry);
+    }
+
+    @Test
+    void aSpooledImageIsReadableOnlyHere() {
+        String path = store("first image");
+
+        assertTrue(LocalImageSpool.isSpooled(path));
+        assertTrue(spool.holds(path));
+        assertArrayEquals("first image".getBytes(StandardCharsets.UTF_8), spool.read(path).data());
+        assertEquals("image/jpeg", spool.read(path).contentType());
+        String elsewhere = LocalImageSpool.PREFIX + "00000000-0000-0000-0000-000000000000";
+        assertFalse(spool.holds(elsewhere));
+        assertNull(spool.read(elsewhere));
+        assertNull(spool.read(LocalImageSpool.PREFIX + "../../etc/passwd"));
+        assertEquals(1L, spool.getFiles());
+        assertEquals(11L, spool.getBytes());
+    }
+
+    @Test
+    void replayUploadsOldestFirstAndRepointsTheLogs() throws InterruptedException {
+        String first = store("first image");
+        // the file times order the replay
+        TimeUnit.MILLISECONDS.sleep(20);
+        String second = store("second image");
+        imagePaths.put(first, 1);
+        imagePaths.put(second, 2);
+
+        replayer.replay();
+
+        assertEquals(2, uploaded.size());
+        assertEquals(0, spool.list().size());
+        assertEquals(Map.of("https://bucket/uploads/1", 1, "https://bucket/uploads/2", 2), imagePaths);
+        assertFalse(spool.holds(first));
+        assertEquals(0L, spool.getBytes());
+        assertEquals(2.0, meterRegistry.counter("storage.spool.replayed").count());
+    }
+
+    @Test
+    void anOutageStopsThePassAndTheNextPassResumes() throws InterruptedException {
+        String first = store("first image");
+        String second = store("second image");
+        imagePaths.put(first, 1);
+        imagePaths.put(second, 1);
+
+        properties.setS3OpenDuration(Duration.ofMillis(200));
+        s3Down = true;
+        replayer.replay();
+        assertEquals(S3CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(2L, spool.getFiles(), "stopped at the first failure");
+        replayer.replay();
+        assertEquals(0.0, meterRegistry.counter("s3.breaker.rejected").count(), "an open circuit skips the pass");
+
+        s3Down = false;
+        TimeUnit.MILLISECONDS.sleep(250);
+        // the first upload is the half-open probe
+        replayer.replay();
+        assertEquals(0L, spool.getFiles());
+        assertEquals(2, uploaded.size());
+    }
+
+    @Test
+    void unreferencedImagesAreDiscardedAfterTheGrace() {
+        store("upload failed after spooling");
+
+        replayer.replay();
+        assertEquals(1L, spool.getFiles(), "within the grace");
+
+        properties.setLocalSpoolOrphanGrace(Duration.ZERO);
+        replayer.replay();
+        assertEquals(0L, spool.getFiles());
+        assertTrue(uploaded.isEmpty());
+        assertEquals(1.0, meterRegistry.counter("storage.spool.discarded").count());
+    }
+
+    @Test
+    void concurrentStoresNeverExceedTheLimit() throws Exception {
+        // 100 bytes each against a 1000 byte limit
+        String image = "x".repeat(100);
+        int threads = 32;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                try {
+                    store(image);
+                    return true;
+                } catch (IllegalStateException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        int stored = 0;
+        for (Future<Boolean> result : results) {
+            stored += result.get(10, TimeUnit.SECONDS) ? 1 : 0;
+        }
+        pool.shutdown();
+
+        assertEquals(10, stored);
+        assertEquals(10, spool.list().size());
+        assertEquals(1000L, spool.getBytes());
+        assertThrows(IllegalStateException.class, () -> store("y"));
+    }
+
+    private String store(String content) {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        try (UploadSpool upload = UploadSpool.read(new ByteArrayInputStream(data), data.length, "image/jpeg",
+                List.of(ByteBuffer.allocate(Math.max(data.length, 1))), () -> {
+                })) {
+            return spool.store(upload);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
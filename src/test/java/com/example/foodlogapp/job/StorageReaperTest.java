@@ -0,0 +1,119 @@
+package com.example.foodlogapp.job;
+
+import com.example.foodlogapp.config.ReaperProperties;
+import com.example.foodlogapp.dto.ReaperReport;
+import com.example.foodlogapp.entity.FoodLog;
+import com.example.foodlogapp.mapper.FoodLogMapper;
+import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.utils.S3Service;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Select;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The empty-log pass of the storage reaper must only remove abandoned uploads: logs created by the upload
+ * endpoints that never got ingredients, never manually created or imported logs that happen to be empty.
+ * The mocked service applies the predicates of FoodLogMapper.findStaleEmptyIds / deleteIfEmpty.
+ */
+class StorageReaperTest {
+
+    private final Map<Integer, FoodLog> logs = new TreeMap<>();
+    private final ReaperProperties properties = new ReaperProperties();
+
+    private final FoodLogService foodLogService = mock(FoodLogService.class);
+    // no objects in the bucket: only the log pass does anything
+    private final S3Service s3Service = mock(S3Service.class);
+    private final StorageReaper reaper = new StorageReaper(foodLogService, s3Service, properties, new SimpleMeterRegistry());
+
+    StorageReaperTest() {
+        when(foodLogService.findStaleEmptyIds(anyLong(), anyInt(), anyInt())).thenAnswer(call -> logs.values().stream()
+                .filter(l -> l.getId() > call.<Integer>getArgument(1) && reapable(l))
+                .limit(call.<Integer>getArgument(2))
+                .map(FoodLog::getId)
+                .toList());
+        when(foodLogService.deleteIfEmpty(anyInt())).thenAnswer(call -> {
+            FoodLog log = logs.get(call.<Integer>getArgument(0));
+            return log != null && reapable(log) && logs.remove(log.getId()) != null ? 1 : 0;
+        });
+    }
+
+    @Test
+    void onlyEmptyUploadsAreDeleted() {
+        log(1, true, 0, 0);    // upload whose analysis never wrote anything
+        log(2, false, 0, 0);   // created through POST /logs, nothing added yet
+        log(3, false, 0, 0);   // imported without ingredient rows
+        log(4, true, 2, 80);   // analysed upload
+        log(5, null, 0, 0);    // row from before from_upload existed
+
+        ReaperReport report = reaper.run(false);
+
+        assertEquals(1, report.getEmptyLogsDeleted());
+        verify(foodLogService).deleteIfEmpty(1);
+        verify(foodLogService, times(1)).deleteIfEmpty(anyInt());
+        assertEquals(List.of(2, 3, 4, 5), List.copyOf(logs.keySet()));
+    }
+
+    @Test
+    void aDryRunDeletesNothing() {
+        log(1, true, 0, 0);
+        log(2, true, 0, 0);
+
+        ReaperReport report = reaper.run(true);
+
+        assertEquals(2, report.getEmptyLogsDeleted());
+        verify(foodLogService, never()).deleteIfEmpty(anyInt());
+        assertEquals(2, logs.size());
+    }
+
+    @Test
+    void theRunStopsAtMaxDeletesPerRun() {
+        properties.setMaxDeletesPerRun(2);
+        for (int id = 1; id <= 5; id++) {
+            log(id, true, 0, 0);
+        }
+
+        ReaperReport report = reaper.run(false);
+
+        assertEquals(2, report.getEmptyLogsDeleted());
+        assertTrue(report.isTruncated());
+        assertEquals(List.of(3, 4, 5), List.copyOf(logs.keySet()));
+    }
+
+    @Test
+    void theMapperQueriesAreScopedToUploads() throws NoSuchMethodException {
+        String find = String.join("", FoodLogMapper.class
+                .getMethod("findStaleEmptyIds", long.class, Integer.class, int.class).getAnnotation(Select.class).value());
+        String delete = String.join("", FoodLogMapper.class
+                .getMethod("deleteIfEmpty", Integer.class).getAnnotation(Delete.class).value());
+        assertTrue(find.contains("from_upload = 1"), find);
+        assertTrue(delete.contains("from_upload = 1"), delete);
+    }
+
+    private void log(int id, Boolean fromUpload, int ingredients, int confidence) {
+        FoodLog log = new FoodLog();
+        log.setId(id);
+        log.setFromUpload(fromUpload);
+        log.setIngredientCount(ingredients);
+        log.setConfidence(confidence);
+        logs.put(id, log);
+    }
+
+    private static boolean reapable(FoodLog log) {
+        return Boolean.TRUE.equals(log.getFromUpload()) && log.getIngredientCount() == 0 && log.getConfidence() == 0;
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.foodlogapp.service.impl;
+
+import com.example.foodlogapp.config.AnalysisProperties;
+import com.example.foodlogapp.config.InvalidParameterException;
+import com.example.foodlogapp.dto.AnalysisMode;
+import com.example.foodlogapp.entity.AnalysisJob;
+import com.example.foodlogapp.mapper.AnalysisJobMapper;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Leases, owner fencing and retries of the analysis queue. The mapper is a mock backed by an in-memory table that
+ * applies the same predicates as the SQL in AnalysisJobMapper against a test clock ({@link #now}, in ms).
+ */
+class AnalysisJobServiceImplTest {
+
+    private static final long LEASE = Duration.ofMinutes(5).toMillis();
+    private static final long RETRY = Duration.ofSeconds(30).toMillis();
+    private static final long SPOOL_WAIT = Duration.ofHours(1).toMillis();
+
+    private long now = 1_000_000;
+    private final Map<Long, AnalysisJob> jobs = new HashMap<>();
+    private final Map<Long, Long> availableAt = new HashMap<>();
+    private final Map<Long, Long> leaseUntil = new HashMap<>();
+    private final Map<Long, Long> createdAt = new HashMap<>();
+    private final AnalysisJobServiceImpl service = new AnalysisJobServiceImpl();
+
+    AnalysisJobServiceImplTest() throws ReflectiveOperationException {
+        AnalysisProperties properties = new AnalysisProperties();
+        properties.getQueue().setLease(Duration.ofMillis(LEASE));
+        properties.getQueue().setMaxAttempts(3);
+        properties.getQueue().setRetryDelay(Duration.ofMillis(RETRY));
+        properties.getQueue().setSpoolWait(Duration.ofMillis(SPOOL_WAIT));
+        set("analysisProperties", properties);
+        set("analysisJobMapper", mapper());
+    }
+
+    @Test
+    void aClaimTakesTheOldestAvailableJobUnderALease() {
+        Long first = enqueue(1).getId();
+        enqueue(2);
+
+        AnalysisJob job = service.claim("a");
+        assertEquals(first, job.getId());
+        assertEquals(AnalysisJob.RUNNING, job.getStatus());
+        assertEquals("a", job.getLeaseOwner());
+        assertEquals(Integer.valueOf(1), job.getAttempts());
+        assertEquals(Long.valueOf(now + LEASE), leaseUntil.get(first));
+
+        assertEquals(Integer.valueOf(2), service.claim("b").getLogId());
+        assertNull(service.claim("c"), "nothing left to claim");
+    }
+
+    @Test
+    void anExpiredLeaseIsTakenOverAndTheOldOwnerIsFenced() {
+        enqueue(1);
+        AnalysisJob stalled = service.claim("a");
+
+        now += LEASE - 1;
+        assertEquals(0, service.releaseExpiredLeases(), "still leased");
+        now += 2;
+        assertEquals(1, service.releaseExpiredLeases());
+        assertEquals("lease expired", jobs.get(stalled.getId()).getLastError());
+        AnalysisJob takeover = service.claim("b");
+        assertEquals(stalled.getId(), takeover.getId());
+        assertEquals(Integer.valueOf(2), takeover.getAttempts());
+
+        assertFalse(service.complete(stalled, "a"), "the stalled node cannot complete the job it lost");
+        assertFalse(service.fail(stalled, "a", "late failure"));
+        assertTrue(service.complete(takeover, "b"));
+        assertEquals(AnalysisJob.DONE, jobs.get(takeover.getId()).getStatus());
+    }
+
+    @Test
+    void renewingKeepsTheLeaseOfLongRunningJobs() {
+        enqueue(1);
+        enqueue(2);
+        AnalysisJob running = service.claim("a");
+        AnalysisJob other = service.claim("b");
+
+        now += LEASE - 1;
+        assertEquals(1, service.renewLeases("a", List.of(running.getId(), other.getId())),
+                "only the caller's own leases are renewed");
+        now += 2;
+        assertEquals(1, service.releaseExpiredLeases());
+        assertEquals(AnalysisJob.RUNNING, jobs.get(running.getId()).getStatus());
+        assertEquals(AnalysisJob.PENDING, jobs.get(other.getId()).getStatus());
+    }
+
+    @Test
+    void failedAttemptsBackOffLinearlyUntilMaxAttempts() {
+        enqueue(1);
+
+        AnalysisJob job = service.claim("a");
+        assertTrue(service.fail(job, "a", "timeout"));
+        assertEquals(AnalysisJob.PENDING, jobs.get(job.getId()).getStatus());
+        now += RETRY - 1;
+        assertNull(service.claim("a"), "not before retry-delay");
+        now += 1;
+        job = service.claim("a");
+
+        assertTrue(service.fail(job, "a", "timeout"));
+        now += 2 * RETRY - 1;
+        assertNull(service.claim("a"), "the second retry waits twice as long");
+        now += 1;
+        job = service.claim("a");
+        assertEquals(Integer.valueOf(3), job.getAttempts());
+
+        assertTrue(service.fail(job, "a", "x".repeat(2000)));
+        AnalysisJob failed = jobs.get(job.getId());
+        assertEquals(AnalysisJob.FAILED, failed.getStatus());
+        assertEquals(1000, failed.getLastError().length());
+        now += 10 * RETRY;
+        assertNull(service.claim("a"), "a failed job is not retried");
+    }
+
+    @Test
+    void aPostponedAttemptIsNotCountedUntilSpoolWaitRunsOut() {
+        enqueue(1);
+
+        for (int i = 0; i < 5; i++) {
+            AnalysisJob job = service.claim("a");
+            assertEquals(Integer.valueOf(1), job.getAttempts());
+            assertTrue(service.postpone(job, "a", "spooled elsewhere"));
+            assertEquals(AnalysisJob.PENDING, jobs.get(job.getId()).getStatus());
+            now += RETRY - 1;
+            assertNull(service.claim("a"), "not before retry-delay");
+            now += 1;
+        }
+
+        now += SPOOL_WAIT;
+        AnalysisJob job = service.claim("a");
+        assertTrue(service.postpone(job, "a", "spooled elsewhere"));
+        assertEquals(Integer.valueOf(1), jobs.get(job.getId()).getAttempts(), "failed like any attempt once too old");
+        assertEquals("spooled elsewhere", jobs.get(job.getId()).getLastError());
+        now += RETRY;
+        AnalysisJob retry = service.claim("b");
+        assertEquals(Integer.valueOf(2), retry.getAttempts());
+        assertFalse(service.postpone(retry, "a", "late"), "fenced like fail()");
+    }
+
+    @Test
+    void notesLongerThanTheColumnAreAParameterError() {
+        assertThrows(InvalidParameterException.class, () -> service.enqueue(1, "image/jpeg",
+                "x".repeat(AnalysisJob.MAX_NOTES_LENGTH + 1), AnalysisMode.TOOLS));
+        assertTrue(jobs.isEmpty());
+        enqueue(1);
+    }
+
+    private AnalysisJob enqueue(int logId) {
+        return service.enqueue(logId, "image/jpeg", "x".repeat(AnalysisJob.MAX_NOTES_LENGTH), AnalysisMode.TOOLS);
+    }
+
+    // each statement is answered from the in-memory table
+    private AnalysisJobMapper mapper() {
+        AnalysisJobMapper mapper = mock(AnalysisJobMapper.class);
+        when(mapper.insert(any())).thenAnswer(call -> {
+            AnalysisJob job = call.getArgument(0);
+            job.setId((long) jobs.size() + 1);
+            job.setStatus(AnalysisJob.PENDING);
+            job.setAttempts(0);
+            jobs.put(job.getId(), job);
+            availableAt.put(job.getId(), now);
+            createdAt.put(job.getId(), now);
+            return 1;
+        });
+        when(mapper.findById(anyLong())).thenAnswer(call -> copy(jobs.get(call.<Long>getArgument(0))));
+        when(mapper.lockClaimable(anyInt())).thenAnswer(call -> jobs.values().stream()
+                .filter(j -> AnalysisJob.PENDING.equals(j.getStatus()) && availableAt.get(j.getId()) <= now)
+                .sorted(Comparator.comparing((AnalysisJob j) -> availableAt.get(j.getId())).thenComparing(AnalysisJob::getId))
+                .limit(call.<Integer>getArgument(0))
+                .map(AnalysisJob::getId)
+                .toList());
+        when(mapper.markRunning(anyLong(), anyString(), anyLong())).thenAnswer(call -> {
+            AnalysisJob job = jobs.get(call.<Long>getArgument(0));
+            job.setStatus(AnalysisJob.RUNNING);
+            job.setLeaseOwner(call.getArgument(1));
+            job.setAttempts(job.getAttempts() + 1);
+            leaseUntil.put(job.getId(), now + call.<Long>getArgument(2));
+            return 1;
+        });
+        when(mapper.renewLeases(anyString(), anyList(), anyLong())).thenAnswer(call -> {
+            int renewed = 0;
+            for (Long id : call.<List<Long>>getArgument(1)) {
+                AnalysisJob job = jobs.get(id);
+                if (leasedBy(job, call.getArgument(0))) {
+                    leaseUntil.put(job.getId(), now + call.<Long>getArgument(2));
+                    renewed++;
+                }
+            }
+            return renewed;
+        });
+        when(mapper.complete(anyLong(), anyString())).thenAnswer(call -> {
+            AnalysisJob job = jobs.get(call.<Long>getArgument(0));
+            if (!leasedBy(job, call.getArgument(1))) return 0;
+            job.setStatus(AnalysisJob.DONE);
+            release(job);
+            job.setLastError(null);
+            return 1;
+        });
+        when(mapper.fail(anyLong(), anyString(), anyString(), anyInt(), anyLong())).thenAnswer(call -> {
+            AnalysisJob job = jobs.get(call.<Long>getArgument(0));
+            if (!leasedBy(job, call.getArgument(1))) return 0;
+            job.setStatus(job.getAttempts() >= call.<Integer>getArgument(3) ? AnalysisJob.FAILED : AnalysisJob.PENDING);
+            availableAt.put(job.getId(), now + call.<Long>getArgument(4));
+            release(job);
+            job.setLastError(call.getArgument(2));
+            return 1;
+        });
+        when(mapper.postpone(anyLong(), anyString(), anyString(), anyLong(), anyLong())).thenAnswer(call -> {
+            AnalysisJob job = jobs.get(call.<Long>getArgument(0));
+            if (!leasedBy(job, call.getArgument(1)) || createdAt.get(job.getId()) <= now - call.<Long>getArgument(4)) return 0;
+            job.setStatus(AnalysisJob.PENDING);
+            job.setAttempts(job.getAttempts() - 1);
+            availableAt.put(job.getId(), now + call.<Long>getArgument(3));
+            release(job);
+            job.setLastError(call.getArgument(2));
+            return 1;
+        });
+        when(mapper.releaseExpiredLeases(anyInt())).thenAnswer(call -> {
+            int released = 0;
+            for (AnalysisJob job : jobs.values()) {
+                if (AnalysisJob.RUNNING.equals(job.getStatus()) && leaseUntil.get(job.getId()) < now) {
+                    job.setStatus(job.getAttempts() >= call.<Integer>getArgument(0) ? AnalysisJob.FAILED : AnalysisJob.PENDING);
+                    availableAt.put(job.getId(), now);
+                    release(job);
+                    if (job.getLastError() == null) job.setLastError("lease expired");
+                    released++;
+                }
+            }
+            return released;
+        });
+        return mapper;
+    }
+
+    private static boolean leasedBy(AnalysisJob job, String owner) {
+        return job != null && AnalysisJob.RUNNING.equals(job.getStatus()) && owner.equals(job.getLeaseOwner());
+    }
+
+    private void release(AnalysisJob job) {
+        job.setLeaseOwner(null);
+        leaseUntil.remove(job.getId());
+    }
+
+    // the service must only see what a SELECT returns, not the live row
+    private static AnalysisJob copy(AnalysisJob job) {
+        if (job == null) return null;
+        AnalysisJob copy = new AnalysisJob();
+        copy.setId(job.getId());
+        copy.setLogId(job.getLogId());
+        copy.setContentType(job.getContentType());
+        copy.setNotes(job.getNotes());
+        copy.setMode(job.getMode());
+        copy.setStatus(job.getStatus());
+        copy.setAttempts(job.getAttempts());
+        copy.setLeaseOwner(job.getLeaseOwner());
+        copy.setLastError(job.getLastError());
+        return copy;
+    }
+
+    private void set(String name, Object value) throws ReflectiveOperationException {
+        Field field = AnalysisJobServiceImpl.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(service, value);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.foodlogapp.service.impl;
+
+import com.example.foodlogapp.utils.UserNutritionColumns;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Calendar days of the /analytics endpoints in a time zone with DST (America/New_York: 2026-03-08 has 23 hours,
+ * 2026-11-01 has 25).
+ */
+class AnalyticsServiceImplTest {
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    @Test
+    void daysAcrossADstChangeAreBucketedByLocalMidnight() {
+        long[] starts = AnalyticsServiceImpl.dayStarts(LocalDate.of(2026, 3, 7), 3, NEW_YORK);
+        assertEquals(24 * 3600L, starts[1] - starts[0]);
+        assertEquals(23 * 3600L, starts[2] - starts[1]);
+
+        UserNutritionColumns columns = new UserNutritionColumns();
+        columns.add(1, at(2026, 3, 7, 23, 30), "rice", 100, null);
+        columns.add(2, at(2026, 3, 8, 0, 30), "egg", 10, null);
+        // 24 hours after the first row, but still the same local day as the second
+        columns.add(3, at(2026, 3, 8, 23, 30), "tea", 1, null);
+        columns.add(4, at(2026, 3, 9, 0, 0), "tofu", 1000, null);
+
+        assertArrayEquals(new long[]{100, 11, 1000}, columns.sumKcalByBucket(starts));
+    }
+
+    @Test
+    void theLongDayIsOneBucket() {
+        long[] starts = AnalyticsServiceImpl.dayStarts(LocalDate.of(2026, 11, 1), 2, NEW_YORK);
+        assertEquals(25 * 3600L, starts[1] - starts[0]);
+
+        UserNutritionColumns columns = new UserNutritionColumns();
+        columns.add(1, at(2026, 11, 1, 0, 10), "rice", 100, null);
+        columns.add(2, at(2026, 11, 1, 23, 50), "egg", 10, null);
+        columns.add(3, at(2026, 11, 2, 0, 10), "tea", 1, null);
+
+        assertArrayEquals(new long[]{110, 1}, columns.sumKcalByBucket(starts));
+    }
+
+    @Test
+    void thePeriodStartsAtLocalMidnight() {
+        assertEquals(at(2026, 11, 1, 0, 0), AnalyticsServiceImpl.since(LocalDate.of(2026, 11, 2), 2, NEW_YORK));
+        assertEquals(at(2026, 3, 8, 0, 0), AnalyticsServiceImpl.since(LocalDate.of(2026, 3, 8), 1, NEW_YORK));
+
+        UserNutritionColumns columns = new UserNutritionColumns();
+        columns.add(1, at(2026, 10, 31, 23, 59), "rice", 100, null);
+        columns.add(2, at(2026, 11, 1, 0, 0), "egg", 10, null);
+        long from = AnalyticsServiceImpl.since(LocalDate.of(2026, 11, 2), 2, NEW_YORK);
+
+        assertEquals(1, columns.mealSums(from).meals());
+        assertEquals(10L, columns.mealSums(from).kcal());
+    }
+
+    private static long at(int year, int month, int day, int hour, int minute) {
+        return LocalDateTime.of(year, month, day, hour, minute).atZone(NEW_YORK).toEpochSecond();
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.foodlogapp.service.impl;
+
+import com.example.foodlogapp.config.AnalysisProperties;
+import com.example.foodlogapp.config.ModelRouter;
+import com.example.foodlogapp.config.ModelTier;
+import com.example.foodlogapp.dto.AnalysisMode;
+import com.example.foodlogapp.entity.FoodIngredient;
+import com.example.foodlogapp.entity.FoodLog;
+import com.example.foodlogapp.job.IngredientWriteBehind;
+import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.utils.AnalysisFence;
+import com.example.foodlogapp.utils.HedgedModelCaller;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.content.Media;
+import org.springframework.util.MimeTypeUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The tier loop of tools-mode analysis. Each tier's model "calls the tools" by writing ingredients and a
+ * confidence to the log, or fails; the mocked FoodLogService opens generation g1 and every reopen the next one.
+ * In structured mode each tier's model answers with a fixed text that is converted to FoodAnalysisResult.
+ * Tiers: fast (accepts 70), strong (accepts 80), best (last).
+ */
+class FoodAnalysisServiceImplTest {
+
+    private static final int LOG_ID = 7;
+    private static final Media IMAGE = Media.builder().mimeType(MimeTypeUtils.IMAGE_JPEG).data(new byte[]{1}).build();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final FoodLogService foodLogService = mock(FoodLogService.class);
+    private final IngredientWriteBehind ingredientWriteBehind = mock(IngredientWriteBehind.class);
+    private final AnalysisProperties properties = new AnalysisProperties();
+    private final HedgedModelCaller hedgedModelCaller = new HedgedModelCaller(properties, meterRegistry);
+
+    private final FoodLog log = new FoodLog();
+    private final List<String> generations = new ArrayList<>();
+    // fence token of every model call, in order
+    private final List<String> tokens = new ArrayList<>();
+    // per tier: the confidence its model sets, -1 for a failing call, null for a call that does not use the tools
+    private final Integer[] outcomes = new Integer[3];
+    // per tier: the text of its structured answer
+    private final String[] answers = new String[3];
+
+    FoodAnalysisServiceImplTest() {
+        log.setId(LOG_ID);
+        when(foodLogService.openAnalysis(LOG_ID)).thenAnswer(call -> nextGeneration());
+        when(foodLogService.reopenAnalysis(LOG_ID)).thenAnswer(call -> {
+            log.setIngredientCount(0);
+            log.setConfidence(null);
+            return nextGeneration();
+        });
+        when(foodLogService.findById(LOG_ID)).thenReturn(log);
+        when(foodLogService.claimAnalysis(eq(LOG_ID), anyString())).thenReturn(0);
+        when(ingredientWriteBehind.awaitFlushed(LOG_ID)).thenReturn(true);
+    }
+
+    @Test
+    void aConfidentFirstTierIsAccepted() {
+        outcomes[0] = 85;
+
+        analyze();
+
+        assertEquals(List.of("g1"), generations);
+        assertEquals(1, tokens.size());
+        verify(foodLogService, never()).reopenAnalysis(LOG_ID);
+        verify(foodLogService, atLeastOnce()).closeAnalysis(LOG_ID, "g1");
+        assertEquals(1.0, meterRegistry.counter("food.analysis.tier.finished", "tier", "fast").count());
+    }
+
+    @Test
+    void lowConfidenceEscalatesWithANewGeneration() {
+        outcomes[0] = 60;
+        outcomes[1] = 90;
+
+        analyze();
+
+        assertEquals(List.of("g1", "g2"), generations);
+        assertTrue(tokens.get(0).startsWith("g1:"));
+        assertTrue(tokens.get(1).startsWith("g2:"), "the next tier writes under its own generation");
+        assertEquals(Integer.valueOf(90), log.getConfidence());
+        assertEquals(1.0, meterRegistry.counter("food.analysis.escalations", "from", "fast").count());
+        assertEquals(1.0, meterRegistry.counter("food.analysis.tier.finished", "tier", "strong").count());
+    }
+
+    @Test
+    void aToolFailureEscalatesEvenWithAHighConfidence() {
+        // confidence set, but no ingredients logged
+        outcomes[0] = null;
+        log.setConfidence(95);
+        outcomes[1] = 85;
+
+        analyze();
+
+        assertEquals(List.of("g1", "g2"), generations);
+        assertEquals(1.0, meterRegistry.counter("food.analysis.tier.finished", "tier", "strong").count());
+    }
+
+    @Test
+    void aFailingModelCallEscalates() {
+        outcomes[0] = -1;
+        outcomes[1] = 85;
+
+        analyze();
+
+        assertEquals(List.of("g1", "g2"), generations);
+        assertEquals(2, tokens.size());
+    }
+
+    @Test
+    void theLastTierIsAcceptedAnyway() {
+        outcomes[0] = 60;
+        outcomes[1] = 60;
+        outcomes[2] = 10;
+
+        analyze();
+
+        assertEquals(List.of("g1", "g2", "g3"), generations, "one generation per tier");
+        assertEquals(3, tokens.stream().map(token -> token.substring(0, token.indexOf(':'))).distinct().count());
+        assertEquals(Integer.valueOf(10), log.getConfidence());
+        assertEquals(1.0, meterRegistry.counter("food.analysis.tier.finished", "tier", "best").count());
+        verify(foodLogService, atLeastOnce()).closeAnalysis(LOG_ID, "g3");
+    }
+
+    @Test
+    void aFailureOnTheLastTierIsThrownAndStillClosesThePass() {
+        outcomes[0] = 60;
+        outcomes[1] = 60;
+        outcomes[2] = -1;
+
+        assertThrows(IllegalStateException.class, this::analyze);
+
+        assertEquals(List.of("g1", "g2", "g3"), generations);
+        verify(foodLogService).closeAnalysis(LOG_ID, "g3");
+    }
+
+    @Test
+    void ingredientsThatAreNotFlushedInTimeFailTheAnalysis() {
+        outcomes[0] = 85;
+        when(ingredientWriteBehind.awaitFlushed(LOG_ID)).thenReturn(false);
+
+        assertThrows(IllegalStateException.class, this::analyze);
+
+        verify(foodLogService).closeAnalysis(LOG_ID, "g1");
+        verify(foodLogService, never()).reopenAnalysis(LOG_ID);
+    }
+
+    @Test
+    void aStructuredAnswerIsMappedToIngredientsAndConfidence() {
+        answers[0] = "{\"ingredients\": [{\"ingredient\": \"rice\", \"kcal\": 200, \"weight\": 150.5},"
+                + " {\"ingredient\": \"egg\", \"kcal\": 90, \"weight\": 50}], \"confidence\": 85}";
+
+        analyzeStructured();
+
+        ArgumentCaptor<List<FoodIngredient>> ingredients = ArgumentCaptor.forClass(List.class);
+        verify(foodLogService).recordAnalysis(eq(LOG_ID), ingredients.capture(), eq(85));
+        FoodIngredient rice = ingredients.getValue().get(0);
+        assertEquals(2, ingredients.getValue().size());
+        assertEquals(Integer.valueOf(LOG_ID), rice.getLogId());
+        assertEquals("rice", rice.getIngredientName());
+        assertEquals(Integer.valueOf(200), rice.getKcal());
+        assertEquals(new BigDecimal("150.5"), rice.getWeight());
+        assertEquals("egg", ingredients.getValue().get(1).getIngredientName());
+        assertEquals(1.0, meterRegistry.counter("food.analysis.tier.finished", "tier", "fast").count());
+    }
+
+    @Test
+    void anAnswerThatCannotBeParsedEscalates() {
+        answers[0] = "It looks like fried rice with an egg.";
+        answers[1] = "{\"ingredients\": [{\"ingredient\": \"fried rice\", \"kcal\": 450, \"weight\": 300}],"
+                + " \"confidence\": 90}";
+
+        analyzeStructured();
+
+        verify(foodLogService).recordAnalysis(eq(LOG_ID), any(), eq(90));
+        assertEquals(1.0, meterRegistry.counter("food.analysis.escalations", "from", "fast").count());
+    }
+
+    @Test
+    void anAnswerThatCannotBeParsedOnTheLastTierFailsTheAnalysis() {
+        answers[0] = "{\"ingredients\": [], \"confidence\": 90}";
+        answers[1] = "{\"confidence\": 90}";
+        answers[2] = "Sorry, I cannot see any food.";
+
+        assertThrows(RuntimeException.class, this::analyzeStructured);
+
+        assertEquals(1.0, meterRegistry.counter("food.analysis.escalations", "from", "strong").count());
+        verify(foodLogService, never()).recordAnalysis(any(), any(), any());
+    }
+
+    @Test
+    void anInvalidAnswerOnTheLastTierRecordsNothing() {
+        answers[0] = "{\"confidence\": 90}";
+        answers[1] = "{\"confidence\": 90}";
+        answers[2] = "{\"ingredients\": [{\"ingredient\": \"rice\", \"kcal\": 200, \"weight\": 150}],"
+                + " \"confidence\": 140}";
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, this::analyzeStructured);
+
+        assertTrue(e.getMessage().contains("no usable analysis"), e.getMessage());
+        verify(foodLogService, never()).recordAnalysis(any(), any(), any());
+    }
+
+    private void analyzeStructured() {
+        FoodAnalysisServiceImpl service = new FoodAnalysisServiceImpl(new ModelRouter(List.of(
+                structuredTier("fast", 0, 70), structuredTier("strong", 1, 80), structuredTier("best", 2, 0)),
+                meterRegistry), hedgedModelCaller, foodLogService, ingredientWriteBehind, properties, meterRegistry);
+        try {
+            service.analyze(LOG_ID, IMAGE, null, AnalysisMode.STRUCTURED);
+        } finally {
+            hedgedModelCaller.shutdown();
+        }
+    }
+
+    // A real ChatClient over a mocked model, so the answer text goes through the structured output conversion
+    private ModelTier structuredTier(String name, int index, int minConfidence) {
+        ChatModel model = mock(ChatModel.class);
+        when(model.call(any(Prompt.class))).thenAnswer(call ->
+                new ChatResponse(List.of(new Generation(new AssistantMessage(answers[index])))));
+        return new ModelTier(name, null, ChatClient.create(model), minConfidence);
+    }
+
+    private void analyze() {
+        FoodAnalysisServiceImpl service = new FoodAnalysisServiceImpl(new ModelRouter(List.of(
+                tier("fast", 0, 70), tier("strong", 1, 80), tier("best", 2, 0)), meterRegistry),
+                hedgedModelCaller, foodLogService, ingredientWriteBehind, properties, meterRegistry);
+        try {
+            service.analyze(LOG_ID, null, null, AnalysisMode.TOOLS);
+        } finally {
+            hedgedModelCaller.shutdown();
+        }
+    }
+
+    private String nextGeneration() {
+        String generation = "g" + (generations.size() + 1);
+        generations.add(generation);
+        return generation;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ModelTier tier(String name, int index, int minConfidence) {
+        ChatClient client = mock(ChatClient.class);
+        ChatClient.ChatClientRequestSpec request = mock(ChatClient.ChatClientRequestSpec.class);
+        ChatClient.CallResponseSpec response = mock(ChatClient.CallResponseSpec.class);
+        when(client.prompt()).thenReturn(request);
+        when(request.user(any(Consumer.class))).thenReturn(request);
+        when(request.toolContext(anyMap())).thenAnswer(call -> {
+            tokens.add((String) ((Map<String, Object>) call.getArgument(0)).get(AnalysisFence.TOOL_CONTEXT_KEY));
+            return request;
+        });
+        when(request.call()).thenReturn(response);
+        when(response.chatResponse()).thenAnswer(call -> {
+            Integer outcome = outcomes[index];
+            if (outcome != null && outcome < 0) throw new IllegalStateException("HTTP 500 from " + name);
+            if (outcome != null) {
+                log.setIngredientCount(3);
+                log.setConfidence(outcome);
+            }
+            return null;
+        });
+        return new ModelTier(name, client, null, minConfidence);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.foodlogapp.service.impl;
+
+import com.example.foodlogapp.config.InvalidParameterException;
+import com.example.foodlogapp.dto.ImportReport;
+import com.example.foodlogapp.dto.ImportedLog;
+import com.example.foodlogapp.entity.User;
+import com.example.foodlogapp.mapper.UserMapper;
+import com.example.foodlogapp.service.FoodLogService;
+import com.example.foodlogapp.utils.LogExportWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Chunking of imports and the one-by-one retry of a failed chunk, against a fake FoodLogService whose insert
+ * fails for any chunk containing a log with image path "bad.jpg".
+ */
+class LogImportServiceImplTest {
+
+    // source ids of every importLogs call, in order
+    private final List<List<String>> calls = new ArrayList<>();
+    private final LogImportServiceImpl service = new LogImportServiceImpl();
+
+    LogImportServiceImplTest() throws ReflectiveOperationException {
+        FoodLogService foodLogService = (FoodLogService) Proxy.newProxyInstance(FoodLogService.class.getClassLoader(),
+                new Class<?>[]{FoodLogService.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("importLogs")) throw new UnsupportedOperationException(method.getName());
+                    @SuppressWarnings("unchecked")
+                    List<ImportedLog> chunk = (List<ImportedLog>) args[1];
+                    calls.add(chunk.stream().map(ImportedLog::getSourceId).toList());
+                    if (chunk.stream().anyMatch(l -> l.getLog().getImagePath().equals("bad.jpg"))) {
+                        throw new IllegalStateException("insert failed", new RuntimeException("Data too long for column"));
+                    }
+                    return chunk.stream().mapToInt(l -> l.getIngredients().size()).sum();
+                });
+        UserMapper userMapper = (UserMapper) Proxy.newProxyInstance(UserMapper.class.getClassLoader(),
+                new Class<?>[]{UserMapper.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("findById")) throw new UnsupportedOperationException(method.getName());
+                    return Integer.valueOf(9).equals(args[0]) ? new User() : null;
+                });
+        set("foodLogService", foodLogService);
+        set("userMapper", userMapper);
+        set("chunkSize", 2);
+        set("maxReportedErrors", 100);
+    }
+
+    @Test
+    void logsAreWrittenInChunks() throws IOException {
+        ImportReport report = importCsv("1,a.jpg,Rice", "1,a.jpg,Egg", "2,b.jpg,Tea", "3,c.jpg,Tofu");
+
+        assertEquals(List.of(List.of("1", "2"), List.of("3")), calls);
+        assertEquals(3, report.getLogsImported());
+        assertEquals(4, report.getIngredientsImported());
+        assertEquals(0, report.getRowsFailed());
+    }
+
+    @Test
+    void aFailedChunkIsRetriedOneByOneAndOnlyTheBadLogIsReported() throws IOException {
+        ImportReport report = importCsv("1,a.jpg,Rice", "2,bad.jpg,Egg", "2,bad.jpg,Tea", "3,c.jpg,Tofu");
+
+        assertEquals(List.of(List.of("1", "2"), List.of("1"), List.of("2"), List.of("3")), calls);
+        assertEquals(2, report.getLogsImported());
+        assertEquals(2, report.getIngredientsImported());
+        assertEquals(2L, report.getRowsFailed(), "both rows of the failed log");
+        assertEquals(1, report.getErrors().size());
+        ImportReport.ImportError error = report.getErrors().get(0);
+        assertEquals("2", error.getLogId());
+        assertEquals(3, error.getLine());
+        assertTrue(error.getMessage().endsWith("Data too long for column"), error.getMessage());
+    }
+
+    @Test
+    void anUnknownUserIsAParameterError() {
+        assertThrows(InvalidParameterException.class, () -> service.importLogs(10,
+                new ByteArrayInputStream(new byte[0]), LogExportWriter.Format.CSV));
+        assertTrue(calls.isEmpty());
+    }
+
+    // rows of "logId,imagePath,ingredientName"
+    private ImportReport importCsv(String... rows) throws IOException {
+        StringBuilder csv = new StringBuilder("log_id,image_path,confidence,ingredient_name,kcal,weight\n");
+        for (String row : rows) {
+            String[] columns = row.split(",");
+            csv.append(columns[0]).append(',').append(columns[1]).append(",90,").append(columns[2]).append(",10,\n");
+        }
+        return service.importLogs(9, new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)),
+                LogExportWriter.Format.CSV);
+    }
+
+    private void set(String name, Object value) throws ReflectiveOperationException {
+        Field field = LogImportServiceImpl.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(service, value);
+    }
+}
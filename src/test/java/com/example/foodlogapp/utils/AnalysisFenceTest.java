@@ -0,0 +1,93 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.entity.FoodLog;
+import com.example.foodlogapp.mapper.FoodLogMapper;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tool-write fencing of hedged, cancelled and escalated analysis attempts against one food_log row.
+ */
+class AnalysisFenceTest {
+
+    private final FoodLog row = new FoodLog();
+    // the subset of FoodLogMapper the fence uses, on the single row above
+    private final FoodLogMapper mapper = (FoodLogMapper) Proxy.newProxyInstance(FoodLogMapper.class.getClassLoader(),
+            new Class<?>[]{FoodLogMapper.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "updateAnalysisFence" -> {
+                    row.setAnalysisFence((String) args[1]);
+                    yield 1;
+                }
+                case "closeAnalysisFence" -> {
+                    String generation = (String) args[1];
+                    String fence = row.getAnalysisFence();
+                    boolean match = fence != null && (fence.equals(generation) || fence.startsWith(generation + ":"));
+                    if (match) row.setAnalysisFence(null);
+                    yield match ? 1 : 0;
+                }
+                default -> throw new UnsupportedOperationException(method.getName());
+            });
+
+    AnalysisFenceTest() {
+        row.setId(7);
+    }
+
+    @Test
+    void firstAttemptToWriteHoldsTheLog() {
+        String generation = open();
+        String primary = AnalysisFence.attemptToken(generation);
+        String hedge = AnalysisFence.attemptToken(generation);
+
+        assertTrue(write(hedge), "the first writer claims the log");
+        assertEquals(hedge, row.getAnalysisFence());
+        assertFalse(write(primary), "the other attempt's ingredients and confidence are rejected");
+        assertTrue(write(hedge), "the holder keeps writing (confidence after ingredients)");
+    }
+
+    @Test
+    void closingOrReopeningRejectsLateWrites() {
+        String generation = open();
+        String cancelled = AnalysisFence.attemptToken(generation);
+        mapper.closeAnalysisFence(7, generation);
+        assertNull(row.getAnalysisFence());
+        assertFalse(write(cancelled), "a cancelled attempt whose HTTP call returned after the pass ended");
+
+        String first = open();
+        String tierOne = AnalysisFence.attemptToken(first);
+        assertTrue(write(tierOne));
+        // escalation opens the next generation before the old ingredients are deleted
+        String second = open();
+        assertFalse(write(tierOne), "a late tier-one write must not land after the delete");
+        assertTrue(write(AnalysisFence.attemptToken(second)));
+
+        assertEquals(0, mapper.closeAnalysisFence(7, first), "closing an old generation leaves the new one open");
+    }
+
+    @Test
+    void writesWithoutATokenOnlyWhileNoAnalysisRuns() {
+        assertTrue(write(null));
+        open();
+        assertFalse(write(null));
+        assertFalse(AnalysisFence.admits(null, AnalysisFence.attemptToken(AnalysisFence.newGeneration())));
+    }
+
+    private String open() {
+        String generation = AnalysisFence.newGeneration();
+        mapper.updateAnalysisFence(7, generation);
+        return generation;
+    }
+
+    // what a fenced write does after FoodLogMapper#lockForAnalysis
+    private boolean write(String token) {
+        FoodLog locked = new FoodLog();
+        locked.setId(row.getId());
+        locked.setAnalysisFence(row.getAnalysisFence());
+        return AnalysisFence.claim(mapper, locked, token);
+    }
+}
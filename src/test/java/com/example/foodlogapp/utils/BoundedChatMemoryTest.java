@@ -0,0 +1,137 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.config.ChatProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Trimming of a conversation to its token window, the LRU byte budget across chatIds, idle expiry and the byte
+ * count behind chat.memory.bytes. Sizes follow the memory's accounting: 96 bytes per conversation plus two per
+ * chatId character, and per message 24 bytes plus a type byte and the UTF-8 text.
+ */
+class BoundedChatMemoryTest {
+
+    private final ChatProperties chatProperties = new ChatProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void theOldestMessagesAreTrimmedToTheTokenWindow() {
+        chatProperties.getMemory().setMaxTokensPerConversation(10);
+        BoundedChatMemory memory = memory();
+
+        // 16 characters: 4 tokens each
+        memory.add("a", List.of(new UserMessage("first question..")));
+        memory.add("a", List.of(new AssistantMessage("first answer....")));
+        memory.add("a", List.of(new UserMessage("second question.")));
+
+        assertEquals(List.of("first answer....", "second question."), texts(memory.get("a")));
+        assertEquals(conversation("a") + 2 * message(16), memory.usedBytes());
+    }
+
+    @Test
+    void theNewestMessageIsKeptEvenAboveTheWindow() {
+        chatProperties.getMemory().setMaxTokensPerConversation(10);
+        BoundedChatMemory memory = memory();
+
+        memory.add("a", List.of(new UserMessage("short"), new UserMessage("x".repeat(100))));
+
+        assertEquals(List.of("x".repeat(100)), texts(memory.get("a")));
+        assertEquals(conversation("a") + message(100), memory.usedBytes());
+    }
+
+    @Test
+    void theBudgetEvictsTheLeastRecentlyUsedConversation() {
+        // room for exactly two conversations of one 10-character message
+        chatProperties.getMemory().setMaxTotalBytes(2 * (conversation("a") + message(10)));
+        BoundedChatMemory memory = memory();
+
+        memory.add("a", List.of(new UserMessage("0123456789")));
+        memory.add("b", List.of(new UserMessage("0123456789")));
+        memory.get("a");
+        memory.add("c", List.of(new UserMessage("0123456789")));
+
+        assertEquals(2, memory.conversationCount());
+        assertTrue(memory.get("b").isEmpty(), "b was used least recently");
+        assertEquals(1, memory.get("a").size());
+        assertEquals(1, memory.get("c").size());
+        assertEquals(2 * (conversation("a") + message(10)), memory.usedBytes());
+        assertEquals(1.0, meterRegistry.counter("chat.memory.evictions", "reason", "budget").count());
+    }
+
+    @Test
+    void theConversationBeingWrittenIsNeverEvictedForTheBudget() {
+        chatProperties.getMemory().setMaxTotalBytes(conversation("a") + message(10));
+        BoundedChatMemory memory = memory();
+
+        memory.add("a", List.of(new UserMessage("0123456789")));
+        memory.add("b", List.of(new UserMessage("x".repeat(50))));
+
+        assertEquals(1, memory.conversationCount());
+        assertEquals(1, memory.get("b").size());
+        assertEquals(conversation("b") + message(50), memory.usedBytes());
+    }
+
+    @Test
+    void idleConversationsExpire() throws InterruptedException {
+        chatProperties.getMemory().setIdleTtl(Duration.ofMillis(50));
+        BoundedChatMemory memory = memory();
+        memory.add("read", List.of(new UserMessage("hello")));
+        memory.add("swept", List.of(new UserMessage("hello")));
+
+        TimeUnit.MILLISECONDS.sleep(80);
+        assertTrue(memory.get("read").isEmpty(), "expired on read");
+        memory.evictIdle();
+
+        assertEquals(0, memory.conversationCount());
+        assertEquals(0L, memory.usedBytes());
+        assertEquals(2.0, meterRegistry.counter("chat.memory.evictions", "reason", "idle").count());
+    }
+
+    @Test
+    void bytesAreReleasedByEveryKindOfRemoval() {
+        // 8 characters: 2 tokens each, two messages fit
+        chatProperties.getMemory().setMaxTokensPerConversation(4);
+        chatProperties.getMemory().setMaxTotalBytes(conversation("ab") + 2 * message(8) + conversation("c") + message(8));
+        BoundedChatMemory memory = memory();
+
+        memory.add("ab", List.of(new UserMessage("12345678"), new AssistantMessage("12345678")));
+        memory.add("ab", List.of(new UserMessage("12345678")));
+        assertEquals(conversation("ab") + 2 * message(8), memory.usedBytes(), "trimmed");
+        memory.add("c", List.of(new UserMessage("12345678")));
+        memory.add("d", List.of(new UserMessage("12345678")));
+        memory.add("ef", List.of(new UserMessage("12345678")));
+        assertEquals(memory.conversationCount() * message(8) + conversation("d") + conversation("ef"),
+                memory.usedBytes(), "after evictions");
+
+        memory.clear("d");
+        memory.clear("ef");
+        assertEquals(0L, memory.usedBytes());
+        assertEquals(0.0, meterRegistry.get("chat.memory.bytes").gauge().value());
+    }
+
+    private BoundedChatMemory memory() {
+        return new BoundedChatMemory(chatProperties, meterRegistry);
+    }
+
+    private static long conversation(String chatId) {
+        return 96 + 2L * chatId.length();
+    }
+
+    private static long message(int asciiChars) {
+        return 24 + 1 + asciiChars;
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.config.ChatProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.openai.OpenAiChatModel;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Key normalisation, replay, TTL and the entry and byte bounds of the chat answer cache. The model behind it is
+ * a stream supplier that counts how often it is called. An entry of one chunk of n ASCII characters takes
+ * 128 + 2n + 4 bytes.
+ */
+class ChatResponseCacheTest {
+
+    private final ChatProperties chatProperties = new ChatProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger modelCalls = new AtomicInteger();
+
+    ChatResponseCacheTest() {
+        chatProperties.getCache().setEnabled(true);
+    }
+
+    @Test
+    void theSameQuestionGivesTheSameKey() {
+        ChatResponseCache cache = cache("gpt-4o-mini");
+
+        assertEquals(cache.key("Who are you?"), cache.key("  who   ARE you "));
+        assertEquals(cache.key("你是谁"), cache.key("你是谁？"));
+        assertNotEquals(cache.key("Who are you?"), cache.key("Who were you?"));
+    }
+
+    @Test
+    void aDifferentSystemPromptOrModelGivesADifferentKey() {
+        assertNotEquals(ChatResponseCache.key("hi", "You are a nutrition assistant.", "gpt-4o-mini|0.7"),
+                ChatResponseCache.key("hi", "You are a chef.", "gpt-4o-mini|0.7"));
+        assertNotEquals(ChatResponseCache.key("hi", "You are a chef.", "gpt-4o-mini|0.7"),
+                ChatResponseCache.key("hi", "You are a chef.", "gpt-4o-mini|0.2"));
+        assertNotEquals(cache("gpt-4o-mini").key("hi"), cache("gpt-4o").key("hi"));
+    }
+
+    @Test
+    void aCompletedAnswerIsReplayedChunkByChunk() {
+        ChatResponseCache cache = cache("gpt-4o-mini");
+
+        assertEquals(List.of("Hel", "lo"), ask(cache, "hi", "Hel", "lo"));
+        assertEquals(List.of("Hel", "lo"), ask(cache, "Hi!", "other"));
+
+        assertEquals(1, modelCalls.get());
+        assertEquals(1.0, meterRegistry.counter("chat.cache.requests", "result", "hit").count());
+        assertEquals(1.0, meterRegistry.counter("chat.cache.requests", "result", "miss").count());
+        assertEquals(128 + 2 * 5 + 2 * 4, cache.usedBytes());
+    }
+
+    @Test
+    void aFailedStreamIsNotCached() {
+        ChatResponseCache cache = cache("gpt-4o-mini");
+
+        assertThrows(IllegalStateException.class, () -> cache.getOrStream("hi", () -> {
+            modelCalls.incrementAndGet();
+            return Flux.<String>just("partial").concatWith(Flux.error(new IllegalStateException("HTTP 500")));
+        }).collectList().block());
+        ask(cache, "hi", "answer");
+
+        assertEquals(2, modelCalls.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void expiredAnswersAreAskedAgain() throws InterruptedException {
+        chatProperties.getCache().setTtl(Duration.ofMillis(50));
+        ChatResponseCache cache = cache("gpt-4o-mini");
+        ask(cache, "hi", "old");
+
+        TimeUnit.MILLISECONDS.sleep(80);
+        assertEquals(List.of("new"), ask(cache, "hi", "new"));
+
+        assertEquals(2, modelCalls.get());
+        assertEquals(1, cache.size());
+        assertEquals(128 + 2 * 3 + 4, cache.usedBytes());
+    }
+
+    @Test
+    void theEntryBoundEvictsTheLeastRecentlyUsedAnswer() {
+        chatProperties.getCache().setMaxEntries(2);
+        ChatResponseCache cache = cache("gpt-4o-mini");
+        ask(cache, "a", "1");
+        ask(cache, "b", "2");
+        ask(cache, "a", "1");
+        ask(cache, "c", "3");
+
+        assertEquals(2, cache.size());
+        assertEquals(3, modelCalls.get());
+        ask(cache, "a", "1");
+        assertEquals(3, modelCalls.get(), "a was used more recently than b");
+        ask(cache, "b", "2");
+        assertEquals(4, modelCalls.get());
+    }
+
+    @Test
+    void theByteBoundEvictsOldAnswersAndSkipsOversizedOnes() {
+        // two answers of 100 characters fit (332 bytes each)
+        chatProperties.getCache().setMaxBytes(700);
+        ChatResponseCache cache = cache("gpt-4o-mini");
+        ask(cache, "a", "x".repeat(100));
+        ask(cache, "b", "x".repeat(100));
+        ask(cache, "c", "x".repeat(100));
+
+        assertEquals(2, cache.size());
+        assertEquals(2 * 332, cache.usedBytes());
+
+        ask(cache, "d", "x".repeat(300));
+        assertEquals(2, cache.size(), "larger than the whole budget: not stored");
+        assertEquals(2 * 332, cache.usedBytes());
+    }
+
+    private List<String> ask(ChatResponseCache cache, String prompt, String... answer) {
+        return cache.getOrStream(prompt, () -> {
+            modelCalls.incrementAndGet();
+            return Flux.just(answer);
+        }).collectList().block();
+    }
+
+    private ChatResponseCache cache(String model) {
+        OpenAiChatModel chatModel = mock(OpenAiChatModel.class);
+        when(chatModel.getDefaultOptions()).thenReturn(ChatOptions.builder().model(model).temperature(0.7).build());
+        return new ChatResponseCache(chatProperties, chatModel, meterRegistry);
+    }
+}
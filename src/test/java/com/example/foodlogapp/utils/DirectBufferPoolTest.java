@@ -0,0 +1,74 @@
+package com.example.foodlogapp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Allocation, reuse and the all-or-nothing wait of the upload block pool.
+ */
+class DirectBufferPoolTest {
+
+    private final DirectBufferPool pool = new DirectBufferPool(1024, 4);
+
+    @Test
+    void blocksAreAllocatedOnceAndRecycled() throws InterruptedException {
+        List<ByteBuffer> first = pool.acquire(3, 0);
+        assertEquals(3, first.size());
+        assertTrue(first.get(0).isDirect());
+        first.get(0).put((byte) 1);
+        pool.release(first);
+
+        List<ByteBuffer> second = pool.acquire(3, 0);
+        assertTrue(second.containsAll(first), "the released blocks are handed out again");
+        assertEquals(3 * 1024, pool.allocatedBytes());
+        for (ByteBuffer block : second) {
+            assertEquals(0, block.position());
+            assertEquals(1024, block.limit());
+        }
+    }
+
+    @Test
+    void aRequestThatDoesNotFitTimesOutWithoutTakingAnything() throws InterruptedException {
+        List<ByteBuffer> held = pool.acquire(3, 0);
+        assertNull(pool.acquire(2, 20));
+        assertEquals(1, pool.acquire(1, 0).size(), "the failed request left the free block in place");
+        assertNull(pool.acquire(5, 0), "more than the whole pool");
+        pool.release(held);
+    }
+
+    @Test
+    void aWaitingRequestIsServedWhenBlocksComeBack() throws Exception {
+        List<ByteBuffer> held = pool.acquire(4, 0);
+        CompletableFuture<List<ByteBuffer>> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.acquire(2, 5_000);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+        pool.release(held);
+        List<ByteBuffer> served = waiting.get(5, TimeUnit.SECONDS);
+        assertEquals(2, served.size());
+        assertSame(held.get(3), served.get(0), "the most recently returned block comes first");
+        assertEquals(4 * 1024, pool.allocatedBytes());
+    }
+
+    @Test
+    void blocksForRoundsUp() {
+        assertEquals(1, pool.blocksFor(0));
+        assertEquals(1, pool.blocksFor(1024));
+        assertEquals(2, pool.blocksFor(1025));
+    }
+}
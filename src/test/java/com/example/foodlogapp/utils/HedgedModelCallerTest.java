@@ -0,0 +1,196 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.config.AnalysisProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hedging, deadlines and retries of the model caller against suppliers that block, fail or answer on cue. The
+ * supplier numbers its own attempts; a blocked attempt waits on a latch so cancelling it shows as an interrupt.
+ */
+class HedgedModelCallerTest {
+
+    private final AnalysisProperties properties = new AnalysisProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger attempts = new AtomicInteger();
+    // counted down when a blocked attempt is interrupted
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+
+    HedgedModelCallerTest() {
+        properties.setAttemptTimeout(Duration.ofSeconds(5));
+        properties.getHedge().setInitialDelay(Duration.ofMillis(50));
+        properties.getHedge().setMinDelay(Duration.ZERO);
+    }
+
+    @Test
+    void aSlowPrimaryIsHedgedAndTheFirstSuccessWins() throws InterruptedException {
+        properties.getHedge().setEnabled(true);
+        HedgedModelCaller caller = new HedgedModelCaller(properties, meterRegistry);
+        try {
+            String result = caller.call(() -> attempts.incrementAndGet() == 1 ? block() : "hedge");
+
+            assertEquals("hedge", result);
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS), "the losing primary is cancelled");
+            assertEquals(1.0, meterRegistry.counter("food.analysis.hedges").count());
+            assertEquals(1.0, meterRegistry.counter("food.analysis.wins", "attempt", "hedge").count());
+            assertEquals(0.0, meterRegistry.counter("food.analysis.wins", "attempt", "primary").count());
+        } finally {
+            caller.shutdown();
+        }
+    }
+
+    @Test
+    void aFastPrimaryIsNotHedged() throws InterruptedException {
+        properties.getHedge().setEnabled(true);
+        HedgedModelCaller caller = new HedgedModelCaller(properties, meterRegistry);
+        try {
+            assertEquals("primary", caller.call(() -> attempts.incrementAndGet() == 1 ? "primary" : "hedge"));
+            TimeUnit.MILLISECONDS.sleep(150);
+
+            assertEquals(1, attempts.get(), "the hedge delay passed after the primary won");
+            assertEquals(0.0, meterRegistry.counter("food.analysis.hedges").count());
+            assertEquals(1.0, meterRegistry.counter("food.analysis.wins", "attempt", "primary").count());
+        } finally {
+            caller.shutdown();
+        }
+    }
+
+    @Test
+    void anAttemptPastItsDeadlineIsAbandoned() throws InterruptedException {
+        properties.setAttemptTimeout(Duration.ofMillis(100));
+        HedgedModelCaller caller = new HedgedModelCaller(properties, meterRegistry);
+        try {
+            RuntimeException e = assertThrows(RuntimeException.class, () -> caller.call(() -> {
+                attempts.incrementAndGet();
+                return block();
+            }));
+
+            assertTrue(e.getMessage().contains("timed out"), e.getMessage());
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS), "the blocked worker is freed");
+            assertEquals(1, attempts.get(), "no hedge, no retry");
+            assertEquals(1.0, meterRegistry.counter("food.analysis.timeouts").count());
+        } finally {
+            caller.shutdown();
+        }
+    }
+
+    @Test
+    void aFailedPrimaryIsRetriedWithoutWaitingForTheHedgeDelay() {
+        properties.getHedge().setEnabled(true);
+        properties.getHedge().setInitialDelay(Duration.ofSeconds(30));
+        HedgedModelCaller caller = new HedgedModelCaller(properties, meterRegistry);
+        try {
+            long start = System.nanoTime();
+            String result = caller.call(() -> {
+                if (attempts.incrementAndGet() == 1) throw new IllegalStateException("HTTP 503");
+                return "retry";
+            });
+
+            assertEquals("retry", result);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertEquals(1.0, meterRegistry.counter("food.analysis.retries").count());
+            assertEquals(0.0, meterRegistry.counter("food.analysis.hedges").count());
+        } finally {
+            caller.shutdown();
+        }
+    }
+
+    @Test
+    void theLastFailureIsThrownWhenEveryAttemptFails() {
+        properties.getHedge().setEnabled(true);
+        HedgedModelCaller caller = new HedgedModelCaller(properties, meterRegistry);
+        try {
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> caller.call(() -> {
+                throw new IllegalStateException("HTTP 503 on attempt " + attempts.incrementAndGet());
+            }));
+
+            assertEquals("HTTP 503 on attempt 2", e.getMessage());
+            assertEquals(2, attempts.get());
+        } finally {
+            caller.shutdown();
+        }
+    }
+
+    @Test
+    void aSupersededHedgeWaitsForTheAttemptHoldingTheResult() {
+        properties.getHedge().setEnabled(true);
+        HedgedModelCaller caller = new HedgedModelCaller(properties, meterRegistry);
+        // the fence: the first attempt to write (or to finish) holds the result
+        AtomicReference<String> holder = new AtomicReference<>();
+        CountDownLatch hedgeRejected = new CountDownLatch(1);
+        try {
+            String result = caller.call(() -> {
+                if (attempts.incrementAndGet() == 1) {
+                    holder.set("primary");
+                    await(hedgeRejected);
+                    return "primary";
+                }
+                return "hedge";
+            }, done -> {
+                boolean holds = holder.compareAndSet(null, done) || done.equals(holder.get());
+                if (!holds) hedgeRejected.countDown();
+                return holds;
+            });
+
+            assertEquals("primary", result, "the hedge finished first but had lost the log");
+            assertEquals(1.0, meterRegistry.counter("food.analysis.superseded").count());
+            assertEquals(1.0, meterRegistry.counter("food.analysis.wins", "attempt", "primary").count());
+            assertEquals(0.0, meterRegistry.counter("food.analysis.wins", "attempt", "hedge").count());
+        } finally {
+            caller.shutdown();
+        }
+    }
+
+    @Test
+    void aSupersededAttemptNeverWinsEvenIfTheHolderFailed() throws InterruptedException {
+        properties.getHedge().setEnabled(true);
+        properties.getHedge().setInitialDelay(Duration.ofSeconds(30));
+        HedgedModelCaller caller = new HedgedModelCaller(properties, meterRegistry);
+        AtomicReference<String> holder = new AtomicReference<>();
+        try {
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> caller.call(() -> {
+                if (attempts.incrementAndGet() == 1) {
+                    // wrote part of the result, then the call failed
+                    holder.set("primary");
+                    throw new IllegalStateException("HTTP 503");
+                }
+                return "retry";
+            }, done -> holder.compareAndSet(null, done) || done.equals(holder.get())));
+
+            assertTrue(e.getMessage().contains("superseded"), e.getMessage());
+            TimeUnit.MILLISECONDS.sleep(100);
+            assertEquals(2, attempts.get());
+            assertEquals(0.0, meterRegistry.counter("food.analysis.wins", "attempt", "hedge").count());
+        } finally {
+            caller.shutdown();
+        }
+    }
+
+    private String block() {
+        try {
+            TimeUnit.SECONDS.sleep(30);
+            return "too late";
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+            throw new IllegalStateException("cancelled", e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
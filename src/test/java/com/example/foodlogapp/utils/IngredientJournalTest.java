@@ -0,0 +1,201 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.entity.FoodIngredient;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Group commit of the write-behind journal (concurrent appenders share fsyncs; tagged benchmark and only runs
+ * with -Pbenchmark) and crash recovery: torn tail, replay, checkpoint and segment release.
+ */
+class IngredientJournalTest {
+
+    private static final int THREADS = 32;
+    private static final int APPENDS_PER_THREAD = 200;
+
+    @Test
+    @Tag("benchmark")
+    void concurrentAppendsShareFsyncs() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        List<IngredientJournal.Entry> delivered = new CopyOnWriteArrayList<>();
+        try (IngredientJournal journal = IngredientJournal.open(dir, 64 << 20, e -> { }, delivered::add)) {
+            // baseline: one appender, so every append pays its own fsync
+            for (int i = 0; i < APPENDS_PER_THREAD; i++) {
+                journal.append(-1, ingredients(i), null);
+            }
+            assertEquals(APPENDS_PER_THREAD, journal.getFsyncs());
+
+            ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < APPENDS_PER_THREAD; i++) {
+                        journal.append(thread * APPENDS_PER_THREAD + i, ingredients(i), null);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            pool.shutdown();
+
+            int appends = THREADS * APPENDS_PER_THREAD;
+            long fsyncs = journal.getFsyncs() - APPENDS_PER_THREAD;
+            assertTrue(fsyncs < appends / 2, "appenders should share fsyncs, got " + fsyncs);
+            assertEquals(APPENDS_PER_THREAD + appends, delivered.size());
+            for (int i = 0; i < delivered.size(); i++) {
+                assertEquals(i, delivered.get(i).seq());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void replaysDurableEntriesAndCutsTornTail() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        try {
+            try (IngredientJournal journal = IngredientJournal.open(dir, 64 << 20, e -> { }, e -> { })) {
+                for (int i = 0; i < 100; i++) {
+                    journal.append(i, ingredients(i), i % 2 == 0 ? "generation:" + i : null);
+                }
+            }
+            // a crash in the middle of the next record
+            Path segment = segments(dir).get(segments(dir).size() - 1);
+            Files.write(segment, new byte[]{0, 0, 0, 90, 1, 2, 3}, StandardOpenOption.APPEND);
+
+            List<IngredientJournal.Entry> replayed = new ArrayList<>();
+            try (IngredientJournal journal = IngredientJournal.open(dir, 64 << 20, replayed::add, e -> { })) {
+                assertEquals(100, replayed.size());
+                IngredientJournal.Entry entry = replayed.get(42);
+                assertEquals(42, entry.seq());
+                assertEquals(42, entry.logId());
+                assertEquals(3, entry.ingredients().size());
+                assertEquals("rice 42", entry.ingredients().get(0).getIngredientName());
+                assertEquals(new BigDecimal("142.50"), entry.ingredients().get(0).getWeight());
+                assertNull(entry.ingredients().get(2).getKcal());
+                assertNull(entry.ingredients().get(2).getIngredientName());
+                assertEquals(Integer.valueOf(42), entry.ingredients().get(0).getLogId());
+                assertEquals("generation:42", entry.attemptToken());
+                assertNull(replayed.get(43).attemptToken());
+
+                assertEquals(100, journal.append(100, ingredients(100), null).seq());
+                journal.release(59);
+            }
+
+            replayed.clear();
+            try (IngredientJournal journal = IngredientJournal.open(dir, 64 << 20, replayed::add, e -> { })) {
+                assertEquals(41, replayed.size());
+                assertEquals(60, replayed.get(0).seq());
+                assertEquals(100, replayed.get(40).seq());
+                assertEquals(101, journal.append(101, ingredients(101), null).seq());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void anEntryThatCannotBeEncodedFailsOnlyItsOwnAppend() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        List<IngredientJournal.Entry> delivered = new ArrayList<>();
+        try {
+            try (IngredientJournal journal = IngredientJournal.open(dir, 64 << 20, e -> { }, delivered::add)) {
+                journal.append(1, ingredients(1), null);
+                // writeUTF holds at most 64 KB
+                List<FoodIngredient> tooLong = List.of(ingredient("x".repeat(70_000), 1, null));
+                assertThrows(IOException.class, () -> journal.append(2, tooLong, null));
+
+                assertEquals(1, journal.append(3, ingredients(3), null).seq(), "the failed entry took no seq");
+                assertEquals(List.of(1, 3), delivered.stream().map(IngredientJournal.Entry::logId).toList());
+            }
+            List<IngredientJournal.Entry> replayed = new ArrayList<>();
+            try (IngredientJournal journal = IngredientJournal.open(dir, 64 << 20, replayed::add, e -> { })) {
+                assertEquals(2, replayed.size());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void releaseDeletesFlushedSegments() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        try {
+            long lastSeq;
+            try (IngredientJournal journal = IngredientJournal.open(dir, 4096, e -> { }, e -> { })) {
+                IngredientJournal.Entry last = null;
+                for (int i = 0; i < 500; i++) {
+                    last = journal.append(i, ingredients(i), null);
+                }
+                lastSeq = last.seq();
+                assertTrue(journal.getSegmentCount() > 5, "segments: " + journal.getSegmentCount());
+                journal.release(lastSeq);
+                assertEquals(1, journal.getSegmentCount());
+                assertEquals(1, segments(dir).size());
+            }
+            List<IngredientJournal.Entry> replayed = new ArrayList<>();
+            try (IngredientJournal journal = IngredientJournal.open(dir, 4096, replayed::add, e -> { })) {
+                assertEquals(0, replayed.size());
+                assertEquals(lastSeq + 1, journal.append(1, ingredients(1), null).seq());
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static List<FoodIngredient> ingredients(int i) {
+        List<FoodIngredient> list = new ArrayList<>();
+        list.add(ingredient("rice " + i, 200 + i, new BigDecimal(100 + i + ".50")));
+        list.add(ingredient("chicken breast", 165, new BigDecimal("120")));
+        list.add(ingredient(null, null, null));
+        return list;
+    }
+
+    private static FoodIngredient ingredient(String name, Integer kcal, BigDecimal weight) {
+        FoodIngredient ingredient = new FoodIngredient();
+        ingredient.setIngredientName(name);
+        ingredient.setKcal(kcal);
+        ingredient.setWeight(weight);
+        return ingredient;
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.journal")) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.foodlogapp.utils;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Query latency of the ingredient index on a synthetic history of 1M ingredients (100k logs x 10), checked
+ * against a brute-force scan, plus the incremental maintenance the store relies on. The latency test is tagged
+ * "benchmark" and only runs with -Pbenchmark.
+ */
+class IngredientSearchIndexLatencyTest {
+
+    private static final int LOGS = 100_000;
+    private static final int INGREDIENTS_PER_LOG = 10;
+    private static final String[] WORDS = {
+            "chicken", "breast", "thigh", "rice", "brown", "white", "egg", "fried", "boiled", "salad", "tomato",
+            "potato", "sweet", "beef", "pork", "salmon", "tuna", "avocado", "bread", "whole", "wheat", "milk",
+            "cheese", "yogurt", "greek", "apple", "banana", "orange", "juice", "noodle", "soup", "tofu", "broccoli",
+            "carrot", "spinach", "oat", "almond", "peanut", "butter", "olive", "oil", "sauce", "soy", "garlic",
+            "onion", "pepper", "mushroom", "corn", "bean", "lentil", "crème", "brûlée", "jalapeño", "café"};
+
+    @Test
+    @Tag("benchmark")
+    void queryLatencyOnOneMillionIngredients() {
+        Random random = new Random(7);
+        List<List<String>> history = new ArrayList<>(LOGS);
+        IngredientSearchIndex index = new IngredientSearchIndex();
+        for (int logId = 1; logId <= LOGS; logId++) {
+            List<String> names = new ArrayList<>(INGREDIENTS_PER_LOG);
+            for (int i = 0; i < INGREDIENTS_PER_LOG; i++) {
+                names.add(WORDS[skewed(random)] + " " + WORDS[skewed(random)] + (random.nextInt(20) == 0 ? " " + i : ""));
+            }
+            history.add(names);
+            index.putLog(logId, names);
+        }
+
+        String[] queries = {"salmon", "chick", "Chicken Breast", "b", "creme", "jalap sauce", "greek yog", "zzz"};
+        for (String query : queries) {
+            assertArrayEquals(bruteForce(history, query, 20), index.search(query, 20), query);
+        }
+
+        assertEquals(LOGS, index.logCount());
+        for (String query : queries) {
+            long[] nanos = new long[200];
+            for (int i = 0; i < nanos.length; i++) {
+                long start = System.nanoTime();
+                index.search(query, 20);
+                nanos[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(nanos);
+            long p50 = nanos[nanos.length / 2];
+            // generous bound: a table scan of the same data takes seconds
+            assertTrue(p50 < 100_000_000L, query + " took " + p50 / 1e6 + " ms");
+        }
+    }
+
+    @Test
+    void incrementalMaintenance() {
+        IngredientSearchIndex index = new IngredientSearchIndex();
+        index.putLog(5, List.of("Chicken breast", "Rice"));
+        index.putLog(3, List.of("chicken thigh"));
+        index.putLog(9, List.of("Salmon"));
+        assertArrayEquals(new int[]{5, 3}, index.search("chick", 10));
+        assertArrayEquals(new int[]{5}, index.search("chicken BRE", 10));
+
+        // re-analysis replaces the ingredients of a log
+        index.putLog(5, List.of("Tofu"));
+        assertArrayEquals(new int[]{3}, index.search("chick", 10));
+        assertArrayEquals(new int[]{5}, index.search("tofu", 10));
+
+        index.removeLog(3);
+        index.removeLog(42);
+        assertArrayEquals(new int[0], index.search("chick", 10));
+        assertEquals(2, index.logCount());
+        assertEquals(List.of("creme", "brulee", "2"), IngredientSearchIndex.tokenize("Crème-Brûlée (2)"));
+    }
+
+    private static int skewed(Random random) {
+        // a few ingredients are very common, most are rare
+        double x = random.nextDouble();
+        return (int) (x * x * WORDS.length);
+    }
+
+    private static int[] bruteForce(List<List<String>> history, String query, int limit) {
+        List<String> terms = IngredientSearchIndex.tokenize(query);
+        List<Integer> hits = new ArrayList<>();
+        for (int logId = history.size(); logId >= 1 && hits.size() < limit; logId--) {
+            List<String> tokens = new ArrayList<>();
+            for (String name : history.get(logId - 1)) {
+                tokens.addAll(IngredientSearchIndex.tokenize(name));
+            }
+            boolean all = !terms.isEmpty();
+            for (String term : terms) {
+                all &= tokens.stream().anyMatch(t -> t.startsWith(term));
+            }
+            if (all) hits.add(logId);
+        }
+        return hits.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
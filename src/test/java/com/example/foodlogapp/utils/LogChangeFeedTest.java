@@ -0,0 +1,213 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.dto.UserLogVersion;
+import com.example.foodlogapp.event.LogChangeEvent;
+import com.example.foodlogapp.mapper.LogVersionMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Queueing, backlog drop + resync, eviction of stalled writers and the cross-node poll of the event feed, with
+ * emitters that record (and optionally block) their writes instead of a servlet response.
+ */
+class LogChangeFeedTest {
+
+    private final Map<Integer, Long> versions = new ConcurrentHashMap<>();
+    private final List<RecordingEmitter> emitters = new CopyOnWriteArrayList<>();
+    // the next subscription's writes wait for this latch
+    private CountDownLatch nextGate;
+
+    private final LogVersionMapper logVersionMapper = mock(LogVersionMapper.class);
+    private final LogVersionTracker logVersionTracker = new LogVersionTracker(logVersionMapper);
+
+    LogChangeFeedTest() {
+        when(logVersionMapper.findVersion(anyInt())).thenAnswer(call -> versions.getOrDefault(call.<Integer>getArgument(0), 0L));
+        when(logVersionMapper.findVersions(anyCollection())).thenAnswer(call -> {
+            List<UserLogVersion> rows = new ArrayList<>();
+            for (Integer id : call.<Collection<Integer>>getArgument(0)) {
+                if (versions.containsKey(id)) {
+                    UserLogVersion row = new UserLogVersion();
+                    row.setUserId(id);
+                    row.setVersion(versions.get(id));
+                    rows.add(row);
+                }
+            }
+            return rows;
+        });
+    }
+
+    @Test
+    void changesAreSentInOrder() {
+        LogChangeFeed feed = feed(64, 10_000);
+        feed.subscribe(1, false);
+        write(feed, LogChangeEvent.Type.CREATED, 1, 5);
+        write(feed, LogChangeEvent.Type.INGREDIENTS_ADDED, 1, 5);
+        write(feed, LogChangeEvent.Type.CREATED, 2, 6);
+
+        RecordingEmitter emitter = emitters.get(0);
+        await(() -> emitter.events.size() == 3);
+        assertEquals(List.of("ready", "created", "ingredients-added"), emitter.names());
+        assertTrue(emitter.events.get(1).contains("\"logId\":5"), emitter.events.get(1));
+    }
+
+    @Test
+    void aSlowClientsBacklogIsReplacedByOneResync() {
+        LogChangeFeed feed = feed(3, 10_000);
+        CountDownLatch gate = new CountDownLatch(1);
+        nextGate = gate;
+        feed.subscribe(1, false);
+        RecordingEmitter emitter = emitters.get(0);
+        // "ready" is being written and blocks; everything else queues up behind it
+        await(() -> emitter.writing);
+        for (int log = 1; log <= 5; log++) {
+            write(feed, LogChangeEvent.Type.CREATED, 1, log);
+        }
+
+        gate.countDown();
+        await(() -> emitter.events.size() == 2);
+        assertEquals(List.of("ready", LogChangeFeed.RESYNC), emitter.names());
+        write(feed, LogChangeEvent.Type.DELETED, 1, 1);
+        await(() -> emitter.events.size() == 3);
+        assertEquals("deleted", emitter.names().get(2));
+    }
+
+    @Test
+    void aStalledWriterIsEvictedWithoutHoldingUpOthers() throws InterruptedException {
+        LogChangeFeed feed = feed(64, 50);
+        CountDownLatch stuck = new CountDownLatch(1);
+        nextGate = stuck;
+        feed.subscribe(1, false);
+        RecordingEmitter slow = emitters.get(0);
+        await(() -> slow.writing);
+        // the only send thread is blocked: this "ready" waits in the pool's queue
+        feed.subscribe(2, false);
+        RecordingEmitter other = emitters.get(1);
+        Thread.sleep(100);
+        assertTrue(other.events.isEmpty());
+
+        feed.evictStalled();
+        assertEquals(1L, feed.getSubscriberCount());
+        await(() -> other.events.size() == 1);
+        write(feed, LogChangeEvent.Type.CREATED, 1, 7);
+
+        stuck.countDown();
+        await(() -> slow.completed);
+        assertEquals(List.of("ready"), slow.names(), "nothing more is queued for an evicted subscriber");
+    }
+
+    @Test
+    void aWriteOnAnotherNodeSendsAResync() {
+        LogChangeFeed feed = feed(64, 10_000);
+        versions.put(1, 3L);
+        feed.subscribe(1, false);
+        RecordingEmitter emitter = emitters.get(0);
+
+        write(feed, LogChangeEvent.Type.CREATED, 1, 5);
+        feed.pollVersions();
+        await(() -> emitter.events.size() == 2);
+
+        versions.merge(1, 1L, Long::sum); // no event on this node
+        feed.pollVersions();
+        feed.pollVersions();
+        await(() -> emitter.events.size() == 3);
+        write(feed, LogChangeEvent.Type.DELETED, 1, 5);
+        await(() -> emitter.events.size() == 4);
+        feed.pollVersions();
+
+        assertEquals(List.of("ready", "created", LogChangeFeed.RESYNC, "deleted"), emitter.names());
+    }
+
+    private LogChangeFeed feed(int bufferSize, long sendTimeoutMs) {
+        return new LogChangeFeed(logVersionTracker, new SimpleMeterRegistry(), bufferSize, 10, 100, 60_000,
+                1, sendTimeoutMs, 4) {
+            @Override
+            SseEmitter newEmitter(long timeoutMs) {
+                RecordingEmitter emitter = new RecordingEmitter(nextGate);
+                nextGate = null;
+                emitters.add(emitter);
+                return emitter;
+            }
+        };
+    }
+
+    // a committed local write: counted before commit, bumps the version, then delivered after commit
+    private void write(LogChangeFeed feed, LogChangeEvent.Type type, int userId, Integer logId) {
+        LogChangeEvent event = new LogChangeEvent(type, userId, logId);
+        feed.countLogChange(event);
+        versions.merge(userId, 1L, Long::sum);
+        feed.onLogChange(event);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("condition not met within 5 s");
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private static final class RecordingEmitter extends SseEmitter {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch gate;
+        volatile boolean writing;
+        volatile boolean completed;
+
+        RecordingEmitter(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            writing = true;
+            try {
+                if (gate != null && !gate.await(10, TimeUnit.SECONDS)) {
+                    throw new IOException("gate not opened");
+                }
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            StringBuilder text = new StringBuilder();
+            builder.build().forEach(part -> text.append(part.getData()));
+            // heartbeats are comments
+            if (!text.toString().startsWith(":")) {
+                events.add(text.toString());
+            }
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+            super.complete();
+        }
+
+        List<String> names() {
+            List<String> names = new ArrayList<>();
+            for (String event : events) {
+                int start = event.indexOf("event:") + 6;
+                names.add(event.substring(start, event.indexOf('\n', start)));
+            }
+            return names;
+        }
+    }
+}
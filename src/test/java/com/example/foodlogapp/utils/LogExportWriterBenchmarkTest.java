@@ -0,0 +1,104 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.dto.LogExportRow;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Streams a large export of CSV and NDJSON, plain and gzip, into a counting sink (tagged benchmark, run with
+ * -Pbenchmark), and checks the escaping of both formats.
+ */
+class LogExportWriterBenchmarkTest {
+
+    private static final int ROWS = 500_000;
+
+    @Test
+    @Tag("benchmark")
+    void throughput() throws IOException {
+        for (LogExportWriter.Format format : LogExportWriter.Format.values()) {
+            for (boolean gzip : new boolean[]{false, true}) {
+                CountingOutputStream sink = new CountingOutputStream();
+                OutputStream target = gzip ? new GZIPOutputStream(sink, 8192) : sink;
+                LogExportRow row = new LogExportRow();
+                try (LogExportWriter writer = new LogExportWriter(target, format)) {
+                    for (int i = 0; i < ROWS; i++) {
+                        fill(row, i);
+                        writer.accept(row);
+                    }
+                    assertEquals(ROWS, writer.getRows());
+                }
+                // every row carries at least its ids and the separators; gzip only has to produce output
+                assertTrue(gzip ? sink.count > 0 : sink.count > (long) ROWS * 20, "bytes=" + sink.count);
+            }
+        }
+    }
+
+    @Test
+    void escapesCsvAndJson() throws IOException {
+        LogExportRow row = new LogExportRow();
+        row.setLogId(1);
+        row.setUserId(2);
+        row.setImagePath("a,b.jpg");
+        row.setConfidence(90);
+        row.setIngredientId(3);
+        row.setIngredientName("say \"hi\"\n");
+        row.setKcal(10);
+        row.setWeight(new BigDecimal("12.50"));
+
+        assertEquals(LogExportWriter.CSV_HEADER + "\n1,2,\"a,b.jpg\",90,3,\"say \"\"hi\"\"\n\",10,12.50\n",
+                write(LogExportWriter.Format.CSV, row));
+        assertEquals("{\"logId\":1,\"userId\":2,\"imagePath\":\"a,b.jpg\",\"confidence\":90,\"ingredientId\":3,"
+                        + "\"ingredientName\":\"say \\\"hi\\\"\\n\",\"kcal\":10,\"weight\":12.50}\n",
+                write(LogExportWriter.Format.NDJSON, row));
+
+        LogExportRow empty = new LogExportRow();
+        empty.setLogId(4);
+        empty.setUserId(2);
+        empty.setImagePath("x.jpg");
+        empty.setConfidence(0);
+        assertEquals(LogExportWriter.CSV_HEADER + "\n4,2,x.jpg,0,,,,\n", write(LogExportWriter.Format.CSV, empty));
+    }
+
+    private static String write(LogExportWriter.Format format, LogExportRow row) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (LogExportWriter writer = new LogExportWriter(out, format)) {
+            writer.accept(row);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void fill(LogExportRow row, int i) {
+        row.setLogId(i / 6 + 1);
+        row.setUserId(1);
+        row.setImagePath("/images/" + (i / 6 + 1) + ".jpg");
+        row.setConfidence(85);
+        row.setIngredientId(i + 1);
+        row.setIngredientName("ingredient-" + (i % 50));
+        row.setKcal(100 + i % 300);
+        row.setWeight(BigDecimal.valueOf(50 + i % 200, 1));
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
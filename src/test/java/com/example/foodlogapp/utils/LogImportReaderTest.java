@@ -0,0 +1,133 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.config.InvalidParameterException;
+import com.example.foodlogapp.dto.ImportReport;
+import com.example.foodlogapp.dto.ImportedLog;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Parsing of import files: grouping of rows into logs, quoting, row validation and error reporting.
+ */
+class LogImportReaderTest {
+
+    private final ImportReport report = new ImportReport();
+
+    @Test
+    void groupsConsecutiveRowsIntoLogs() throws IOException {
+        List<ImportedLog> logs = read(LogExportWriter.Format.CSV, LogExportWriter.CSV_HEADER + "\n"
+                + "1,9,a.jpg,90,1,Rice,200,150.5\n"
+                + "1,9,a.jpg,90,2,\"Egg, fried\",90,\n"
+                + "2,9,b.jpg,0,,,,\n");
+
+        assertEquals(2, logs.size());
+        assertEquals("1", logs.get(0).getSourceId());
+        assertEquals(2, logs.get(0).getLine());
+        assertEquals("a.jpg", logs.get(0).getLog().getImagePath());
+        assertEquals(2, logs.get(0).getIngredients().size());
+        assertEquals(new BigDecimal("150.50"), logs.get(0).getIngredients().get(0).getWeight());
+        assertEquals("Egg, fried", logs.get(0).getIngredients().get(1).getIngredientName());
+        assertNull(logs.get(0).getIngredients().get(1).getWeight());
+        assertTrue(logs.get(1).getIngredients().isEmpty(), "a row without ingredient columns is a log without ingredients");
+        assertEquals(3, report.getRowsRead());
+        assertEquals(0, report.getRowsFailed());
+    }
+
+    @Test
+    void readsTheExportNdjsonLayout() throws IOException {
+        List<ImportedLog> logs = read(LogExportWriter.Format.NDJSON,
+                "{\"logId\":5,\"imagePath\":\"x.jpg\",\"confidence\":80,\"ingredientName\":\"Tofu\",\"kcal\":70,\"weight\":100}\n"
+                        + "\n"
+                        + "{\"logId\":5,\"imagePath\":\"x.jpg\",\"confidence\":80,\"ingredientName\":\"Soy sauce\",\"kcal\":5,\"weight\":null}\n");
+
+        assertEquals(1, logs.size());
+        assertEquals(2, logs.get(0).getIngredients().size());
+        assertEquals(Integer.valueOf(80), logs.get(0).getLog().getConfidence());
+        assertEquals(2, report.getRowsRead());
+    }
+
+    @Test
+    void invalidRowsAreReportedAndSkipped() throws IOException {
+        List<ImportedLog> logs = read(LogExportWriter.Format.NDJSON,
+                "{\"logId\":1,\"imagePath\":\"a.jpg\",\"confidence\":101}\n"
+                        + "{not json\n"
+                        + "{\"logId\":2,\"imagePath\":\"b.jpg\",\"confidence\":50,\"ingredientName\":\"Rice\",\"kcal\":-1}\n"
+                        + "{\"logId\":2,\"imagePath\":\"b.jpg\",\"confidence\":50,\"ingredientName\":\"Egg\",\"kcal\":90}\n");
+
+        assertEquals(1, logs.size());
+        assertEquals("Egg", logs.get(0).getIngredients().get(0).getIngredientName());
+        assertEquals(3, report.getRowsFailed());
+        assertEquals(List.of(1L, 2L, 3L), report.getErrors().stream().map(ImportReport.ImportError::getLine).toList());
+        assertEquals("confidence must be between 0 and 100", report.getErrors().get(0).getMessage());
+        assertEquals("kcal must not be negative", report.getErrors().get(2).getMessage());
+    }
+
+    @Test
+    void rowsOfALogIdThatReappearsLaterAreRejected() throws IOException {
+        List<ImportedLog> logs = read(LogExportWriter.Format.CSV, LogExportWriter.CSV_HEADER + "\n"
+                + "1,9,a.jpg,90,1,Rice,200,\n"
+                + "2,9,b.jpg,90,2,Egg,90,\n"
+                + "1,9,a.jpg,90,3,Tea,2,\n");
+
+        assertEquals(List.of("1", "2"), logs.stream().map(ImportedLog::getSourceId).toList());
+        assertEquals(1, logs.get(0).getIngredients().size(), "the late row is not merged into the first log");
+        assertEquals(1, report.getRowsFailed());
+        assertEquals(4, report.getErrors().get(0).getLine());
+        assertEquals("1", report.getErrors().get(0).getLogId());
+    }
+
+    @Test
+    void aLogWhoseFirstRowFailedCanStillStartOnItsNextRow() throws IOException {
+        List<ImportedLog> logs = read(LogExportWriter.Format.CSV, LogExportWriter.CSV_HEADER + "\n"
+                + "1,9,,90,1,Rice,200,\n"
+                + "1,9,a.jpg,90,2,Egg,90,\n");
+
+        assertEquals(1, logs.size());
+        assertEquals("Egg", logs.get(0).getIngredients().get(0).getIngredientName());
+        assertEquals(1, report.getRowsFailed());
+    }
+
+    @Test
+    void quotedLineBreaksKeepLineNumbersAndErrorsAreCapped() throws IOException {
+        ImportReport capped = new ImportReport();
+        List<ImportedLog> logs = new ArrayList<>();
+        String csv = LogExportWriter.CSV_HEADER + "\n"
+                + "1,9,a.jpg,90,1,\"two\nlines\",10,\n"
+                + ",9,b.jpg,90,,,,\n"
+                + ",9,c.jpg,90,,,,\n";
+        new LogImportReader(stream(csv), LogExportWriter.Format.CSV, capped, 1).forEachLog(logs::add);
+
+        assertEquals("two\nlines", logs.get(0).getIngredients().get(0).getIngredientName());
+        assertEquals(4L, capped.getErrors().get(0).getLine(), "the quoted field spans lines 2 and 3");
+        assertEquals(2, capped.getRowsFailed());
+        assertEquals(1, capped.getErrors().size());
+        assertTrue(capped.isErrorsTruncated());
+    }
+
+    @Test
+    void aCsvHeaderWithoutRequiredColumnsIsAParameterError() {
+        assertThrows(InvalidParameterException.class,
+                () -> read(LogExportWriter.Format.CSV, "log_id,image_path\n1,a.jpg\n"));
+    }
+
+    private List<ImportedLog> read(LogExportWriter.Format format, String content) throws IOException {
+        List<ImportedLog> logs = new ArrayList<>();
+        new LogImportReader(stream(content), format, report, 100).forEachLog(logs::add);
+        return logs;
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
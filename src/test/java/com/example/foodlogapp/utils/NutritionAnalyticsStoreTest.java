@@ -0,0 +1,206 @@
+package com.example.foodlogapp.utils;
+
+import com.example.foodlogapp.dto.NutritionRow;
+import com.example.foodlogapp.event.LogChangeEvent;
+import com.example.foodlogapp.mapper.LogVersionMapper;
+import com.example.foodlogapp.service.FoodIngredientService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Loading, incremental updates, eviction and cross-node staleness of the analytics store, against a mocked
+ * FoodIngredientService (rows per user) and a mocked user_log_version. A user with one row takes about 1.6 KB.
+ */
+class NutritionAnalyticsStoreTest {
+
+    private final Map<Integer, List<NutritionRow>> rows = new HashMap<>();
+    private final Map<Integer, Long> versions = new HashMap<>();
+    // user id of every full load, in order
+    private final List<Integer> loads = new ArrayList<>();
+    private final List<Integer> logFetches = new ArrayList<>();
+
+    private final FoodIngredientService foodIngredientService = mock(FoodIngredientService.class);
+    private final LogVersionMapper logVersionMapper = mock(LogVersionMapper.class);
+    private final LogVersionTracker logVersionTracker = new LogVersionTracker(logVersionMapper);
+
+    NutritionAnalyticsStoreTest() {
+        doAnswer(call -> {
+            loads.add(call.getArgument(0));
+            rows.getOrDefault(call.<Integer>getArgument(0), List.of()).forEach(call.<Consumer<NutritionRow>>getArgument(1));
+            return null;
+        }).when(foodIngredientService).streamNutritionByUserId(anyInt(), any());
+        when(foodIngredientService.findNutritionByLogId(anyInt(), anyInt())).thenAnswer(call -> {
+            logFetches.add(call.getArgument(1));
+            return rows.getOrDefault(call.<Integer>getArgument(0), List.of()).stream()
+                    .filter(r -> r.getLogId().equals(call.getArgument(1))).toList();
+        });
+        when(logVersionMapper.findVersion(anyInt())).thenAnswer(call -> versions.getOrDefault(call.<Integer>getArgument(0), 0L));
+    }
+
+    @Test
+    void aLocalWriteReloadsOnlyThatLog() {
+        NutritionAnalyticsStore store = store(1 << 20, 1 << 20, Duration.ofMinutes(10));
+        row(1, 10, "rice", 200);
+        assertEquals(200L, kcal(store, 1));
+
+        row(1, 11, "egg", 80);
+        write(store, LogChangeEvent.Type.INGREDIENTS_ADDED, 1, 11);
+        rows.get(1).removeIf(r -> r.getLogId() == 10);
+        write(store, LogChangeEvent.Type.DELETED, 1, 10);
+
+        assertEquals(80L, kcal(store, 1));
+        assertEquals(List.of(1), loads);
+        assertEquals(List.of(11), logFetches, "a deleted log is not fetched");
+    }
+
+    @Test
+    void aWriteOnAnotherNodeReloadsTheUser() {
+        NutritionAnalyticsStore store = store(1 << 20, 1 << 20, Duration.ofMinutes(10));
+        row(1, 10, "rice", 200);
+        assertEquals(200L, kcal(store, 1));
+
+        // no event here, only the version moved
+        row(1, 11, "egg", 80);
+        versions.merge(1, 1L, Long::sum);
+
+        assertEquals(280L, kcal(store, 1));
+        assertEquals(List.of(1, 1), loads);
+        assertEquals(280L, kcal(store, 1));
+        assertEquals(List.of(1, 1), loads, "up to date again");
+    }
+
+    @Test
+    void eventsThatChangeNoIngredientsStillCountTowardsTheVersion() {
+        NutritionAnalyticsStore store = store(1 << 20, 1 << 20, Duration.ofMinutes(10));
+        row(1, 10, "rice", 200);
+        kcal(store, 1);
+
+        write(store, LogChangeEvent.Type.CONFIDENCE_SET, 1, 10);
+        write(store, LogChangeEvent.Type.USER_UPDATED, 1, null);
+        kcal(store, 1);
+
+        assertEquals(List.of(1), loads);
+        assertEquals(List.of(), logFetches);
+    }
+
+    @Test
+    void aLocalWriteSeenBeforeItsEventIsNotMistakenForARemoteOne() {
+        NutritionAnalyticsStore store = store(1 << 20, 1 << 20, Duration.ofMinutes(10));
+        row(1, 10, "rice", 200);
+        kcal(store, 1);
+
+        // committed, but the after-commit listener has not run yet when the next query comes in
+        row(1, 11, "egg", 80);
+        LogChangeEvent event = new LogChangeEvent(LogChangeEvent.Type.INGREDIENTS_ADDED, 1, 11);
+        store.countLogChange(event);
+        versions.merge(1, 1L, Long::sum);
+        assertEquals(200L, kcal(store, 1));
+        store.onLogChange(event);
+        assertEquals(280L, kcal(store, 1));
+        assertEquals(List.of(1), loads);
+
+        // so a later write on another node is still noticed
+        row(1, 12, "tea", 5);
+        versions.merge(1, 1L, Long::sum);
+        assertEquals(285L, kcal(store, 1));
+        assertEquals(List.of(1, 1), loads);
+    }
+
+    @Test
+    void entriesOlderThanMaxAgeAreReloaded() {
+        NutritionAnalyticsStore store = store(1 << 20, 1 << 20, Duration.ZERO);
+        row(1, 10, "rice", 200);
+        kcal(store, 1);
+        kcal(store, 1);
+
+        assertEquals(List.of(1, 1), loads);
+    }
+
+    @Test
+    void theLeastRecentlyQueriedUserIsEvictedAboveTheBudget() {
+        NutritionAnalyticsStore store = store(4000, 4000, Duration.ofMinutes(10));
+        row(1, 10, "rice", 200);
+        row(2, 20, "egg", 80);
+        row(3, 30, "tea", 5);
+        kcal(store, 1);
+        kcal(store, 2);
+        kcal(store, 1);
+        kcal(store, 3);
+
+        assertEquals(2, store.getUserCount());
+        assertEquals(0L, store.bytesOf(2), "user 2 was queried least recently");
+        assertEquals(store.bytesOf(1) + store.bytesOf(3), store.getTotalBytes());
+        kcal(store, 1);
+        assertEquals(List.of(1, 2, 3), loads);
+        kcal(store, 2);
+        assertEquals(List.of(1, 2, 3, 2), loads);
+    }
+
+    @Test
+    void aUserAboveThePerUserBudgetIsAnsweredButNotKept() {
+        NutritionAnalyticsStore store = store(1 << 20, 2000, Duration.ofMinutes(10));
+        for (int log = 1; log <= 100; log++) {
+            row(1, log, "rice", 1);
+        }
+
+        assertEquals(100L, kcal(store, 1));
+        assertEquals(0, store.getUserCount());
+        assertEquals(0L, store.getTotalBytes());
+        kcal(store, 1);
+        assertEquals(List.of(1, 1), loads);
+    }
+
+    @Test
+    void anImportDropsTheUser() {
+        NutritionAnalyticsStore store = store(1 << 20, 1 << 20, Duration.ofMinutes(10));
+        row(1, 10, "rice", 200);
+        kcal(store, 1);
+
+        row(1, 11, "egg", 80);
+        write(store, LogChangeEvent.Type.IMPORTED, 1, null);
+
+        assertEquals(0L, store.getTotalBytes());
+        assertEquals(280L, kcal(store, 1));
+        assertEquals(List.of(1, 1), loads);
+    }
+
+    private NutritionAnalyticsStore store(long maxBytes, long maxBytesPerUser, Duration maxAge) {
+        return new NutritionAnalyticsStore(foodIngredientService, logVersionTracker, new SimpleMeterRegistry(),
+                maxBytes, maxBytesPerUser, maxAge);
+    }
+
+    private static long kcal(NutritionAnalyticsStore store, int userId) {
+        return store.query(userId, columns -> columns.sumKcalByBucket(new long[]{0, Long.MAX_VALUE})[0]);
+    }
+
+    // a local write: counted before commit, bumps the version (LogVersionTracker), then applied after commit
+    private void write(NutritionAnalyticsStore store, LogChangeEvent.Type type, int userId, Integer logId) {
+        LogChangeEvent event = new LogChangeEvent(type, userId, logId);
+        store.countLogChange(event);
+        versions.merge(userId, 1L, Long::sum);
+        store.onLogChange(event);
+    }
+
+    private void row(int userId, int logId, String name, int kcal) {
+        NutritionRow row = new NutritionRow();
+        row.setLogId(logId);
+        row.setCreatedAt(1_700_000_000L);
+        row.setIngredientName(name);
+        row.setKcal(kcal);
+        rows.computeIfAbsent(userId, u -> new ArrayList<>()).add(row);
+    }
+}
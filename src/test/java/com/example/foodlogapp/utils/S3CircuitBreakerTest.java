@@ -0,0 +1,157 @@
+package com.example.foodlogapp.utils;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.example.foodlogapp.config.StorageProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Opening, half-open probing and closing of the S3 breaker, and which outcomes count against S3. The open
+ * duration is 50 ms so the tests wait it out.
+ */
+class S3CircuitBreakerTest {
+
+    private static final long OPEN_MS = 50;
+
+    private final StorageProperties properties = new StorageProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final S3CircuitBreaker breaker;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    S3CircuitBreakerTest() {
+        properties.setS3FailureThreshold(3);
+        properties.setS3OpenDuration(Duration.ofMillis(OPEN_MS));
+        properties.setS3SlowCallThreshold(Duration.ofSeconds(5));
+        breaker = new S3CircuitBreaker(properties, meterRegistry);
+    }
+
+    @Test
+    void consecutiveFailuresOpenTheCircuit() {
+        fail();
+        fail();
+        succeed();
+        fail();
+        fail();
+        assertEquals(S3CircuitBreaker.State.CLOSED, breaker.getState(), "a success resets the count");
+
+        fail();
+        assertEquals(S3CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.isCallPermitted());
+        int before = calls.get();
+        assertThrows(S3CircuitBreaker.S3UnavailableException.class, this::succeed);
+        assertEquals(before, calls.get(), "rejected without calling S3");
+        assertEquals(1.0, meterRegistry.counter("s3.breaker.opened").count());
+        assertEquals(1.0, meterRegistry.counter("s3.breaker.rejected").count());
+    }
+
+    @Test
+    void oneProbeAfterTheOpenDurationDecides() throws InterruptedException {
+        open();
+        Thread.sleep(OPEN_MS + 10);
+        assertEquals(S3CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.isCallPermitted());
+
+        fail();
+        assertEquals(S3CircuitBreaker.State.OPEN, breaker.getState(), "a failed probe re-opens at once");
+        Thread.sleep(OPEN_MS + 10);
+        succeed();
+        assertEquals(S3CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(2.0, meterRegistry.counter("s3.breaker.opened").count());
+    }
+
+    @Test
+    void onlyOneProbeIsLetThrough() throws InterruptedException {
+        open();
+        Thread.sleep(OPEN_MS + 10);
+
+        int before = calls.get();
+        breaker.call(() -> {
+            assertFalse(breaker.isCallPermitted());
+            assertThrows(S3CircuitBreaker.S3UnavailableException.class, this::succeed);
+            return null;
+        });
+        assertEquals(before, calls.get(), "the second call was rejected while the probe ran");
+        assertEquals(S3CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void clientErrorsProveS3IsReachable() {
+        AmazonServiceException notFound = new AmazonServiceException("Not Found");
+        notFound.setStatusCode(404);
+        for (int i = 0; i < 5; i++) {
+            assertSame(notFound, assertThrows(AmazonServiceException.class, () -> breaker.call(() -> {
+                throw notFound;
+            })));
+        }
+        assertEquals(S3CircuitBreaker.State.CLOSED, breaker.getState());
+
+        AmazonServiceException slowDown = new AmazonServiceException("Slow Down");
+        slowDown.setStatusCode(503);
+        for (int i = 0; i < 3; i++) {
+            assertThrows(S3CircuitBreaker.S3UnavailableException.class, () -> breaker.call(() -> {
+                throw slowDown;
+            }));
+        }
+        assertEquals(S3CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void slowCallsCountAsFailures() {
+        properties.setS3SlowCallThreshold(Duration.ZERO);
+        for (int i = 0; i < 3; i++) {
+            breaker.call(() -> {
+                busyWait();
+                return calls.incrementAndGet();
+            });
+        }
+        assertEquals(S3CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void otherErrorsReleaseTheProbeWithoutJudgingS3() throws InterruptedException {
+        open();
+        Thread.sleep(OPEN_MS + 10);
+
+        assertThrows(IllegalStateException.class, () -> breaker.call(() -> {
+            throw new IllegalStateException("reading the upload failed");
+        }));
+        assertTrue(breaker.isCallPermitted(), "the next call can probe");
+        succeed();
+        assertEquals(S3CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++) {
+            fail();
+        }
+        assertEquals(S3CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private void succeed() {
+        breaker.call(calls::incrementAndGet);
+    }
+
+    private void fail() {
+        assertThrows(S3CircuitBreaker.S3UnavailableException.class, () -> breaker.call(() -> {
+            calls.incrementAndGet();
+            throw new SdkClientException("connect timed out");
+        }));
+    }
+
+    private static void busyWait() {
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < 1_000) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.foodlogapp.utils;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the heap a single upload allocates (per-thread allocation counter) when it is spooled, streamed to
+ * storage and encoded for the model (tagged benchmark, run with -Pbenchmark), plus the block handling of spools.
+ */
+class UploadSpoolMemoryTest {
+
+    private static final int SIZE = 8 * 1024 * 1024;
+    private static final int BLOCK = 64 * 1024;
+
+    private final DirectBufferPool pool = new DirectBufferPool(BLOCK, SIZE / BLOCK);
+
+    @Test
+    @Tag("benchmark")
+    void peakHeapPerUpload() throws Exception {
+        byte[] image = new byte[SIZE];
+        new Random(42).nextBytes(image);
+        // warm up class loading and JIT so the counters only see the upload itself
+        for (int i = 0; i < 3; i++) {
+            spoolUploadAndEncode(image);
+            legacyEncode(image);
+        }
+
+        long before = allocatedBytes();
+        try (UploadSpool spool = spool(image)) {
+            drain(spool.newInputStream());
+            long streamed = allocatedBytes() - before;
+            String dataUri = spool.toDataUri();
+            long encoded = allocatedBytes() - before;
+
+            // the image itself lives off-heap: reading and streaming it must not allocate a copy
+            assertTrue(streamed < SIZE / 16, "spooling allocated " + streamed + " bytes on the heap");
+            // encoded byte[] + the Latin-1 String, each 4/3 of the image
+            assertTrue(encoded < SIZE * 3, "encoding allocated " + encoded + " bytes on the heap");
+            assertEquals(legacyEncode(image), dataUri);
+            assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(image)), spool.getSha256());
+        }
+        assertEquals(SIZE, pool.allocatedBytes(), "every upload reused the same blocks");
+    }
+
+    @Test
+    void contentSpanningBlocksIsStreamedAndEncodedInOrder() throws Exception {
+        // neither a multiple of the block size nor of the 3-byte base64 group
+        byte[] image = new byte[3 * BLOCK + 1001];
+        new Random(7).nextBytes(image);
+        try (UploadSpool spool = spool(image)) {
+            assertEquals(image.length, spool.size());
+            assertArrayEquals(image, spool.newInputStream().readAllBytes());
+            assertEquals(legacyEncode(image), spool.toDataUri());
+
+            InputStream in = spool.newInputStream();
+            assertEquals(BLOCK - 1, in.skip(BLOCK - 1));
+            in.mark(0);
+            assertEquals(image[BLOCK - 1] & 0xff, in.read());
+            assertEquals(image[BLOCK] & 0xff, in.read(), "single-byte reads cross into the next block");
+            in.reset();
+            byte[] across = new byte[4];
+            assertEquals(4, in.readNBytes(across, 0, 4));
+            assertArrayEquals(Arrays.copyOfRange(image, BLOCK - 1, BLOCK + 3), across);
+        }
+    }
+
+    @Test
+    void rejectsWrongLength() {
+        byte[] data = new byte[10];
+        assertThrows(IllegalArgumentException.class,
+                () -> UploadSpool.read(new ByteArrayInputStream(data), 11, "image/png", List.of(ByteBuffer.allocate(16)), () -> { }));
+        assertThrows(IllegalArgumentException.class,
+                () -> UploadSpool.read(new ByteArrayInputStream(data), 9, "image/png", List.of(ByteBuffer.allocate(16)), () -> { }));
+    }
+
+    @Test
+    void streamSupportsResetForRetries() throws IOException {
+        byte[] data = {1, 2, 3, 4, 5};
+        int[] released = {0};
+        UploadSpool spool = UploadSpool.read(new ByteArrayInputStream(data), data.length, "image/png",
+                List.of(ByteBuffer.allocate(4), ByteBuffer.allocate(4)), () -> released[0]++);
+        InputStream in = spool.newInputStream();
+        in.mark(1);
+        assertEquals(5, in.readAllBytes().length);
+        in.reset();
+        assertEquals(1, in.read());
+        spool.close();
+        spool.close();
+        assertEquals(1, released[0]);
+    }
+
+    private void spoolUploadAndEncode(byte[] image) throws IOException {
+        try (UploadSpool spool = spool(image)) {
+            drain(spool.newInputStream());
+            spool.toDataUri();
+        }
+    }
+
+    // like UploadSpooler: blocks from the pool, returned on close
+    private UploadSpool spool(byte[] image) throws IOException {
+        try {
+            List<ByteBuffer> blocks = pool.acquire(pool.blocksFor(image.length), 0);
+            return UploadSpool.read(new ByteArrayInputStream(image), image.length, "image/jpeg", blocks,
+                    () -> pool.release(blocks));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // what Media(Resource) + OpenAiChatModel.fromMediaData did with the multipart bytes
+    private static String legacyEncode(byte[] image) {
+        return String.format("data:%s;base64,%s", "image/jpeg", Base64.getEncoder().encodeToString(image));
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buf = new byte[8192];
+        while (in.read(buf) != -1) {
+            // discard, like the S3 client writing to the socket
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}